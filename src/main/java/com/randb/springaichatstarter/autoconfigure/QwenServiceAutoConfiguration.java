@@ -1,6 +1,7 @@
 package com.randb.springaichatstarter.autoconfigure;
 
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
@@ -38,8 +39,16 @@ public class QwenServiceAutoConfiguration {
     @Primary
     @ConditionalOnBean(ChatClient.class)
     @ConditionalOnMissingBean(name = "qwen")
-    public ChatService qwenChatService(ApplicationContext applicationContext) {
+    public ChatService qwenChatService(ApplicationContext applicationContext,
+                                       ObjectProvider<SpringAiChatProperties> properties) {
         log.info("创建QwenChatServiceImpl - 这将使用真实的AI服务");
-        return new QwenChatServiceImpl(applicationContext);
+        QwenChatServiceImpl service = new QwenChatServiceImpl(applicationContext);
+        // 启用断路器或重试时由外层装饰器处理失败，不再逐个请求捕获异常，否则重试看不到异常、断路器不会计数
+        SpringAiChatProperties chatProperties = properties.getIfAvailable();
+        if (chatProperties != null && (chatProperties.getCircuitBreaker().isEnabled()
+                || chatProperties.getRetry().isEnabled())) {
+            service.setFallbackOnError(false);
+        }
+        return service;
     }
 } 
\ No newline at end of file
@@ -1,14 +1,20 @@
 package com.randb.springaichatstarter.autoconfigure;
 
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.ContainerCustomizer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -17,8 +23,11 @@ import org.springframework.context.annotation.Configuration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.randb.springaichatstarter.mq.ChatMessageService;
+import com.randb.springaichatstarter.mq.ChatPayloadCodecs;
 import com.randb.springaichatstarter.core.ChatModelFactory;
 import com.randb.springaichatstarter.mq.ChatResponseReceiver;
+import com.randb.springaichatstarter.mq.PayloadCompressor;
+import com.randb.springaichatstarter.ratelimit.RateLimitGuard;
 
 /**
  * RabbitMQ自动配置类
@@ -65,28 +74,62 @@ public class RabbitMQConfiguration {
                 .with(properties.getRabbitmq().getReplyRoutingKey());
     }
 
+    /**
+     * 聊天请求的监听容器：手动确认（回复发布后确认），预取数量和消费者数量按配置；
+     * 其余设置沿用spring.rabbitmq.listener.simple，执行模式为虚拟线程时同样生效
+     */
+    @Bean(ChatMessageService.CONTAINER_FACTORY)
+    @ConditionalOnMissingBean(name = ChatMessageService.CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory chatRabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            ObjectProvider<ContainerCustomizer<SimpleMessageListenerContainer>> containerCustomizer) {
+        SpringAiChatProperties.RabbitMQProperties rabbitmq = properties.getRabbitmq();
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(Math.max(rabbitmq.getPrefetch(), rabbitmq.getMaxInFlight()));
+        factory.setConcurrentConsumers(rabbitmq.getConcurrency());
+        factory.setMaxConcurrentConsumers(Math.max(rabbitmq.getConcurrency(), rabbitmq.getMaxConcurrency()));
+        containerCustomizer.ifUnique(factory::setContainerCustomizer);
+        return factory;
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public MessageConverter jsonMessageConverter(ObjectMapper objectMapper) {
         return new Jackson2JsonMessageConverter(objectMapper);
     }
     
+    /**
+     * MQ消息体编解码器，发送格式按spring.ai.chat.rabbitmq.payload-format，接收时按content-type协商；
+     * 较大的消息体按spring.ai.chat.rabbitmq.compression压缩
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public ChatPayloadCodecs chatPayloadCodecs(ObjectMapper objectMapper) {
+        SpringAiChatProperties.RabbitMQProperties rabbitmq = properties.getRabbitmq();
+        return ChatPayloadCodecs.create(objectMapper, rabbitmq.getPayloadFormat(),
+                new PayloadCompressor(rabbitmq.getCompression()));
+    }
+
     @Bean
     @ConditionalOnMissingBean
-    public ChatResponseReceiver chatResponseReceiver(ObjectMapper objectMapper) {
-        return new ChatResponseReceiver(objectMapper);
+    public ChatResponseReceiver chatResponseReceiver(ChatPayloadCodecs codecs) {
+        return new ChatResponseReceiver(codecs, properties);
     }
 
     @Bean
     @ConditionalOnMissingBean
     public ChatMessageService chatMessageService(RabbitTemplate rabbitTemplate, 
                                                 ChatModelFactory chatModelFactory,
-                                                ObjectMapper objectMapper,
-                                                @Autowired(required = false) ChatResponseReceiver responseReceiver) {
+                                                ChatPayloadCodecs codecs,
+                                                @Autowired(required = false) ChatResponseReceiver responseReceiver,
+                                                RateLimitGuard rateLimitGuard) {
         // 如果没有ChatResponseReceiver，创建一个新的
         if (responseReceiver == null) {
-            responseReceiver = new ChatResponseReceiver(objectMapper);
+            responseReceiver = new ChatResponseReceiver(codecs, properties);
         }
-        return new ChatMessageService(rabbitTemplate, chatModelFactory, objectMapper, properties, responseReceiver);
+        return new ChatMessageService(rabbitTemplate, chatModelFactory, codecs, properties, responseReceiver, rateLimitGuard);
     }
 } 
\ No newline at end of file
@@ -2,19 +2,49 @@ package com.randb.springaichatstarter.autoconfigure;
 
 import java.util.Map;
 
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
+import com.randb.springaichatstarter.breaker.ChatCircuitBreakers;
+import com.randb.springaichatstarter.cache.ChatResponseCache;
+import com.randb.springaichatstarter.cache.InFlightRequestCoalescer;
 import com.randb.springaichatstarter.config.ServiceConfig;
 import com.randb.springaichatstarter.config.WebConfig;
 import com.randb.springaichatstarter.core.ChatModelFactory;
 import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.hedge.RequestHedger;
+import com.randb.springaichatstarter.limit.AdaptiveConcurrencyLimiter;
+import com.randb.springaichatstarter.memory.ChatClientConversationSummarizer;
+import com.randb.springaichatstarter.memory.CompactChatMemory;
+import com.randb.springaichatstarter.memory.ConversationCompactor;
+import com.randb.springaichatstarter.memory.ConversationContextAssembler;
+import com.randb.springaichatstarter.memory.ConversationSummarizer;
+import com.randb.springaichatstarter.memory.MappedLogChatMemory;
+import com.randb.springaichatstarter.memory.RedisChatMemory;
+import com.randb.springaichatstarter.memory.StreamingReplyRecorder;
+import com.randb.springaichatstarter.ratelimit.ChatRateLimiter;
+import com.randb.springaichatstarter.ratelimit.LocalRateLimiter;
+import com.randb.springaichatstarter.ratelimit.RateLimitGuard;
+import com.randb.springaichatstarter.ratelimit.RedisRateLimiter;
+import com.randb.springaichatstarter.retry.ResumableRetry;
+import com.randb.springaichatstarter.stream.StreamCancellationMetrics;
 
 /**
 * @Description:
@@ -47,10 +77,233 @@ public class SpringAiChatAutoConfiguration {
     static class RabbitMQAutoConfiguration {
         // RabbitMQ相关配置
     }
+
+    @Configuration
+    @Import(VirtualThreadExecutionConfiguration.class)
+    static class ExecutionAutoConfiguration {
+        // 阻塞调用的执行模式（平台线程/虚拟线程）
+    }
     
     @Bean
     @ConditionalOnMissingBean
-    public ChatModelFactory chatModelFactory(Map<String, ChatService> modelMap, ApplicationContext applicationContext) {
-        return new ChatModelFactory(modelMap, applicationContext);
+    public ChatModelFactory chatModelFactory(Map<String, ChatService> modelMap, ApplicationContext applicationContext,
+                                             SpringAiChatProperties properties) {
+        return new ChatModelFactory(modelMap, applicationContext, properties);
+    }
+
+    /**
+     * 同步响应缓存，通过ChatModelFactory包装到所有模型服务上
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.cache", name = "enabled", havingValue = "true")
+    public ChatResponseCache chatResponseCache(SpringAiChatProperties properties) {
+        return new ChatResponseCache(properties.getCache());
+    }
+
+    /**
+     * 对话记忆，带sessionId的请求通过MessageChatMemoryAdvisor读写历史消息
+     */
+    @Bean
+    @ConditionalOnMissingBean(ChatMemory.class)
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "store", havingValue = "local", matchIfMissing = true)
+    public CompactChatMemory compactChatMemory(SpringAiChatProperties properties) {
+        return new CompactChatMemory(properties.getMemory());
+    }
+
+    /**
+     * 按模型token预算截取对话历史
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public ConversationContextAssembler conversationContextAssembler(SpringAiChatProperties properties) {
+        return new ConversationContextAssembler(properties.getMemory(), properties.getModelAliases());
+    }
+
+    /**
+     * 流式回复结束后写回对话记忆
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public StreamingReplyRecorder streamingReplyRecorder(SpringAiChatProperties properties) {
+        return new StreamingReplyRecorder(properties.getMemory());
+    }
+
+    /**
+     * 对话摘要生成，默认使用ChatClient
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory.summary", name = "enabled", havingValue = "true")
+    public ConversationSummarizer conversationSummarizer(ObjectProvider<ChatClient> chatClient,
+                                                         SpringAiChatProperties properties) {
+        return new ChatClientConversationSummarizer(chatClient, properties.getMemory().getSummary());
+    }
+
+    /**
+     * 长会话后台摘要压缩
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory.summary", name = "enabled", havingValue = "true")
+    public ConversationCompactor conversationCompactor(ConversationSummarizer conversationSummarizer,
+                                                       SpringAiChatProperties properties) {
+        return new ConversationCompactor(conversationSummarizer, properties.getMemory().getSummary());
+    }
+
+    /**
+     * 文件对话记忆，追加写入内存映射的日志段，重启后恢复
+     */
+    @Bean
+    @ConditionalOnMissingBean(ChatMemory.class)
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "store", havingValue = "file")
+    public MappedLogChatMemory mappedLogChatMemory(SpringAiChatProperties properties) {
+        return new MappedLogChatMemory(properties.getMemory());
+    }
+
+    /**
+     * 在途请求合并，相同的并发请求只发起一次上游调用
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.single-flight", name = "enabled", havingValue = "true")
+    public InFlightRequestCoalescer inFlightRequestCoalescer() {
+        return new InFlightRequestCoalescer();
+    }
+
+    /**
+     * 按模型的自适应并发限制，通过ChatModelFactory包装到所有模型服务上
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.limiter", name = "enabled", havingValue = "true")
+    public AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(SpringAiChatProperties properties) {
+        return new AdaptiveConcurrencyLimiter(properties.getLimiter());
+    }
+
+    /**
+     * 按模型后端的断路器，通过ChatModelFactory包装到所有模型服务上（最内层）
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.circuit-breaker", name = "enabled", havingValue = "true")
+    public ChatCircuitBreakers chatCircuitBreakers(SpringAiChatProperties properties,
+                                                   ApplicationEventPublisher eventPublisher) {
+        return new ChatCircuitBreakers(properties.getCircuitBreaker(), eventPublisher);
+    }
+
+    /**
+     * 可续写重试，通过ChatModelFactory包装到所有模型服务上
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.retry", name = "enabled", havingValue = "true")
+    public ResumableRetry resumableRetry(SpringAiChatProperties properties) {
+        return new ResumableRetry(properties.getRetry());
+    }
+
+    /**
+     * 对冲请求，通过ChatModelFactory包装到所有模型服务上
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "spring.ai.chat.hedging", name = "enabled", havingValue = "true")
+    public RequestHedger requestHedger(SpringAiChatProperties properties) {
+        return new RequestHedger(properties.getHedging());
+    }
+
+    /**
+     * 按用户的速率限制，SSE、同步接口、WebSocket和MQ共用；未启用时为不做限制的实例
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RateLimitGuard rateLimitGuard(SpringAiChatProperties properties, ObjectProvider<ChatRateLimiter> rateLimiters) {
+        SpringAiChatProperties.RateLimitProperties rateLimit = properties.getRateLimit();
+        if (!rateLimit.isEnabled()) {
+            return RateLimitGuard.disabled();
+        }
+        ChatRateLimiter limiter = rateLimiters.getIfAvailable(() ->
+                new LocalRateLimiter(rateLimit.getMaxTrackedUsers(), RateLimitGuard.idleTimeout(rateLimit)));
+        return new RateLimitGuard(rateLimit, limiter);
+    }
+
+    /**
+     * Redis令牌桶，集群内共享用户配额
+     */
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.data.redis.core.StringRedisTemplate")
+    @ConditionalOnProperty(prefix = "spring.ai.chat.rate-limit", name = "store", havingValue = "redis")
+    static class RedisRateLimitConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public ChatRateLimiter redisChatRateLimiter(ObjectProvider<StringRedisTemplate> redisTemplates,
+                                                    SpringAiChatProperties properties) {
+            StringRedisTemplate redisTemplate = redisTemplates.getIfAvailable();
+            if (redisTemplate == null) {
+                throw new IllegalStateException("spring.ai.chat.rate-limit.store=redis 需要配置Redis连接");
+            }
+            return new RedisRateLimiter(redisTemplate, properties.getRateLimit().getRedisKeyPrefix());
+        }
+    }
+
+    /**
+     * Redis对话记忆，多节点共享会话，近端缓存通过发布订阅失效
+     */
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.data.redis.core.StringRedisTemplate")
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnProperty(prefix = "spring.ai.chat.memory", name = "store", havingValue = "redis")
+    static class RedisChatMemoryConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(ChatMemory.class)
+        public RedisChatMemory redisChatMemory(ObjectProvider<StringRedisTemplate> redisTemplates,
+                                               SpringAiChatProperties properties) {
+            StringRedisTemplate redisTemplate = redisTemplates.getIfAvailable();
+            if (redisTemplate == null) {
+                throw new IllegalStateException("spring.ai.chat.memory.store=redis 需要配置Redis连接");
+            }
+            return new RedisChatMemory(redisTemplate, properties.getMemory());
+        }
+
+        @Bean
+        @ConditionalOnBean(RedisChatMemory.class)
+        public RedisMessageListenerContainer redisChatMemoryListenerContainer(StringRedisTemplate redisTemplate,
+                                                                              RedisChatMemory redisChatMemory) {
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(redisTemplate.getRequiredConnectionFactory());
+            container.addMessageListener(redisChatMemory, new ChannelTopic(redisChatMemory.getChannel()));
+            return container;
+        }
+    }
+
+    /**
+     * 流式响应取消统计（取消的流数量、估算节省的token数）
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public StreamCancellationMetrics streamCancellationMetrics() {
+        return new StreamCancellationMetrics();
+    }
+
+    /**
+     * 配置中心刷新后（配置属性已重新绑定）重建模型路由表
+     */
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent")
+    static class RoutingTableRefreshConfiguration {
+
+        @Bean
+        public ApplicationListener<RefreshScopeRefreshedEvent> chatModelRoutingTableRefresher(
+                ObjectProvider<ChatModelFactory> chatModelFactories) {
+            return event -> chatModelFactories.forEach(ChatModelFactory::refresh);
+        }
     }
 }
\ No newline at end of file
@@ -1,6 +1,11 @@
 package com.randb.springaichatstarter.autoconfigure;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 /**
 * @Description: 
@@ -29,11 +34,64 @@ public class SpringAiChatProperties {
      */
     private ControllerProperties controller = new ControllerProperties();
     
+    /**
+     * 同步响应缓存配置
+     */
+    private CacheProperties cache = new CacheProperties();
+
+    /**
+     * 在途请求合并配置
+     */
+    private SingleFlightProperties singleFlight = new SingleFlightProperties();
+
+    /**
+     * 按模型的自适应并发限制配置
+     */
+    private LimiterProperties limiter = new LimiterProperties();
+
+    /**
+     * 按用户的速率限制配置
+     */
+    private RateLimitProperties rateLimit = new RateLimitProperties();
+
+    /**
+     * 对冲请求配置
+     */
+    private HedgingProperties hedging = new HedgingProperties();
+
+    /**
+     * 按模型后端的断路器配置
+     */
+    private CircuitBreakerProperties circuitBreaker = new CircuitBreakerProperties();
+
+    /**
+     * 可续写重试配置
+     */
+    private RetryProperties retry = new RetryProperties();
+
+    /**
+     * 对话记忆配置
+     */
+    private MemoryProperties memory = new MemoryProperties();
+
     /**
      * 默认模型
      */
     private String defaultModel = "qwen";
 
+    /**
+     * 阻塞调用（同步问答、MQ消费、等待MQ回复）的执行模式
+     */
+    private ExecutionMode execution = ExecutionMode.PLATFORM;
+
+    /**
+     * 模型别名，别名 -> 已注册的模型名称，大小写不敏感
+     */
+    private Map<String, String> modelAliases = new LinkedHashMap<>(Map.of(
+            "qwen-turbo", "qwen",
+            "qwen-plus", "qwen",
+            "qwen-max", "qwen"));
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -66,6 +124,70 @@ public class SpringAiChatProperties {
         this.controller = controller;
     }
 
+    public CacheProperties getCache() {
+        return cache;
+    }
+
+    public void setCache(CacheProperties cache) {
+        this.cache = cache;
+    }
+
+    public SingleFlightProperties getSingleFlight() {
+        return singleFlight;
+    }
+
+    public void setSingleFlight(SingleFlightProperties singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    public LimiterProperties getLimiter() {
+        return limiter;
+    }
+
+    public void setLimiter(LimiterProperties limiter) {
+        this.limiter = limiter;
+    }
+
+    public RateLimitProperties getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(RateLimitProperties rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public HedgingProperties getHedging() {
+        return hedging;
+    }
+
+    public void setHedging(HedgingProperties hedging) {
+        this.hedging = hedging;
+    }
+
+    public CircuitBreakerProperties getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreakerProperties circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public RetryProperties getRetry() {
+        return retry;
+    }
+
+    public void setRetry(RetryProperties retry) {
+        this.retry = retry;
+    }
+
+    public MemoryProperties getMemory() {
+        return memory;
+    }
+
+    public void setMemory(MemoryProperties memory) {
+        this.memory = memory;
+    }
+
     public String getDefaultModel() {
         return defaultModel;
     }
@@ -74,6 +196,22 @@ public class SpringAiChatProperties {
         this.defaultModel = defaultModel;
     }
 
+    public ExecutionMode getExecution() {
+        return execution;
+    }
+
+    public void setExecution(ExecutionMode execution) {
+        this.execution = execution;
+    }
+
+    public Map<String, String> getModelAliases() {
+        return modelAliases;
+    }
+
+    public void setModelAliases(Map<String, String> modelAliases) {
+        this.modelAliases = modelAliases;
+    }
+
     public static class WebSocketProperties {
         /**
          * 是否启用WebSocket
@@ -85,6 +223,36 @@ public class SpringAiChatProperties {
          */
         private String path = "/api/chat/ws";
 
+        /**
+         * 流式片段合并策略
+         */
+        private StreamCoalesceProperties coalesce = new StreamCoalesceProperties();
+
+        /**
+         * 每个会话的发送队列
+         */
+        private OutboundProperties outbound = new OutboundProperties();
+
+        /**
+         * 单条文本消息的缓冲区大小，超过时容器关闭会话
+         */
+        private DataSize maxTextMessageBufferSize = DataSize.ofKilobytes(64);
+
+        /**
+         * 单条二进制消息的缓冲区大小
+         */
+        private DataSize maxBinaryMessageBufferSize = DataSize.ofKilobytes(64);
+
+        /**
+         * 会话空闲超时
+         */
+        private Duration maxSessionIdleTimeout = Duration.ofSeconds(60);
+
+        /**
+         * 客户端请求时是否协商permessage-deflate压缩（按消息压缩，节省带宽，占用CPU和每个会话的压缩窗口内存）
+         */
+        private boolean perMessageDeflate = true;
+
         public boolean isEnabled() {
             return enabled;
         }
@@ -100,6 +268,278 @@ public class SpringAiChatProperties {
         public void setPath(String path) {
             this.path = path;
         }
+
+        public StreamCoalesceProperties getCoalesce() {
+            return coalesce;
+        }
+
+        public void setCoalesce(StreamCoalesceProperties coalesce) {
+            this.coalesce = coalesce;
+        }
+
+        public OutboundProperties getOutbound() {
+            return outbound;
+        }
+
+        public void setOutbound(OutboundProperties outbound) {
+            this.outbound = outbound;
+        }
+
+        public DataSize getMaxTextMessageBufferSize() {
+            return maxTextMessageBufferSize;
+        }
+
+        public void setMaxTextMessageBufferSize(DataSize maxTextMessageBufferSize) {
+            this.maxTextMessageBufferSize = maxTextMessageBufferSize;
+        }
+
+        public DataSize getMaxBinaryMessageBufferSize() {
+            return maxBinaryMessageBufferSize;
+        }
+
+        public void setMaxBinaryMessageBufferSize(DataSize maxBinaryMessageBufferSize) {
+            this.maxBinaryMessageBufferSize = maxBinaryMessageBufferSize;
+        }
+
+        public Duration getMaxSessionIdleTimeout() {
+            return maxSessionIdleTimeout;
+        }
+
+        public void setMaxSessionIdleTimeout(Duration maxSessionIdleTimeout) {
+            this.maxSessionIdleTimeout = maxSessionIdleTimeout;
+        }
+
+        public boolean isPerMessageDeflate() {
+            return perMessageDeflate;
+        }
+
+        public void setPerMessageDeflate(boolean perMessageDeflate) {
+            this.perMessageDeflate = perMessageDeflate;
+        }
+    }
+
+    public static class OutboundProperties {
+        /**
+         * 单次发送的最长时间，超过后再有消息入队时关闭会话
+         */
+        private Duration sendTimeLimit = Duration.ofSeconds(10);
+
+        /**
+         * 发送队列中待发送消息的最大总大小
+         */
+        private DataSize bufferSizeLimit = DataSize.ofKilobytes(512);
+
+        /**
+         * 发送队列中待发送消息的最大条数
+         */
+        private int queueCapacity = 1024;
+
+        /**
+         * 队列溢出时的处理策略
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.COALESCE;
+
+        public Duration getSendTimeLimit() {
+            return sendTimeLimit;
+        }
+
+        public void setSendTimeLimit(Duration sendTimeLimit) {
+            this.sendTimeLimit = sendTimeLimit;
+        }
+
+        public DataSize getBufferSizeLimit() {
+            return bufferSizeLimit;
+        }
+
+        public void setBufferSizeLimit(DataSize bufferSizeLimit) {
+            this.bufferSizeLimit = bufferSizeLimit;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+    }
+
+    /**
+     * 阻塞调用执行模式
+     */
+    public enum ExecutionMode {
+        /**
+         * 使用Tomcat、RabbitMQ默认的平台线程池
+         */
+        PLATFORM,
+        /**
+         * 使用虚拟线程（需要Java 21及以上）
+         */
+        VIRTUAL_THREADS
+    }
+
+    /**
+     * 发送队列溢出策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃最早排队的流式片段（控制消息和结束消息不会被丢弃）
+         */
+        DROP_OLDEST,
+        /**
+         * 把同一个流中连续排队的片段合并成一条消息
+         */
+        COALESCE,
+        /**
+         * 直接关闭会话
+         */
+        CLOSE
+    }
+
+    /**
+     * 速率限制令牌桶存储
+     */
+    public enum RateLimitStore {
+        /**
+         * 单节点内存（无锁）
+         */
+        LOCAL,
+        /**
+         * Redis（Lua脚本原子更新，集群内共享配额）
+         */
+        REDIS
+    }
+
+    /**
+     * 对话记忆存储
+     */
+    public enum MemoryStore {
+        /**
+         * 单节点内存（紧凑字节存储）
+         */
+        LOCAL,
+        /**
+         * Redis（多节点共享会话，本地近端缓存）
+         */
+        REDIS,
+        /**
+         * 本地文件（内存映射的追加日志，重启后保留）
+         */
+        FILE
+    }
+
+    /**
+     * 流式回复被取消时本轮问答的处理方式
+     */
+    public enum PartialReply {
+        /**
+         * 不保存本轮问答
+         */
+        SKIP,
+        /**
+         * 保存已输出的部分，末尾加上中断标记
+         */
+        MARK
+    }
+
+    /**
+     * MQ消息体的编码格式，通过消息的content-type协商
+     */
+    public enum PayloadFormat {
+        /**
+         * JSON（application/json）
+         */
+        JSON,
+        /**
+         * Smile二进制JSON（application/x-jackson-smile），需要jackson-dataformat-smile
+         */
+        SMILE,
+        /**
+         * CBOR（application/cbor），需要jackson-dataformat-cbor
+         */
+        CBOR,
+        /**
+         * 按ChatRequest/ChatResponse固定字段顺序的紧凑二进制（application/x-chat-binary）
+         */
+        BINARY
+    }
+
+    /**
+     * MQ消息体的压缩算法，写入消息的content-encoding
+     */
+    public enum PayloadCompression {
+        /**
+         * 不压缩
+         */
+        NONE,
+        /**
+         * gzip
+         */
+        GZIP,
+        /**
+         * zlib格式的deflate
+         */
+        DEFLATE,
+        /**
+         * LZ4块压缩，需要aircompressor
+         */
+        LZ4,
+        /**
+         * Zstandard，需要aircompressor
+         */
+        ZSTD
+    }
+
+    /**
+     * MQ消息体压缩
+     */
+    public static class CompressionProperties {
+        /**
+         * 发送时使用的压缩算法；接收时按消息的content-encoding解压，与这里的配置无关
+         */
+        private PayloadCompression algorithm = PayloadCompression.NONE;
+
+        /**
+         * 编码后的消息体达到该大小才压缩，压缩后没有变小时按原样发送
+         */
+        private DataSize threshold = DataSize.ofKilobytes(4);
+
+        /**
+         * 解压后消息体的大小上限，超过时按无法解析的消息处理
+         */
+        private DataSize maxDecompressedSize = DataSize.ofMegabytes(16);
+
+        public PayloadCompression getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(PayloadCompression algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public DataSize getThreshold() {
+            return threshold;
+        }
+
+        public void setThreshold(DataSize threshold) {
+            this.threshold = threshold;
+        }
+
+        public DataSize getMaxDecompressedSize() {
+            return maxDecompressedSize;
+        }
+
+        public void setMaxDecompressedSize(DataSize maxDecompressedSize) {
+            this.maxDecompressedSize = maxDecompressedSize;
+        }
     }
     
     public static class RabbitMQProperties {
@@ -133,21 +573,87 @@ public class SpringAiChatProperties {
          */
         private String replyRoutingKey = "chat.reply";
 
-        public boolean isEnabled() {
-            return enabled;
-        }
+        /**
+         * 每个消费者未确认消息的上限（basic.qos），应不小于maxInFlight
+         */
+        private int prefetch = 32;
 
-        public void setEnabled(boolean enabled) {
-            this.enabled = enabled;
-        }
+        /**
+         * 每个消费者同时处理中的请求上限，达到上限时消费者线程等待有请求完成
+         */
+        private int maxInFlight = 16;
 
-        public String getExchange() {
-            return exchange;
-        }
+        /**
+         * 处理单个请求（含流式回复的全部帧）的最长时间，超时后取消模型调用、回复error帧，
+         * 拒绝请求消息（不重新入队，配置了死信交换机时进入死信队列）并释放处理许可
+         */
+        private Duration requestTimeout = Duration.ofMinutes(5);
 
-        public void setExchange(String exchange) {
-            this.exchange = exchange;
-        }
+        /**
+         * 初始消费者数量
+         */
+        private int concurrency = 1;
+
+        /**
+         * 消费者数量上限，消息积压时按需增加
+         */
+        private int maxConcurrency = 4;
+
+        /**
+         * 流式请求（stream=true）发布到回复队列前的片段合并
+         */
+        private StreamCoalesceProperties coalesce = new StreamCoalesceProperties();
+
+        /**
+         * 是否在本服务监听回复队列（发送请求并等待回复的一方开启；只处理请求的服务开启会与上游争抢回复）
+         */
+        private boolean replyListenerEnabled = false;
+
+        /**
+         * 流式回复多久没有新帧时放弃重排并以超时结束订阅
+         */
+        private Duration streamIdleTimeout = Duration.ofMinutes(2);
+
+        /**
+         * 到达时没有等待方的回复暂存多久（等待方稍后注册时仍能取到），过期后丢弃
+         */
+        private Duration replyOrphanTtl = Duration.ofMinutes(1);
+
+        /**
+         * 回复超时时间轮的刻度，超时和过期的精度不高于一个刻度
+         */
+        private Duration replyTimerTick = Duration.ofMillis(100);
+
+        /**
+         * 回复超时时间轮的槽数
+         */
+        private int replyTimerWheelSize = 512;
+
+        /**
+         * 发送请求使用的消息体编码；处理请求的一方按请求的content-type解码，并用同一格式回复
+         */
+        private PayloadFormat payloadFormat = PayloadFormat.JSON;
+
+        /**
+         * 较大消息体的压缩
+         */
+        private CompressionProperties compression = new CompressionProperties();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getExchange() {
+            return exchange;
+        }
+
+        public void setExchange(String exchange) {
+            this.exchange = exchange;
+        }
 
         public String getQueue() {
             return queue;
@@ -180,6 +686,110 @@ public class SpringAiChatProperties {
         public void setReplyRoutingKey(String replyRoutingKey) {
             this.replyRoutingKey = replyRoutingKey;
         }
+
+        public int getPrefetch() {
+            return prefetch;
+        }
+
+        public void setPrefetch(int prefetch) {
+            this.prefetch = prefetch;
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        public Duration getRequestTimeout() {
+            return requestTimeout;
+        }
+
+        public void setRequestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public StreamCoalesceProperties getCoalesce() {
+            return coalesce;
+        }
+
+        public void setCoalesce(StreamCoalesceProperties coalesce) {
+            this.coalesce = coalesce;
+        }
+
+        public boolean isReplyListenerEnabled() {
+            return replyListenerEnabled;
+        }
+
+        public void setReplyListenerEnabled(boolean replyListenerEnabled) {
+            this.replyListenerEnabled = replyListenerEnabled;
+        }
+
+        public Duration getStreamIdleTimeout() {
+            return streamIdleTimeout;
+        }
+
+        public void setStreamIdleTimeout(Duration streamIdleTimeout) {
+            this.streamIdleTimeout = streamIdleTimeout;
+        }
+
+        public Duration getReplyOrphanTtl() {
+            return replyOrphanTtl;
+        }
+
+        public void setReplyOrphanTtl(Duration replyOrphanTtl) {
+            this.replyOrphanTtl = replyOrphanTtl;
+        }
+
+        public Duration getReplyTimerTick() {
+            return replyTimerTick;
+        }
+
+        public void setReplyTimerTick(Duration replyTimerTick) {
+            this.replyTimerTick = replyTimerTick;
+        }
+
+        public int getReplyTimerWheelSize() {
+            return replyTimerWheelSize;
+        }
+
+        public void setReplyTimerWheelSize(int replyTimerWheelSize) {
+            this.replyTimerWheelSize = replyTimerWheelSize;
+        }
+
+        public PayloadFormat getPayloadFormat() {
+            return payloadFormat;
+        }
+
+        public void setPayloadFormat(PayloadFormat payloadFormat) {
+            this.payloadFormat = payloadFormat;
+        }
+
+        public CompressionProperties getCompression() {
+            return compression;
+        }
+
+        public void setCompression(CompressionProperties compression) {
+            this.compression = compression;
+        }
     }
     
     public static class ControllerProperties {
@@ -193,6 +803,11 @@ public class SpringAiChatProperties {
          */
         private String basePath = "/api/chat";
 
+        /**
+         * SSE流式片段合并策略
+         */
+        private StreamCoalesceProperties coalesce = new StreamCoalesceProperties();
+
         public boolean isEnabled() {
             return enabled;
         }
@@ -208,5 +823,1036 @@ public class SpringAiChatProperties {
         public void setBasePath(String basePath) {
             this.basePath = basePath;
         }
+
+        public StreamCoalesceProperties getCoalesce() {
+            return coalesce;
+        }
+
+        public void setCoalesce(StreamCoalesceProperties coalesce) {
+            this.coalesce = coalesce;
+        }
+    }
+
+    public static class CacheProperties {
+        /**
+         * 是否启用同步响应缓存（精确匹配）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 缓存总容量（按响应内容估算的字节数），超出后按W-TinyLFU淘汰
+         */
+        private DataSize maxWeight = DataSize.ofMegabytes(64);
+
+        /**
+         * 单条响应的最大大小，超过则不进入缓存
+         */
+        private DataSize maxEntrySize = DataSize.ofKilobytes(64);
+
+        /**
+         * 缓存条目的存活时间（写入后计时）
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public DataSize getMaxWeight() {
+            return maxWeight;
+        }
+
+        public void setMaxWeight(DataSize maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        public DataSize getMaxEntrySize() {
+            return maxEntrySize;
+        }
+
+        public void setMaxEntrySize(DataSize maxEntrySize) {
+            this.maxEntrySize = maxEntrySize;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    public static class SingleFlightProperties {
+        /**
+         * 是否合并相同的在途请求（相同模型、相同提示词、不带会话ID）
+         */
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    public static class LimiterProperties {
+        /**
+         * 是否按模型启用自适应并发限制
+         */
+        private boolean enabled = false;
+
+        /**
+         * 初始并发上限
+         */
+        private int initialLimit = 20;
+
+        /**
+         * 并发上限的下界
+         */
+        private int minLimit = 1;
+
+        /**
+         * 并发上限的上界
+         */
+        private int maxLimit = 200;
+
+        /**
+         * 超过上限时等待队列的长度，0表示不排队直接拒绝
+         */
+        private int maxQueueSize = 50;
+
+        /**
+         * 在等待队列中的最长等待时间，超时后拒绝
+         */
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * 延迟容忍系数，当前延迟超过长期基线的该倍数时开始收缩并发上限
+         */
+        private double rttTolerance = 1.5;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public int getMaxQueueSize() {
+            return maxQueueSize;
+        }
+
+        public void setMaxQueueSize(int maxQueueSize) {
+            this.maxQueueSize = maxQueueSize;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        public double getRttTolerance() {
+            return rttTolerance;
+        }
+
+        public void setRttTolerance(double rttTolerance) {
+            this.rttTolerance = rttTolerance;
+        }
+    }
+
+    public static class RateLimitProperties {
+        /**
+         * 是否按userId限制请求速率（SSE、同步接口、WebSocket、MQ共用）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 令牌桶存储：local为单节点内存，redis为集群共享
+         */
+        private RateLimitStore store = RateLimitStore.LOCAL;
+
+        /**
+         * 未在users中配置的用户使用的档位
+         */
+        private String defaultTier = "default";
+
+        /**
+         * 档位名称 -> 令牌桶参数
+         */
+        private Map<String, RateLimitTier> tiers = new LinkedHashMap<>(Map.of("default", new RateLimitTier()));
+
+        /**
+         * userId -> 档位名称
+         */
+        private Map<String, String> users = new LinkedHashMap<>();
+
+        /**
+         * 本地存储最多跟踪的用户数，超出后淘汰最久未访问的令牌桶
+         */
+        private long maxTrackedUsers = 100_000;
+
+        /**
+         * Redis存储的键前缀
+         */
+        private String redisKeyPrefix = "spring-ai-chat:rate-limit:";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public RateLimitStore getStore() {
+            return store;
+        }
+
+        public void setStore(RateLimitStore store) {
+            this.store = store;
+        }
+
+        public String getDefaultTier() {
+            return defaultTier;
+        }
+
+        public void setDefaultTier(String defaultTier) {
+            this.defaultTier = defaultTier;
+        }
+
+        public Map<String, RateLimitTier> getTiers() {
+            return tiers;
+        }
+
+        public void setTiers(Map<String, RateLimitTier> tiers) {
+            this.tiers = tiers;
+        }
+
+        public Map<String, String> getUsers() {
+            return users;
+        }
+
+        public void setUsers(Map<String, String> users) {
+            this.users = users;
+        }
+
+        public long getMaxTrackedUsers() {
+            return maxTrackedUsers;
+        }
+
+        public void setMaxTrackedUsers(long maxTrackedUsers) {
+            this.maxTrackedUsers = maxTrackedUsers;
+        }
+
+        public String getRedisKeyPrefix() {
+            return redisKeyPrefix;
+        }
+
+        public void setRedisKeyPrefix(String redisKeyPrefix) {
+            this.redisKeyPrefix = redisKeyPrefix;
+        }
+    }
+
+    public static class RateLimitTier {
+        /**
+         * 令牌桶容量，即允许的突发请求数
+         */
+        private int capacity = 10;
+
+        /**
+         * 每秒补充的令牌数，即长期平均速率
+         */
+        private double refillPerSecond = 1.0;
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public double getRefillPerSecond() {
+            return refillPerSecond;
+        }
+
+        public void setRefillPerSecond(double refillPerSecond) {
+            this.refillPerSecond = refillPerSecond;
+        }
+    }
+
+    public static class HedgingProperties {
+        /**
+         * 是否启用对冲请求
+         */
+        private boolean enabled = false;
+
+        /**
+         * 固定的对冲延迟，不设置时使用观测到的首个响应延迟p95
+         */
+        private Duration delay;
+
+        /**
+         * 样本不足时使用的对冲延迟
+         */
+        private Duration initialDelay = Duration.ofSeconds(3);
+
+        /**
+         * 按p95计算时对冲延迟的下限
+         */
+        private Duration minDelay = Duration.ofMillis(500);
+
+        /**
+         * 对冲调用占请求数的最大比例，每个请求累积该比例的预算
+         */
+        private double maxHedgeRatio = 0.1;
+
+        /**
+         * 预算上限（次数），限制短时间内集中发起的对冲
+         */
+        private int budgetCapacity = 10;
+
+        /**
+         * 模型名称 -> 备用模型名称，未配置时备用调用发往同一模型
+         */
+        private Map<String, String> backups = new LinkedHashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getDelay() {
+            return delay;
+        }
+
+        public void setDelay(Duration delay) {
+            this.delay = delay;
+        }
+
+        public Duration getInitialDelay() {
+            return initialDelay;
+        }
+
+        public void setInitialDelay(Duration initialDelay) {
+            this.initialDelay = initialDelay;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+
+        public double getMaxHedgeRatio() {
+            return maxHedgeRatio;
+        }
+
+        public void setMaxHedgeRatio(double maxHedgeRatio) {
+            this.maxHedgeRatio = maxHedgeRatio;
+        }
+
+        public int getBudgetCapacity() {
+            return budgetCapacity;
+        }
+
+        public void setBudgetCapacity(int budgetCapacity) {
+            this.budgetCapacity = budgetCapacity;
+        }
+
+        public Map<String, String> getBackups() {
+            return backups;
+        }
+
+        public void setBackups(Map<String, String> backups) {
+            this.backups = backups;
+        }
+    }
+
+    public static class CircuitBreakerProperties {
+        /**
+         * 是否为每个模型后端启用断路器
+         */
+        private boolean enabled = false;
+
+        /**
+         * 滑动窗口大小（最近的调用次数）
+         */
+        private int slidingWindowSize = 50;
+
+        /**
+         * 窗口内至少有多少次调用才计算失败率
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * 失败率阈值（百分比），达到后打开断路器
+         */
+        private float failureRateThreshold = 50;
+
+        /**
+         * 超过该耗时的调用计为慢调用（流式按首个片段计时）
+         */
+        private Duration slowCallDuration = Duration.ofSeconds(15);
+
+        /**
+         * 慢调用率阈值（百分比），达到后打开断路器
+         */
+        private float slowCallRateThreshold = 80;
+
+        /**
+         * 打开状态持续时间，之后进入半开状态
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * 半开状态放行的探测调用数
+         */
+        private int halfOpenCalls = 3;
+
+        /**
+         * 模型名称 -> 断路器打开时使用的备用模型，未配置时返回error响应
+         */
+        private Map<String, String> fallbacks = new LinkedHashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSlidingWindowSize() {
+            return slidingWindowSize;
+        }
+
+        public void setSlidingWindowSize(int slidingWindowSize) {
+            this.slidingWindowSize = slidingWindowSize;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public float getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public Duration getSlowCallDuration() {
+            return slowCallDuration;
+        }
+
+        public void setSlowCallDuration(Duration slowCallDuration) {
+            this.slowCallDuration = slowCallDuration;
+        }
+
+        public float getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        public void setSlowCallRateThreshold(float slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        public int getHalfOpenCalls() {
+            return halfOpenCalls;
+        }
+
+        public void setHalfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+        }
+
+        public Map<String, String> getFallbacks() {
+            return fallbacks;
+        }
+
+        public void setFallbacks(Map<String, String> fallbacks) {
+            this.fallbacks = fallbacks;
+        }
+    }
+
+    public static class RetryProperties {
+        /**
+         * 是否启用重试（流式调用中断时保留已输出内容续写）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 单个请求的最大重试次数
+         */
+        private int maxRetries = 2;
+
+        /**
+         * 首次重试的退避上限，之后每次翻倍，实际等待时间在0到上限之间随机
+         */
+        private Duration initialBackoff = Duration.ofMillis(200);
+
+        /**
+         * 退避上限的最大值
+         */
+        private Duration maxBackoff = Duration.ofSeconds(2);
+
+        /**
+         * 重试占请求数的最大比例，每个请求累积该比例的预算
+         */
+        private double maxRetryRatio = 0.2;
+
+        /**
+         * 预算上限（次数）
+         */
+        private int budgetCapacity = 20;
+
+        /**
+         * 续写时比较重复内容的最大字符数
+         */
+        private int overlapWindow = 200;
+
+        /**
+         * 续写请求中已输出内容之前的说明
+         */
+        private String continuationPrefix = "以下是你之前已经输出的部分回答，因连接中断没有完成：";
+
+        /**
+         * 续写请求末尾的续写指令
+         */
+        private String continuationInstruction = "请从中断的地方直接继续输出剩余内容，不要重复已经输出的部分，也不要添加任何说明。";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        public double getMaxRetryRatio() {
+            return maxRetryRatio;
+        }
+
+        public void setMaxRetryRatio(double maxRetryRatio) {
+            this.maxRetryRatio = maxRetryRatio;
+        }
+
+        public int getBudgetCapacity() {
+            return budgetCapacity;
+        }
+
+        public void setBudgetCapacity(int budgetCapacity) {
+            this.budgetCapacity = budgetCapacity;
+        }
+
+        public int getOverlapWindow() {
+            return overlapWindow;
+        }
+
+        public void setOverlapWindow(int overlapWindow) {
+            this.overlapWindow = overlapWindow;
+        }
+
+        public String getContinuationPrefix() {
+            return continuationPrefix;
+        }
+
+        public void setContinuationPrefix(String continuationPrefix) {
+            this.continuationPrefix = continuationPrefix;
+        }
+
+        public String getContinuationInstruction() {
+            return continuationInstruction;
+        }
+
+        public void setContinuationInstruction(String continuationInstruction) {
+            this.continuationInstruction = continuationInstruction;
+        }
+    }
+
+    public static class MemoryProperties {
+        /**
+         * 是否注册对话记忆（带sessionId的请求读写历史消息）
+         */
+        private boolean enabled = true;
+
+        /**
+         * 单个会话保留的最大消息数
+         */
+        private int maxMessages = 20;
+
+        /**
+         * 所有会话的总容量（按消息UTF-8字节数估算），超出后按W-TinyLFU淘汰不活跃的会话
+         */
+        private DataSize maxWeight = DataSize.ofMegabytes(256);
+
+        /**
+         * 会话空闲多久后过期，不设置时只按容量淘汰
+         */
+        private Duration idleTimeout;
+
+        /**
+         * 每次请求带上的历史消息token预算（估算值），超出时丢弃较早的消息；0表示不限制
+         */
+        private int contextTokens = 3000;
+
+        /**
+         * 按模型单独设置的历史消息token预算，例如 qwen-max: 8000
+         */
+        private Map<String, Integer> modelContextTokens = new LinkedHashMap<>();
+
+        /**
+         * 存储方式
+         */
+        private MemoryStore store = MemoryStore.LOCAL;
+
+        /**
+         * 流式回复被取消（客户端断开等）时本轮问答的处理方式；出错的流式回复不保存
+         */
+        private PartialReply partialReply = PartialReply.SKIP;
+
+        /**
+         * partialReply为mark时追加在已输出内容后的中断标记
+         */
+        private String partialReplyMarker = "\n\n[回复被中断]";
+
+        /**
+         * Redis键前缀
+         */
+        private String redisKeyPrefix = "spring-ai-chat:memory:";
+
+        /**
+         * Redis中会话的过期时间，每次写入后重新计时
+         */
+        private Duration redisTtl = Duration.ofDays(1);
+
+        /**
+         * 会话更新时广播失效通知的频道
+         */
+        private String invalidationChannel = "spring-ai-chat:memory:invalidate";
+
+        /**
+         * 每个节点近端缓存的最大会话数，0表示不使用近端缓存
+         */
+        private int nearCacheSize = 10000;
+
+        /**
+         * 近端缓存的最长存活时间，失效通知丢失时的兜底
+         */
+        private Duration nearCacheTtl = Duration.ofSeconds(30);
+
+        /**
+         * 文件存储的日志目录
+         */
+        private String logDirectory = "data/chat-memory";
+
+        /**
+         * 日志段文件大小，写满后切换到新段
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * 刷盘间隔（写入即进入页缓存，进程崩溃不丢数据；刷盘间隔决定操作系统崩溃时最多丢失的范围）
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        /**
+         * 后台压缩的检查间隔
+         */
+        private Duration compactionInterval = Duration.ofMinutes(1);
+
+        /**
+         * 旧段中仍被引用的字节比例低于该值时压缩
+         */
+        private double compactionThreshold = 0.5;
+
+        /**
+         * 长会话摘要压缩
+         */
+        private SummaryProperties summary = new SummaryProperties();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxMessages() {
+            return maxMessages;
+        }
+
+        public void setMaxMessages(int maxMessages) {
+            this.maxMessages = maxMessages;
+        }
+
+        public DataSize getMaxWeight() {
+            return maxWeight;
+        }
+
+        public void setMaxWeight(DataSize maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public int getContextTokens() {
+            return contextTokens;
+        }
+
+        public void setContextTokens(int contextTokens) {
+            this.contextTokens = contextTokens;
+        }
+
+        public Map<String, Integer> getModelContextTokens() {
+            return modelContextTokens;
+        }
+
+        public void setModelContextTokens(Map<String, Integer> modelContextTokens) {
+            this.modelContextTokens = modelContextTokens;
+        }
+
+        public MemoryStore getStore() {
+            return store;
+        }
+
+        public void setStore(MemoryStore store) {
+            this.store = store;
+        }
+
+        public PartialReply getPartialReply() {
+            return partialReply;
+        }
+
+        public void setPartialReply(PartialReply partialReply) {
+            this.partialReply = partialReply;
+        }
+
+        public String getPartialReplyMarker() {
+            return partialReplyMarker;
+        }
+
+        public void setPartialReplyMarker(String partialReplyMarker) {
+            this.partialReplyMarker = partialReplyMarker;
+        }
+
+        public String getRedisKeyPrefix() {
+            return redisKeyPrefix;
+        }
+
+        public void setRedisKeyPrefix(String redisKeyPrefix) {
+            this.redisKeyPrefix = redisKeyPrefix;
+        }
+
+        public Duration getRedisTtl() {
+            return redisTtl;
+        }
+
+        public void setRedisTtl(Duration redisTtl) {
+            this.redisTtl = redisTtl;
+        }
+
+        public String getInvalidationChannel() {
+            return invalidationChannel;
+        }
+
+        public void setInvalidationChannel(String invalidationChannel) {
+            this.invalidationChannel = invalidationChannel;
+        }
+
+        public int getNearCacheSize() {
+            return nearCacheSize;
+        }
+
+        public void setNearCacheSize(int nearCacheSize) {
+            this.nearCacheSize = nearCacheSize;
+        }
+
+        public Duration getNearCacheTtl() {
+            return nearCacheTtl;
+        }
+
+        public void setNearCacheTtl(Duration nearCacheTtl) {
+            this.nearCacheTtl = nearCacheTtl;
+        }
+
+        public String getLogDirectory() {
+            return logDirectory;
+        }
+
+        public void setLogDirectory(String logDirectory) {
+            this.logDirectory = logDirectory;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public Duration getCompactionInterval() {
+            return compactionInterval;
+        }
+
+        public void setCompactionInterval(Duration compactionInterval) {
+            this.compactionInterval = compactionInterval;
+        }
+
+        public double getCompactionThreshold() {
+            return compactionThreshold;
+        }
+
+        public void setCompactionThreshold(double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+        }
+
+        public SummaryProperties getSummary() {
+            return summary;
+        }
+
+        public void setSummary(SummaryProperties summary) {
+            this.summary = summary;
+        }
+    }
+
+    public static class SummaryProperties {
+        /**
+         * 是否在后台把长会话中较早的消息压缩为摘要
+         */
+        private boolean enabled = false;
+
+        /**
+         * 会话历史的估算token数超过该值时触发压缩
+         */
+        private int triggerTokens = 2000;
+
+        /**
+         * 压缩后原样保留的最近消息的token预算，更早的消息并入摘要
+         */
+        private int retainTokens = 600;
+
+        /**
+         * 会话最后一次写入后等待多久再压缩，期间的多次写入只触发一次
+         */
+        private Duration debounce = Duration.ofSeconds(2);
+
+        /**
+         * 同时执行压缩的最大数量
+         */
+        private int concurrency = 2;
+
+        /**
+         * 等待执行的压缩任务上限，超出时放弃本次压缩（下次写入时再触发）
+         */
+        private int queueCapacity = 100;
+
+        /**
+         * 生成摘要的指令
+         */
+        private String instruction = "请把下面的对话压缩成一段简洁的摘要，保留用户的身份、偏好、已确认的事实和尚未解决的问题，不要添加对话中没有的内容。";
+
+        /**
+         * 摘要在系统消息中的前缀，也用于识别已有的摘要
+         */
+        private String prefix = "【之前对话的摘要】";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTriggerTokens() {
+            return triggerTokens;
+        }
+
+        public void setTriggerTokens(int triggerTokens) {
+            this.triggerTokens = triggerTokens;
+        }
+
+        public int getRetainTokens() {
+            return retainTokens;
+        }
+
+        public void setRetainTokens(int retainTokens) {
+            this.retainTokens = retainTokens;
+        }
+
+        public Duration getDebounce() {
+            return debounce;
+        }
+
+        public void setDebounce(Duration debounce) {
+            this.debounce = debounce;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public String getInstruction() {
+            return instruction;
+        }
+
+        public void setInstruction(String instruction) {
+            this.instruction = instruction;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    public static class StreamCoalesceProperties {
+        /**
+         * 是否合并流式片段，第一个片段总是立即发送
+         */
+        private boolean enabled = true;
+
+        /**
+         * 合并时间窗口，从窗口内第一个片段到达开始计时，为0时只按大小合并
+         */
+        private Duration window = Duration.ofMillis(30);
+
+        /**
+         * 合并后单帧内容的最大大小（UTF-8字节），达到后立即发送，为0时只按时间合并
+         */
+        private DataSize maxSize = DataSize.ofKilobytes(4);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package com.randb.springaichatstarter.autoconfigure;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.amqp.rabbit.config.ContainerCustomizer;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 虚拟线程执行模式配置
+ * spring.ai.chat.execution=virtual-threads 时，Tomcat请求线程、MVC异步请求和RabbitMQ监听容器都改用虚拟线程，
+ * 同步问答、MQ消费和等待MQ回复这些阻塞整个模型调用时长的路径不再受平台线程池大小限制。
+ * 需要Java 21及以上，低版本JDK下保持原有线程模型并打印警告。
+ * @Date: 2025-08-27
+ * @Author: randb
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@Conditional(VirtualThreadExecutionConfiguration.OnVirtualThreadExecutionCondition.class)
+public class VirtualThreadExecutionConfiguration {
+
+    @Bean
+    public VirtualThreadTaskExecutor chatVirtualThreadExecutor() {
+        log.info("聊天阻塞调用使用虚拟线程执行");
+        return new VirtualThreadTaskExecutor("chat-vt-");
+    }
+
+    /**
+     * Servlet请求执行器：同步接口在虚拟线程上阻塞等待模型返回
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    static class ServletVirtualThreadConfiguration {
+
+        @Bean
+        @ConditionalOnClass(name = "org.apache.catalina.startup.Tomcat")
+        public TomcatProtocolHandlerCustomizer<ProtocolHandler> chatVirtualThreadProtocolHandlerCustomizer(
+                VirtualThreadTaskExecutor chatVirtualThreadExecutor) {
+            return protocolHandler -> protocolHandler.setExecutor(chatVirtualThreadExecutor);
+        }
+
+        @Bean
+        public WebMvcConfigurer chatVirtualThreadAsyncSupportConfigurer(VirtualThreadTaskExecutor chatVirtualThreadExecutor) {
+            return new WebMvcConfigurer() {
+                @Override
+                public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                    configurer.setTaskExecutor(chatVirtualThreadExecutor);
+                }
+            };
+        }
+    }
+
+    /**
+     * RabbitMQ监听容器：消费者在虚拟线程上同步调用模型
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(SimpleMessageListenerContainer.class)
+    static class RabbitVirtualThreadConfiguration {
+
+        @Bean
+        public ContainerCustomizer<SimpleMessageListenerContainer> chatVirtualThreadListenerContainerCustomizer(
+                VirtualThreadTaskExecutor chatVirtualThreadExecutor) {
+            return container -> container.setTaskExecutor(chatVirtualThreadExecutor);
+        }
+    }
+
+    /**
+     * spring.ai.chat.execution=virtual-threads 且运行在Java 21及以上时匹配
+     */
+    static class OnVirtualThreadExecutionCondition extends SpringBootCondition {
+
+        @Override
+        public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            SpringAiChatProperties.ExecutionMode mode = Binder.get(context.getEnvironment())
+                    .bind("spring.ai.chat.execution", SpringAiChatProperties.ExecutionMode.class)
+                    .orElse(SpringAiChatProperties.ExecutionMode.PLATFORM);
+            if (mode != SpringAiChatProperties.ExecutionMode.VIRTUAL_THREADS) {
+                return ConditionOutcome.noMatch("spring.ai.chat.execution is " + mode);
+            }
+            if (JavaVersion.getJavaVersion().isOlderThan(JavaVersion.TWENTY_ONE)) {
+                log.warn("spring.ai.chat.execution=virtual-threads 需要Java 21及以上，当前为 {}，继续使用平台线程",
+                        JavaVersion.getJavaVersion());
+                return ConditionOutcome.noMatch("virtual threads require Java 21");
+            }
+            return ConditionOutcome.match("spring.ai.chat.execution is virtual-threads");
+        }
+    }
+}
@@ -13,6 +13,9 @@ import org.springframework.web.socket.server.standard.ServletServerContainerFact
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.randb.springaichatstarter.core.ChatModelFactory;
+import com.randb.springaichatstarter.ratelimit.RateLimitGuard;
+import com.randb.springaichatstarter.stream.StreamCancellationMetrics;
+import com.randb.springaichatstarter.websocket.ChatHandshakeHandler;
 import com.randb.springaichatstarter.websocket.ChatWebSocketHandler;
 
 /**
@@ -29,33 +32,44 @@ public class WebSocketConfiguration implements WebSocketConfigurer {
     private final SpringAiChatProperties properties;
     private final ChatModelFactory chatModelFactory;
     private final ObjectMapper objectMapper;
+    private final StreamCancellationMetrics cancellationMetrics;
+    private final RateLimitGuard rateLimitGuard;
 
     public WebSocketConfiguration(SpringAiChatProperties properties, 
                                   ChatModelFactory chatModelFactory,
-                                  ObjectMapper objectMapper) {
+                                  ObjectMapper objectMapper,
+                                  StreamCancellationMetrics cancellationMetrics,
+                                  RateLimitGuard rateLimitGuard) {
         this.properties = properties;
         this.chatModelFactory = chatModelFactory;
         this.objectMapper = objectMapper;
+        this.cancellationMetrics = cancellationMetrics;
+        this.rateLimitGuard = rateLimitGuard;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(chatWebSocketHandler(), properties.getWebsocket().getPath())
+                .setHandshakeHandler(new ChatHandshakeHandler(properties.getWebsocket().isPerMessageDeflate()))
                 .setAllowedOrigins("*");
     }
 
     @Bean(name = "chatWebSocketHandler")
     @ConditionalOnMissingBean(name = "chatWebSocketHandler")
     public WebSocketHandler chatWebSocketHandler() {
-        return new ChatWebSocketHandler(chatModelFactory, objectMapper);
+        return new ChatWebSocketHandler(chatModelFactory, objectMapper, properties, cancellationMetrics, rateLimitGuard);
     }
 
+    /**
+     * 消息缓冲区大小和空闲超时按spring.ai.chat.websocket配置；超过缓冲区大小的消息会导致容器关闭会话
+     */
     @Bean
     public ServletServerContainerFactoryBean createWebSocketContainer() {
+        SpringAiChatProperties.WebSocketProperties websocket = properties.getWebsocket();
         ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
-        container.setMaxTextMessageBufferSize(65536);
-        container.setMaxBinaryMessageBufferSize(65536);
-        container.setMaxSessionIdleTimeout(60000L);
+        container.setMaxTextMessageBufferSize((int) websocket.getMaxTextMessageBufferSize().toBytes());
+        container.setMaxBinaryMessageBufferSize((int) websocket.getMaxBinaryMessageBufferSize().toBytes());
+        container.setMaxSessionIdleTimeout(websocket.getMaxSessionIdleTimeout().toMillis());
         return container;
     }
 } 
\ No newline at end of file
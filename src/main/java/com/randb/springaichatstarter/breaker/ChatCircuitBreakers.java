@@ -0,0 +1,135 @@
+package com.randb.springaichatstarter.breaker;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.ChatServiceDecorator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按模型后端的断路器
+ * 每个模型一个CircuitBreaker，作为最内层的ChatServiceDecorator直接包在模型服务外面，
+ * 重试、对冲等外层装饰器发出的每一次调用都会计入断路器。状态变化通过ApplicationEventPublisher
+ * 发布CircuitBreakerStateChangedEvent，并导出为指标。
+ * @Date: 2025-08-31
+ * @Author: randb
+ */
+@Slf4j
+public class ChatCircuitBreakers implements ChatServiceDecorator, MeterBinder {
+
+    /**
+     * 装饰器顺序，最内层，紧挨模型调用
+     */
+    public static final int ORDER = 100;
+
+    private final SpringAiChatProperties.CircuitBreakerProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreakingChatService> services = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    public ChatCircuitBreakers(SpringAiChatProperties.CircuitBreakerProperties properties,
+                               ApplicationEventPublisher eventPublisher) {
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        log.info("断路器已启用: slidingWindowSize={}, failureRateThreshold={}%, slowCallDuration={}, openDuration={}, fallbacks={}",
+                properties.getSlidingWindowSize(), properties.getFailureRateThreshold(),
+                properties.getSlowCallDuration(), properties.getOpenDuration(), properties.getFallbacks());
+    }
+
+    @Override
+    public ChatService decorate(String model, ChatService delegate) {
+        CircuitBreakingChatService service = new CircuitBreakingChatService(model, delegate, breaker(model), this);
+        services.put(model, service);
+        return service;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * 获取模型的断路器，路由表刷新重新包装时沿用已有的状态
+     */
+    public CircuitBreaker breaker(String model) {
+        return breakers.computeIfAbsent(model, name -> {
+            CircuitBreaker breaker = new CircuitBreaker(name, properties, this::onStateChanged);
+            MeterRegistry current = registry;
+            if (current != null) {
+                register(current, breaker);
+            }
+            return breaker;
+        });
+    }
+
+    public Collection<CircuitBreaker> getBreakers() {
+        return breakers.values();
+    }
+
+    /**
+     * 模型的备用服务，未配置、指向自身或未注册时返回null
+     */
+    CircuitBreakingChatService fallbackFor(String model) {
+        String fallback = properties.getFallbacks().get(model);
+        if (fallback == null) {
+            return null;
+        }
+        String name = fallback.toLowerCase(Locale.ROOT);
+        return name.equals(model) ? null : services.get(name);
+    }
+
+    private void onStateChanged(CircuitBreakerStateChangedEvent event) {
+        if (event.getTo() == CircuitBreaker.State.OPEN) {
+            log.warn("断路器打开，模型 {} 的请求将转到备用模型: {}", event.getModel(),
+                    properties.getFallbacks().getOrDefault(event.getModel(), "无"));
+        } else {
+            log.info("断路器状态变化: 模型 {} {} -> {}", event.getModel(), event.getFrom(), event.getTo());
+        }
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(event);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        breakers.values().forEach(breaker -> register(registry, breaker));
+    }
+
+    private static void register(MeterRegistry registry, CircuitBreaker breaker) {
+        String model = breaker.getModel();
+        Gauge.builder("spring.ai.chat.breaker.state", breaker, b -> b.getState().getCode())
+                .description("断路器状态：0关闭，1打开，2半开")
+                .tag("model", model)
+                .register(registry);
+        Gauge.builder("spring.ai.chat.breaker.failure.rate", breaker, CircuitBreaker::getFailureRate)
+                .description("滑动窗口内的失败率（百分比），调用数不足时为-1")
+                .tag("model", model)
+                .register(registry);
+        Gauge.builder("spring.ai.chat.breaker.slow.call.rate", breaker, CircuitBreaker::getSlowCallRate)
+                .description("滑动窗口内的慢调用率（百分比），调用数不足时为-1")
+                .tag("model", model)
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.breaker.not.permitted", breaker, CircuitBreaker::getNotPermittedCount)
+                .description("断路器打开时被直接拒绝的调用数")
+                .tag("model", model)
+                .register(registry);
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            FunctionCounter.builder("spring.ai.chat.breaker.transitions", breaker, b -> b.getTransitionCount(state))
+                    .description("断路器进入各状态的次数")
+                    .tag("model", model)
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.randb.springaichatstarter.breaker;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 单个模型后端的断路器
+ * 按最近slidingWindowSize次调用的失败率和慢调用率判断：任一比例达到阈值（且调用数不少于minimumCalls）时打开，
+ * 打开期间直接拒绝调用；openDuration之后进入半开状态，放行halfOpenCalls个探测调用，
+ * 探测结果低于阈值则关闭并清空窗口，否则重新打开。
+ * @Date: 2025-08-31
+ * @Author: randb
+ */
+public class CircuitBreaker {
+
+    /**
+     * 断路器状态，code用于指标导出
+     */
+    public enum State {
+        CLOSED(0), OPEN(1), HALF_OPEN(2);
+
+        private final int code;
+
+        State(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String model;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final Consumer<CircuitBreakerStateChangedEvent> listener;
+
+    /** 以下状态都在this锁内读写 */
+    private State state = State.CLOSED;
+    private final byte[] outcomes;
+    private int recorded;
+    private int position;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private int probesPermitted;
+    private int probesCompleted;
+    private int probeFailures;
+    private int probeSlowCalls;
+    private CircuitBreakerStateChangedEvent pendingEvent;
+
+    private final LongAdder notPermitted = new LongAdder();
+    private final LongAdder[] transitions = {new LongAdder(), new LongAdder(), new LongAdder()};
+
+    public CircuitBreaker(String model, SpringAiChatProperties.CircuitBreakerProperties properties,
+                          Consumer<CircuitBreakerStateChangedEvent> listener) {
+        this.model = model;
+        this.windowSize = Math.max(1, properties.getSlidingWindowSize());
+        this.minimumCalls = Math.max(1, Math.min(windowSize, properties.getMinimumCalls()));
+        this.failureRateThreshold = properties.getFailureRateThreshold();
+        this.slowCallRateThreshold = properties.getSlowCallRateThreshold();
+        this.slowCallNanos = properties.getSlowCallDuration().toNanos();
+        this.openNanos = properties.getOpenDuration().toNanos();
+        this.halfOpenCalls = Math.max(1, properties.getHalfOpenCalls());
+        this.listener = listener;
+        this.outcomes = new byte[windowSize];
+    }
+
+    /**
+     * 是否允许发起调用；打开状态下到期后转为半开并放行有限个探测调用
+     */
+    public boolean tryAcquire() {
+        boolean permitted;
+        CircuitBreakerStateChangedEvent event;
+        synchronized (this) {
+            permitted = acquireLocked();
+            event = takeEvent();
+        }
+        publish(event);
+        return permitted;
+    }
+
+    private boolean acquireLocked() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    notPermitted.increment();
+                    return false;
+                }
+                transition(State.HALF_OPEN);
+                // fall through
+            default:
+                if (probesPermitted < halfOpenCalls) {
+                    probesPermitted++;
+                    return true;
+                }
+                notPermitted.increment();
+                return false;
+        }
+    }
+
+    /**
+     * 记录一次成功调用
+     * @param durationNanos 调用耗时（流式为首个片段的耗时）
+     */
+    public void onSuccess(long durationNanos) {
+        record(durationNanos >= slowCallNanos ? SLOW : 0);
+    }
+
+    /**
+     * 记录一次失败调用
+     */
+    public void onError(long durationNanos) {
+        record((byte) (FAILURE | (durationNanos >= slowCallNanos ? SLOW : 0)));
+    }
+
+    /**
+     * 已放行的调用被取消，没有结果；半开状态下归还探测名额
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && probesPermitted > probesCompleted) {
+            probesPermitted--;
+        }
+    }
+
+    private void record(byte outcome) {
+        CircuitBreakerStateChangedEvent event;
+        synchronized (this) {
+            recordLocked(outcome);
+            event = takeEvent();
+        }
+        publish(event);
+    }
+
+    private void recordLocked(byte outcome) {
+        if (state == State.HALF_OPEN) {
+            probesCompleted++;
+            probeFailures += outcome & FAILURE;
+            probeSlowCalls += (outcome & SLOW) >> 1;
+            if (exceeds(probeFailures, probeSlowCalls, probesCompleted)) {
+                transition(State.OPEN);
+            } else if (probesCompleted >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // 打开前已放行的调用返回，不再影响状态
+            return;
+        }
+        if (recorded == windowSize) {
+            byte evicted = outcomes[position];
+            failures -= evicted & FAILURE;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            recorded++;
+        }
+        outcomes[position] = outcome;
+        position = (position + 1) % windowSize;
+        failures += outcome & FAILURE;
+        slowCalls += (outcome & SLOW) >> 1;
+        if (recorded >= minimumCalls && exceeds(failures, slowCalls, recorded)) {
+            transition(State.OPEN);
+        }
+    }
+
+    private boolean exceeds(int failed, int slow, int total) {
+        return failed * 100f / total >= failureRateThreshold || slow * 100f / total >= slowCallRateThreshold;
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        transitions[to.ordinal()].increment();
+        switch (to) {
+            case OPEN -> openedAt = System.nanoTime();
+            case HALF_OPEN -> {
+                probesPermitted = 0;
+                probesCompleted = 0;
+                probeFailures = 0;
+                probeSlowCalls = 0;
+            }
+            case CLOSED -> {
+                recorded = 0;
+                position = 0;
+                failures = 0;
+                slowCalls = 0;
+            }
+        }
+        pendingEvent = new CircuitBreakerStateChangedEvent(model, from, to);
+    }
+
+    private CircuitBreakerStateChangedEvent takeEvent() {
+        CircuitBreakerStateChangedEvent event = pendingEvent;
+        pendingEvent = null;
+        return event;
+    }
+
+    /**
+     * 在锁外通知状态变化，监听器可以安全地查询断路器
+     */
+    private void publish(CircuitBreakerStateChangedEvent event) {
+        if (event != null && listener != null) {
+            listener.accept(event);
+        }
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 当前窗口内的失败率（百分比），调用数不足minimumCalls时为-1
+     */
+    public synchronized float getFailureRate() {
+        return recorded < minimumCalls ? -1 : failures * 100f / recorded;
+    }
+
+    /**
+     * 当前窗口内的慢调用率（百分比），调用数不足minimumCalls时为-1
+     */
+    public synchronized float getSlowCallRate() {
+        return recorded < minimumCalls ? -1 : slowCalls * 100f / recorded;
+    }
+
+    /**
+     * 因断路器打开被直接拒绝的调用数
+     */
+    public long getNotPermittedCount() {
+        return notPermitted.sum();
+    }
+
+    /**
+     * 进入指定状态的次数
+     */
+    public long getTransitionCount(State to) {
+        return transitions[to.ordinal()].sum();
+    }
+}
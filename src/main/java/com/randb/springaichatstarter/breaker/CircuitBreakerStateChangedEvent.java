@@ -0,0 +1,41 @@
+package com.randb.springaichatstarter.breaker;
+
+/**
+ * 断路器状态变化事件，通过ApplicationEventPublisher发布
+ * @Date: 2025-08-31
+ * @Author: randb
+ */
+public class CircuitBreakerStateChangedEvent {
+
+    private final String model;
+    private final CircuitBreaker.State from;
+    private final CircuitBreaker.State to;
+    private final long timestamp = System.currentTimeMillis();
+
+    public CircuitBreakerStateChangedEvent(String model, CircuitBreaker.State from, CircuitBreaker.State to) {
+        this.model = model;
+        this.from = from;
+        this.to = to;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public CircuitBreaker.State getFrom() {
+        return from;
+    }
+
+    public CircuitBreaker.State getTo() {
+        return to;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakerStateChangedEvent{model=" + model + ", " + from + " -> " + to + "}";
+    }
+}
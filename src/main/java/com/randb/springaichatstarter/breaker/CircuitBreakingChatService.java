@@ -0,0 +1,150 @@
+package com.randb.springaichatstarter.breaker;
+
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 带断路器的聊天服务
+ * 断路器打开时不发起网络调用，直接转到配置的备用模型（备用模型同样受自身断路器保护，不再继续转发），
+ * 没有可用的备用模型时返回error类型的响应。调用异常和error类型的响应都计为失败，
+ * 流式调用以首个片段的耗时判断慢调用。
+ * @Date: 2025-08-31
+ * @Author: randb
+ */
+public class CircuitBreakingChatService implements ChatService {
+
+    private final String model;
+    private final ChatService delegate;
+    private final CircuitBreaker breaker;
+    private final ChatCircuitBreakers breakers;
+
+    CircuitBreakingChatService(String model, ChatService delegate, CircuitBreaker breaker, ChatCircuitBreakers breakers) {
+        this.model = model;
+        this.delegate = delegate;
+        this.breaker = breaker;
+        this.breakers = breakers;
+    }
+
+    @Override
+    public Flux<ChatResponse> streamReply(ChatRequest request) {
+        return streamReply(request, true);
+    }
+
+    @Override
+    public ChatResponse syncReply(ChatRequest request) {
+        return syncReply(request, true);
+    }
+
+    @Override
+    public Mono<ChatResponse> reply(ChatRequest request) {
+        return reply(request, true);
+    }
+
+    private Flux<ChatResponse> streamReply(ChatRequest request, boolean allowFallback) {
+        return Flux.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                CircuitBreakingChatService fallback = fallback(allowFallback);
+                return fallback != null ? fallback.streamReply(request, false) : Flux.just(unavailable(request));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return delegate.streamReply(request)
+                    .doOnNext(response -> {
+                        if (!recorded.get() && recorded.compareAndSet(false, true)) {
+                            record(response, System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            breaker.onError(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            breaker.onSuccess(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            breaker.release();
+                        }
+                    });
+        });
+    }
+
+    private ChatResponse syncReply(ChatRequest request, boolean allowFallback) {
+        if (!breaker.tryAcquire()) {
+            CircuitBreakingChatService fallback = fallback(allowFallback);
+            return fallback != null ? fallback.syncReply(request, false) : unavailable(request);
+        }
+        long start = System.nanoTime();
+        try {
+            ChatResponse response = delegate.syncReply(request);
+            record(response, System.nanoTime() - start);
+            return response;
+        } catch (RuntimeException e) {
+            breaker.onError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    private Mono<ChatResponse> reply(ChatRequest request, boolean allowFallback) {
+        return Mono.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                CircuitBreakingChatService fallback = fallback(allowFallback);
+                return fallback != null ? fallback.reply(request, false) : Mono.just(unavailable(request));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return delegate.reply(request)
+                    .doOnEach(signal -> {
+                        if (signal.isOnSubscribe() || !recorded.compareAndSet(false, true)) {
+                            return;
+                        }
+                        long elapsed = System.nanoTime() - start;
+                        if (signal.isOnNext()) {
+                            record(signal.get(), elapsed);
+                        } else if (signal.isOnError()) {
+                            breaker.onError(elapsed);
+                        } else {
+                            breaker.onSuccess(elapsed);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            breaker.release();
+                        }
+                    });
+        });
+    }
+
+    private void record(ChatResponse response, long elapsed) {
+        if (response != null && "error".equals(response.getType())) {
+            breaker.onError(elapsed);
+        } else {
+            breaker.onSuccess(elapsed);
+        }
+    }
+
+    private CircuitBreakingChatService fallback(boolean allowFallback) {
+        return allowFallback ? breakers.fallbackFor(model) : null;
+    }
+
+    private ChatResponse unavailable(ChatRequest request) {
+        return ChatResponseUtil.createError(request, "模型 " + model + " 暂时不可用，请稍后再试");
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    public ChatService getDelegate() {
+        return delegate;
+    }
+}
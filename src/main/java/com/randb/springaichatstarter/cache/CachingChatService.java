@@ -0,0 +1,87 @@
+package com.randb.springaichatstarter.cache;
+
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.PromptKey;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 带响应缓存的聊天服务
+ * 只缓存完整回复（syncReply、reply）；带会话ID的请求依赖上下文，和设置了skipCache的请求一样直接透传。
+ * 命中时按当前请求重新生成requestId、userId和时间戳。
+ * 降级服务生成的回复（模型调用失败时）不写入缓存，避免故障恢复后仍在TTL内返回降级内容。
+ * @Date: 2025-08-21
+ * @Author: randb
+ */
+public class CachingChatService implements ChatService {
+
+    private final String model;
+    private final ChatService delegate;
+    private final ChatResponseCache cache;
+
+    CachingChatService(String model, ChatService delegate, ChatResponseCache cache) {
+        this.model = model;
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public Flux<ChatResponse> streamReply(ChatRequest request) {
+        return delegate.streamReply(request);
+    }
+
+    @Override
+    public ChatResponse syncReply(ChatRequest request) {
+        if (!isCacheable(request)) {
+            cache.recordBypass();
+            return delegate.syncReply(request);
+        }
+
+        PromptKey key = PromptKey.of(model, request.getPrompt(), request.getSystemPrompt());
+        String content = cache.get(key);
+        if (content != null) {
+            return ChatResponseUtil.createMessage(request, content);
+        }
+
+        ChatResponse response = delegate.syncReply(request);
+        if (ChatResponseUtil.isCacheable(response)) {
+            cache.put(key, response.getContent());
+        }
+        return response;
+    }
+
+    @Override
+    public Mono<ChatResponse> reply(ChatRequest request) {
+        if (!isCacheable(request)) {
+            cache.recordBypass();
+            return delegate.reply(request);
+        }
+
+        PromptKey key = PromptKey.of(model, request.getPrompt(), request.getSystemPrompt());
+        return Mono.defer(() -> {
+            String content = cache.get(key);
+            if (content != null) {
+                return Mono.just(ChatResponseUtil.createMessage(request, content));
+            }
+            return delegate.reply(request).doOnNext(response -> {
+                if (ChatResponseUtil.isCacheable(response)) {
+                    cache.put(key, response.getContent());
+                }
+            });
+        });
+    }
+
+    private boolean isCacheable(ChatRequest request) {
+        return !request.isSkipCache()
+                && !StringUtils.hasText(request.getSessionId())
+                && request.getPrompt() != null;
+    }
+
+    public ChatService getDelegate() {
+        return delegate;
+    }
+}
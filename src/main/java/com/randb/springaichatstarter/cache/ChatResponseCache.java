@@ -0,0 +1,134 @@
+package com.randb.springaichatstarter.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.ChatServiceDecorator;
+import com.randb.springaichatstarter.core.PromptKey;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 同步响应缓存
+ * 基于Caffeine（W-TinyLFU）的精确匹配缓存，按响应大小计权并受总容量、单条大小和TTL约束。
+ * 作为ChatServiceDecorator由ChatModelFactory包装到每个模型服务上，所有模型共享同一个缓存。
+ * @Date: 2025-08-21
+ * @Author: randb
+ */
+@Slf4j
+public class ChatResponseCache implements ChatServiceDecorator, MeterBinder {
+
+    /**
+     * 装饰器顺序，缓存位于最外层
+     */
+    public static final int ORDER = 600;
+
+    /**
+     * 每条缓存的固定开销估算（键、条目节点等）
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final Cache<PromptKey, String> cache;
+    private final long maxEntryBytes;
+    private final LongAdder bypassCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public ChatResponseCache(SpringAiChatProperties.CacheProperties properties) {
+        this.maxEntryBytes = properties.getMaxEntrySize().toBytes();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxWeight().toBytes())
+                .weigher((PromptKey key, String content) -> weigh(content))
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        log.info("同步响应缓存已启用: maxWeight={}, maxEntrySize={}, ttl={}",
+                properties.getMaxWeight(), properties.getMaxEntrySize(), properties.getTtl());
+    }
+
+    @Override
+    public ChatService decorate(String model, ChatService delegate) {
+        return new CachingChatService(model, delegate, this);
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * 查询缓存的响应内容，未命中返回null
+     */
+    String get(PromptKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * 写入响应内容，超过单条大小限制的内容不进入缓存
+     */
+    void put(PromptKey key, String content) {
+        if (weigh(content) > maxEntryBytes) {
+            rejectedCount.increment();
+            return;
+        }
+        cache.put(key, content);
+    }
+
+    void recordBypass() {
+        bypassCount.increment();
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 命中、未命中、淘汰等统计信息
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 跳过缓存的请求数（带会话或显式设置skipCache）
+     */
+    public long getBypassCount() {
+        return bypassCount.sum();
+    }
+
+    /**
+     * 因超过单条大小限制而未缓存的响应数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "spring.ai.chat.response");
+        FunctionCounter.builder("spring.ai.chat.cache.bypass", this, ChatResponseCache::getBypassCount)
+                .description("跳过响应缓存的请求数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.cache.rejected", this, ChatResponseCache::getRejectedCount)
+                .description("超过单条大小限制未缓存的响应数")
+                .register(registry);
+    }
+
+    private static int weigh(String content) {
+        long weight = (long) content.length() * 2 + ENTRY_OVERHEAD;
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+}
@@ -0,0 +1,74 @@
+package com.randb.springaichatstarter.cache;
+
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.ChatServiceDecorator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在途请求合并装饰器
+ * 为每个模型服务包装SingleFlightChatService，位于响应缓存之内：缓存未命中的相同请求再做合并。
+ * @Date: 2025-08-22
+ * @Author: randb
+ */
+@Slf4j
+public class InFlightRequestCoalescer implements ChatServiceDecorator, MeterBinder {
+
+    /**
+     * 装饰器顺序，位于响应缓存（600）之内
+     */
+    public static final int ORDER = 500;
+
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder followers = new LongAdder();
+
+    public InFlightRequestCoalescer() {
+        log.info("在途请求合并已启用");
+    }
+
+    @Override
+    public ChatService decorate(String model, ChatService delegate) {
+        return new SingleFlightChatService(model, delegate, this);
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    void recordLeader() {
+        leaders.increment();
+    }
+
+    void recordFollower() {
+        followers.increment();
+    }
+
+    /**
+     * 实际发起上游调用的请求数
+     */
+    public long getLeaderCount() {
+        return leaders.sum();
+    }
+
+    /**
+     * 合并到已有在途调用、未发起上游调用的请求数
+     */
+    public long getCoalescedCount() {
+        return followers.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("spring.ai.chat.coalescing.upstream", this, InFlightRequestCoalescer::getLeaderCount)
+                .description("实际发起上游调用的请求数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.coalescing.coalesced", this, InFlightRequestCoalescer::getCoalescedCount)
+                .description("合并到在途调用的请求数")
+                .register(registry);
+    }
+}
@@ -0,0 +1,156 @@
+package com.randb.springaichatstarter.cache;
+
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.PromptKey;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.stream.StreamCancellationMetrics;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 合并相同在途请求的聊天服务
+ * 相同模型、相同提示词（且不带会话ID）的并发请求只发起一次上游调用，
+ * 流式结果通过replay共享给所有订阅者，每个订阅者收到的片段按自己的requestId/userId重新标记。
+ * @Date: 2025-08-22
+ * @Author: randb
+ */
+public class SingleFlightChatService implements ChatService {
+
+    private final String model;
+    private final ChatService delegate;
+    private final InFlightRequestCoalescer coalescer;
+
+    private final ConcurrentHashMap<PromptKey, SharedStream> streams = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<PromptKey, CompletableFuture<ChatResponse>> calls = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<PromptKey, SharedReply> replies = new ConcurrentHashMap<>();
+
+    SingleFlightChatService(String model, ChatService delegate, InFlightRequestCoalescer coalescer) {
+        this.model = model;
+        this.delegate = delegate;
+        this.coalescer = coalescer;
+    }
+
+    @Override
+    public Flux<ChatResponse> streamReply(ChatRequest request) {
+        if (!isCoalescable(request)) {
+            return delegate.streamReply(request);
+        }
+        PromptKey key = PromptKey.of(model, request.getPrompt(), request.getSystemPrompt());
+        return Flux.deferContextual(context -> {
+            SharedStream created = new SharedStream(key, request);
+            SharedStream shared = streams.putIfAbsent(key, created);
+            if (shared == null) {
+                shared = created;
+                coalescer.recordLeader();
+            } else {
+                coalescer.recordFollower();
+            }
+            SharedStream joined = shared;
+            joined.subscribers.incrementAndGet();
+            return joined.flux.map(response -> ChatResponseUtil.restamp(response, request))
+                    .doFinally(signal -> {
+                        // 仍有其他订阅者时上游继续生成，本次取消没有节省token
+                        if (joined.subscribers.decrementAndGet() > 0 && signal == SignalType.CANCEL) {
+                            StreamCancellationMetrics.markDetached(context);
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public ChatResponse syncReply(ChatRequest request) {
+        if (!isCoalescable(request)) {
+            return delegate.syncReply(request);
+        }
+        PromptKey key = PromptKey.of(model, request.getPrompt(), request.getSystemPrompt());
+        CompletableFuture<ChatResponse> call = new CompletableFuture<>();
+        CompletableFuture<ChatResponse> existing = calls.putIfAbsent(key, call);
+        if (existing == null) {
+            coalescer.recordLeader();
+            try {
+                ChatResponse response = delegate.syncReply(request);
+                call.complete(response);
+                return response;
+            } catch (RuntimeException | Error e) {
+                call.completeExceptionally(e);
+                throw e;
+            } finally {
+                calls.remove(key, call);
+            }
+        }
+
+        coalescer.recordFollower();
+        try {
+            return ChatResponseUtil.restamp(existing.join(), request);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Mono<ChatResponse> reply(ChatRequest request) {
+        if (!isCoalescable(request)) {
+            return delegate.reply(request);
+        }
+        PromptKey key = PromptKey.of(model, request.getPrompt(), request.getSystemPrompt());
+        return Mono.defer(() -> {
+            SharedReply created = new SharedReply(key, request);
+            SharedReply shared = replies.putIfAbsent(key, created);
+            if (shared == null) {
+                shared = created;
+                coalescer.recordLeader();
+            } else {
+                coalescer.recordFollower();
+            }
+            return shared.mono.map(response -> ChatResponseUtil.restamp(response, request));
+        });
+    }
+
+    private boolean isCoalescable(ChatRequest request) {
+        return request.getPrompt() != null && !StringUtils.hasText(request.getSessionId());
+    }
+
+    public ChatService getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 一次共享的上游流，上游结束或所有订阅者取消后从在途表中移除
+     */
+    private final class SharedStream {
+        private final Flux<ChatResponse> flux;
+        private final AtomicInteger subscribers = new AtomicInteger();
+
+        private SharedStream(PromptKey key, ChatRequest leader) {
+            this.flux = Flux.defer(() -> delegate.streamReply(leader))
+                    .doFinally(signal -> streams.remove(key, this))
+                    .replay()
+                    .refCount();
+        }
+    }
+
+    /**
+     * 一次共享的上游完整回复，所有订阅者都取消时上游调用也随之取消
+     */
+    private final class SharedReply {
+        private final Mono<ChatResponse> mono;
+
+        private SharedReply(PromptKey key, ChatRequest leader) {
+            this.mono = Mono.defer(() -> delegate.reply(leader))
+                    .doFinally(signal -> replies.remove(key, this))
+                    .share();
+        }
+    }
+}
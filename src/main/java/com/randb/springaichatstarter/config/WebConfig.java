@@ -1,12 +1,16 @@
 package com.randb.springaichatstarter.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randb.springaichatstarter.stream.ChatResponseHttpMessageConverter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 /**
 * @Description: 
 * @Date: 2025-07-11 13:09:33
@@ -21,6 +25,14 @@ public class WebConfig implements WebMvcConfigurer {
                 .addResourceLocations("classpath:/static/");
     }
     
+    /**
+     * ChatResponse（SSE片段、同步响应）优先使用专用的帧写入器序列化
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new ChatResponseHttpMessageConverter());
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public ObjectMapper objectMapper() {
@@ -8,6 +8,8 @@ import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.websocket.ChatHandshakeHandler;
 import com.randb.springaichatstarter.websocket.ChatWebSocketHandler;
 
 /**
@@ -22,23 +24,27 @@ import com.randb.springaichatstarter.websocket.ChatWebSocketHandler;
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final ChatWebSocketHandler chatWebSocketHandler;
+    private final SpringAiChatProperties properties;
 
-    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler) {
+    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler, SpringAiChatProperties properties) {
         this.chatWebSocketHandler = chatWebSocketHandler;
+        this.properties = properties;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(chatWebSocketHandler, "/api/chat/ws")
+                .setHandshakeHandler(new ChatHandshakeHandler(properties.getWebsocket().isPerMessageDeflate()))
                 .setAllowedOrigins("*");
     }
 
     @Bean
     public ServletServerContainerFactoryBean createWebSocketContainer() {
+        SpringAiChatProperties.WebSocketProperties websocket = properties.getWebsocket();
         ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
-        container.setMaxTextMessageBufferSize(65536);
-        container.setMaxBinaryMessageBufferSize(65536);
-        container.setMaxSessionIdleTimeout(60000L);
+        container.setMaxTextMessageBufferSize((int) websocket.getMaxTextMessageBufferSize().toBytes());
+        container.setMaxBinaryMessageBufferSize((int) websocket.getMaxBinaryMessageBufferSize().toBytes());
+        container.setMaxSessionIdleTimeout(websocket.getMaxSessionIdleTimeout().toMillis());
         return container;
     }
 } 
\ No newline at end of file
@@ -1,9 +1,14 @@
 package com.randb.springaichatstarter.controller;
 
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
 import com.randb.springaichatstarter.core.ChatModelFactory;
 import com.randb.springaichatstarter.core.ChatService;
 import com.randb.springaichatstarter.dto.ChatRequest;
 import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.ratelimit.RateLimitGuard;
+import com.randb.springaichatstarter.stream.ChunkCoalescer;
+import com.randb.springaichatstarter.stream.StreamCancellationMetrics;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -12,6 +17,7 @@ import org.springframework.ai.chat.messages.Message;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.UUID;
@@ -23,6 +29,9 @@ import java.util.UUID;
 public class ChatController {
 
     private final ChatModelFactory chatModelFactory;
+    private final SpringAiChatProperties properties;
+    private final StreamCancellationMetrics cancellationMetrics;
+    private final RateLimitGuard rateLimitGuard;
     // private final ChatMemory chatMemory;
 
     /**
@@ -40,35 +49,47 @@ public class ChatController {
         req.setRequestId(requestId != null ? requestId : UUID.randomUUID().toString());
         
         log.info("SSE request received: {}", req);
+
+        ChatResponse rejected = rateLimitGuard.check(req);
+        if (rejected != null) {
+            return Flux.just(rejected);
+        }
         
         // 根据model参数动态选择聊天服务实现
         ChatService chatService = chatModelFactory.get(model);
-        return chatService.streamReply(req);
+        ChunkCoalescer coalescer = ChunkCoalescer.of(properties.getController().getCoalesce());
+        // 客户端断开时MVC取消订阅，取消信号经合并器传到上游，停止生成
+        Flux<ChatResponse> stream = cancellationMetrics.track(chatService.streamReply(req))
+                .doOnCancel(() -> log.info("SSE client disconnected, upstream cancelled: requestId={}", req.getRequestId()));
+        return coalescer.apply(stream);
     }
     
     /**
      * 同步问答接口
      */
     @PostMapping("/sync")
-    public ChatResponse sync(@RequestBody ChatRequest request) {
+    public Mono<ChatResponse> sync(@RequestBody ChatRequest request) {
         if (request.getRequestId() == null) {
             request.setRequestId(UUID.randomUUID().toString());
         }
         
         log.info("Sync request received: {}", request);
+
+        ChatResponse rejected = rateLimitGuard.check(request);
+        if (rejected != null) {
+            return Mono.just(rejected);
+        }
         
+        // 异步返回，等待模型回复期间不占用Servlet线程
         ChatService chatService = chatModelFactory.get(request.getModel());
-        ChatResponse reply = chatService.syncReply(request);
-        
-        ChatResponse response = new ChatResponse();
-        response.setContent(reply.getContent());
-        response.setUserId(request.getUserId());
-        response.setRequestId(request.getRequestId());
-        
-        log.info("Sync response sent: requestId={}, contentLength={}", 
-                response.getRequestId(), reply.getContent().length());
-        
-        return response;
+        return chatService.reply(request).map(reply -> {
+            // 保留类型，限流拒绝、断路器错误等不能被当成正常回复
+            ChatResponse response = ChatResponseUtil.restamp(reply, request);
+
+            log.info("Sync response sent: requestId={}, type={}, contentLength={}",
+                    response.getRequestId(), response.getType(), reply.getContent() != null ? reply.getContent().length() : 0);
+            return response;
+        });
     }
 
     /**
@@ -1,16 +1,25 @@
 package com.randb.springaichatstarter.core;
 
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
 import com.randb.springaichatstarter.dto.ChatRequest;
 import com.randb.springaichatstarter.dto.ChatResponse;
 import com.randb.springaichatstarter.util.ChatResponseUtil;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -24,91 +33,128 @@ import java.util.Map;
 @Slf4j
 public class ChatModelFactory {
 
-    private final Map<String, ChatService> modelMap;
-    private final ChatService defaultService;
     private final ApplicationContext applicationContext;
+    private final SpringAiChatProperties properties;
+
+    /**
+     * 当前生效的路由表快照，变更时整体替换
+     */
+    private volatile ModelRoutingTable routingTable;
 
     public ChatModelFactory(Map<String, ChatService> modelMap, ApplicationContext applicationContext) {
-        this.modelMap = modelMap != null ? modelMap : Collections.emptyMap();
+        this(modelMap, applicationContext, new SpringAiChatProperties());
+    }
+
+    @Autowired
+    public ChatModelFactory(Map<String, ChatService> modelMap, ApplicationContext applicationContext,
+                            SpringAiChatProperties properties) {
         this.applicationContext = applicationContext;
-        
-        // 尝试获取QwenChatServiceImpl作为默认服务
-        ChatService qwenService = null;
+        this.properties = properties != null ? properties : new SpringAiChatProperties();
+        this.routingTable = buildRoutingTable(modelMap != null ? modelMap : Collections.emptyMap());
+    }
+
+    /**
+     * 根据模型名称获取对应的聊天服务
+     * 只读取预先构建的路由表，名称大小写不敏感并支持别名，未知名称返回默认服务
+     * @param model 模型名称
+     * @return 聊天服务实现
+     */
+    public ChatService get(String model) {
+        return routingTable.resolve(model);
+    }
+
+    /**
+     * 当前路由表快照
+     */
+    public ModelRoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    /**
+     * 根据ApplicationContext中当前的ChatService Bean和配置重建路由表并原子替换
+     * 在容器刷新、配置刷新时调用，也可在动态注册模型后手动调用
+     */
+    public void refresh() {
+        Map<String, ChatService> services;
         try {
-            if (applicationContext.getBeanNamesForType(QwenChatServiceImpl.class).length > 0) {
-                qwenService = applicationContext.getBean(QwenChatServiceImpl.class);
-                log.info("找到QwenChatServiceImpl，使用它作为默认服务: {}", qwenService.getClass().getName());
-            }
+            services = applicationContext.getBeansOfType(ChatService.class);
         } catch (Exception e) {
-            log.warn("尝试获取QwenChatServiceImpl失败", e);
-        }
-        
-        // 如果没有找到QwenChatServiceImpl，尝试使用名为"qwen"的服务
-        if (qwenService == null && this.modelMap.containsKey("qwen")) {
-            qwenService = this.modelMap.get("qwen");
-            log.info("找到名为'qwen'的服务: {}", qwenService.getClass().getName());
+            log.warn("刷新模型路由表时获取ChatService失败，保留现有路由表", e);
+            return;
         }
-        
-        // 如果上述方法都失败，尝试创建一个基于ChatClient的服务
-        if (qwenService == null) {
-            try {
-                if (applicationContext.getBeanNamesForType(ChatClient.class).length > 0) {
-                    ChatClient chatClient = applicationContext.getBean(ChatClient.class);
-                    qwenService = new ChatClientAdapter(chatClient);
-                    log.info("找到ChatClient，创建基于ChatClient的服务适配器");
-                }
-            } catch (Exception e) {
-                log.warn("尝试获取ChatClient失败", e);
-            }
+        this.routingTable = buildRoutingTable(services);
+    }
+
+    @EventListener
+    public void onContextRefreshed(ContextRefreshedEvent event) {
+        if (event.getApplicationContext() == applicationContext) {
+            refresh();
         }
-        
-        // 如果所有方法都失败，创建一个默认实现
-        this.defaultService = qwenService != null ? qwenService : new DefaultQwenChatServiceImpl();
-        
-        log.info("ChatModelFactory初始化完成，可用的模型: {}", modelMap != null ? modelMap.keySet() : "none");
-        log.info("默认服务: {} ({})", defaultService.getClass().getName(), 
+    }
+
+    private ModelRoutingTable buildRoutingTable(Map<String, ChatService> services) {
+        Map<String, ChatService> models = new LinkedHashMap<>(services);
+
+        // 存在真实的QwenChatServiceImpl时，"qwen"始终路由到它
+        services.values().stream()
+                .filter(QwenChatServiceImpl.class::isInstance)
+                .findFirst()
+                .ifPresent(qwenService -> models.put("qwen", qwenService));
+
+        ModelRoutingTable table = ModelRoutingTable.build(decorate(models), properties.getModelAliases(),
+                properties.getDefaultModel(), resolveFallbackService(models));
+
+        ChatService defaultService = table.getDefaultService();
+        log.info("模型路由表已构建，可用的模型: {}，别名: {}", models.keySet(), properties.getModelAliases());
+        log.info("默认服务: {} ({})", defaultService.getClass().getName(),
                 defaultService instanceof DefaultQwenChatServiceImpl ? "默认实现，不会调用真正的AI" : "真实AI实现");
-        
-        if (modelMap != null && !modelMap.isEmpty()) {
-            modelMap.forEach((name, service) -> {
-                log.info("注册的服务: {} -> {} ({})", name, service.getClass().getName(),
-                        service instanceof DefaultQwenChatServiceImpl ? "默认实现" : "真实实现");
-            });
+        models.forEach((name, service) -> log.debug("注册的服务: {} -> {} ({})", name, service.getClass().getName(),
+                service instanceof DefaultQwenChatServiceImpl ? "默认实现" : "真实实现"));
+        return table;
+    }
+
+    /**
+     * 用容器中的ChatServiceDecorator按顺序包装每个模型服务
+     */
+    private Map<String, ChatService> decorate(Map<String, ChatService> models) {
+        List<ChatServiceDecorator> decorators = applicationContext != null
+                ? applicationContext.getBeanProvider(ChatServiceDecorator.class).orderedStream().toList()
+                : List.of();
+        if (decorators.isEmpty()) {
+            return models;
         }
+        Map<String, ChatService> decorated = new LinkedHashMap<>();
+        models.forEach((name, service) -> {
+            String model = name.toLowerCase(Locale.ROOT);
+            ChatService current = service;
+            for (ChatServiceDecorator decorator : decorators) {
+                current = decorator.decorate(model, current);
+            }
+            decorated.put(name, current);
+        });
+        log.info("已为模型服务应用装饰器: {}", decorators.stream().map(d -> d.getClass().getSimpleName()).toList());
+        return decorated;
     }
 
     /**
-     * 根据模型名称获取对应的聊天服务
-     * @param model 模型名称
-     * @return 聊天服务实现
+     * 配置的默认模型不可用时的降级链：qwen服务 -> 基于ChatClient的适配器 -> 默认实现
      */
-    public ChatService get(String model) {
-        if (model == null || model.isEmpty()) {
-            log.info("模型名称为空，使用默认服务: {}", defaultService.getClass().getName());
-            return defaultService;
+    private ChatService resolveFallbackService(Map<String, ChatService> models) {
+        ChatService qwenService = models.get("qwen");
+        if (qwenService != null) {
+            return qwenService;
         }
-        
-        // 尝试从ApplicationContext中获取QwenChatServiceImpl（最后的尝试）
-        if ("qwen".equalsIgnoreCase(model)) {
-            try {
-                if (applicationContext.getBeanNamesForType(QwenChatServiceImpl.class).length > 0) {
-                    ChatService qwenService = applicationContext.getBean(QwenChatServiceImpl.class);
-                    if (qwenService != null) {
-                        log.info("通过ApplicationContext获取到QwenChatServiceImpl: {}", qwenService.getClass().getName());
-                        return qwenService;
-                    }
-                }
-            } catch (Exception e) {
-                log.warn("尝试获取QwenChatServiceImpl失败", e);
+        try {
+            if (applicationContext != null && applicationContext.getBeanNamesForType(ChatClient.class).length > 0) {
+                log.info("找到ChatClient，创建基于ChatClient的服务适配器");
+                return new ChatClientAdapter(applicationContext.getBean(ChatClient.class));
             }
+        } catch (Exception e) {
+            log.warn("尝试获取ChatClient失败", e);
         }
-        
-        ChatService service = modelMap.getOrDefault(model, defaultService);
-        log.info("获取模型 {} 的服务: {} ({})", model, service.getClass().getName(),
-                service instanceof DefaultQwenChatServiceImpl ? "默认实现，不会调用真正的AI" : "真实实现");
-        return service;
+        return new DefaultQwenChatServiceImpl();
     }
-    
+
     /**
      * ChatClient适配器，将ChatClient包装为ChatService
      */
@@ -121,8 +167,7 @@ public class ChatModelFactory {
 
         @Override
         public Flux<ChatResponse> streamReply(ChatRequest request) {
-            return chatClient.prompt()
-                    .user(request.getPrompt())
+            return prompt(request)
                     .stream()
                     .content()
                     .map(content -> ChatResponseUtil.createMessage(request, content));
@@ -130,13 +175,25 @@ public class ChatModelFactory {
 
         @Override
         public ChatResponse syncReply(ChatRequest request) {
-            String content = chatClient.prompt()
-                    .user(request.getPrompt())
+            String content = prompt(request)
                     .call()
                     .content();
 
             return ChatResponseUtil.createMessage(request, content);
         }
+
+        @Override
+        public Mono<ChatResponse> reply(ChatRequest request) {
+            return ChatResponseUtil.aggregate(request, prompt(request).stream().content());
+        }
+
+        private ChatClient.ChatClientRequestSpec prompt(ChatRequest request) {
+            ChatClient.ChatClientRequestSpec spec = chatClient.prompt().user(request.getPrompt());
+            if (StringUtils.hasText(request.getSystemPrompt())) {
+                spec = spec.system(request.getSystemPrompt());
+            }
+            return spec;
+        }
     }
     
     // 内部默认实现，确保即使没有任何ChatService也能工作
@@ -150,5 +207,10 @@ public class ChatModelFactory {
         public ChatResponse syncReply(ChatRequest request) {
             return ChatResponseUtil.createMessage(request, "默认回复（同步）: " + request.getPrompt());
         }
+
+        @Override
+        public Mono<ChatResponse> reply(ChatRequest request) {
+            return Mono.fromSupplier(() -> syncReply(request));
+        }
     }
 }
\ No newline at end of file
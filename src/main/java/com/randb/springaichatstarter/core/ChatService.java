@@ -3,6 +3,8 @@ package com.randb.springaichatstarter.core;
 import com.randb.springaichatstarter.dto.ChatRequest;
 import com.randb.springaichatstarter.dto.ChatResponse;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * 统一的聊天服务接口
@@ -24,4 +26,15 @@ public interface ChatService {
      * @return 完整响应对象
      */
     ChatResponse syncReply(ChatRequest request);
+
+    /**
+     * 非阻塞的完整回复（用于HTTP普通问答，不占用请求线程）
+     * 默认实现把syncReply放到boundedElastic线程上执行，基于ChatClient的实现应改为聚合流式结果
+     * @param request 聊天请求
+     * @return 完整响应对象
+     */
+    default Mono<ChatResponse> reply(ChatRequest request) {
+        return Mono.fromCallable(() -> syncReply(request))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
 }
@@ -0,0 +1,26 @@
+package com.randb.springaichatstarter.core;
+
+import org.springframework.core.Ordered;
+
+/**
+ * 聊天服务装饰器
+ * ChatModelFactory构建路由表时，会用容器中所有的装饰器依次包装每个已注册的模型服务。
+ * 按getOrder()从小到大应用：数值越小越靠近真实的模型调用，数值越大越靠外层。
+ * @Date: 2025-08-21
+ * @Author: randb
+ */
+public interface ChatServiceDecorator extends Ordered {
+
+    /**
+     * 包装指定模型的聊天服务
+     * @param model 注册的模型名称（已规范化为小写）
+     * @param delegate 被包装的服务
+     * @return 包装后的服务，不需要包装时直接返回delegate
+     */
+    ChatService decorate(String model, ChatService delegate);
+
+    @Override
+    default int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
@@ -8,6 +8,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * 默认的通义千问实现
@@ -41,4 +42,10 @@ public class DefaultQwenChatServiceImpl implements ChatService {
         return ChatResponseUtil.createMessage(req,
                 "这是默认的通义千问回复（同步）: " + req.getPrompt());
     }
+
+    @Override
+    public Mono<ChatResponse> reply(ChatRequest req) {
+        // 不涉及IO，无需切换线程
+        return Mono.fromSupplier(() -> syncReply(req));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+package com.randb.springaichatstarter.core;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 模型路由表
+ * 启动时一次性构建的不可变快照，负责把模型名称（大小写不敏感、支持别名）解析为聊天服务。
+ * 请求线程上的查找只做哈希表读取，不访问ApplicationContext、不打日志、不分配对象（名称已是小写时）。
+ * 需要变更时整体重建并由ChatModelFactory原子替换。
+ * @Date: 2025-08-20
+ * @Author: randb
+ */
+public final class ModelRoutingTable {
+
+    private final Map<String, ChatService> routes;
+    private final ChatService defaultService;
+    private final String defaultModel;
+
+    private ModelRoutingTable(Map<String, ChatService> routes, ChatService defaultService, String defaultModel) {
+        this.routes = routes;
+        this.defaultService = defaultService;
+        this.defaultModel = defaultModel;
+    }
+
+    /**
+     * 构建路由表
+     * @param services 模型名称 -> 聊天服务
+     * @param aliases 别名 -> 模型名称，目标不存在的别名会被忽略
+     * @param defaultModel 默认模型名称（可以是别名）
+     * @param fallbackService 默认模型无法解析时使用的服务
+     * @return 不可变路由表
+     */
+    public static ModelRoutingTable build(Map<String, ChatService> services,
+                                          Map<String, String> aliases,
+                                          String defaultModel,
+                                          ChatService fallbackService) {
+        Map<String, ChatService> routes = new HashMap<>();
+        if (services != null) {
+            services.forEach((name, service) -> {
+                if (name != null && service != null) {
+                    routes.put(normalize(name), service);
+                }
+            });
+        }
+        if (aliases != null) {
+            aliases.forEach((alias, target) -> {
+                if (alias == null || target == null) {
+                    return;
+                }
+                ChatService service = routes.get(normalize(target));
+                // 真实注册的模型名称优先于别名
+                if (service != null) {
+                    routes.putIfAbsent(normalize(alias), service);
+                }
+            });
+        }
+
+        ChatService defaultService = null;
+        if (defaultModel != null && !defaultModel.isEmpty()) {
+            defaultService = routes.get(normalize(defaultModel));
+        }
+        if (defaultService == null) {
+            defaultService = fallbackService;
+        }
+        return new ModelRoutingTable(Map.copyOf(routes), defaultService, defaultModel);
+    }
+
+    /**
+     * 解析模型名称对应的聊天服务
+     * @param model 模型名称，为空或未注册时返回默认服务
+     * @return 聊天服务实现
+     */
+    public ChatService resolve(String model) {
+        if (model == null || model.isEmpty()) {
+            return defaultService;
+        }
+        ChatService service = routes.get(model);
+        if (service == null) {
+            // 与构建时相同的规范化；名称已去空白且为小写时trim和toLowerCase都返回原对象，不会重复分配
+            String normalized = normalize(model);
+            if (normalized != model) {
+                service = routes.get(normalized);
+            }
+        }
+        return service != null ? service : defaultService;
+    }
+
+    /**
+     * 是否存在该模型名称或别名的路由
+     */
+    public boolean contains(String model) {
+        return model != null && routes.containsKey(normalize(model));
+    }
+
+    public ChatService getDefaultService() {
+        return defaultService;
+    }
+
+    public String getDefaultModel() {
+        return defaultModel;
+    }
+
+    /**
+     * 所有路由（小写模型名称及别名 -> 服务），只读
+     */
+    public Map<String, ChatService> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * 路由使用的模型名称形式：去掉首尾空白并转为小写
+     */
+    public static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -9,7 +9,9 @@ import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import jakarta.annotation.PostConstruct;
 
@@ -39,8 +41,12 @@ public class OpenAIChatServiceImpl implements ChatService {
         log.info("OpenAI streaming reply for prompt: {}", req.getPrompt());
         try {
             log.debug("准备调用ChatClient.prompt().user().stream()");
-            return chatClient.prompt()
-                    .user(req.getPrompt())
+            ChatClient.ChatClientRequestSpec spec = chatClient.prompt()
+                    .user(req.getPrompt());
+            if (StringUtils.hasText(req.getSystemPrompt())) {
+                spec = spec.system(req.getSystemPrompt());
+            }
+            return spec
                     .stream()
                     .content()
                     .map(content -> ChatResponseUtil.createMessage(req, content));
@@ -55,8 +61,12 @@ public class OpenAIChatServiceImpl implements ChatService {
         log.info("OpenAI sync reply for prompt: {}", req.getPrompt());
         try {
             log.debug("准备调用ChatClient.prompt().user().call()");
-            String content = chatClient.prompt()
-                    .user(req.getPrompt())
+            ChatClient.ChatClientRequestSpec spec = chatClient.prompt()
+                    .user(req.getPrompt());
+            if (StringUtils.hasText(req.getSystemPrompt())) {
+                spec = spec.system(req.getSystemPrompt());
+            }
+            String content = spec
                     .call()
                     .content();
 
@@ -69,4 +79,20 @@ public class OpenAIChatServiceImpl implements ChatService {
             return ChatResponseUtil.createError(req, "处理请求时发生错误: " + e.getMessage());
         }
     }
+
+    @Override
+    public Mono<ChatResponse> reply(ChatRequest req) {
+        log.info("OpenAI async reply for prompt: {}", req.getPrompt());
+        return Mono.defer(() -> {
+            ChatClient.ChatClientRequestSpec spec = chatClient.prompt()
+                    .user(req.getPrompt());
+            if (StringUtils.hasText(req.getSystemPrompt())) {
+                spec = spec.system(req.getSystemPrompt());
+            }
+            return ChatResponseUtil.aggregate(req, spec.stream().content());
+        }).onErrorResume(e -> {
+            log.error("处理异步回复时发生异常", e);
+            return Mono.just(ChatResponseUtil.createError(req, "处理请求时发生错误: " + e.getMessage()));
+        });
+    }
 }
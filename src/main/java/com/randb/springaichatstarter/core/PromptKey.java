@@ -0,0 +1,101 @@
+package com.randb.springaichatstarter.core;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 提示词指纹
+ * 由模型名称、规范化后的提示词和系统提示词计算的128位哈希（SHA-256截断），
+ * 用作响应缓存和请求合并的键。
+ * @Date: 2025-08-21
+ * @Author: randb
+ */
+public record PromptKey(long high, long low) {
+
+    /**
+     * 计算提示词指纹
+     * @param model 模型名称
+     * @param prompt 用户提示词，首尾空白会被去掉，连续空白合并为一个空格
+     * @param systemPrompt 系统提示词，可为null
+     * @return 提示词指纹
+     */
+    public static PromptKey of(String model, String prompt, String systemPrompt) {
+        MessageDigest digest = newDigest();
+        update(digest, model);
+        update(digest, normalize(prompt));
+        update(digest, normalize(systemPrompt));
+        byte[] hash = digest.digest();
+        return new PromptKey(toLong(hash, 0), toLong(hash, 8));
+    }
+
+    /**
+     * 规范化提示词：去掉首尾空白，连续空白合并为一个空格
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder sb = null;
+        int len = text.length();
+        int start = 0;
+        int end = len;
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            boolean whitespace = Character.isWhitespace(c);
+            if (whitespace && (c != ' ' || Character.isWhitespace(text.charAt(i + 1)))) {
+                // 需要改写时才复制
+                if (sb == null) {
+                    sb = new StringBuilder(end - start).append(text, start, i);
+                }
+                sb.append(' ');
+                while (i + 1 < end && Character.isWhitespace(text.charAt(i + 1))) {
+                    i++;
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        if (sb != null) {
+            return sb.toString();
+        }
+        return start == 0 && end == len ? text : text.substring(start, end);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            // null与空字符串区分开
+            digest.update((byte) 0);
+            return;
+        }
+        digest.update((byte) 1);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
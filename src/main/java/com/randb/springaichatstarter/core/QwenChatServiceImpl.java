@@ -2,6 +2,10 @@ package com.randb.springaichatstarter.core;
 
 import com.randb.springaichatstarter.dto.ChatRequest;
 import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.memory.ConversationCompactor;
+import com.randb.springaichatstarter.memory.ConversationContextAssembler;
+import com.randb.springaichatstarter.memory.StreamingReplyRecorder;
+import com.randb.springaichatstarter.retry.ResumableRetry;
 import com.randb.springaichatstarter.util.ChatResponseUtil;
 import lombok.extern.slf4j.Slf4j;
 
@@ -9,11 +13,15 @@ import java.util.List;
 import java.util.UUID;
 
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.annotation.Order;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import jakarta.annotation.PostConstruct;
 
@@ -29,9 +37,18 @@ public class QwenChatServiceImpl implements ChatService {
 
     private ChatClient chatClient;
     private ChatMemory chatMemory;
+    private ConversationContextAssembler contextAssembler;
+    private ConversationCompactor compactor;
+    private StreamingReplyRecorder replyRecorder;
+    private ResumableRetry retry;
     private final DefaultQwenChatServiceImpl fallbackService;
     private final ApplicationContext applicationContext;
 
+    /**
+     * 调用异常时是否改用降级服务回复；启用断路器或重试时关闭，让异常传到外层装饰器
+     */
+    private volatile boolean fallbackOnError = true;
+
     @PostConstruct
     public void init() {
         log.info("QwenChatServiceImpl(@Order(100)) Bean已创建，将被用于处理AI请求");
@@ -70,6 +87,14 @@ public class QwenChatServiceImpl implements ChatService {
         }
     }
 
+    public void setFallbackOnError(boolean fallbackOnError) {
+        this.fallbackOnError = fallbackOnError;
+    }
+
+    public boolean isFallbackOnError() {
+        return fallbackOnError;
+    }
+
     /**
      * 获取ChatClient，如果不可用则返回null
      */
@@ -94,6 +119,131 @@ public class QwenChatServiceImpl implements ChatService {
         return null;
     }
 
+    /**
+     * 获取对话记忆，未注册时返回null
+     */
+    private ChatMemory getChatMemory() {
+        if (chatMemory == null) {
+            chatMemory = applicationContext.getBeanProvider(ChatMemory.class).getIfAvailable();
+        }
+        return chatMemory;
+    }
+
+    /**
+     * 获取上下文组装器，未注册时返回null
+     */
+    private ConversationContextAssembler getContextAssembler() {
+        if (contextAssembler == null) {
+            contextAssembler = applicationContext.getBeanProvider(ConversationContextAssembler.class).getIfAvailable();
+        }
+        return contextAssembler;
+    }
+
+    /**
+     * 获取摘要压缩器，未启用时返回null
+     */
+    private ConversationCompactor getCompactor() {
+        if (compactor == null) {
+            compactor = applicationContext.getBeanProvider(ConversationCompactor.class).getIfAvailable();
+        }
+        return compactor;
+    }
+
+    /**
+     * 获取流式回复的记忆写入器，未注册时返回null
+     */
+    private StreamingReplyRecorder getReplyRecorder() {
+        if (replyRecorder == null) {
+            replyRecorder = applicationContext.getBeanProvider(StreamingReplyRecorder.class).getIfAvailable();
+        }
+        return replyRecorder;
+    }
+
+    /**
+     * 获取可续写重试，未启用时返回null
+     */
+    private ResumableRetry getRetry() {
+        if (retry == null) {
+            retry = applicationContext.getBeanProvider(ResumableRetry.class).getIfAvailable();
+        }
+        return retry;
+    }
+
+    /**
+     * 请求使用的对话记忆：读取历史消息时按模型的token预算截取，启用摘要压缩时写入后在后台压缩长会话；
+     * 没有会话ID的请求不读写记忆（返回null），避免不同用户共用默认会话
+     */
+    private ChatMemory memoryFor(ChatRequest req) {
+        if (!StringUtils.hasText(req.getSessionId())) {
+            return null;
+        }
+        ChatMemory memory = getChatMemory();
+        if (memory == null) {
+            return null;
+        }
+        ConversationCompactor conversationCompactor = getCompactor();
+        if (conversationCompactor != null) {
+            memory = conversationCompactor.view(memory);
+        }
+        ConversationContextAssembler assembler = getContextAssembler();
+        if (assembler != null) {
+            memory = assembler.view(memory, req.getModel());
+        }
+        return memory;
+    }
+
+    /**
+     * 带会话ID时挂上对话记忆，读取历史消息并保存本轮问答
+     */
+    private ChatClient.ChatClientRequestSpec withMemory(ChatClient.ChatClientRequestSpec promptSpec, ChatRequest req) {
+        ChatMemory memory = memoryFor(req);
+        if (memory == null) {
+            return promptSpec;
+        }
+        return promptSpec.advisors(MessageChatMemoryAdvisor.builder(memory).conversationId(req.getSessionId()).build());
+    }
+
+    /**
+     * 流式调用的文本流；带会话ID时在订阅后读取历史消息（不阻塞调用线程），流结束后写回本轮问答。
+     * 续写请求写回原始问题和拼接后的完整回复：第一次调用出错没有保存，续写完成后才是本轮的完整回答
+     */
+    private Flux<String> streamContents(ChatClient client, ChatRequest req) {
+        ChatMemory memory = memoryFor(req);
+        if (memory == null) {
+            return prompt(client, req, List.of()).stream().content();
+        }
+        String conversationId = req.getSessionId();
+        Flux<String> contents = Mono.fromCallable(() -> memory.get(conversationId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(history -> prompt(client, req, history).stream().content());
+        StreamingReplyRecorder recorder = getReplyRecorder();
+        if (recorder == null) {
+            return contents;
+        }
+        if (!req.isContinuation()) {
+            return recorder.record(contents, memory, conversationId, req.getPrompt());
+        }
+        if (req.getResumedPrompt() == null) {
+            // 不是重试构造的续写请求，没有原始问题，不把续写指令记成用户消息
+            return contents;
+        }
+        String emitted = req.getResumedReply() != null ? req.getResumedReply() : "";
+        ResumableRetry resumableRetry = getRetry();
+        return recorder.record(contents, memory, conversationId, req.getResumedPrompt(), continuation ->
+                resumableRetry != null ? resumableRetry.stitch(emitted, continuation) : emitted + continuation);
+    }
+
+    private ChatClient.ChatClientRequestSpec prompt(ChatClient client, ChatRequest req, List<Message> history) {
+        ChatClient.ChatClientRequestSpec promptSpec = client.prompt();
+        if (StringUtils.hasText(req.getSystemPrompt())) {
+            promptSpec = promptSpec.system(req.getSystemPrompt());
+        }
+        if (!history.isEmpty()) {
+            promptSpec = promptSpec.messages(history);
+        }
+        return promptSpec.user(req.getPrompt());
+    }
+
     @Override
     public Flux<ChatResponse> streamReply(ChatRequest req) {
         log.info("Qwen streaming reply for prompt: {}", req.getPrompt());
@@ -102,15 +252,12 @@ public class QwenChatServiceImpl implements ChatService {
         ChatClient client = getChatClient();
         if (client == null) {
             log.warn("ChatClient不可用，使用降级服务进行流式回复");
-            return fallbackService.streamReply(req);
+            return fallbackService.streamReply(req).map(QwenChatServiceImpl::markFallback);
         }
 
         try {
             log.debug("准备调用ChatClient.prompt().user().stream()");
-            Flux<String> responseFlux = client.prompt()
-                    .user(req.getPrompt())
-                    .stream()
-                    .content();
+            Flux<String> responseFlux = streamContents(client, req);
 
             // 在Flux上应用操作符，将String转换为ChatResponse
             return responseFlux
@@ -123,8 +270,12 @@ public class QwenChatServiceImpl implements ChatService {
                     })
                     .map(content -> ChatResponseUtil.createMessage(req, content));
         } catch (Exception e) {
+            if (!fallbackOnError) {
+                return Flux.error(e);
+            }
             log.error("处理流式回复时发生异常: {}，将使用降级服务", e.getMessage(), e);
             return fallbackService.streamReply(req)
+                    .map(QwenChatServiceImpl::markFallback)
                     .doOnSubscribe(s -> log.warn("使用降级服务进行流式回复"));
         }
     }
@@ -133,23 +284,21 @@ public class QwenChatServiceImpl implements ChatService {
     public ChatResponse syncReply(ChatRequest req) {
 //        log.info("Qwen sync reply for prompt: {}", req.getPrompt());
 
-        //对话记忆的唯一标识
-        // String conversantId = UUID.randomUUID().toString();
-        String conversantId = req.getSessionId();
-
         // 获取ChatClient
         ChatClient client = getChatClient();
         if (client == null) {
             log.warn("ChatClient不可用，使用降级服务进行同步回复");
-            return fallbackService.syncReply(req);
+            return markFallback(fallbackService.syncReply(req));
         }
 
         try {
             log.debug("准备调用ChatClient.prompt().user().call()");
-            String content = client.prompt()
-                    .user(req.getPrompt())
-                    .advisors(spec -> spec.param("CHAT_MEMORY_CONVERSATION_ID_KEY", conversantId)
-                        .param("CHAT_MEMORY_RETRIEVE_SIZE_KEY", 10))
+            ChatClient.ChatClientRequestSpec promptSpec = client.prompt()
+                    .user(req.getPrompt());
+            if (StringUtils.hasText(req.getSystemPrompt())) {
+                promptSpec = promptSpec.system(req.getSystemPrompt());
+            }
+            String content = withMemory(promptSpec, req)
                     .call()
                     .content();
 
@@ -157,12 +306,52 @@ public class QwenChatServiceImpl implements ChatService {
 
             return ChatResponseUtil.createMessage(req, content);
         } catch (Exception e) {
+            if (!fallbackOnError) {
+                throw e instanceof RuntimeException runtimeException ? runtimeException : new IllegalStateException(e);
+            }
             log.error("处理同步回复时发生异常: {}，将使用降级服务", e.getMessage(), e);
-            ChatResponse fallbackResponse = fallbackService.syncReply(req);
-            fallbackResponse.setContent(fallbackResponse.getContent() + "\n\n[注: 由于API调用错误，此为降级服务回复]");
-            return fallbackResponse;
+            return errorFallback(fallbackService.syncReply(req));
+        }
+    }
+
+    @Override
+    public Mono<ChatResponse> reply(ChatRequest req) {
+        ChatClient client = getChatClient();
+        if (client == null) {
+            log.warn("ChatClient不可用，使用降级服务进行异步回复");
+            return fallbackService.reply(req).map(QwenChatServiceImpl::markFallback);
         }
+
+        return Mono.defer(() -> {
+            ChatClient.ChatClientRequestSpec promptSpec = client.prompt()
+                    .user(req.getPrompt());
+            if (StringUtils.hasText(req.getSystemPrompt())) {
+                promptSpec = promptSpec.system(req.getSystemPrompt());
+            }
+            // 聚合流式结果，等待期间不占用线程
+            Flux<String> contents = withMemory(promptSpec, req)
+                    .stream()
+                    .content();
+            return ChatResponseUtil.aggregate(req, contents);
+        }).onErrorResume(e -> fallbackOnError, e -> {
+            log.error("处理异步回复时发生异常: {}，将使用降级服务", e.getMessage(), e);
+            return fallbackService.reply(req).map(QwenChatServiceImpl::errorFallback);
+        });
+    }
+
+    /**
+     * 标记为降级服务的回复，缓存等装饰器据此跳过
+     */
+    private static ChatResponse markFallback(ChatResponse response) {
+        response.setFallback(true);
+        return response;
     }
 
-    
+    /**
+     * 调用异常时的降级回复，内容中注明是降级服务
+     */
+    private static ChatResponse errorFallback(ChatResponse response) {
+        response.setContent(response.getContent() + "\n\n[注: 由于API调用错误，此为降级服务回复]");
+        return markFallback(response);
+    }
 }
@@ -1,5 +1,6 @@
 package com.randb.springaichatstarter.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import java.io.Serializable;
 
@@ -22,6 +23,10 @@ public class ChatRequest implements Serializable {
      * 提示词
      */
     private String prompt;
+    /**
+     * 系统提示词，为空时使用ChatClient的默认系统提示词
+     */
+    private String systemPrompt;
     /**
      * 模型名称: qwen、openai
      */
@@ -38,5 +43,23 @@ public class ChatRequest implements Serializable {
      * 是否希望是流式响应
      */
     private boolean stream; 
+    /**
+     * 是否跳过响应缓存（既不读取也不写入）
+     */
+    private boolean skipCache;
+    /**
+     * 是否为续写请求（流式重试时带上已输出内容重新生成），保存对话记忆时使用resumedPrompt和拼接后的完整回复
+     */
+    private boolean continuation;
+    /**
+     * 续写请求对应的原始用户消息，续写完成后和完整回复一起写入对话记忆（只在进程内传递，不参与序列化）
+     */
+    @JsonIgnore
+    private transient String resumedPrompt;
+    /**
+     * 续写请求中断前已经输出的内容，写入对话记忆时拼在续写输出前面（只在进程内传递，不参与序列化）
+     */
+    @JsonIgnore
+    private transient String resumedReply;
 
 }
@@ -1,6 +1,6 @@
 package com.randb.springaichatstarter.dto;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import java.io.Serializable;
@@ -11,12 +11,26 @@ import java.io.Serializable;
  * @Author: randb
  */
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 public class ChatResponse implements Serializable {
-    private String type;      // message | error | completed | pong
+    private String type;      // message | error | completed | pong | cancelled | rejected
     private String requestId;   // 请求ID
     private String userId;      // 用户ID
     private String content;     // 回复内容
     private long timestamp = System.currentTimeMillis();  // 时间戳
-} 
+
+    /**
+     * 是否为调用失败后降级服务生成的回复（不是模型的真实回复，不能缓存）
+     * 只在进程内的装饰器之间传递，不序列化，也不参与equals
+     */
+    @JsonIgnore
+    private transient boolean fallback;
+
+    public ChatResponse(String type, String requestId, String userId, String content, long timestamp) {
+        this.type = type;
+        this.requestId = requestId;
+        this.userId = userId;
+        this.content = content;
+        this.timestamp = timestamp;
+    }
+}
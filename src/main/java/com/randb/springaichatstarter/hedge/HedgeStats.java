@@ -0,0 +1,155 @@
+package com.randb.springaichatstarter.hedge;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.util.RequestBudget;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个模型的对冲状态：首个响应延迟的滑动窗口、对冲预算和统计计数
+ * @Date: 2025-08-30
+ * @Author: randb
+ */
+public class HedgeStats {
+
+    /** 延迟窗口保留的样本数 */
+    private static final int WINDOW_SIZE = 256;
+    /** 样本数达到该值之前使用initialDelay */
+    private static final int MIN_SAMPLES = 20;
+    /** 每新增多少个样本重新计算一次分位数 */
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private final String model;
+    private final SpringAiChatProperties.HedgingProperties properties;
+    private final LatencyWindow streamLatency = new LatencyWindow();
+    private final LatencyWindow replyLatency = new LatencyWindow();
+
+    private final RequestBudget budget;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder backupWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public HedgeStats(String model, SpringAiChatProperties.HedgingProperties properties) {
+        this.model = model;
+        this.properties = properties;
+        this.budget = new RequestBudget(properties.getMaxHedgeRatio(), properties.getBudgetCapacity());
+    }
+
+    /**
+     * 当前的对冲延迟：配置了固定延迟时直接使用，否则取观测到的p95（不低于minDelay）
+     * @param stream 是否流式（流式按首个片段延迟，其余按完整回复延迟）
+     */
+    public Duration hedgeDelay(boolean stream) {
+        if (properties.getDelay() != null) {
+            return properties.getDelay();
+        }
+        long p95 = (stream ? streamLatency : replyLatency).percentile95();
+        if (p95 < 0) {
+            return properties.getInitialDelay();
+        }
+        Duration observed = Duration.ofNanos(p95);
+        return observed.compareTo(properties.getMinDelay()) < 0 ? properties.getMinDelay() : observed;
+    }
+
+    /**
+     * 记录一次主调用的首个响应延迟；被对冲取消的主调用以取消时的耗时作为下界样本
+     */
+    public void recordLatency(boolean stream, long nanos) {
+        (stream ? streamLatency : replyLatency).record(nanos);
+    }
+
+    /**
+     * 每个可对冲的请求按maxHedgeRatio累积预算，预算上限为budgetCapacity
+     */
+    void onRequest() {
+        requests.increment();
+        budget.onRequest();
+    }
+
+    /**
+     * 发起对冲前扣减一个令牌，预算不足时不对冲
+     */
+    boolean tryStartHedge() {
+        if (!budget.tryAcquire()) {
+            budgetExhausted.increment();
+            return false;
+        }
+        hedges.increment();
+        return true;
+    }
+
+    void onBackupWin() {
+        backupWins.increment();
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    public long getBackupWinCount() {
+        return backupWins.sum();
+    }
+
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    /**
+     * 对冲率：发起对冲的请求占比
+     */
+    public double getHedgeRate() {
+        long total = requests.sum();
+        return total == 0 ? 0 : (double) hedges.sum() / total;
+    }
+
+    /**
+     * 对冲胜率：备用调用先返回的占比
+     */
+    public double getWinRatio() {
+        long total = hedges.sum();
+        return total == 0 ? 0 : (double) backupWins.sum() / total;
+    }
+
+    /**
+     * 剩余的对冲预算（次数）
+     */
+    public double getRemainingBudget() {
+        return budget.getRemaining();
+    }
+
+    /**
+     * 最近若干个延迟样本的环形窗口，分位数按固定间隔重新计算并缓存
+     */
+    private static final class LatencyWindow {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private long count;
+        private volatile long cachedP95 = -1;
+
+        synchronized void record(long nanos) {
+            samples[(int) (count % WINDOW_SIZE)] = nanos;
+            count++;
+            if (count >= MIN_SAMPLES && (count % RECOMPUTE_INTERVAL == 0 || cachedP95 < 0)) {
+                int size = (int) Math.min(count, WINDOW_SIZE);
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                cachedP95 = sorted[Math.min(size - 1, (int) Math.ceil(size * 0.95) - 1)];
+            }
+        }
+
+        long percentile95() {
+            return cachedP95;
+        }
+    }
+}
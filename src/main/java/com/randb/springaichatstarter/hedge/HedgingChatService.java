@@ -0,0 +1,172 @@
+package com.randb.springaichatstarter.hedge;
+
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import org.springframework.util.StringUtils;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 带对冲请求的聊天服务
+ * 主调用在对冲延迟内没有返回首个响应（流式为首个片段）时，在预算允许的情况下向备用后端发起第二次调用，
+ * 先返回的一方胜出，另一方的订阅被取消。主调用在备用调用发起之前出错时立即返回错误，不再等到对冲延迟。
+ * 带会话ID的请求会写入对话记忆，不做对冲。
+ * @Date: 2025-08-30
+ * @Author: randb
+ */
+public class HedgingChatService implements ChatService {
+
+    private final String model;
+    private final ChatService delegate;
+    private final RequestHedger hedger;
+    private final HedgeStats stats;
+
+    HedgingChatService(String model, ChatService delegate, RequestHedger hedger, HedgeStats stats) {
+        this.model = model;
+        this.delegate = delegate;
+        this.hedger = hedger;
+        this.stats = stats;
+    }
+
+    @Override
+    public Flux<ChatResponse> streamReply(ChatRequest request) {
+        if (!isHedgeable(request)) {
+            return delegate.streamReply(request);
+        }
+        return Flux.defer(() -> {
+            stats.onRequest();
+            long start = System.nanoTime();
+            AtomicBoolean sampled = new AtomicBoolean();
+            AtomicBoolean settled = new AtomicBoolean();
+            Sinks.One<Boolean> primaryFailed = Sinks.one();
+            Flux<ChatResponse> primary = delegate.streamReply(request)
+                    .doOnError(e -> primaryFailed.tryEmitValue(true))
+                    .doOnNext(response -> {
+                        if (!settled.get() && settled.compareAndSet(false, true) && sampled.compareAndSet(false, true)) {
+                            stats.recordLatency(true, System.nanoTime() - start);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (sampled.compareAndSet(false, true)) {
+                            stats.recordLatency(true, System.nanoTime() - start);
+                        }
+                    });
+            Flux<ChatResponse> backup = hedgeDelay(true, primaryFailed)
+                    .flatMapMany(tick -> {
+                        if (!stats.tryStartHedge()) {
+                            return Flux.empty();
+                        }
+                        return hedger.backupFor(model, delegate).streamReply(request)
+                                .filter(HedgingChatService::isAccepted)
+                                .doOnNext(response -> {
+                                    if (!settled.get() && settled.compareAndSet(false, true)) {
+                                        stats.onBackupWin();
+                                    }
+                                });
+                    });
+            return Flux.firstWithValue(primary, backup).onErrorMap(HedgingChatService::unwrap);
+        });
+    }
+
+    @Override
+    public ChatResponse syncReply(ChatRequest request) {
+        if (!isHedgeable(request)) {
+            return delegate.syncReply(request);
+        }
+        // 两路阻塞调用都放到弹性线程池上，调用线程只等待胜出的结果
+        return hedge(Mono.fromCallable(() -> delegate.syncReply(request)).subscribeOn(Schedulers.boundedElastic()),
+                backup -> Mono.fromCallable(() -> backup.syncReply(request)).subscribeOn(Schedulers.boundedElastic()))
+                .block();
+    }
+
+    @Override
+    public Mono<ChatResponse> reply(ChatRequest request) {
+        if (!isHedgeable(request)) {
+            return delegate.reply(request);
+        }
+        return hedge(delegate.reply(request), backup -> backup.reply(request));
+    }
+
+    private Mono<ChatResponse> hedge(Mono<ChatResponse> primaryCall,
+                                     Function<ChatService, Mono<ChatResponse>> backupCall) {
+        return Mono.defer(() -> {
+            stats.onRequest();
+            long start = System.nanoTime();
+            AtomicBoolean sampled = new AtomicBoolean();
+            AtomicBoolean settled = new AtomicBoolean();
+            Sinks.One<Boolean> primaryFailed = Sinks.one();
+            Mono<ChatResponse> primary = primaryCall
+                    .doOnError(e -> primaryFailed.tryEmitValue(true))
+                    .doOnNext(response -> {
+                        settled.compareAndSet(false, true);
+                        if (sampled.compareAndSet(false, true)) {
+                            stats.recordLatency(false, System.nanoTime() - start);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (sampled.compareAndSet(false, true)) {
+                            stats.recordLatency(false, System.nanoTime() - start);
+                        }
+                    });
+            Mono<ChatResponse> backup = hedgeDelay(false, primaryFailed)
+                    .flatMap(tick -> {
+                        if (!stats.tryStartHedge()) {
+                            return Mono.empty();
+                        }
+                        return backupCall.apply(hedger.backupFor(model, delegate))
+                                .filter(HedgingChatService::isAccepted)
+                                .doOnNext(response -> {
+                                    if (settled.compareAndSet(false, true)) {
+                                        stats.onBackupWin();
+                                    }
+                                });
+                    });
+            return Mono.firstWithValue(primary, backup).onErrorMap(HedgingChatService::unwrap);
+        });
+    }
+
+    /**
+     * 对冲延迟；主调用在延迟到期前出错时提前结束且不发出值，备用调用不再发起，
+     * firstWithValue随即以主调用的错误结束
+     */
+    private Mono<Long> hedgeDelay(boolean streaming, Sinks.One<Boolean> primaryFailed) {
+        return Mono.delay(stats.hedgeDelay(streaming)).takeUntilOther(primaryFailed.asMono());
+    }
+
+    /**
+     * 备用模型的并发限制拒绝时不算对冲结果，继续等待主调用
+     */
+    private static boolean isAccepted(ChatResponse response) {
+        return !"rejected".equals(response.getType());
+    }
+
+    /**
+     * 两路都失败时firstWithValue抛出NoSuchElementException，还原为主调用的原始异常
+     */
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof NoSuchElementException && error.getCause() != null) {
+            List<Throwable> errors = Exceptions.unwrapMultiple(error.getCause());
+            if (!errors.isEmpty()) {
+                return errors.get(0);
+            }
+        }
+        return error;
+    }
+
+    private static boolean isHedgeable(ChatRequest request) {
+        return !StringUtils.hasText(request.getSessionId());
+    }
+
+    public ChatService getDelegate() {
+        return delegate;
+    }
+}
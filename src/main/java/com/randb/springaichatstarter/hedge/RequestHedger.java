@@ -0,0 +1,128 @@
+package com.randb.springaichatstarter.hedge;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.ChatServiceDecorator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 对冲请求
+ * 主调用超过对冲延迟（固定值或观测到的p95）仍未返回时，向备用后端（默认同一模型，可配置为其他已注册模型）
+ * 再发一次请求，取先返回的结果。每个请求按maxHedgeRatio累积对冲预算，预算耗尽时不再对冲，避免成倍消耗配额。
+ * 位于并发限制（400）之外：备用调用经备用模型的并发限制取得自己的许可，不会一个许可对应两次模型调用；
+ * 同样受断路器、重试等内层装饰器保护。备用模型拒绝（rejected）时不对冲，继续等待主调用。
+ * @Date: 2025-08-30
+ * @Author: randb
+ */
+@Slf4j
+public class RequestHedger implements ChatServiceDecorator, MeterBinder {
+
+    /**
+     * 装饰器顺序，位于并发限制（400）之外、在途请求合并（500）之内
+     */
+    public static final int ORDER = 450;
+
+    private final SpringAiChatProperties.HedgingProperties properties;
+    private final Map<String, HedgeStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 模型名称 -> 对冲层以内的服务（含并发限制），备用调用直接使用，不会再次触发对冲
+     */
+    private final Map<String, ChatService> backends = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    public RequestHedger(SpringAiChatProperties.HedgingProperties properties) {
+        this.properties = properties;
+        log.info("对冲请求已启用: delay={}, maxHedgeRatio={}, budgetCapacity={}, backups={}",
+                properties.getDelay() != null ? properties.getDelay() : "p95", properties.getMaxHedgeRatio(),
+                properties.getBudgetCapacity(), properties.getBackups());
+    }
+
+    @Override
+    public ChatService decorate(String model, ChatService delegate) {
+        backends.put(model, delegate);
+        return new HedgingChatService(model, delegate, this, stats(model));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * 模型的备用后端，未配置或配置的模型未注册时使用同一模型
+     */
+    ChatService backupFor(String model, ChatService self) {
+        String backup = properties.getBackups().get(model);
+        if (backup == null) {
+            return self;
+        }
+        ChatService service = backends.get(backup.toLowerCase(Locale.ROOT));
+        return service != null ? service : self;
+    }
+
+    /**
+     * 获取模型的对冲统计，路由表刷新重新包装时沿用已有的延迟窗口和预算
+     */
+    public HedgeStats stats(String model) {
+        return stats.computeIfAbsent(model, name -> {
+            HedgeStats modelStats = new HedgeStats(name, properties);
+            MeterRegistry current = registry;
+            if (current != null) {
+                register(current, modelStats);
+            }
+            return modelStats;
+        });
+    }
+
+    public Collection<HedgeStats> getStats() {
+        return stats.values();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        stats.values().forEach(modelStats -> register(registry, modelStats));
+    }
+
+    private static void register(MeterRegistry registry, HedgeStats stats) {
+        String model = stats.getModel();
+        FunctionCounter.builder("spring.ai.chat.hedging.requests", stats, HedgeStats::getRequestCount)
+                .description("可对冲的请求数")
+                .tag("model", model)
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.hedging.hedges", stats, HedgeStats::getHedgeCount)
+                .description("发起的对冲调用数")
+                .tag("model", model)
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.hedging.wins", stats, HedgeStats::getBackupWinCount)
+                .description("备用调用先返回的次数")
+                .tag("model", model)
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.hedging.budget.exhausted", stats, HedgeStats::getBudgetExhaustedCount)
+                .description("因预算耗尽未发起对冲的次数")
+                .tag("model", model)
+                .register(registry);
+        Gauge.builder("spring.ai.chat.hedging.rate", stats, HedgeStats::getHedgeRate)
+                .description("发起对冲的请求占比")
+                .tag("model", model)
+                .register(registry);
+        Gauge.builder("spring.ai.chat.hedging.win.ratio", stats, HedgeStats::getWinRatio)
+                .description("对冲调用中备用调用胜出的占比")
+                .tag("model", model)
+                .register(registry);
+        Gauge.builder("spring.ai.chat.hedging.budget.remaining", stats, HedgeStats::getRemainingBudget)
+                .description("剩余的对冲预算")
+                .tag("model", model)
+                .register(registry);
+    }
+}
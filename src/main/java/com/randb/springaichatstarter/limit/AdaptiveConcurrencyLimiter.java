@@ -0,0 +1,96 @@
+package com.randb.springaichatstarter.limit;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.ChatServiceDecorator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按模型的自适应并发限制
+ * 每个模型独立维护一个ModelLimiter，根据观测到的延迟调整在途请求上限；
+ * 超过上限的请求排队等待，队列已满或等待超时则返回rejected类型的ChatResponse。
+ * 作为ChatServiceDecorator位于缓存、在途请求合并和对冲之内，命中缓存或被合并的请求不占用并发许可，
+ * 对冲发出的备用调用和主调用各占一个许可。
+ * @Date: 2025-08-28
+ * @Author: randb
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter implements ChatServiceDecorator, MeterBinder {
+
+    /**
+     * 装饰器顺序，位于对冲（450）和在途请求合并（500）之内
+     */
+    public static final int ORDER = 400;
+
+    private final SpringAiChatProperties.LimiterProperties properties;
+    private final Map<String, ModelLimiter> limiters = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    public AdaptiveConcurrencyLimiter(SpringAiChatProperties.LimiterProperties properties) {
+        this.properties = properties;
+        log.info("自适应并发限制已启用: initialLimit={}, minLimit={}, maxLimit={}, maxQueueSize={}, maxWait={}",
+                properties.getInitialLimit(), properties.getMinLimit(), properties.getMaxLimit(),
+                properties.getMaxQueueSize(), properties.getMaxWait());
+    }
+
+    @Override
+    public ChatService decorate(String model, ChatService delegate) {
+        return new ConcurrencyLimitedChatService(delegate, limiter(model));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * 获取模型的限制器，路由表刷新重新包装时沿用已有的限制器，保留已学习到的上限
+     */
+    public ModelLimiter limiter(String model) {
+        return limiters.computeIfAbsent(model, name -> {
+            ModelLimiter limiter = new ModelLimiter(name, properties);
+            MeterRegistry current = registry;
+            if (current != null) {
+                register(current, limiter);
+            }
+            return limiter;
+        });
+    }
+
+    public Collection<ModelLimiter> getLimiters() {
+        return limiters.values();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        limiters.values().forEach(limiter -> register(registry, limiter));
+    }
+
+    private static void register(MeterRegistry registry, ModelLimiter limiter) {
+        Gauge.builder("spring.ai.chat.limiter.limit", limiter, ModelLimiter::getLimit)
+                .description("模型当前的并发上限")
+                .tag("model", limiter.getModel())
+                .register(registry);
+        Gauge.builder("spring.ai.chat.limiter.inflight", limiter, ModelLimiter::getInFlight)
+                .description("模型当前的在途请求数")
+                .tag("model", limiter.getModel())
+                .register(registry);
+        Gauge.builder("spring.ai.chat.limiter.queued", limiter, ModelLimiter::getQueued)
+                .description("等待并发许可的请求数")
+                .tag("model", limiter.getModel())
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.limiter.rejected", limiter, ModelLimiter::getRejectedCount)
+                .description("因超过并发上限被拒绝的请求数")
+                .tag("model", limiter.getModel())
+                .register(registry);
+    }
+}
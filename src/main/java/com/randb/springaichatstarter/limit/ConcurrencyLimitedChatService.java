@@ -0,0 +1,108 @@
+package com.randb.springaichatstarter.limit;
+
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 带并发限制的聊天服务
+ * 每次调用先从ModelLimiter获取许可，调用结束（完成、出错、取消）时释放；
+ * 拿不到许可时返回rejected类型的ChatResponse而不是抛出异常，传输层按普通响应下发。
+ * @Date: 2025-08-28
+ * @Author: randb
+ */
+public class ConcurrencyLimitedChatService implements ChatService {
+
+    private final ChatService delegate;
+    private final ModelLimiter limiter;
+
+    ConcurrencyLimitedChatService(ChatService delegate, ModelLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Flux<ChatResponse> streamReply(ChatRequest request) {
+        return acquire()
+                .flatMapMany(permit -> Flux.defer(() -> {
+                    // 流式调用的总耗时取决于输出长度，以首个片段的延迟作为样本
+                    long[] firstChunkNanos = {-1};
+                    return delegate.streamReply(request)
+                            .doOnNext(response -> {
+                                if (firstChunkNanos[0] < 0) {
+                                    firstChunkNanos[0] = System.nanoTime() - permit.getGrantedAt();
+                                }
+                            })
+                            .doOnComplete(() -> {
+                                if (firstChunkNanos[0] < 0) {
+                                    permit.onSuccess(ModelLimiter.LatencyKind.FIRST_CHUNK);
+                                } else {
+                                    permit.onSuccess(ModelLimiter.LatencyKind.FIRST_CHUNK, firstChunkNanos[0]);
+                                }
+                            })
+                            .doOnError(error -> permit.onDropped())
+                            .doFinally(signal -> permit.onIgnore());
+                }))
+                .onErrorResume(LimitExceededException.class,
+                        e -> Flux.just(ChatResponseUtil.createRejected(request, e.getMessage())));
+    }
+
+    @Override
+    public ChatResponse syncReply(ChatRequest request) {
+        ModelLimiter.Permit permit;
+        try {
+            permit = limiter.acquire().get();
+        } catch (ExecutionException e) {
+            return ChatResponseUtil.createRejected(request, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ChatResponseUtil.createRejected(request, "等待并发许可时被中断");
+        }
+        try {
+            ChatResponse response = delegate.syncReply(request);
+            if (response != null && "error".equals(response.getType())) {
+                permit.onDropped();
+            } else {
+                permit.onSuccess(ModelLimiter.LatencyKind.FULL_REPLY);
+            }
+            return response;
+        } catch (RuntimeException e) {
+            permit.onDropped();
+            throw e;
+        }
+    }
+
+    @Override
+    public Mono<ChatResponse> reply(ChatRequest request) {
+        return acquire()
+                .flatMap(permit -> delegate.reply(request)
+                        .doOnNext(response -> {
+                            if ("error".equals(response.getType())) {
+                                permit.onDropped();
+                            } else {
+                                permit.onSuccess(ModelLimiter.LatencyKind.FULL_REPLY);
+                            }
+                        })
+                        .doOnError(error -> permit.onDropped())
+                        .doFinally(signal -> permit.onIgnore()))
+                .onErrorResume(LimitExceededException.class,
+                        e -> Mono.just(ChatResponseUtil.createRejected(request, e.getMessage())));
+    }
+
+    /**
+     * 以Mono方式获取许可，订阅取消时撤销排队；许可在取消的同时到达会被丢弃，此时直接释放
+     */
+    private Mono<ModelLimiter.Permit> acquire() {
+        return Mono.fromFuture(limiter::acquire)
+                .doOnDiscard(ModelLimiter.Permit.class, ModelLimiter.Permit::onIgnore);
+    }
+
+    public ChatService getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,20 @@
+package com.randb.springaichatstarter.limit;
+
+/**
+ * 超过模型并发上限且无法排队时抛出
+ * @Date: 2025-08-28
+ * @Author: randb
+ */
+public class LimitExceededException extends RuntimeException {
+
+    private final String model;
+
+    public LimitExceededException(String model, String message) {
+        super(message);
+        this.model = model;
+    }
+
+    public String getModel() {
+        return model;
+    }
+}
@@ -0,0 +1,240 @@
+package com.randb.springaichatstarter.limit;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个模型的自适应并发限制
+ * 采用梯度算法（Vegas风格）：长期延迟基线与当前延迟的比值作为梯度，延迟升高时收缩上限，
+ * 延迟回落时按 sqrt(limit) 的余量逐步放大；调用失败按固定比例退让。
+ * 超过上限的请求进入有界等待队列，队列已满或等待超时则拒绝。
+ * 流式调用以首个片段的延迟作为样本，完整回复以整体耗时作为样本，两者分别维护基线。
+ * @Date: 2025-08-28
+ * @Author: randb
+ */
+public class ModelLimiter {
+
+    /**
+     * 延迟样本类型
+     */
+    public enum LatencyKind {
+        /** 流式调用的首个片段延迟 */
+        FIRST_CHUNK,
+        /** 完整回复的整体耗时 */
+        FULL_REPLY
+    }
+
+    /** 长期基线的EWMA窗口（样本数） */
+    private static final int BASELINE_WINDOW = 600;
+    /** 前若干个样本用简单平均作为基线 */
+    private static final int BASELINE_WARMUP = 10;
+    /** 新上限的平滑系数 */
+    private static final double SMOOTHING = 0.2;
+    /** 调用失败时的退让比例 */
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String model;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final Duration maxWait;
+    private final double tolerance;
+
+    /** 以下状态都在this锁内读写 */
+    private double estimatedLimit;
+    private int inFlight;
+    private final ArrayDeque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+    private final Baseline[] baselines = {new Baseline(), new Baseline()};
+
+    private final LongAdder rejected = new LongAdder();
+
+    public ModelLimiter(String model, SpringAiChatProperties.LimiterProperties properties) {
+        this.model = model;
+        this.minLimit = Math.max(1, properties.getMinLimit());
+        this.maxLimit = Math.max(minLimit, properties.getMaxLimit());
+        this.maxQueueSize = Math.max(0, properties.getMaxQueueSize());
+        this.maxWait = properties.getMaxWait();
+        this.tolerance = Math.max(1.0, properties.getRttTolerance());
+        this.estimatedLimit = Math.min(maxLimit, Math.max(minLimit, properties.getInitialLimit()));
+    }
+
+    /**
+     * 申请一个许可：未超过上限时立即获得，否则进入等待队列
+     * 队列已满时立即以LimitExceededException失败，等待超过maxWait时同样失败；
+     * 取消返回的future会把它移出等待队列
+     */
+    public CompletableFuture<Permit> acquire() {
+        CompletableFuture<Permit> waiter;
+        synchronized (this) {
+            if (inFlight < getLimit()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit());
+            }
+            if (waiters.size() >= maxQueueSize) {
+                rejected.increment();
+                return CompletableFuture.failedFuture(
+                        new LimitExceededException(model, "并发已达上限 " + getLimit() + "，等待队列已满"));
+            }
+            waiter = new CompletableFuture<>();
+            waiters.addLast(waiter);
+        }
+        // 超时直接以LimitExceededException结束等待者本身，保证取消、超时都能把它移出队列
+        CompletableFuture.delayedExecutor(maxWait.toMillis(), TimeUnit.MILLISECONDS).execute(() ->
+                waiter.completeExceptionally(new LimitExceededException(model,
+                        "等待并发许可超过 " + maxWait.toMillis() + " ms")));
+        waiter.whenComplete((permit, error) -> {
+            if (error != null) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+                if (error instanceof LimitExceededException) {
+                    rejected.increment();
+                }
+            }
+        });
+        return waiter;
+    }
+
+    private void onSample(LatencyKind kind, long latencyNanos, int inFlightAtStart) {
+        synchronized (this) {
+            double sample = latencyNanos;
+            Baseline baseline = baselines[kind.ordinal()];
+            double longRtt = baseline.update(sample);
+            // 延迟明显回落时让基线更快跟上，避免长期停留在偏高的上限
+            if (longRtt / sample > 2) {
+                baseline.value = longRtt * 0.95;
+            }
+            // 请求量不足上限一半时，延迟样本不能说明容量，不调整
+            if (inFlightAtStart < estimatedLimit / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / sample));
+            double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        }
+    }
+
+    private void onDropped() {
+        synchronized (this) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF_RATIO);
+        }
+    }
+
+    private void release() {
+        CompletableFuture<Permit> next;
+        for (;;) {
+            synchronized (this) {
+                next = waiters.peekFirst() != null && inFlight - 1 < getLimit() ? waiters.pollFirst() : null;
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            // 许可直接转交给等待者，inFlight不变；等待者已超时则继续尝试下一个
+            if (next.complete(new Permit())) {
+                return;
+            }
+        }
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public synchronized int getLimit() {
+        return (int) estimatedLimit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 一次调用持有的许可，只能释放一次
+     */
+    public final class Permit {
+        private final long grantedAt = System.nanoTime();
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+            synchronized (ModelLimiter.this) {
+                this.inFlightAtStart = inFlight;
+            }
+        }
+
+        /**
+         * 调用成功，以获得许可到现在的耗时作为样本
+         */
+        public void onSuccess(LatencyKind kind) {
+            onSuccess(kind, System.nanoTime() - grantedAt);
+        }
+
+        /**
+         * 调用成功，使用指定的延迟样本（如流式首个片段的延迟）
+         */
+        public void onSuccess(LatencyKind kind, long latencyNanos) {
+            if (released.compareAndSet(false, true)) {
+                onSample(kind, latencyNanos, inFlightAtStart);
+                release();
+            }
+        }
+
+        /**
+         * 调用失败（超时、限流、服务端错误），上限按比例退让
+         */
+        public void onDropped() {
+            if (released.compareAndSet(false, true)) {
+                ModelLimiter.this.onDropped();
+                release();
+            }
+        }
+
+        /**
+         * 调用被取消，只释放许可不计入样本
+         */
+        public void onIgnore() {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        public long getGrantedAt() {
+            return grantedAt;
+        }
+    }
+
+    /**
+     * 延迟长期基线（EWMA，带预热）
+     */
+    private static final class Baseline {
+        private double value;
+        private int count;
+
+        double update(double sample) {
+            if (count < BASELINE_WARMUP) {
+                count++;
+                value = value + (sample - value) / count;
+            } else {
+                double factor = 2.0 / (BASELINE_WINDOW + 1);
+                value = value * (1 - factor) + sample * factor;
+            }
+            return value;
+        }
+    }
+}
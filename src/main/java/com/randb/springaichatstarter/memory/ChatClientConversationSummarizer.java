@@ -0,0 +1,59 @@
+package com.randb.springaichatstarter.memory;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+
+/**
+ * 使用ChatClient生成对话摘要
+ * 摘要请求不挂对话记忆，只包含摘要指令、已有摘要和需要并入的消息。
+ * @Date: 2025-09-06
+ * @Author: randb
+ */
+public class ChatClientConversationSummarizer implements ConversationSummarizer {
+
+    private final ObjectProvider<ChatClient> chatClient;
+    private final String instruction;
+
+    public ChatClientConversationSummarizer(ObjectProvider<ChatClient> chatClient,
+                                            SpringAiChatProperties.SummaryProperties properties) {
+        this.chatClient = chatClient;
+        this.instruction = properties.getInstruction();
+    }
+
+    @Override
+    public String summarize(String previousSummary, List<Message> messages) {
+        ChatClient client = chatClient.getIfAvailable();
+        if (client == null) {
+            throw new IllegalStateException("ChatClient不可用，无法生成摘要");
+        }
+        String summary = client.prompt()
+                .system(instruction)
+                .user(transcript(previousSummary, messages))
+                .call()
+                .content();
+        if (!StringUtils.hasText(summary)) {
+            throw new IllegalStateException("模型返回了空摘要");
+        }
+        return summary.strip();
+    }
+
+    static String transcript(String previousSummary, List<Message> messages) {
+        StringBuilder transcript = new StringBuilder();
+        if (StringUtils.hasText(previousSummary)) {
+            transcript.append("已有摘要：\n").append(previousSummary).append("\n\n");
+        }
+        transcript.append("对话：\n");
+        for (Message message : messages) {
+            transcript.append(message.getMessageType() == MessageType.USER ? "用户：" : "助手：")
+                    .append(message.getText())
+                    .append('\n');
+        }
+        return transcript.toString();
+    }
+}
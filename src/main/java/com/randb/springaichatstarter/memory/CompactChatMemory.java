@@ -0,0 +1,283 @@
+package com.randb.springaichatstarter.memory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.util.TokenEstimator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑的对话记忆
+ * 每个会话只保存一个字节数组（角色 + UTF-8文本依次拼接）以及偏移、token数两个int数组，不保留Message对象。
+ * 单个会话最多保留maxMessages条消息（超出时先丢弃最早的非系统消息，新的系统消息替换旧的），
+ * 所有会话共享一个按字节计权的Caffeine缓存，超出总容量后按W-TinyLFU淘汰不活跃的会话。
+ * 只保存消息的角色、文本和估算的token数（写入时计算一次，读取时放回元数据），工具调用、其他元数据、媒体等不保存，
+ * 工具响应消息不进入记忆。
+ * @Date: 2025-09-02
+ * @Author: randb
+ */
+@Slf4j
+public class CompactChatMemory implements ChatMemory, MeterBinder {
+
+    /**
+     * 每个会话的固定开销估算（缓存节点、Conversation对象、数组头等）
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final Cache<String, Conversation> conversations;
+    private final int maxMessages;
+
+    public CompactChatMemory(SpringAiChatProperties.MemoryProperties properties) {
+        Assert.isTrue(properties.getMaxMessages() > 0, "maxMessages必须大于0");
+        this.maxMessages = properties.getMaxMessages();
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxWeight().toBytes())
+                .recordStats();
+        Duration idleTimeout = properties.getIdleTimeout();
+        if (idleTimeout != null && !idleTimeout.isZero() && !idleTimeout.isNegative()) {
+            builder.expireAfterAccess(idleTimeout);
+        }
+        this.conversations = builder
+                .weigher((String conversationId, Conversation conversation) -> conversation.weigh(conversationId))
+                .build();
+        log.info("对话记忆已启用: maxMessages={}, maxWeight={}, idleTimeout={}",
+                properties.getMaxMessages(), properties.getMaxWeight(), properties.getIdleTimeout());
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId不能为空");
+        Assert.notNull(messages, "messages不能为null");
+        List<byte[]> encoded = new ArrayList<>(messages.size());
+        int[] tokens = new int[messages.size()];
+        for (Message message : messages) {
+            byte[] entry = encode(message);
+            if (entry != null) {
+                tokens[encoded.size()] = TokenEstimator.count(message);
+                encoded.add(entry);
+            }
+        }
+        if (encoded.isEmpty()) {
+            return;
+        }
+        // compute保证同一会话的并发写入串行执行，并在写入后重新计权
+        conversations.asMap().compute(conversationId, (id, existing) ->
+                (existing != null ? existing : Conversation.EMPTY).append(encoded, tokens, maxMessages));
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Assert.hasText(conversationId, "conversationId不能为空");
+        Conversation conversation = conversations.getIfPresent(conversationId);
+        return conversation != null ? conversation.decode() : List.of();
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Assert.hasText(conversationId, "conversationId不能为空");
+        conversations.invalidate(conversationId);
+    }
+
+    /**
+     * 立即执行挂起的淘汰、过期等维护操作
+     */
+    public void cleanUp() {
+        conversations.cleanUp();
+    }
+
+    /**
+     * 当前保存的会话数（估算值）
+     */
+    public long estimatedSize() {
+        return conversations.estimatedSize();
+    }
+
+    /**
+     * 当前占用的总权重（估算字节数）
+     */
+    public long weightedSize() {
+        return conversations.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, conversations, "spring.ai.chat.memory");
+        Gauge.builder("spring.ai.chat.memory.weight", this, CompactChatMemory::weightedSize)
+                .description("对话记忆占用的估算字节数")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * 编码为 角色(1字节) + UTF-8文本，不保存的消息类型返回null
+     */
+    static byte[] encode(Message message) {
+        MessageType type = message.getMessageType();
+        if (type == MessageType.TOOL) {
+            return null;
+        }
+        String text = message.getText();
+        byte[] utf8 = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] entry = new byte[utf8.length + 1];
+        entry[0] = (byte) type.ordinal();
+        System.arraycopy(utf8, 0, entry, 1, utf8.length);
+        return entry;
+    }
+
+    private static Message decode(byte role, String text, int tokens) {
+        Map<String, Object> metadata = Map.of(TokenEstimator.METADATA_KEY, tokens);
+        return switch (MessageType.values()[role]) {
+            case SYSTEM -> SystemMessage.builder().text(text).metadata(metadata).build();
+            case ASSISTANT -> new AssistantMessage(text, metadata);
+            default -> UserMessage.builder().text(text).metadata(metadata).build();
+        };
+    }
+
+    /**
+     * 一个会话的消息，不可变；写入时生成新实例替换
+     */
+    static final class Conversation {
+
+        static final Conversation EMPTY = new Conversation(new byte[0], new int[0], new int[0]);
+
+        /**
+         * 所有消息依次拼接，每条消息为 角色(1字节) + UTF-8文本
+         */
+        private final byte[] data;
+
+        /**
+         * 每条消息在data中的起始位置
+         */
+        private final int[] offsets;
+
+        /**
+         * 每条消息估算的token数
+         */
+        private final int[] tokens;
+
+        private Conversation(byte[] data, int[] offsets, int[] tokens) {
+            this.data = data;
+            this.offsets = offsets;
+            this.tokens = tokens;
+        }
+
+        int size() {
+            return offsets.length;
+        }
+
+        private int start(int index) {
+            return offsets[index];
+        }
+
+        private int end(int index) {
+            return index + 1 < offsets.length ? offsets[index + 1] : data.length;
+        }
+
+        private byte role(int index) {
+            return data[offsets[index]];
+        }
+
+        /**
+         * 追加消息并按窗口裁剪，返回新实例
+         */
+        Conversation append(List<byte[]> added, int[] addedTokens, int maxMessages) {
+            int total = offsets.length + added.size();
+            byte[] roles = new byte[total];
+            for (int i = 0; i < offsets.length; i++) {
+                roles[i] = role(i);
+            }
+            boolean newSystem = false;
+            for (int i = 0; i < added.size(); i++) {
+                roles[offsets.length + i] = added.get(i)[0];
+                newSystem |= added.get(i)[0] == MessageType.SYSTEM.ordinal();
+            }
+
+            boolean[] keep = new boolean[total];
+            Arrays.fill(keep, true);
+            int kept = total;
+            byte system = (byte) MessageType.SYSTEM.ordinal();
+            // 有新的系统消息时，旧的系统消息被替换
+            if (newSystem) {
+                for (int i = 0; i < offsets.length; i++) {
+                    if (roles[i] == system) {
+                        keep[i] = false;
+                        kept--;
+                    }
+                }
+            }
+            // 超出窗口时从最早的非系统消息开始丢弃
+            for (int i = 0; i < total && kept > maxMessages; i++) {
+                if (keep[i] && roles[i] != system) {
+                    keep[i] = false;
+                    kept--;
+                }
+            }
+
+            int length = 0;
+            for (int i = 0; i < total; i++) {
+                if (keep[i]) {
+                    length += i < offsets.length ? end(i) - start(i) : added.get(i - offsets.length).length;
+                }
+            }
+            byte[] newData = new byte[length];
+            int[] newOffsets = new int[kept];
+            int[] newTokens = new int[kept];
+            int position = 0;
+            int index = 0;
+            for (int i = 0; i < total; i++) {
+                if (!keep[i]) {
+                    continue;
+                }
+                newOffsets[index] = position;
+                newTokens[index++] = i < offsets.length ? tokens[i] : addedTokens[i - offsets.length];
+                if (i < offsets.length) {
+                    int from = start(i);
+                    int size = end(i) - from;
+                    System.arraycopy(data, from, newData, position, size);
+                    position += size;
+                } else {
+                    byte[] entry = added.get(i - offsets.length);
+                    System.arraycopy(entry, 0, newData, position, entry.length);
+                    position += entry.length;
+                }
+            }
+            return new Conversation(newData, newOffsets, newTokens);
+        }
+
+        List<Message> decode() {
+            List<Message> messages = new ArrayList<>(offsets.length);
+            for (int i = 0; i < offsets.length; i++) {
+                int from = start(i);
+                String text = new String(data, from + 1, end(i) - from - 1, StandardCharsets.UTF_8);
+                messages.add(CompactChatMemory.decode(data[from], text, tokens[i]));
+            }
+            return messages;
+        }
+
+        int weigh(String conversationId) {
+            long weight = (long) data.length + (long) offsets.length * Integer.BYTES * 2
+                    + (long) conversationId.length() * 2 + ENTRY_OVERHEAD;
+            return (int) Math.min(Integer.MAX_VALUE, weight);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.randb.springaichatstarter.memory;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.util.TokenEstimator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 长会话的后台摘要压缩
+ * 会话写入后按会话防抖（debounce内的多次写入只触发一次），到期后在有界线程池中检查估算token数，
+ * 超过triggerTokens时把较早的消息（连同已有摘要）交给ConversationSummarizer生成新摘要，只原样保留最近retainTokens以内的消息。
+ * 摘要以系统消息保存（记忆中已有的系统消息原文保留在摘要之前），三种存储都把系统消息放在窗口之外。
+ * 生成摘要期间请求照常读写原有历史；生成完成后在会话锁内核对历史（期间新写入的消息保留，被清除则放弃），
+ * 先发布压缩后的历史供读取，再替换存储中的内容，读取方要么看到完整的旧历史，要么看到完整的新历史。
+ * 会话锁只在写入存储和替换时持有，不包含模型调用；多节点共享Redis存储时替换只在本节点原子。
+ * @Date: 2025-09-06
+ * @Author: randb
+ */
+@Slf4j
+public class ConversationCompactor implements MeterBinder, AutoCloseable {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final ConversationSummarizer summarizer;
+    private final int triggerTokens;
+    private final int retainTokens;
+    private final long debounceMillis;
+    private final String prefix;
+
+    private final ScheduledExecutorService timer;
+    private final ThreadPoolExecutor workers;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /** 等待或正在压缩的会话 */
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    /** 替换期间对读取可见的压缩后历史 */
+    private final Map<String, List<Message>> published = new ConcurrentHashMap<>();
+    /** 每个锁分段上的清除次数，用于发现压缩期间的清除（同分段其他会话的清除会让本次压缩放弃，下次写入时重试） */
+    private final AtomicLongArray clears = new AtomicLongArray(LOCK_STRIPES);
+
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder summarizedMessages = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    public ConversationCompactor(ConversationSummarizer summarizer, SpringAiChatProperties.SummaryProperties properties) {
+        Assert.isTrue(properties.getTriggerTokens() > properties.getRetainTokens(), "triggerTokens必须大于retainTokens");
+        Assert.isTrue(properties.getConcurrency() > 0, "concurrency必须大于0");
+        Assert.isTrue(properties.getQueueCapacity() > 0, "queueCapacity必须大于0");
+        this.summarizer = summarizer;
+        this.triggerTokens = properties.getTriggerTokens();
+        this.retainTokens = properties.getRetainTokens();
+        this.debounceMillis = properties.getDebounce().toMillis();
+        this.prefix = properties.getPrefix();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-summary-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(properties.getConcurrency(), properties.getConcurrency(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()), runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-summary-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("对话摘要压缩已启用: triggerTokens={}, retainTokens={}, debounce={}, concurrency={}",
+                triggerTokens, retainTokens, properties.getDebounce(), properties.getConcurrency());
+    }
+
+    /**
+     * 返回带后台压缩的对话记忆视图：写入后安排压缩，读取时优先返回正在替换的压缩结果
+     */
+    public ChatMemory view(ChatMemory memory) {
+        return new CompactingChatMemory(memory);
+    }
+
+    /**
+     * 立即检查并压缩会话（不经过防抖和线程池），用于测试和运维
+     * @return 是否完成了压缩
+     */
+    public boolean compact(ChatMemory memory, String conversationId) {
+        int stripe = stripe(conversationId);
+        long clearCount = clears.get(stripe);
+        List<Message> history = memory.get(conversationId);
+        if (total(history) <= triggerTokens) {
+            return false;
+        }
+        Message system = null;
+        List<Message> turns = new ArrayList<>(history.size());
+        for (Message message : history) {
+            if (message.getMessageType() == MessageType.SYSTEM) {
+                system = message;
+            } else {
+                turns.add(message);
+            }
+        }
+        int retainFrom = retainFrom(turns);
+        if (retainFrom == 0) {
+            return false;
+        }
+        List<Message> older = turns.subList(0, retainFrom);
+
+        String systemText = system != null ? system.getText() : null;
+        String base = systemText;
+        String previousSummary = null;
+        int summaryAt = systemText != null ? systemText.indexOf(prefix) : -1;
+        if (summaryAt >= 0) {
+            base = systemText.substring(0, summaryAt).strip();
+            previousSummary = systemText.substring(summaryAt + prefix.length()).strip();
+        }
+        String summary = summarizer.summarize(previousSummary, older);
+        String compactedSystem = (base != null && !base.isEmpty() ? base + "\n\n" : "") + prefix + "\n" + summary;
+
+        synchronized (locks[stripe]) {
+            if (clears.get(stripe) != clearCount) {
+                abandoned.increment();
+                return false;
+            }
+            List<Message> current = nonSystem(memory.get(conversationId));
+            int drop = summarizedStillPresent(turns, retainFrom, current);
+            if (drop < 0) {
+                abandoned.increment();
+                return false;
+            }
+            List<Message> compacted = new ArrayList<>(current.size() - drop + 1);
+            compacted.add(new SystemMessage(compactedSystem));
+            compacted.addAll(current.subList(drop, current.size()));
+            published.put(conversationId, compacted);
+            try {
+                memory.clear(conversationId);
+                memory.add(conversationId, compacted);
+            } finally {
+                published.remove(conversationId);
+            }
+        }
+        compactions.increment();
+        summarizedMessages.add(older.size());
+        log.debug("会话已压缩: conversationId={}, summarized={}, retained={}",
+                conversationId, older.size(), turns.size() - retainFrom);
+        return true;
+    }
+
+    /**
+     * 最近retainTokens以内、从用户消息开始的消息的起始下标
+     */
+    private int retainFrom(List<Message> turns) {
+        int remaining = retainTokens;
+        int from = turns.size();
+        for (int i = turns.size() - 1; i >= 0; i--) {
+            int tokens = TokenEstimator.count(turns.get(i));
+            if (tokens > remaining) {
+                break;
+            }
+            remaining -= tokens;
+            from = i;
+        }
+        while (from < turns.size() && turns.get(from).getMessageType() != MessageType.USER) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * 在当前历史中找出仍然存在的被摘要消息数量
+     * 生成摘要期间只会在末尾追加、窗口从头丢弃，所以当前历史应以快照的某个后缀开头
+     * @return 当前历史开头需要去掉的消息数；快照中的消息都对不上（历史被改写）时返回-1
+     */
+    private static int summarizedStillPresent(List<Message> snapshot, int summarized, List<Message> current) {
+        for (int skipped = 0; skipped < snapshot.size() && !current.isEmpty(); skipped++) {
+            int length = Math.min(snapshot.size() - skipped, current.size());
+            boolean matches = true;
+            for (int i = 0; i < length && matches; i++) {
+                matches = same(snapshot.get(skipped + i), current.get(i));
+            }
+            int drop = Math.max(0, summarized - skipped);
+            if (matches && drop <= current.size()) {
+                return drop;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean same(Message a, Message b) {
+        return a.getMessageType() == b.getMessageType() && Objects.equals(a.getText(), b.getText());
+    }
+
+    private static List<Message> nonSystem(List<Message> history) {
+        List<Message> turns = new ArrayList<>(history.size());
+        for (Message message : history) {
+            if (message.getMessageType() != MessageType.SYSTEM) {
+                turns.add(message);
+            }
+        }
+        return turns;
+    }
+
+    private static int total(List<Message> history) {
+        int total = 0;
+        for (Message message : history) {
+            total += TokenEstimator.count(message);
+        }
+        return total;
+    }
+
+    private static int stripe(String conversationId) {
+        return (conversationId.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES;
+    }
+
+    /**
+     * 安排压缩：等待中的重新计时，正在压缩的在完成后再检查一次
+     */
+    private void schedule(ChatMemory memory, String conversationId) {
+        pending.compute(conversationId, (id, existing) -> {
+            Pending task = existing != null ? existing : new Pending(memory);
+            if (task.running) {
+                task.dirty = true;
+                return task;
+            }
+            if (task.timer != null) {
+                task.timer.cancel(false);
+            }
+            long version = ++task.version;
+            task.timer = timer.schedule(() -> dispatch(id, task, version), debounceMillis, TimeUnit.MILLISECONDS);
+            return task;
+        });
+    }
+
+    private void dispatch(String conversationId, Pending task, long version) {
+        boolean[] start = new boolean[1];
+        pending.computeIfPresent(conversationId, (id, current) -> {
+            if (current == task && task.version == version && !task.running) {
+                task.running = true;
+                start[0] = true;
+            }
+            return current;
+        });
+        if (!start[0]) {
+            return;
+        }
+        try {
+            workers.execute(() -> run(conversationId, task));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            pending.remove(conversationId, task);
+            log.debug("压缩队列已满，放弃本次压缩: conversationId={}", conversationId);
+        }
+    }
+
+    private void run(String conversationId, Pending task) {
+        try {
+            compact(task.memory, conversationId);
+        } catch (Exception e) {
+            failures.increment();
+            log.warn("会话压缩失败，保留原历史: conversationId={}, error={}", conversationId, e.toString());
+        } finally {
+            pending.compute(conversationId, (id, current) -> {
+                if (current != task) {
+                    return current;
+                }
+                task.running = false;
+                if (!task.dirty) {
+                    return null;
+                }
+                task.dirty = false;
+                long version = ++task.version;
+                task.timer = timer.schedule(() -> dispatch(id, task, version), debounceMillis, TimeUnit.MILLISECONDS);
+                return task;
+            });
+        }
+    }
+
+    /**
+     * 等待或正在压缩的会话数
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getAbandonedCount() {
+        return abandoned.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("spring.ai.chat.memory.summary.compactions", compactions, LongAdder::sum)
+                .description("完成的会话摘要压缩次数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.summary.messages", summarizedMessages, LongAdder::sum)
+                .description("并入摘要的消息数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.summary.failures", failures, LongAdder::sum)
+                .description("生成摘要失败的次数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.summary.rejected", rejected, LongAdder::sum)
+                .description("压缩队列已满放弃的次数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.summary.abandoned", abandoned, LongAdder::sum)
+                .description("摘要完成时会话已被清除或改写而放弃的次数")
+                .register(registry);
+        Gauge.builder("spring.ai.chat.memory.summary.pending", pending, Map::size)
+                .description("等待或正在压缩的会话数")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * 会话的压缩安排，字段只在pending.compute内修改
+     */
+    private static final class Pending {
+        final ChatMemory memory;
+        ScheduledFuture<?> timer;
+        long version;
+        boolean running;
+        boolean dirty;
+
+        Pending(ChatMemory memory) {
+            this.memory = memory;
+        }
+    }
+
+    private final class CompactingChatMemory implements ChatMemory {
+
+        private final ChatMemory delegate;
+
+        CompactingChatMemory(ChatMemory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void add(String conversationId, List<Message> messages) {
+            synchronized (locks[stripe(conversationId)]) {
+                delegate.add(conversationId, messages);
+            }
+            schedule(delegate, conversationId);
+        }
+
+        @Override
+        public List<Message> get(String conversationId) {
+            List<Message> compacted = published.get(conversationId);
+            return compacted != null ? compacted : delegate.get(conversationId);
+        }
+
+        @Override
+        public void clear(String conversationId) {
+            int stripe = stripe(conversationId);
+            synchronized (locks[stripe]) {
+                clears.incrementAndGet(stripe);
+                delegate.clear(conversationId);
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.randb.springaichatstarter.memory;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ModelRoutingTable;
+import com.randb.springaichatstarter.util.TokenEstimator;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按token预算组装对话上下文
+ * 历史消息按模型的token预算截取：最新的系统消息总是保留，其余消息从最新往前选，放不下时停止（不跳过再选更早的，
+ * 保持上下文连续）；截取后的第一条不是用户消息时继续去掉，避免回答缺少对应的问题。结果按原来的先后顺序返回。
+ * token数使用TokenEstimator估算，并缓存在消息元数据中。
+ * 按模型的预算与路由表一样按规范化的名称（去空白、小写）查找，别名使用目标模型的预算（别名单独配置时优先）。
+ * @Date: 2025-09-05
+ * @Author: randb
+ */
+public class ConversationContextAssembler {
+
+    private final int defaultBudget;
+    private final Map<String, Integer> modelBudgets;
+
+    public ConversationContextAssembler(SpringAiChatProperties.MemoryProperties properties) {
+        this(properties, Map.of());
+    }
+
+    /**
+     * @param properties 对话记忆配置
+     * @param modelAliases 模型别名（别名 -> 模型名称），与路由表使用同一份配置
+     */
+    public ConversationContextAssembler(SpringAiChatProperties.MemoryProperties properties, Map<String, String> modelAliases) {
+        this.defaultBudget = properties.getContextTokens();
+        Map<String, Integer> budgets = new HashMap<>();
+        properties.getModelContextTokens().forEach((model, budget) -> {
+            if (model != null && budget != null) {
+                budgets.put(ModelRoutingTable.normalize(model), budget);
+            }
+        });
+        if (modelAliases != null) {
+            modelAliases.forEach((alias, target) -> {
+                if (alias == null || target == null) {
+                    return;
+                }
+                Integer budget = budgets.get(ModelRoutingTable.normalize(target));
+                if (budget != null) {
+                    budgets.putIfAbsent(ModelRoutingTable.normalize(alias), budget);
+                }
+            });
+        }
+        this.modelBudgets = Map.copyOf(budgets);
+    }
+
+    /**
+     * 模型的历史消息token预算，未单独配置时使用默认值；0或负数表示不限制
+     */
+    public int budgetFor(String model) {
+        if (model != null) {
+            Integer budget = modelBudgets.get(ModelRoutingTable.normalize(model));
+            if (budget != null) {
+                return budget;
+            }
+        }
+        return defaultBudget;
+    }
+
+    /**
+     * 按预算截取历史消息
+     * @param history 按时间先后排列的历史消息
+     * @param budget token预算，0或负数表示不限制
+     * @return 截取后的消息，系统消息在前
+     */
+    public List<Message> assemble(List<Message> history, int budget) {
+        if (budget <= 0 || history.isEmpty()) {
+            return history;
+        }
+        Message system = null;
+        for (Message message : history) {
+            if (message.getMessageType() == MessageType.SYSTEM) {
+                system = message;
+            }
+        }
+        int remaining = budget - (system != null ? TokenEstimator.count(system) : 0);
+        int from = history.size();
+        for (int i = history.size() - 1; i >= 0; i--) {
+            Message message = history.get(i);
+            if (message.getMessageType() == MessageType.SYSTEM) {
+                continue;
+            }
+            int tokens = TokenEstimator.count(message);
+            if (tokens > remaining) {
+                break;
+            }
+            remaining -= tokens;
+            from = i;
+        }
+        while (from < history.size() && history.get(from).getMessageType() != MessageType.USER) {
+            from++;
+        }
+        List<Message> context = new ArrayList<>(history.size() - from + 1);
+        if (system != null) {
+            context.add(system);
+        }
+        for (int i = from; i < history.size(); i++) {
+            Message message = history.get(i);
+            if (message.getMessageType() != MessageType.SYSTEM) {
+                context.add(message);
+            }
+        }
+        return context;
+    }
+
+    /**
+     * 返回按模型预算截取历史消息的对话记忆视图，写入和清除直接转给原对话记忆
+     */
+    public ChatMemory view(ChatMemory memory, String model) {
+        int budget = budgetFor(model);
+        return budget <= 0 ? memory : new BudgetedChatMemory(memory, budget);
+    }
+
+    private final class BudgetedChatMemory implements ChatMemory {
+
+        private final ChatMemory delegate;
+        private final int budget;
+
+        BudgetedChatMemory(ChatMemory delegate, int budget) {
+            this.delegate = delegate;
+            this.budget = budget;
+        }
+
+        @Override
+        public void add(String conversationId, List<Message> messages) {
+            delegate.add(conversationId, messages);
+        }
+
+        @Override
+        public List<Message> get(String conversationId) {
+            return assemble(delegate.get(conversationId), budget);
+        }
+
+        @Override
+        public void clear(String conversationId) {
+            delegate.clear(conversationId);
+        }
+    }
+}
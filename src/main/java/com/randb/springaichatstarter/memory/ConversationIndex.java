@@ -0,0 +1,150 @@
+package com.randb.springaichatstarter.memory;
+
+import java.util.Arrays;
+
+/**
+ * 一个会话在日志中的位置索引
+ * 保存窗口内非系统消息的位置（按序号升序）和最新一条系统消息的位置；位置为 段号 << 32 | 段内偏移。
+ * 修改只在日志写锁内进行，读取通过snapshot在同一把对象锁上拿到一致的副本。
+ * 启动恢复时记录的顺序不一定与序号一致（压缩会把旧记录搬到新段），所以插入按序号排序，并记住清除点。
+ * @Date: 2025-09-04
+ * @Author: randb
+ */
+final class ConversationIndex {
+
+    static final long NONE = -1;
+
+    private final long[] positions;
+    private final long[] sequences;
+    private int count;
+    private long systemPosition = NONE;
+    private long systemSequence = NONE;
+    private long clearedSequence = NONE;
+
+    ConversationIndex(int maxMessages) {
+        this.positions = new long[maxMessages];
+        this.sequences = new long[maxMessages];
+    }
+
+    /**
+     * 加入一条非系统消息
+     * @return 被挤出窗口的位置；新消息本身不进入窗口时返回position；没有挤出时返回NONE
+     */
+    synchronized long insert(long sequence, long position) {
+        if (sequence <= clearedSequence) {
+            return position;
+        }
+        long evicted = NONE;
+        if (count == positions.length) {
+            if (sequence < sequences[0]) {
+                return position;
+            }
+            evicted = positions[0];
+            System.arraycopy(positions, 1, positions, 0, count - 1);
+            System.arraycopy(sequences, 1, sequences, 0, count - 1);
+            count--;
+        }
+        int index = count;
+        while (index > 0 && sequences[index - 1] > sequence) {
+            index--;
+        }
+        System.arraycopy(positions, index, positions, index + 1, count - index);
+        System.arraycopy(sequences, index, sequences, index + 1, count - index);
+        positions[index] = position;
+        sequences[index] = sequence;
+        count++;
+        return evicted;
+    }
+
+    /**
+     * 设置系统消息，序号更大的替换旧的
+     * @return 被替换的位置；新消息本身被忽略时返回position；原来没有时返回NONE
+     */
+    synchronized long setSystem(long sequence, long position) {
+        if (sequence <= clearedSequence || sequence < systemSequence) {
+            return position;
+        }
+        long previous = systemPosition;
+        systemPosition = position;
+        systemSequence = sequence;
+        return previous;
+    }
+
+    /**
+     * 清除序号不大于sequence的所有消息（恢复时遇到清除记录）
+     * @return 被清除的位置
+     */
+    synchronized long[] clear(long sequence) {
+        clearedSequence = Math.max(clearedSequence, sequence);
+        int kept = 0;
+        long[] removed = new long[count + 1];
+        int removedCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (sequences[i] <= sequence) {
+                removed[removedCount++] = positions[i];
+            } else {
+                positions[kept] = positions[i];
+                sequences[kept] = sequences[i];
+                kept++;
+            }
+        }
+        count = kept;
+        if (systemPosition != NONE && systemSequence <= sequence) {
+            removed[removedCount++] = systemPosition;
+            systemPosition = NONE;
+            systemSequence = NONE;
+        }
+        return Arrays.copyOf(removed, removedCount);
+    }
+
+    /**
+     * 压缩时把记录从旧位置搬到新位置
+     * @return 旧位置仍被引用并已替换时返回true
+     */
+    synchronized boolean relocate(long from, long to) {
+        if (systemPosition == from) {
+            systemPosition = to;
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            if (positions[i] == from) {
+                positions[i] = to;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 位置是否仍被引用
+     */
+    synchronized boolean contains(long position) {
+        if (systemPosition == position) {
+            return true;
+        }
+        for (int i = 0; i < count; i++) {
+            if (positions[i] == position) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 系统消息（如果有）在前，之后按序号排列的位置
+     */
+    synchronized long[] snapshot() {
+        boolean hasSystem = systemPosition != NONE;
+        long[] snapshot = new long[count + (hasSystem ? 1 : 0)];
+        int offset = 0;
+        if (hasSystem) {
+            snapshot[offset++] = systemPosition;
+        }
+        System.arraycopy(positions, 0, snapshot, offset, count);
+        return snapshot;
+    }
+
+    synchronized boolean isEmpty() {
+        return count == 0 && systemPosition == NONE;
+    }
+}
@@ -0,0 +1,23 @@
+package com.randb.springaichatstarter.memory;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 对话摘要生成
+ * 在后台压缩线程中调用，可以阻塞；抛出异常时本次压缩放弃，会话保持原样。
+ * @Date: 2025-09-06
+ * @Author: randb
+ */
+@FunctionalInterface
+public interface ConversationSummarizer {
+
+    /**
+     * 生成摘要
+     * @param previousSummary 已有的摘要，没有时为null
+     * @param messages 需要并入摘要的消息，按时间先后排列
+     * @return 合并后的新摘要
+     */
+    String summarize(String previousSummary, List<Message> messages);
+}
@@ -0,0 +1,102 @@
+package com.randb.springaichatstarter.memory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话日志的一个段文件
+ * 创建时按固定大小映射（文件预先扩展并以0填充，长度为0的记录即数据末尾），映射建立后关闭文件通道，
+ * 映射在缓冲区被回收前一直有效；段被压缩删除后，已经拿到缓冲区的读取仍可正常完成。
+ * writePosition只由持有写锁的线程读写；liveBytes为仍被索引引用的记录字节数，用于挑选压缩对象。
+ * @Date: 2025-09-04
+ * @Author: randb
+ */
+final class LogSegment {
+
+    private final int id;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final AtomicLong liveBytes = new AtomicLong();
+    private int writePosition;
+
+    private LogSegment(int id, Path path, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    /**
+     * 映射段文件，文件不存在时创建，长度不足capacity时扩展
+     */
+    static LogSegment map(Path directory, int id, long capacity) throws IOException {
+        Path path = directory.resolve(fileName(id));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = Math.max(channel.size(), capacity);
+            return new LogSegment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    static String fileName(int id) {
+        return String.format("%010d.log", id);
+    }
+
+    /**
+     * 从文件名解析段号，不是段文件时返回-1
+     */
+    static int parseId(Path file) {
+        String name = file.getFileName().toString();
+        if (name.length() != 14 || !name.endsWith(".log")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(0, 10));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    int getId() {
+        return id;
+    }
+
+    MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    void setWritePosition(int writePosition) {
+        this.writePosition = writePosition;
+    }
+
+    long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    void addLiveBytes(long delta) {
+        liveBytes.addAndGet(delta);
+    }
+
+    /**
+     * 把已写入的内容刷到磁盘
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
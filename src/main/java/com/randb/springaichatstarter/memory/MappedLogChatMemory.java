@@ -0,0 +1,575 @@
+package com.randb.springaichatstarter.memory;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.util.TokenEstimator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 基于追加日志的持久化对话记忆，不依赖数据库
+ * 消息依次追加到内存映射的段文件中，内存里只保存 会话ID -> 窗口内消息位置 的索引；读取时直接从映射内存解码，
+ * 不经过read系统调用。写入即进入页缓存，进程崩溃不丢数据，后台定期force刷盘。
+ * 清除会话写入一条清除记录。后台压缩把存活比例低的旧段中仍被引用的记录搬到当前段后删除旧段；
+ * 每条记录带全局序号，搬动后顺序不变。启动时顺序扫描所有段重建索引（只校验CRC，不解码文本），
+ * 遇到长度为0或校验失败的记录即视为该段末尾（未写完的记录）。
+ * 系统消息单独保存最新一条，不占窗口；只保存角色、文本和写入时估算的token数，读取时放回消息元数据。
+ * <p>
+ * 记录格式：int 正文长度 | int 正文CRC32C | 正文：long 序号, byte 类型（0消息、1清除、2带token数的消息）, byte 角色（U/A/S）,
+ * short 会话ID长度, 会话ID, [int token数，仅类型2], 文本（UTF-8）。类型0是旧版本写入的消息，读取时重新估算token数。
+ * @Date: 2025-09-04
+ * @Author: randb
+ */
+@Slf4j
+public class MappedLogChatMemory implements ChatMemory, MeterBinder, AutoCloseable {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int BODY_FIXED_SIZE = 12;
+    /** 旧版本写入的消息，不带token数 */
+    private static final byte KIND_MESSAGE = 0;
+    private static final byte KIND_CLEAR = 1;
+    private static final byte KIND_MESSAGE_TOKENS = 2;
+    private static final int TOKENS_SIZE = 4;
+    private static final byte ROLE_USER = 'U';
+    private static final byte ROLE_ASSISTANT = 'A';
+    private static final byte ROLE_SYSTEM = 'S';
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxMessages;
+    private final double compactionThreshold;
+
+    private final ConcurrentSkipListMap<Integer, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, ConversationIndex> index = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler;
+
+    /** 当前写入的段，只在写锁内修改 */
+    private volatile LogSegment active;
+    /** 下一条记录的序号，只在写锁内修改 */
+    private long nextSequence;
+    private volatile boolean closed;
+
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder relocatedRecords = new LongAdder();
+    private final long recoveredRecords;
+    private final long recoveryMillis;
+
+    public MappedLogChatMemory(SpringAiChatProperties.MemoryProperties properties) {
+        Assert.isTrue(properties.getMaxMessages() > 0, "maxMessages必须大于0");
+        long segmentBytes = properties.getSegmentSize().toBytes();
+        Assert.isTrue(segmentBytes > HEADER_SIZE + BODY_FIXED_SIZE && segmentBytes <= Integer.MAX_VALUE,
+                "segmentSize必须在1KB到2GB之间");
+        this.directory = Paths.get(properties.getLogDirectory());
+        this.segmentSize = (int) segmentBytes;
+        this.maxMessages = properties.getMaxMessages();
+        this.compactionThreshold = properties.getCompactionThreshold();
+
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            this.recoveredRecords = recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开对话日志失败: " + directory, e);
+        }
+        this.recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-memory-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long flushMillis = properties.getFlushInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        long compactionMillis = properties.getCompactionInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, compactionMillis, compactionMillis, TimeUnit.MILLISECONDS);
+        log.info("对话日志已打开: directory={}, segments={}, conversations={}, recoveredRecords={}, recovery={}ms",
+                directory.toAbsolutePath(), segments.size(), index.size(), recoveredRecords, recoveryMillis);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId不能为空");
+        Assert.notNull(messages, "messages不能为null");
+        byte[] id = conversationId.getBytes(StandardCharsets.UTF_8);
+        Assert.isTrue(id.length <= Short.MAX_VALUE, "conversationId过长");
+        writeLock.lock();
+        try {
+            ensureOpen();
+            for (Message message : messages) {
+                byte role = switch (message.getMessageType()) {
+                    case USER -> ROLE_USER;
+                    case ASSISTANT -> ROLE_ASSISTANT;
+                    case SYSTEM -> ROLE_SYSTEM;
+                    default -> 0;
+                };
+                if (role == 0) {
+                    continue;
+                }
+                String text = message.getText();
+                byte[] content = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+                long sequence = nextSequence++;
+                long position = append(encode(sequence, KIND_MESSAGE_TOKENS, role, id,
+                        TokenEstimator.count(message), content));
+                apply(conversationId, sequence, role, position);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Assert.hasText(conversationId, "conversationId不能为空");
+        while (true) {
+            ConversationIndex conversation = index.get(conversationId);
+            if (conversation == null) {
+                return List.of();
+            }
+            long[] positions = conversation.snapshot();
+            List<Message> messages = new ArrayList<>(positions.length);
+            for (long position : positions) {
+                LogSegment segment = segments.get(segmentId(position));
+                if (segment == null) {
+                    // 读取期间所在的段被压缩删除，记录已搬到新位置，重新读取索引
+                    messages = null;
+                    break;
+                }
+                messages.add(read(segment.buffer(), offset(position)));
+            }
+            if (messages != null) {
+                return messages;
+            }
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Assert.hasText(conversationId, "conversationId不能为空");
+        writeLock.lock();
+        try {
+            ensureOpen();
+            ConversationIndex conversation = index.remove(conversationId);
+            if (conversation == null) {
+                return;
+            }
+            append(encode(nextSequence++, KIND_CLEAR, (byte) 0,
+                    conversationId.getBytes(StandardCharsets.UTF_8), 0, new byte[0]));
+            for (long position : conversation.snapshot()) {
+                release(position);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 把消息位置加入会话索引，并更新各段的存活字节数（写锁内调用）
+     */
+    private void apply(String conversationId, long sequence, byte role, long position) {
+        ConversationIndex conversation = index.computeIfAbsent(conversationId, id -> new ConversationIndex(maxMessages));
+        long released = role == ROLE_SYSTEM
+                ? conversation.setSystem(sequence, position)
+                : conversation.insert(sequence, position);
+        if (released != position) {
+            segments.get(segmentId(position)).addLiveBytes(recordSize(position));
+        }
+        if (released != ConversationIndex.NONE) {
+            release(released);
+        }
+    }
+
+    private void release(long position) {
+        LogSegment segment = segments.get(segmentId(position));
+        if (segment != null) {
+            segment.addLiveBytes(-recordSize(position));
+        }
+    }
+
+    private int recordSize(long position) {
+        LogSegment segment = segments.get(segmentId(position));
+        return HEADER_SIZE + segment.buffer().getInt(offset(position));
+    }
+
+    /**
+     * 追加一条编码好的记录，当前段放不下时切换到新段（写锁内调用）
+     * @return 记录位置
+     */
+    private long append(byte[] record) {
+        if (record.length > segmentSize) {
+            throw new IllegalArgumentException("消息过大，超过段大小: " + record.length + " > " + segmentSize);
+        }
+        if (active.getWritePosition() + record.length > active.capacity()) {
+            roll();
+        }
+        int offset = active.getWritePosition();
+        MappedByteBuffer buffer = active.buffer();
+        // 先写正文和校验值，最后写长度，未写完的记录恢复时长度为0或校验失败
+        buffer.put(offset + 4, record, 4, record.length - 4);
+        buffer.putInt(offset, record.length - HEADER_SIZE);
+        active.setWritePosition(offset + record.length);
+        return position(active.getId(), offset);
+    }
+
+    private void roll() {
+        LogSegment previous = active;
+        try {
+            active = LogSegment.map(directory, previous.getId() + 1, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建对话日志段失败", e);
+        }
+        segments.put(active.getId(), active);
+        previous.force();
+    }
+
+    private static byte[] encode(long sequence, byte kind, byte role, byte[] id, int tokens, byte[] content) {
+        boolean counted = kind == KIND_MESSAGE_TOKENS;
+        int bodyLength = BODY_FIXED_SIZE + id.length + (counted ? TOKENS_SIZE : 0) + content.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+        record.putInt(bodyLength).putInt(0)
+                .putLong(sequence).put(kind).put(role).putShort((short) id.length)
+                .put(id);
+        if (counted) {
+            record.putInt(tokens);
+        }
+        record.put(content);
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), HEADER_SIZE, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    private static Message read(ByteBuffer buffer, int offset) {
+        int bodyLength = buffer.getInt(offset);
+        int body = offset + HEADER_SIZE;
+        byte kind = buffer.get(body + 8);
+        byte role = buffer.get(body + 9);
+        int idLength = buffer.getShort(body + 10);
+        int textOffset = body + BODY_FIXED_SIZE + idLength;
+        if (kind != KIND_MESSAGE_TOKENS) {
+            String content = text(buffer, textOffset, body + bodyLength);
+            return switch (role) {
+                case ROLE_SYSTEM -> new SystemMessage(content);
+                case ROLE_ASSISTANT -> new AssistantMessage(content);
+                default -> new UserMessage(content);
+            };
+        }
+        Map<String, Object> metadata = Map.of(TokenEstimator.METADATA_KEY, buffer.getInt(textOffset));
+        String content = text(buffer, textOffset + TOKENS_SIZE, body + bodyLength);
+        return switch (role) {
+            case ROLE_SYSTEM -> SystemMessage.builder().text(content).metadata(metadata).build();
+            case ROLE_ASSISTANT -> new AssistantMessage(content, metadata);
+            default -> UserMessage.builder().text(content).metadata(metadata).build();
+        };
+    }
+
+    private static String text(ByteBuffer buffer, int from, int to) {
+        byte[] text = new byte[to - from];
+        buffer.get(from, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 扫描所有段重建索引，返回有效记录数
+     */
+    private long recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.mapToInt(LogSegment::parseId).filter(id -> id >= 0).sorted().forEach(ids::add);
+        }
+        long records = 0;
+        long maxSequence = -1;
+        for (int id : ids) {
+            LogSegment segment = LogSegment.map(directory, id, 0);
+            segments.put(id, segment);
+            MappedByteBuffer buffer = segment.buffer();
+            CRC32C crc = new CRC32C();
+            int offset = 0;
+            while (offset + HEADER_SIZE + BODY_FIXED_SIZE <= buffer.capacity()) {
+                int bodyLength = buffer.getInt(offset);
+                if (bodyLength < BODY_FIXED_SIZE || offset + HEADER_SIZE + bodyLength > buffer.capacity()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.slice(offset + HEADER_SIZE, bodyLength));
+                if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                    log.warn("对话日志段 {} 在偏移 {} 处校验失败，之后的内容被忽略", id, offset);
+                    break;
+                }
+                int body = offset + HEADER_SIZE;
+                long sequence = buffer.getLong(body);
+                byte kind = buffer.get(body + 8);
+                byte role = buffer.get(body + 9);
+                int idLength = buffer.getShort(body + 10);
+                byte[] idBytes = new byte[idLength];
+                buffer.get(body + BODY_FIXED_SIZE, idBytes);
+                String conversationId = new String(idBytes, StandardCharsets.UTF_8);
+                long position = position(id, offset);
+                if (kind == KIND_CLEAR) {
+                    ConversationIndex conversation = index.computeIfAbsent(conversationId,
+                            key -> new ConversationIndex(maxMessages));
+                    for (long released : conversation.clear(sequence)) {
+                        release(released);
+                    }
+                } else {
+                    apply(conversationId, sequence, role, position);
+                }
+                maxSequence = Math.max(maxSequence, sequence);
+                records++;
+                offset += HEADER_SIZE + bodyLength;
+            }
+            segment.setWritePosition(offset);
+        }
+        index.values().removeIf(ConversationIndex::isEmpty);
+        nextSequence = maxSequence + 1;
+
+        LogSegment last = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (last == null) {
+            active = LogSegment.map(directory, 0, segmentSize);
+        } else if (last.capacity() < segmentSize) {
+            // 段大小调大后，最后一段按新的大小重新映射，继续写入
+            active = LogSegment.map(directory, last.getId(), segmentSize);
+            active.setWritePosition(last.getWritePosition());
+            active.addLiveBytes(last.getLiveBytes());
+        } else {
+            active = last;
+        }
+        segments.put(active.getId(), active);
+        return records;
+    }
+
+    /**
+     * 压缩存活比例低于阈值的旧段：仍被引用的记录搬到当前段，清除记录在更早的段还存在时保留，然后删除旧段
+     */
+    public void compact() {
+        for (LogSegment segment : segments.values()) {
+            if (closed) {
+                return;
+            }
+            if (segment == active || segment.getId() >= active.getId()) {
+                continue;
+            }
+            int used = segment.getWritePosition();
+            if (used > 0 && (double) segment.getLiveBytes() / used >= compactionThreshold) {
+                continue;
+            }
+            compact(segment);
+        }
+    }
+
+    private void compact(LogSegment segment) {
+        MappedByteBuffer buffer = segment.buffer();
+        int end;
+        writeLock.lock();
+        try {
+            end = segment.getWritePosition();
+        } finally {
+            writeLock.unlock();
+        }
+        int offset = 0;
+        while (offset < end) {
+            int bodyLength = buffer.getInt(offset);
+            int size = HEADER_SIZE + bodyLength;
+            int body = offset + HEADER_SIZE;
+            byte kind = buffer.get(body + 8);
+            byte[] idBytes = new byte[buffer.getShort(body + 10)];
+            buffer.get(body + BODY_FIXED_SIZE, idBytes);
+            String conversationId = new String(idBytes, StandardCharsets.UTF_8);
+            long from = position(segment.getId(), offset);
+            writeLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                ConversationIndex conversation = index.get(conversationId);
+                boolean live = kind != KIND_CLEAR && conversation != null && conversation.contains(from);
+                // 更早的段还在时保留清除记录，否则重启后那些段里的旧消息会重新出现
+                boolean keepTombstone = kind == KIND_CLEAR && segments.firstKey() < segment.getId();
+                if (live || keepTombstone) {
+                    byte[] record = new byte[size];
+                    buffer.get(offset, record);
+                    long to = append(record);
+                    if (live) {
+                        conversation.relocate(from, to);
+                        segments.get(segmentId(to)).addLiveBytes(size);
+                    }
+                    relocatedRecords.increment();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            offset += size;
+        }
+        writeLock.lock();
+        try {
+            active.force();
+            segments.remove(segment.getId());
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            segment.delete();
+        } catch (IOException e) {
+            log.warn("删除对话日志段失败: {}", e.getMessage());
+        }
+        compactions.increment();
+        log.debug("对话日志段 {} 已压缩", segment.getId());
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("压缩对话日志失败", e);
+        }
+    }
+
+    /**
+     * 把当前段刷到磁盘
+     */
+    public void flush() {
+        LogSegment current = active;
+        if (current != null && !closed) {
+            current.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        scheduler.shutdownNow();
+        writeLock.lock();
+        try {
+            closed = true;
+            segments.values().forEach(LogSegment::force);
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("对话日志已关闭: {}", directory.toAbsolutePath());
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("对话日志已关闭");
+        }
+    }
+
+    private static long position(int segmentId, int offset) {
+        return (long) segmentId << 32 | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offset(long position) {
+        return (int) position;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getConversationCount() {
+        return index.size();
+    }
+
+    /**
+     * 所有段已写入的字节数
+     */
+    public long getLogBytes() {
+        long bytes = 0;
+        for (LogSegment segment : segments.values()) {
+            bytes += segment.getWritePosition();
+        }
+        return bytes;
+    }
+
+    /**
+     * 仍被索引引用的字节数
+     */
+    public long getLiveBytes() {
+        long bytes = 0;
+        for (LogSegment segment : segments.values()) {
+            bytes += segment.getLiveBytes();
+        }
+        return bytes;
+    }
+
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    public long getRelocatedRecords() {
+        return relocatedRecords.sum();
+    }
+
+    /**
+     * 启动时恢复的记录数
+     */
+    public long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    /**
+     * 启动恢复耗时
+     */
+    public long getRecoveryMillis() {
+        return recoveryMillis;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("spring.ai.chat.memory.log.segments", this, MappedLogChatMemory::getSegmentCount)
+                .description("对话日志段数")
+                .register(registry);
+        Gauge.builder("spring.ai.chat.memory.log.bytes", this, MappedLogChatMemory::getLogBytes)
+                .description("对话日志已写入的字节数")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("spring.ai.chat.memory.log.live.bytes", this, MappedLogChatMemory::getLiveBytes)
+                .description("对话日志中仍被引用的字节数")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("spring.ai.chat.memory.conversations", this, MappedLogChatMemory::getConversationCount)
+                .description("对话日志中的会话数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.log.compactions", this, MappedLogChatMemory::getCompactionCount)
+                .description("压缩的段数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.log.relocated", this, MappedLogChatMemory::getRelocatedRecords)
+                .description("压缩时搬动的记录数")
+                .register(registry);
+    }
+}
@@ -0,0 +1,272 @@
+package com.randb.springaichatstarter.memory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.util.TokenEstimator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis对话记忆，多个节点共享同一个会话
+ * 非系统消息保存在列表 {prefix}{会话ID} 中，写入时在同一个管道里完成RPUSH、服务端LTRIM裁剪窗口、
+ * 续期和PUBLISH失效通知，一次往返；系统消息单独保存在 {prefix}{会话ID}:system，新的替换旧的，不占窗口。
+ * 每个节点有一个小的近端缓存，收到失效通知时删除对应会话；读取期间收到任何失效通知时不保留读到的结果，
+ * 避免旧数据覆盖通知。Redis不可用时读取返回空历史、写入被丢弃，只记录错误次数，不影响回复本身。
+ * 每条消息带写入时估算的token数，读取时放回消息元数据，组装上下文时不重复估算。
+ * @Date: 2025-09-03
+ * @Author: randb
+ */
+@Slf4j
+public class RedisChatMemory implements ChatMemory, MessageListener, MeterBinder {
+
+    private static final String SYSTEM_SUFFIX = ":system";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+    private final String channel;
+    private final int maxMessages;
+    private final long ttlMillis;
+    private final Cache<String, List<Message>> nearCache;
+
+    /**
+     * 失效通知计数，读取前后不一致时说明读取期间可能有写入，结果不进入近端缓存
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+    private final LongAdder errors = new LongAdder();
+
+    public RedisChatMemory(StringRedisTemplate redisTemplate, SpringAiChatProperties.MemoryProperties properties) {
+        Assert.isTrue(properties.getMaxMessages() > 0, "maxMessages必须大于0");
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = properties.getRedisKeyPrefix();
+        this.channel = properties.getInvalidationChannel();
+        this.maxMessages = properties.getMaxMessages();
+        this.ttlMillis = properties.getRedisTtl().toMillis();
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, properties.getNearCacheSize()))
+                .expireAfterWrite(properties.getNearCacheTtl())
+                .recordStats()
+                .build();
+        log.info("Redis对话记忆已启用: maxMessages={}, keyPrefix={}, ttl={}, nearCacheSize={}",
+                properties.getMaxMessages(), keyPrefix, properties.getRedisTtl(), properties.getNearCacheSize());
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId不能为空");
+        Assert.notNull(messages, "messages不能为null");
+        List<String> entries = new ArrayList<>(messages.size());
+        String system = null;
+        for (Message message : messages) {
+            String entry = encode(message);
+            if (entry == null) {
+                continue;
+            }
+            if (message.getMessageType() == MessageType.SYSTEM) {
+                system = entry;
+            } else {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty() && system == null) {
+            return;
+        }
+        String key = keyPrefix + conversationId;
+        String systemKey = key + SYSTEM_SUFFIX;
+        String systemEntry = system;
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection redis = (StringRedisConnection) connection;
+                if (!entries.isEmpty()) {
+                    redis.rPush(key, entries.toArray(String[]::new));
+                    redis.lTrim(key, -maxMessages, -1);
+                }
+                redis.pExpire(key, ttlMillis);
+                if (systemEntry != null) {
+                    redis.pSetEx(systemKey, ttlMillis, systemEntry);
+                } else {
+                    redis.pExpire(systemKey, ttlMillis);
+                }
+                redis.publish(channel, conversationId);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            errors.increment();
+            log.warn("写入Redis对话记忆失败，本轮消息未保存: conversationId={}, error={}", conversationId, e.getMessage());
+        } finally {
+            invalidate(conversationId);
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        Assert.hasText(conversationId, "conversationId不能为空");
+        List<Message> cached = nearCache.getIfPresent(conversationId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = invalidations.get();
+        String key = keyPrefix + conversationId;
+        List<Object> results;
+        try {
+            results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection redis = (StringRedisConnection) connection;
+                redis.get(key + SYSTEM_SUFFIX);
+                redis.lRange(key, 0, -1);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            errors.increment();
+            log.warn("读取Redis对话记忆失败，按无历史处理: conversationId={}, error={}", conversationId, e.getMessage());
+            return List.of();
+        }
+        List<Message> messages = decode((String) results.get(0), castList(results.get(1)));
+        nearCache.put(conversationId, messages);
+        if (invalidations.get() != generation) {
+            nearCache.invalidate(conversationId);
+        }
+        return messages;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Assert.hasText(conversationId, "conversationId不能为空");
+        String key = keyPrefix + conversationId;
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection redis = (StringRedisConnection) connection;
+                redis.del(key, key + SYSTEM_SUFFIX);
+                redis.publish(channel, conversationId);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            errors.increment();
+            log.warn("清除Redis对话记忆失败: conversationId={}, error={}", conversationId, e.getMessage());
+        } finally {
+            invalidate(conversationId);
+        }
+    }
+
+    /**
+     * 收到其他节点（或本节点）的失效通知
+     */
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        invalidate(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void invalidate(String conversationId) {
+        invalidations.incrementAndGet();
+        nearCache.invalidate(conversationId);
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Redis调用失败的次数
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * 收到或发出的失效通知次数
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, nearCache, "spring.ai.chat.memory.near");
+        FunctionCounter.builder("spring.ai.chat.memory.redis.errors", this, RedisChatMemory::getErrorCount)
+                .description("Redis对话记忆调用失败次数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.invalidations", this, RedisChatMemory::getInvalidationCount)
+                .description("近端缓存失效次数")
+                .register(registry);
+    }
+
+    /**
+     * 编码为 角色(1个小写字母) + token数 + ':' + 文本，不保存的消息类型返回null
+     */
+    static String encode(Message message) {
+        char role = switch (message.getMessageType()) {
+            case USER -> 'u';
+            case ASSISTANT -> 'a';
+            case SYSTEM -> 's';
+            default -> 0;
+        };
+        if (role == 0) {
+            return null;
+        }
+        String text = message.getText();
+        return role + Integer.toString(TokenEstimator.count(message)) + ':' + (text != null ? text : "");
+    }
+
+    /**
+     * 解码一条消息，token数放回元数据；兼容旧版本写入的 角色(1个大写字母) + 文本（不带token数，读取后重新估算）
+     */
+    static Message decode(String entry) {
+        char role = entry.charAt(0);
+        int separator = Character.isLowerCase(role) ? entry.indexOf(':', 1) : -1;
+        if (separator < 0) {
+            String text = entry.substring(1);
+            return switch (role) {
+                case 'S' -> new SystemMessage(text);
+                case 'A' -> new AssistantMessage(text);
+                default -> new UserMessage(text);
+            };
+        }
+        Map<String, Object> metadata = Map.of(TokenEstimator.METADATA_KEY, Integer.parseInt(entry, 1, separator, 10));
+        String text = entry.substring(separator + 1);
+        return switch (role) {
+            case 's' -> SystemMessage.builder().text(text).metadata(metadata).build();
+            case 'a' -> new AssistantMessage(text, metadata);
+            default -> UserMessage.builder().text(text).metadata(metadata).build();
+        };
+    }
+
+    private static List<Message> decode(String system, List<String> entries) {
+        List<Message> messages = new ArrayList<>((system != null ? 1 : 0) + (entries != null ? entries.size() : 0));
+        if (system != null && !system.isEmpty()) {
+            messages.add(decode(system));
+        }
+        if (entries != null) {
+            for (String entry : entries) {
+                if (!entry.isEmpty()) {
+                    messages.add(decode(entry));
+                }
+            }
+        }
+        return List.copyOf(messages);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> castList(Object value) {
+        return (List<String>) value;
+    }
+}
@@ -0,0 +1,145 @@
+package com.randb.springaichatstarter.memory;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * 流式回复的对话记忆写入
+ * 片段依次追加到同一个StringBuilder，流结束后把本轮的用户消息和完整回复一次写入对话记忆，
+ * 写入完成后才向下游发出完成信号，同一会话的下一轮请求能读到本轮内容。写入在boundedElastic上执行，不占用响应流的IO线程。
+ * 流被取消时按partialReply跳过或保存带中断标记的部分回复；出错的流不保存。
+ * 被重试续写的流由续写请求在结束后保存：用户消息是原始问题（不是续写指令），回复是中断前已输出的内容接上续写的输出。
+ * @Date: 2025-09-07
+ * @Author: randb
+ */
+@Slf4j
+public class StreamingReplyRecorder implements MeterBinder {
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    private final SpringAiChatProperties.PartialReply partialReply;
+    private final String partialReplyMarker;
+
+    private final LongAdder saved = new LongAdder();
+    private final LongAdder savedPartial = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public StreamingReplyRecorder(SpringAiChatProperties.MemoryProperties properties) {
+        this.partialReply = properties.getPartialReply();
+        this.partialReplyMarker = properties.getPartialReplyMarker() != null ? properties.getPartialReplyMarker() : "";
+    }
+
+    /**
+     * 包装模型输出的文本流，结束后把本轮问答写入对话记忆
+     * @param contents 模型输出的文本片段
+     * @param memory 对话记忆
+     * @param conversationId 会话ID
+     * @param prompt 本轮的用户消息
+     */
+    public Flux<String> record(Flux<String> contents, ChatMemory memory, String conversationId, String prompt) {
+        return record(contents, memory, conversationId, prompt, UnaryOperator.identity());
+    }
+
+    /**
+     * 包装模型输出的文本流，结束后把本轮问答写入对话记忆
+     * @param contents 模型输出的文本片段
+     * @param memory 对话记忆
+     * @param conversationId 会话ID
+     * @param prompt 本轮的用户消息
+     * @param completeReply 把本次调用输出的内容转换成写入记忆的回复，续写请求用它拼上中断前已输出的部分
+     */
+    public Flux<String> record(Flux<String> contents, ChatMemory memory, String conversationId, String prompt,
+                               UnaryOperator<String> completeReply) {
+        return Flux.defer(() -> {
+            StringBuilder reply = new StringBuilder(INITIAL_CAPACITY);
+            AtomicBoolean finished = new AtomicBoolean();
+            Mono<String> save = Mono.<String>fromRunnable(() -> save(memory, conversationId, prompt,
+                            completeReply.apply(reply.toString()), false))
+                    .subscribeOn(Schedulers.boundedElastic());
+            return contents
+                    .doOnNext(chunk -> {
+                        // 取消可能在其他线程上与片段并发到达
+                        synchronized (reply) {
+                            reply.append(chunk);
+                        }
+                    })
+                    .doOnError(e -> {
+                        finished.set(true);
+                        skipped.increment();
+                    })
+                    .concatWith(Mono.defer(() -> finished.compareAndSet(false, true) ? save : Mono.empty()))
+                    .doOnCancel(() -> {
+                        if (finished.compareAndSet(false, true)) {
+                            cancelled(memory, conversationId, prompt, reply, completeReply);
+                        }
+                    });
+        });
+    }
+
+    private void cancelled(ChatMemory memory, String conversationId, String prompt, StringBuilder reply,
+                           UnaryOperator<String> completeReply) {
+        if (partialReply != SpringAiChatProperties.PartialReply.MARK) {
+            skipped.increment();
+            log.debug("流式回复被取消，不保存本轮问答: conversationId={}", conversationId);
+            return;
+        }
+        String text;
+        synchronized (reply) {
+            text = completeReply.apply(reply.toString()) + partialReplyMarker;
+        }
+        Schedulers.boundedElastic().schedule(() -> save(memory, conversationId, prompt, text, true));
+    }
+
+    private void save(ChatMemory memory, String conversationId, String prompt, String reply, boolean partial) {
+        try {
+            memory.add(conversationId, List.of(new UserMessage(prompt), new AssistantMessage(reply)));
+            (partial ? savedPartial : saved).increment();
+        } catch (Exception e) {
+            failures.increment();
+            log.warn("保存流式回复到对话记忆失败: conversationId={}, error={}", conversationId, e.toString());
+        }
+    }
+
+    public long getSavedCount() {
+        return saved.sum();
+    }
+
+    public long getSavedPartialCount() {
+        return savedPartial.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("spring.ai.chat.memory.stream.saved", saved, LongAdder::sum)
+                .description("写入对话记忆的完整流式回复数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.stream.partial", savedPartial, LongAdder::sum)
+                .description("带中断标记写入对话记忆的部分回复数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.stream.skipped", skipped, LongAdder::sum)
+                .description("因取消或出错未写入对话记忆的流式回复数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.memory.stream.failures", failures, LongAdder::sum)
+                .description("写入对话记忆失败的次数")
+                .register(registry);
+    }
+}
@@ -0,0 +1,182 @@
+package com.randb.springaichatstarter.mq;
+
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ChatRequest/ChatResponse的紧凑二进制编码（application/x-chat-binary）
+ * 字段顺序即schema，不写字段名：
+ * <pre>
+ * 版本(1字节) 类型(1字节: 1请求 2回复)
+ * 请求: 标志位(1字节: stream|skipCache|continuation) requestId userId prompt systemPrompt model sessionId replyTo
+ * 回复: type requestId userId content timestamp(8字节)
+ * 字符串: varint(UTF-8长度+1，0表示null) + UTF-8字节
+ * </pre>
+ * 新增字段只能追加在末尾并提升版本号。解码接受不高于自身版本的消息，旧版本发送方的消息在已读完时
+ * （buffer.hasRemaining()为false）不再读取后面追加的字段，保持默认值；高于自身版本的消息解码失败，所以应先升级接收方
+ * @Date: 2025-09-10
+ * @Author: randb
+ */
+public class BinaryChatPayloadCodec implements ChatPayloadCodec {
+
+    public static final String CONTENT_TYPE = "application/x-chat-binary";
+
+    private static final byte VERSION = 1;
+    private static final byte REQUEST = 1;
+    private static final byte RESPONSE = 2;
+
+    private static final int FLAG_STREAM = 1;
+    private static final int FLAG_SKIP_CACHE = 1 << 1;
+    private static final int FLAG_CONTINUATION = 1 << 2;
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(Object payload) {
+        if (payload instanceof ChatRequest request) {
+            int flags = (request.isStream() ? FLAG_STREAM : 0)
+                    | (request.isSkipCache() ? FLAG_SKIP_CACHE : 0)
+                    | (request.isContinuation() ? FLAG_CONTINUATION : 0);
+            byte[][] fields = utf8(request.getRequestId(), request.getUserId(), request.getPrompt(),
+                    request.getSystemPrompt(), request.getModel(), request.getSessionId(), request.getReplyTo());
+            ByteBuffer buffer = ByteBuffer.allocate(3 + size(fields));
+            buffer.put(VERSION).put(REQUEST).put((byte) flags);
+            write(buffer, fields);
+            return buffer.array();
+        }
+        if (payload instanceof ChatResponse response) {
+            byte[][] fields = utf8(response.getType(), response.getRequestId(), response.getUserId(),
+                    response.getContent());
+            ByteBuffer buffer = ByteBuffer.allocate(2 + size(fields) + Long.BYTES);
+            buffer.put(VERSION).put(RESPONSE);
+            write(buffer, fields);
+            buffer.putLong(response.getTimestamp());
+            return buffer.array();
+        }
+        throw new IllegalArgumentException("不支持的消息体类型: " + (payload != null ? payload.getClass().getName() : null));
+    }
+
+    @Override
+    public <T> T decode(byte[] body, Class<T> type) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        try {
+            byte version = buffer.get();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("不支持的二进制消息体版本: " + version + "（当前版本 " + VERSION + "）");
+            }
+            byte kind = buffer.get();
+            if (type == ChatRequest.class && kind == REQUEST) {
+                return type.cast(readRequest(buffer));
+            }
+            if (type == ChatResponse.class && kind == RESPONSE) {
+                return type.cast(readResponse(buffer));
+            }
+            throw new IOException("消息体类型" + kind + "不能解码为" + type.getSimpleName());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("二进制消息体不完整", e);
+        }
+    }
+
+    private static ChatRequest readRequest(ByteBuffer buffer) throws IOException {
+        int flags = buffer.get();
+        ChatRequest request = new ChatRequest();
+        request.setStream((flags & FLAG_STREAM) != 0);
+        request.setSkipCache((flags & FLAG_SKIP_CACHE) != 0);
+        request.setContinuation((flags & FLAG_CONTINUATION) != 0);
+        request.setRequestId(readString(buffer));
+        request.setUserId(readString(buffer));
+        request.setPrompt(readString(buffer));
+        request.setSystemPrompt(readString(buffer));
+        request.setModel(readString(buffer));
+        request.setSessionId(readString(buffer));
+        request.setReplyTo(readString(buffer));
+        return request;
+    }
+
+    private static ChatResponse readResponse(ByteBuffer buffer) throws IOException {
+        ChatResponse response = new ChatResponse();
+        response.setType(readString(buffer));
+        response.setRequestId(readString(buffer));
+        response.setUserId(readString(buffer));
+        response.setContent(readString(buffer));
+        response.setTimestamp(buffer.getLong());
+        return response;
+    }
+
+    private static byte[][] utf8(String... fields) {
+        byte[][] encoded = new byte[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i] != null ? fields[i].getBytes(StandardCharsets.UTF_8) : null;
+        }
+        return encoded;
+    }
+
+    private static int size(byte[][] fields) {
+        int size = 0;
+        for (byte[] field : fields) {
+            size += field == null ? 1 : varintSize(field.length + 1) + field.length;
+        }
+        return size;
+    }
+
+    private static void write(ByteBuffer buffer, byte[][] fields) {
+        for (byte[] field : fields) {
+            if (field == null) {
+                buffer.put((byte) 0);
+            } else {
+                writeVarint(buffer, field.length + 1);
+                buffer.put(field);
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarint(buffer) - 1;
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("二进制消息体不完整");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("二进制消息体中的长度无效");
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
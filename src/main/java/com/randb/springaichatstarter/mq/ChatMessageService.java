@@ -1,20 +1,40 @@
 package com.randb.springaichatstarter.mq;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
 import com.randb.springaichatstarter.core.ChatModelFactory;
 import com.randb.springaichatstarter.core.ChatService;
 import com.randb.springaichatstarter.dto.ChatRequest;
 import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.ratelimit.RateLimitGuard;
+import com.randb.springaichatstarter.stream.ChunkCoalescer;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
 * @Description: 
@@ -24,24 +44,40 @@ import java.util.UUID;
 @Service
 @Slf4j
 @ConditionalOnProperty(prefix = "spring.ai.chat.rabbitmq", name = "enabled", havingValue = "true")
-public class ChatMessageService {
+public class ChatMessageService implements MeterBinder {
+
+    /**
+     * 聊天请求监听容器工厂的Bean名称
+     */
+    public static final String CONTAINER_FACTORY = "chatRabbitListenerContainerFactory";
+
+    /**
+     * 流式回复帧的序号头，同一请求从0开始递增，最后一帧为结束帧（completed、error等非message类型）
+     */
+    public static final String SEQUENCE_HEADER = "x-chat-seq";
 
     private final RabbitTemplate rabbitTemplate;
     private final ChatModelFactory chatModelFactory;
-    private final ObjectMapper objectMapper;
+    private final ChatPayloadCodecs codecs;
     private final SpringAiChatProperties properties;
     private final ChatResponseReceiver responseReceiver;
+    private final RateLimitGuard rateLimitGuard;
+    private final Map<Channel, Semaphore> inFlightSlots = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder timeouts = new LongAdder();
 
     public ChatMessageService(RabbitTemplate rabbitTemplate, 
                              ChatModelFactory chatModelFactory, 
-                             ObjectMapper objectMapper,
+                             ChatPayloadCodecs codecs,
                              SpringAiChatProperties properties,
-                             ChatResponseReceiver responseReceiver) {
+                             ChatResponseReceiver responseReceiver,
+                             RateLimitGuard rateLimitGuard) {
         this.rabbitTemplate = rabbitTemplate;
         this.chatModelFactory = chatModelFactory;
-        this.objectMapper = objectMapper;
+        this.codecs = codecs;
         this.properties = properties;
         this.responseReceiver = responseReceiver;
+        this.rateLimitGuard = rateLimitGuard;
     }
     
     @PostConstruct
@@ -53,7 +89,8 @@ public class ChatMessageService {
                 properties.getRabbitmq().getReplyQueue(),
                 properties.getRabbitmq().getReplyRoutingKey());
                 
-        log.info("RabbitMQ功能状态: {}", properties.getRabbitmq().isEnabled() ? "已启用" : "已禁用");
+        log.info("RabbitMQ功能状态: {}, 消息体格式: {}", properties.getRabbitmq().isEnabled() ? "已启用" : "已禁用",
+                codecs.getDefault().getContentType());
         if (properties.getRabbitmq().isEnabled()) {
             log.info("RabbitMQ监听器已配置，将监听队列: {}", properties.getRabbitmq().getQueue());
             log.info("回复队列已配置: {}", properties.getRabbitmq().getReplyQueue());
@@ -76,54 +113,233 @@ public class ChatMessageService {
             }
             
             log.info("Sending chat request to queue: {}", request);
-            rabbitTemplate.convertAndSend(
+            rabbitTemplate.send(
                     properties.getRabbitmq().getExchange(),
                     properties.getRabbitmq().getRoutingKey(),
-                    objectMapper.writeValueAsString(request)
+                    codecs.toMessage(request, codecs.getDefault())
             );
             
             return request.getRequestId();
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("Error serializing chat request", e);
             return null;
         }
     }
 
     /**
-     * 监听聊天请求队列
+     * 监听聊天请求队列（手动确认）
+     * 消息交给非阻塞的reply/streamReply处理后监听线程立即返回，回复发布到回复队列后再确认，一个消费者可以同时处理多个请求；
+     * 同一消费者（通道）处理中的请求达到maxInFlight时在这里等待，未确认的消息总数由prefetch限制。
+     * stream为true的请求把合并后的片段逐条发布，每条带x-chat-seq头（从0递增），最后一条为completed（出错时为error）帧；
+     * 发布可能使用不同的通道，到达顺序不保证，接收方按序号重排。
+     * 消息体按content-type解码，回复使用与请求相同的格式。
+     * 无法解析或格式不支持的消息直接拒绝（不重新入队）；处理出错时回复错误响应后确认，避免同一条消息反复投递。
+     * 处理超过requestTimeout时取消模型调用，回复error帧后拒绝消息（不重新入队），卡住的上游不会一直占着许可和未确认消息。
+     * 发布回复失败时，还没有发布过任何帧的请求重新入队；流式请求已经发布过片段时回复error帧后拒绝消息（不重新入队），
+     * 重新处理生成的内容和片段边界都与第一次不同，序号无法和已经发布的帧拼接。
      */
-    @RabbitListener(queues = "${spring.ai.chat.rabbitmq.queue:chat.queue}")
-    public void processChatRequest(String message) {
+    @RabbitListener(queues = "${spring.ai.chat.rabbitmq.queue:chat.queue}", containerFactory = CONTAINER_FACTORY)
+    public void processChatRequest(Message message, Channel channel) throws IOException {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        ChatPayloadCodec codec = codecs.forContentType(message.getMessageProperties().getContentType());
+        ChatRequest request;
         try {
-            ChatRequest request = objectMapper.readValue(message, ChatRequest.class);
-            log.info("Received chat request from queue: {}", request);
-            
-            if (request.getModel() == null || request.getModel().isEmpty()) {
-                request.setModel("qwen"); // 默认使用通义千问
+            if (codec == null) {
+                throw new IOException("不支持的消息体格式: " + message.getMessageProperties().getContentType());
             }
-            
-            ChatService chatService = chatModelFactory.get(request.getModel());
+            request = codec.decode(codecs.body(message), ChatRequest.class);
+        } catch (IOException e) {
+            log.error("无法解析的聊天请求，拒绝该消息: {}", e.getMessage());
+            channel.basicReject(deliveryTag, false);
+            return;
+        }
+        log.info("Received chat request from queue: {}", request);
 
-            // 同步处理请求
-            ChatResponse response = chatService.syncReply(request);
+        if (request.getModel() == null || request.getModel().isEmpty()) {
+            request.setModel("qwen"); // 默认使用通义千问
+        }
 
-            log.info("Processed chat request: {}, response length: {}", request.getRequestId(),
-                    response.getContent() != null ? response.getContent().length() : 0);
-            
-            // 发送响应到回复队列
-            String replyTo = request.getReplyTo() != null ? 
-                    request.getReplyTo() : properties.getRabbitmq().getReplyQueue();
-            
-            rabbitTemplate.convertAndSend(
-                    properties.getRabbitmq().getExchange(),
-                    replyTo,
-                    objectMapper.writeValueAsString(response)
-            );
-            log.info("Sent response to reply queue {}", replyTo);
-            
-        } catch (Exception e) {
-            log.error("Error processing chat request from queue", e);
+        Semaphore slots = inFlightSlots(channel);
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            // 容器停止时中断等待，消息重新入队由其他消费者处理
+            Thread.currentThread().interrupt();
+            channel.basicNack(deliveryTag, false, true);
+            return;
         }
+        inFlight.incrementAndGet();
+        String replyTo = request.getReplyTo() != null ?
+                request.getReplyTo() : properties.getRabbitmq().getReplyQueue();
+        long[] sequence = {0};
+        withDeadline(replies(request)
+                // 发布回复和确认是阻塞调用，不占用模型响应的IO线程；publishOn保证同一请求的帧依次发布
+                .publishOn(Schedulers.boundedElastic()), properties.getRabbitmq().getRequestTimeout())
+                .doFinally(signal -> {
+                    inFlight.decrementAndGet();
+                    slots.release();
+                })
+                .subscribe(
+                        response -> {
+                            send(replyTo, response, codec, request.isStream() ? sequence[0] : -1);
+                            // 发布成功后才计数，发布失败的序号留给error帧
+                            sequence[0]++;
+                        },
+                        e -> {
+                            long next = request.isStream() ? sequence[0] : -1;
+                            if (e instanceof TimeoutException) {
+                                timeouts.increment();
+                                log.warn("处理MQ聊天请求超时（超过 {}），拒绝该消息: requestId={}",
+                                        properties.getRabbitmq().getRequestTimeout(), request.getRequestId());
+                                reject(request, replyTo, codec, next, channel, deliveryTag, "处理请求超时");
+                            } else if (request.isStream() && sequence[0] > 0) {
+                                log.error("流式回复发布中途失败，已发布 {} 帧，拒绝该消息: requestId={}",
+                                        sequence[0], request.getRequestId(), e);
+                                reject(request, replyTo, codec, next, channel, deliveryTag, "发送回复失败");
+                            } else {
+                                requeue(request, channel, deliveryTag, e);
+                            }
+                        },
+                        () -> ack(request, replyTo, sequence[0], channel, deliveryTag));
+    }
+
+    /**
+     * 从订阅开始计时的总时长限制，超时以TimeoutException结束并取消上游；
+     * 超时在boundedElastic上发出，之后的发布和拒绝不占用并行线程
+     */
+    private static <T> Flux<T> withDeadline(Flux<T> source, Duration timeout) {
+        if (timeout == null || timeout.isZero() || timeout.isNegative()) {
+            return source;
+        }
+        return Flux.defer(() -> {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            Mono<Long> remaining = Mono.defer(() -> Mono.delay(
+                    Duration.ofNanos(Math.max(0, deadline - System.nanoTime())), Schedulers.boundedElastic()));
+            return source.timeout(remaining, item -> remaining);
+        });
+    }
+
+    /**
+     * 需要发布到回复队列的帧：同步请求为一条完整回复，流式请求为合并后的片段加结束帧
+     */
+    private Flux<ChatResponse> replies(ChatRequest request) {
+        return Flux.defer(() -> {
+                    // 超过用户速率时直接回复拒绝响应，不调用模型
+                    ChatResponse rejected = rateLimitGuard.check(request);
+                    if (rejected != null) {
+                        return Flux.just(rejected);
+                    }
+                    ChatService chatService = chatModelFactory.get(request.getModel());
+                    if (!request.isStream()) {
+                        return chatService.reply(request).flux();
+                    }
+                    ChunkCoalescer coalescer = ChunkCoalescer.of(properties.getRabbitmq().getCoalesce());
+                    return coalescer.apply(chatService.streamReply(request))
+                            .concatWith(Mono.fromSupplier(() -> ChatResponseUtil.createCompleted(request)));
+                })
+                .onErrorResume(e -> {
+                    log.error("处理MQ聊天请求失败: requestId={}", request.getRequestId(), e);
+                    return Mono.just(ChatResponseUtil.createError(request, "处理请求失败: " + e.getMessage()));
+                });
+    }
+
+    /**
+     * 按请求的格式编码并发布一帧到回复队列，sequence不小于0时带上序号头
+     */
+    private void send(String replyTo, ChatResponse response, ChatPayloadCodec codec, long sequence) {
+        Message message;
+        try {
+            message = codecs.toMessage(response, codec);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (sequence >= 0) {
+            message.getMessageProperties().setHeader(SEQUENCE_HEADER, sequence);
+        }
+        rabbitTemplate.send(properties.getRabbitmq().getExchange(), replyTo, message);
+    }
+
+    /**
+     * 所有帧发布后确认请求消息
+     */
+    private void ack(ChatRequest request, String replyTo, long frames, Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, false);
+            log.info("Processed chat request: {}, stream: {}, frames: {}, sent to reply queue {}",
+                    request.getRequestId(), request.isStream(), Math.max(1, frames), replyTo);
+        } catch (IOException e) {
+            log.warn("请求消息确认失败，将在通道关闭后重新投递: requestId={}", request.getRequestId(), e);
+        }
+    }
+
+    /**
+     * 无法重新处理的失败（超时、流式回复发布中途失败）：尽量回复error帧让请求方结束等待，
+     * 再拒绝请求消息（不重新入队，避免同一个卡住的请求反复占用消费者，或者接收方拼接两次不同的生成结果）
+     */
+    private void reject(ChatRequest request, String replyTo, ChatPayloadCodec codec, long sequence,
+                        Channel channel, long deliveryTag, String reason) {
+        try {
+            send(replyTo, ChatResponseUtil.createError(request, reason), codec, sequence);
+        } catch (RuntimeException e) {
+            log.warn("发送错误帧失败: requestId={}", request.getRequestId(), e);
+        }
+        try {
+            channel.basicReject(deliveryTag, false);
+        } catch (IOException e) {
+            log.warn("请求消息reject失败，将在通道关闭后重新投递: requestId={}", request.getRequestId(), e);
+        }
+    }
+
+    /**
+     * 还没有发布任何帧时发布回复失败，请求重新入队
+     */
+    private void requeue(ChatRequest request, Channel channel, long deliveryTag, Throwable error) {
+        log.error("发送MQ回复失败，请求重新入队: requestId={}", request.getRequestId(), error);
+        try {
+            channel.basicNack(deliveryTag, false, true);
+        } catch (IOException e) {
+            log.warn("请求消息nack失败，将在通道关闭后重新投递: requestId={}", request.getRequestId(), e);
+        }
+    }
+
+    /**
+     * 通道（每个消费者一个）处理中请求的许可，通道关闭后移除
+     */
+    private Semaphore inFlightSlots(Channel channel) {
+        Semaphore slots = inFlightSlots.get(channel);
+        if (slots == null) {
+            Semaphore created = new Semaphore(Math.max(1, properties.getRabbitmq().getMaxInFlight()));
+            slots = inFlightSlots.putIfAbsent(channel, created);
+            if (slots == null) {
+                slots = created;
+                channel.addShutdownListener(cause -> inFlightSlots.remove(channel));
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * 所有消费者处理中的请求数
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * 因处理超时被拒绝的请求数
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("spring.ai.chat.mq.inflight", inFlight, AtomicInteger::get)
+                .description("MQ消费者处理中的请求数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.mq.request.timeouts", timeouts, LongAdder::sum)
+                .description("处理超时被拒绝的MQ请求数")
+                .register(registry);
     }
     
     /**
@@ -147,6 +363,34 @@ public class ChatMessageService {
     //     }
     // }
     
+    /**
+     * 发送请求并非阻塞地等待完整回复（需要开启reply-listener-enabled）
+     * 先登记等待方再发送，回复早于登记到达也不会丢失；超时以TimeoutException结束，取消订阅即放弃等待。
+     * 发送在boundedElastic上执行，超时在回复计时线程上发出，下游的阻塞操作应切换线程
+     * @param request 聊天请求
+     * @param timeout 超时时间
+     */
+    public Mono<ChatResponse> sendAndReceive(ChatRequest request, Duration timeout) {
+        return Mono.defer(() -> {
+                    if (request.getRequestId() == null) {
+                        request.setRequestId(UUID.randomUUID().toString());
+                    }
+                    CompletableFuture<ChatResponse> reply = responseReceiver.await(request.getRequestId(), timeout);
+                    try {
+                        if (sendChatRequest(request) == null) {
+                            reply.cancel(false);
+                            return Mono.error(new IllegalArgumentException("无法序列化聊天请求: " + request.getRequestId()));
+                        }
+                    } catch (RuntimeException e) {
+                        // 发送失败时立即撤销登记，不等到超时
+                        reply.cancel(false);
+                        return Mono.error(e);
+                    }
+                    return Mono.fromFuture(reply);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
     /**
      * 同步发送请求并等待响应
      * @param request 聊天请求
@@ -0,0 +1,29 @@
+package com.randb.springaichatstarter.mq;
+
+import java.io.IOException;
+
+/**
+ * MQ消息体编解码器
+ * 请求和回复直接编码为消息体字节，content-type标明格式，接收方按content-type选择解码器
+ * @Date: 2025-09-10
+ * @Author: randb
+ */
+public interface ChatPayloadCodec {
+
+    /**
+     * 写入消息content-type属性的值，也是协商时匹配的键
+     */
+    String getContentType();
+
+    /**
+     * 编码ChatRequest或ChatResponse
+     */
+    byte[] encode(Object payload) throws IOException;
+
+    /**
+     * 解码消息体
+     * @param body 消息体
+     * @param type ChatRequest.class或ChatResponse.class
+     */
+    <T> T decode(byte[] body, Class<T> type) throws IOException;
+}
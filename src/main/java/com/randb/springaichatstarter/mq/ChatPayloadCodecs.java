@@ -0,0 +1,190 @@
+package com.randb.springaichatstarter.mq;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MQ消息体编解码器集合，按content-type协商
+ * 发送方用默认编解码器（spring.ai.chat.rabbitmq.payload-format）并在消息上写明content-type；
+ * 接收方按content-type选择解码器，处理请求的一方用请求的格式回复。
+ * 未标明content-type（或为text/plain、application/octet-stream）的消息按JSON处理，兼容旧版本。
+ * 较大的消息体按PayloadCompressor压缩，压缩算法写入content-encoding
+ * @Date: 2025-09-10
+ * @Author: randb
+ */
+public class ChatPayloadCodecs {
+
+    public static final String JSON = "application/json";
+    public static final String SMILE = "application/x-jackson-smile";
+    public static final String CBOR = "application/cbor";
+
+    private static final boolean SMILE_PRESENT = ClassUtils.isPresent(
+            "com.fasterxml.jackson.dataformat.smile.databind.SmileMapper", ChatPayloadCodecs.class.getClassLoader());
+    private static final boolean CBOR_PRESENT = ClassUtils.isPresent(
+            "com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper", ChatPayloadCodecs.class.getClassLoader());
+
+    private final Map<String, ChatPayloadCodec> codecs = new LinkedHashMap<>();
+    private final ChatPayloadCodec defaultCodec;
+    private final ChatPayloadCodec fallbackCodec;
+    private final PayloadCompressor compressor;
+
+    /**
+     * @param codecs 支持的编解码器
+     * @param defaultContentType 发送时使用的格式，必须在codecs中
+     */
+    public ChatPayloadCodecs(Collection<? extends ChatPayloadCodec> codecs, String defaultContentType) {
+        this(codecs, defaultContentType, PayloadCompressor.none());
+    }
+
+    /**
+     * @param codecs 支持的编解码器
+     * @param defaultContentType 发送时使用的格式，必须在codecs中
+     * @param compressor 较大消息体的压缩
+     */
+    public ChatPayloadCodecs(Collection<? extends ChatPayloadCodec> codecs, String defaultContentType,
+                             PayloadCompressor compressor) {
+        this.compressor = compressor;
+        for (ChatPayloadCodec codec : codecs) {
+            this.codecs.put(normalize(codec.getContentType()), codec);
+        }
+        this.defaultCodec = this.codecs.get(normalize(defaultContentType));
+        if (defaultCodec == null) {
+            throw new IllegalStateException("MQ消息体格式" + defaultContentType + "不可用，支持的格式: " + this.codecs.keySet());
+        }
+        this.fallbackCodec = this.codecs.getOrDefault(JSON, defaultCodec);
+    }
+
+    /**
+     * 创建类路径上可用的全部编解码器：JSON（使用应用的ObjectMapper）、Smile、CBOR、紧凑二进制
+     * @param objectMapper JSON使用的ObjectMapper
+     * @param format 发送时使用的格式
+     */
+    public static ChatPayloadCodecs create(ObjectMapper objectMapper, SpringAiChatProperties.PayloadFormat format) {
+        return create(objectMapper, format, PayloadCompressor.none());
+    }
+
+    /**
+     * 创建类路径上可用的全部编解码器，发送时按compressor压缩较大的消息体
+     */
+    public static ChatPayloadCodecs create(ObjectMapper objectMapper, SpringAiChatProperties.PayloadFormat format,
+                                           PayloadCompressor compressor) {
+        List<ChatPayloadCodec> codecs = new ArrayList<>();
+        codecs.add(new JacksonPayloadCodec(objectMapper, JSON));
+        if (SMILE_PRESENT) {
+            codecs.add(JacksonFormats.smile());
+        }
+        if (CBOR_PRESENT) {
+            codecs.add(JacksonFormats.cbor());
+        }
+        codecs.add(new BinaryChatPayloadCodec());
+        return new ChatPayloadCodecs(codecs, contentType(format), compressor);
+    }
+
+    /**
+     * 格式对应的content-type
+     */
+    public static String contentType(SpringAiChatProperties.PayloadFormat format) {
+        return switch (format) {
+            case JSON -> JSON;
+            case SMILE -> SMILE;
+            case CBOR -> CBOR;
+            case BINARY -> BinaryChatPayloadCodec.CONTENT_TYPE;
+        };
+    }
+
+    /**
+     * 发送时使用的编解码器
+     */
+    public ChatPayloadCodec getDefault() {
+        return defaultCodec;
+    }
+
+    /**
+     * 按content-type选择编解码器，忽略参数（如charset）和大小写
+     * @return 编解码器，不支持的格式返回null
+     */
+    public ChatPayloadCodec forContentType(String contentType) {
+        String key = normalize(contentType);
+        if (key.isEmpty() || key.equals(MessageProperties.CONTENT_TYPE_TEXT_PLAIN)
+                || key.equals(MessageProperties.CONTENT_TYPE_BYTES)) {
+            return fallbackCodec;
+        }
+        return codecs.get(key);
+    }
+
+    /**
+     * 编码为消息，content-type为编解码器的格式；达到压缩阈值时压缩，content-encoding为压缩算法
+     */
+    public Message toMessage(Object payload, ChatPayloadCodec codec) throws IOException {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(codec.getContentType());
+        byte[] body = codec.encode(payload);
+        byte[] compressed = compressor.compress(body);
+        if (compressed != null) {
+            properties.setContentEncoding(compressor.getEncoding());
+            body = compressed;
+        }
+        return new Message(body, properties);
+    }
+
+    /**
+     * 按content-encoding解压后的消息体
+     */
+    public byte[] body(Message message) throws IOException {
+        return compressor.decompress(message.getBody(), message.getMessageProperties().getContentEncoding());
+    }
+
+    /**
+     * 按消息的content-type解码
+     * @throws IOException 格式不支持或消息体无法解码
+     */
+    public <T> T fromMessage(Message message, Class<T> type) throws IOException {
+        String contentType = message.getMessageProperties().getContentType();
+        ChatPayloadCodec codec = forContentType(contentType);
+        if (codec == null) {
+            throw new IOException("不支持的MQ消息体格式: " + contentType);
+        }
+        return codec.decode(body(message), type);
+    }
+
+    private static String normalize(String contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        int parameters = contentType.indexOf(';');
+        String mediaType = parameters >= 0 ? contentType.substring(0, parameters) : contentType;
+        return mediaType.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 引用可选依赖的部分单独放在内部类中，依赖不在类路径上时不会被加载
+     */
+    private static final class JacksonFormats {
+
+        static ChatPayloadCodec smile() {
+            return new JacksonPayloadCodec(SmileMapper.builder()
+                    .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                    .build(), SMILE);
+        }
+
+        static ChatPayloadCodec cbor() {
+            return new JacksonPayloadCodec(CBORMapper.builder()
+                    .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                    .build(), CBOR);
+        }
+    }
+}
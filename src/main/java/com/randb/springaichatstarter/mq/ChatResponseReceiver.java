@@ -1,76 +1,196 @@
 package com.randb.springaichatstarter.mq;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
 import com.randb.springaichatstarter.dto.ChatResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 聊天响应接收器
- * 用于接收和处理回复消息，提供同步等待响应的功能
+ * 用于接收和处理回复消息，提供按requestId等待完整响应（future/Mono）和订阅流式回复的功能
  * @Date: 2025-07-11 13:09:33
  * @Author: randb
  */
 @Component
 @Slf4j
 @ConditionalOnProperty(prefix = "spring.ai.chat.rabbitmq", name = "enabled", havingValue = "true")
-public class ChatResponseReceiver {
+public class ChatResponseReceiver implements MeterBinder, AutoCloseable {
     
-    private final Map<String, ChatResponse> responseCache = new ConcurrentHashMap<>();
-    private final Map<String, CountDownLatch> latches = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper;
-    
-    public ChatResponseReceiver(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+    private final ChatPayloadCodecs codecs;
+    /** 按requestId登记的完整回复等待方和暂存回复，超时和过期由时间轮驱动，增删都是O(1) */
+    private final Map<String, Correlation> correlations = new ConcurrentHashMap<>();
+    private final HashedWheelTimer timer;
+    private final Duration orphanTtl;
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder orphans = new LongAdder();
+    /** 按requestId重排中的流式回复，长时间没有新帧时过期并以超时结束订阅 */
+    private final Cache<String, StreamReassembly> streams;
+
+    public ChatResponseReceiver(ChatPayloadCodecs codecs, SpringAiChatProperties properties) {
+        this.codecs = codecs;
+        SpringAiChatProperties.RabbitMQProperties rabbitmq = properties.getRabbitmq();
+        this.orphanTtl = rabbitmq.getReplyOrphanTtl();
+        // 工作线程在第一次登记超时时才启动
+        this.timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "chat-reply-timer");
+            thread.setDaemon(true);
+            return thread;
+        }, rabbitmq.getReplyTimerTick().toMillis(), TimeUnit.MILLISECONDS, rabbitmq.getReplyTimerWheelSize());
+        Duration idleTimeout = rabbitmq.getStreamIdleTimeout();
+        this.streams = Caffeine.newBuilder()
+                .expireAfterAccess(idleTimeout)
+                .scheduler(Scheduler.systemScheduler())
+                .<String, StreamReassembly>removalListener((requestId, stream, cause) -> {
+                    if (stream != null && cause.wasEvicted()) {
+                        stream.expire(requestId, idleTimeout);
+                    }
+                })
+                .build();
         log.info("ChatResponseReceiver初始化成功");
     }
     
     /**
      * 监听回复队列
-     * 接收AI回复结果
+     * 消息体按content-type解码。带x-chat-seq头的是流式回复帧，按requestId重排后交给subscribe的订阅方；不带的是完整回复。
+     * 只在spring.ai.chat.rabbitmq.reply-listener-enabled=true时启动，避免只处理请求的服务与上游争抢回复
      */
-    // @RabbitListener(queues = "${spring.ai.chat.rabbitmq.reply-queue:chat.reply}")
-    // public void processReply(String message) {
-    //     try {
-    //         ChatResponse response = objectMapper.readValue(message, ChatResponse.class);
-    //         log.info("接收到MQ回复: requestId={}, contentLength={}", 
-    //                 response.getRequestId(), 
-    //                 response.getContent() != null ? response.getContent().length() : 0);
-            
-    //         // 缓存响应
-    //         receiveResponse(response);
-            
-    //     } catch (Exception e) {
-    //         log.error("处理MQ回复时出错", e);
-    //     }
-    // }
-    
+    @RabbitListener(queues = "${spring.ai.chat.rabbitmq.reply-queue:chat.reply}",
+            autoStartup = "${spring.ai.chat.rabbitmq.reply-listener-enabled:false}")
+    public void processReply(Message message) {
+        ChatResponse response;
+        try {
+            response = codecs.fromMessage(message, ChatResponse.class);
+        } catch (Exception e) {
+            log.error("无法解析的MQ回复，已丢弃: {}", e.getMessage());
+            return;
+        }
+        Object sequence = message.getMessageProperties().getHeader(ChatMessageService.SEQUENCE_HEADER);
+        if (sequence instanceof Number number) {
+            receiveFrame(response, number.longValue());
+            return;
+        }
+        StreamReassembly stream = streams.getIfPresent(response.getRequestId());
+        if (stream != null) {
+            stream.acceptWhole(response);
+        } else {
+            receiveResponse(response);
+        }
+    }
+
     /**
-     * 接收来自回复队列的消息
-     * 此方法由ChatMessageService.processReply调用
+     * 接收一条流式回复帧，按序号重排后发出；重复或已结束的帧被丢弃
+     */
+    public void receiveFrame(ChatResponse frame, long sequence) {
+        streams.get(frame.getRequestId(), id -> new StreamReassembly()).accept(sequence, frame);
+    }
+
+    /**
+     * 订阅一个请求的回复帧，按序号依次发出，结束帧（completed、error等）发出后完成
+     * 订阅前到达的帧会缓存；每个requestId只能订阅一次，订阅结束后释放
+     */
+    public Flux<ChatResponse> subscribe(String requestId) {
+        return streams.get(requestId, id -> new StreamReassembly()).asFlux()
+                .doFinally(signal -> streams.invalidate(requestId));
+    }
+
+    /**
+     * 接收一条完整回复（不带序号头）
+     * 有等待方时直接完成它的future；没有时暂存replyOrphanTtl，等待方稍后注册时取走，过期后由时间轮丢弃
      */
     public void receiveResponse(ChatResponse response) {
         String requestId = response.getRequestId();
-        
-        // 缓存响应
-        responseCache.put(requestId, response);
-        log.debug("Response cached for requestId: {}", requestId);
-        
-        // 如果有等待此响应的线程，通知它
-        CountDownLatch latch = latches.get(requestId);
-        if (latch != null) {
-            latch.countDown();
-            log.debug("Notified waiting thread for requestId: {}", requestId);
+        Correlation[] waiter = new Correlation[1];
+        correlations.compute(requestId, (id, existing) -> {
+            if (existing == null) {
+                return orphan(id, response);
+            }
+            if (existing.future != null) {
+                waiter[0] = existing;
+                return null;
+            }
+            // 重复投递的回复，保留先到的
+            return existing;
+        });
+        if (waiter[0] != null) {
+            waiters.decrementAndGet();
+            waiter[0].future.complete(response);
+            log.debug("Response delivered to waiter for requestId: {}", requestId);
+        } else {
+            log.debug("Response parked without waiter for requestId: {}", requestId);
         }
     }
-    
+
+    /**
+     * 注册一个请求的等待方，回复到达时完成，超过timeout以TimeoutException完成
+     * 回复已经先到达时直接返回已完成的future；同一requestId同时多次等待共享同一个future。
+     * 取消future即放弃等待，立即从登记表中移除。超时在时间轮线程上触发，后续回调不应阻塞
+     */
+    public CompletableFuture<ChatResponse> await(String requestId, Duration timeout) {
+        Correlation[] parked = new Correlation[1];
+        Correlation[] created = new Correlation[1];
+        Correlation correlation = correlations.compute(requestId, (id, existing) -> {
+            if (existing == null) {
+                created[0] = waiter(id, timeout);
+                return created[0];
+            }
+            if (existing.future == null) {
+                parked[0] = existing;
+                return null;
+            }
+            return existing;
+        });
+        if (parked[0] != null) {
+            parked[0].timeout.cancel();
+            return CompletableFuture.completedFuture(parked[0].response);
+        }
+        if (created[0] != null) {
+            waiters.incrementAndGet();
+            // 回复和超时在移出登记表时计数，这里只处理取消
+            correlation.future.whenComplete((response, error) -> {
+                correlation.timeout.cancel();
+                if (correlations.remove(requestId, correlation)) {
+                    waiters.decrementAndGet();
+                }
+            });
+        }
+        return correlation.future;
+    }
+
+    /**
+     * 非阻塞地等待一个请求的完整回复，超时以TimeoutException结束，取消订阅即放弃等待
+     */
+    public Mono<ChatResponse> receive(String requestId, Duration timeout) {
+        return Mono.fromFuture(() -> await(requestId, timeout));
+    }
+
     /**
      * 同步等待响应
      * @param requestId 请求ID
@@ -78,54 +198,154 @@ public class ChatResponseReceiver {
      * @return 响应对象，如果超时则返回null
      */
     public ChatResponse waitForResponse(String requestId, long timeout) {
-        // 如果已经有响应，直接返回
-        if (responseCache.containsKey(requestId)) {
-            log.debug("Response already in cache for requestId: {}", requestId);
-            return responseCache.remove(requestId);
-        }
-        
-        // 创建等待锁
-        CountDownLatch latch = new CountDownLatch(1);
-        latches.put(requestId, latch);
-        log.debug("Waiting for response with requestId: {}, timeout: {}ms", requestId, timeout);
-        
+        CompletableFuture<ChatResponse> future = await(requestId, Duration.ofMillis(timeout));
         try {
-            // 等待响应或超时
-            boolean received = latch.await(timeout, TimeUnit.MILLISECONDS);
-            if (received) {
-                log.debug("Response received for requestId: {}", requestId);
-                return responseCache.remove(requestId);
-            } else {
-                log.warn("Timeout waiting for response: {}", requestId);
-                return null;
-            }
+            return future.get();
+        } catch (ExecutionException e) {
+            log.warn("Timeout waiting for response: {}", requestId);
+            return null;
+        } catch (CancellationException e) {
+            return null;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            future.cancel(false);
             log.error("Interrupted while waiting for response", e);
             return null;
-        } finally {
-            latches.remove(requestId);
         }
     }
-    
+
+    private Correlation waiter(String requestId, Duration timeout) {
+        Correlation correlation = new Correlation(new CompletableFuture<>(), null);
+        correlation.timeout = timer.newTimeout(t -> {
+            if (correlations.remove(requestId, correlation)) {
+                waiters.decrementAndGet();
+                timeouts.increment();
+                correlation.future.completeExceptionally(new TimeoutException("等待MQ回复超过" + timeout + ": " + requestId));
+            }
+        }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        return correlation;
+    }
+
+    private Correlation orphan(String requestId, ChatResponse response) {
+        Correlation correlation = new Correlation(null, response);
+        correlation.timeout = timer.newTimeout(t -> {
+            if (correlations.remove(requestId, correlation)) {
+                orphans.increment();
+                log.debug("Evicted orphaned response for requestId: {}", requestId);
+            }
+        }, orphanTtl.toNanos(), TimeUnit.NANOSECONDS);
+        return correlation;
+    }
+
     /**
-     * 清理过期的响应
-     * 可以定期调用此方法清理缓存
+     * 等待中的请求数
      */
-    public void cleanupExpiredResponses(long maxAgeMillis) {
-        long now = System.currentTimeMillis();
-        int removedCount = 0;
-        
-        for (Map.Entry<String, ChatResponse> entry : responseCache.entrySet()) {
-            ChatResponse response = entry.getValue();
-            if ((now - response.getTimestamp()) > maxAgeMillis) {
-                responseCache.remove(entry.getKey());
-                removedCount++;
+    public int getWaiterCount() {
+        return waiters.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getOrphanEvictionCount() {
+        return orphans.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("spring.ai.chat.mq.reply.waiters", waiters, AtomicInteger::get)
+                .description("等待MQ完整回复的请求数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.mq.reply.timeouts", timeouts, LongAdder::sum)
+                .description("等待MQ回复超时的次数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.mq.reply.orphans", orphans, LongAdder::sum)
+                .description("没有等待方、暂存过期后丢弃的回复数")
+                .register(registry);
+    }
+
+    /**
+     * 停止时间轮，未完成的等待被取消
+     */
+    @Override
+    public void close() {
+        timer.stop();
+        correlations.values().forEach(correlation -> {
+            if (correlation.future != null) {
+                correlation.future.cancel(false);
+            }
+        });
+        correlations.clear();
+    }
+
+    /**
+     * 一个requestId的登记：等待方（future）或先于等待方到达的回复（response），二者只有一个；timeout为时间轮上的过期任务
+     */
+    private static final class Correlation {
+
+        final CompletableFuture<ChatResponse> future;
+        final ChatResponse response;
+        volatile Timeout timeout;
+
+        Correlation(CompletableFuture<ChatResponse> future, ChatResponse response) {
+            this.future = future;
+            this.response = response;
+        }
+    }
+
+    /**
+     * 一个请求的流式回复重排：乱序到达的帧暂存，连续的部分立即发出
+     */
+    private static final class StreamReassembly {
+
+        private final Sinks.Many<ChatResponse> sink = Sinks.many().unicast().onBackpressureBuffer();
+        private final TreeMap<Long, ChatResponse> pending = new TreeMap<>();
+        private long next;
+        private boolean done;
+
+        synchronized void accept(long sequence, ChatResponse frame) {
+            if (done || sequence < next) {
+                return;
+            }
+            pending.putIfAbsent(sequence, frame);
+            ChatResponse ready;
+            while ((ready = pending.remove(next)) != null) {
+                next++;
+                sink.tryEmitNext(ready);
+                if (!"message".equals(ready.getType())) {
+                    finish();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 非流式的完整回复：发出后直接结束
+         */
+        synchronized void acceptWhole(ChatResponse response) {
+            if (!done) {
+                sink.tryEmitNext(response);
+                finish();
+            }
+        }
+
+        synchronized void expire(String requestId, Duration idleTimeout) {
+            if (!done) {
+                done = true;
+                pending.clear();
+                sink.tryEmitError(new TimeoutException("流式回复超过" + idleTimeout + "没有新帧: " + requestId));
             }
         }
-        
-        if (removedCount > 0) {
-            log.info("Cleaned up {} expired responses", removedCount);
+
+        private void finish() {
+            done = true;
+            pending.clear();
+            sink.tryEmitComplete();
+        }
+
+        Flux<ChatResponse> asFlux() {
+            return sink.asFlux();
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package com.randb.springaichatstarter.mq;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.stream.ChatResponseFrameWriter;
+
+import java.io.IOException;
+
+/**
+ * 基于Jackson的消息体编解码器，JSON、Smile、CBOR共用，格式由ObjectMapper的JsonFactory决定
+ * JSON格式下ChatResponse使用ChatResponseFrameWriter编码（输出与ObjectMapper一致）；
+ * 兼容旧版本经Jackson2JsonMessageConverter二次编码的消息体（整个JSON被编码成一个JSON字符串）
+ * @Date: 2025-09-10
+ * @Author: randb
+ */
+public class JacksonPayloadCodec implements ChatPayloadCodec {
+
+    private final ObjectMapper mapper;
+    private final String contentType;
+    private final boolean json;
+
+    public JacksonPayloadCodec(ObjectMapper mapper, String contentType) {
+        this.mapper = mapper;
+        this.contentType = contentType;
+        this.json = "JSON".equals(mapper.getFactory().getFormatName());
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public byte[] encode(Object payload) throws IOException {
+        if (json && payload instanceof ChatResponse response) {
+            return ChatResponseFrameWriter.toJsonBytes(response);
+        }
+        return mapper.writeValueAsBytes(payload);
+    }
+
+    @Override
+    public <T> T decode(byte[] body, Class<T> type) throws IOException {
+        if (json && isQuotedString(body)) {
+            return mapper.readValue(mapper.readValue(body, String.class), type);
+        }
+        return mapper.readValue(body, type);
+    }
+
+    /**
+     * 消息体是否是一个JSON字符串（旧版本的二次编码）
+     */
+    private static boolean isQuotedString(byte[] body) {
+        for (byte b : body) {
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b == '"';
+            }
+        }
+        return false;
+    }
+}
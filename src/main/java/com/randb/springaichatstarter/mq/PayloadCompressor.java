@@ -0,0 +1,216 @@
+package com.randb.springaichatstarter.mq;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * MQ消息体压缩
+ * 编码后的消息体达到阈值时按配置的算法压缩，算法名写入消息的content-encoding（gzip、deflate、lz4、zstd）；
+ * 接收时按content-encoding解压，其他取值（包括旧版本写入的字符集名UTF-8）视为未压缩。
+ * lz4为4字节大端原始长度加LZ4块，zstd为标准Zstandard帧；解压后超过maxDecompressedSize时拒绝
+ * @Date: 2025-09-12
+ * @Author: randb
+ */
+public class PayloadCompressor {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final String LZ4 = "lz4";
+    public static final String ZSTD = "zstd";
+
+    private static final boolean AIRCOMPRESSOR_PRESENT = ClassUtils.isPresent(
+            "io.airlift.compress.lz4.Lz4Compressor", PayloadCompressor.class.getClassLoader());
+
+    private final String encoding;
+    private final int threshold;
+    private final int maxDecompressedSize;
+
+    public PayloadCompressor(SpringAiChatProperties.CompressionProperties properties) {
+        this.encoding = encoding(properties.getAlgorithm());
+        this.threshold = (int) Math.min(Integer.MAX_VALUE, properties.getThreshold().toBytes());
+        this.maxDecompressedSize = (int) Math.min(Integer.MAX_VALUE - 8, properties.getMaxDecompressedSize().toBytes());
+        if ((LZ4.equals(encoding) || ZSTD.equals(encoding)) && !AIRCOMPRESSOR_PRESENT) {
+            throw new IllegalStateException("MQ消息体压缩算法" + encoding + "需要io.airlift:aircompressor");
+        }
+    }
+
+    /**
+     * 不压缩，只解压
+     */
+    public static PayloadCompressor none() {
+        return new PayloadCompressor(new SpringAiChatProperties.CompressionProperties());
+    }
+
+    private static String encoding(SpringAiChatProperties.PayloadCompression algorithm) {
+        return switch (algorithm) {
+            case NONE -> null;
+            case GZIP -> GZIP;
+            case DEFLATE -> DEFLATE;
+            case LZ4 -> LZ4;
+            case ZSTD -> ZSTD;
+        };
+    }
+
+    /**
+     * 发送时写入content-encoding的算法名，不压缩时为null
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * 压缩消息体
+     * @return 压缩后的消息体；未启用、小于阈值或压缩后没有变小时返回null
+     */
+    public byte[] compress(byte[] body) throws IOException {
+        if (encoding == null || body.length < threshold) {
+            return null;
+        }
+        byte[] compressed = compress(body, encoding);
+        return compressed.length < body.length ? compressed : null;
+    }
+
+    /**
+     * 按content-encoding解压消息体，未压缩时原样返回
+     */
+    public byte[] decompress(byte[] body, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return body;
+        }
+        return switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+            case GZIP -> inflate(new GZIPInputStream(new ByteArrayInputStream(body)));
+            case DEFLATE -> inflate(new InflaterInputStream(new ByteArrayInputStream(body)));
+            case LZ4 -> airlift().decompressLz4(body, maxDecompressedSize);
+            case ZSTD -> airlift().decompressZstd(body, maxDecompressedSize);
+            default -> body;
+        };
+    }
+
+    private static byte[] compress(byte[] body, String encoding) throws IOException {
+        return switch (encoding) {
+            case GZIP -> deflate(new ByteArrayOutputStream(body.length / 2 + 64), body, true);
+            case DEFLATE -> deflate(new ByteArrayOutputStream(body.length / 2 + 64), body, false);
+            case LZ4 -> Airlift.compressLz4(body);
+            case ZSTD -> Airlift.compressZstd(body);
+            default -> throw new IllegalArgumentException("不支持的压缩算法: " + encoding);
+        };
+    }
+
+    private static byte[] deflate(ByteArrayOutputStream buffer, byte[] body, boolean gzip) throws IOException {
+        try (OutputStream out = gzip ? new GZIPOutputStream(buffer, 8192) : new DeflaterOutputStream(buffer)) {
+            out.write(body);
+        }
+        return buffer.toByteArray();
+    }
+
+    private byte[] inflate(InputStream in) throws IOException {
+        try (in) {
+            byte[] body = in.readNBytes(maxDecompressedSize + 1);
+            if (body.length > maxDecompressedSize) {
+                throw new IOException("解压后的消息体超过" + maxDecompressedSize + "字节");
+            }
+            return body;
+        }
+    }
+
+    private static Airlift airlift() throws IOException {
+        if (!AIRCOMPRESSOR_PRESENT) {
+            throw new IOException("解压lz4/zstd消息体需要io.airlift:aircompressor");
+        }
+        return Airlift.INSTANCE;
+    }
+
+    /**
+     * 引用可选依赖的部分单独放在内部类中，依赖不在类路径上时不会被加载。
+     * 压缩器和解压器内部有复用的哈希表和缓冲区，不是线程安全的，每个线程一份
+     */
+    private static final class Airlift {
+
+        static final Airlift INSTANCE = new Airlift();
+
+        private static final ThreadLocal<Lz4Compressor> LZ4_COMPRESSOR = ThreadLocal.withInitial(Lz4Compressor::new);
+        private static final ThreadLocal<Lz4Decompressor> LZ4_DECOMPRESSOR = ThreadLocal.withInitial(Lz4Decompressor::new);
+        private static final ThreadLocal<ZstdCompressor> ZSTD_COMPRESSOR = ThreadLocal.withInitial(ZstdCompressor::new);
+        private static final ThreadLocal<ZstdDecompressor> ZSTD_DECOMPRESSOR = ThreadLocal.withInitial(ZstdDecompressor::new);
+
+        static byte[] compressLz4(byte[] body) {
+            Lz4Compressor compressor = LZ4_COMPRESSOR.get();
+            byte[] out = new byte[Integer.BYTES + compressor.maxCompressedLength(body.length)];
+            ByteBuffer.wrap(out).putInt(body.length);
+            int length = compressor.compress(body, 0, body.length, out, Integer.BYTES, out.length - Integer.BYTES);
+            return Arrays.copyOf(out, Integer.BYTES + length);
+        }
+
+        static byte[] compressZstd(byte[] body) {
+            ZstdCompressor compressor = ZSTD_COMPRESSOR.get();
+            byte[] out = new byte[compressor.maxCompressedLength(body.length)];
+            int length = compressor.compress(body, 0, body.length, out, 0, out.length);
+            return Arrays.copyOf(out, length);
+        }
+
+        byte[] decompressLz4(byte[] body, int maxSize) throws IOException {
+            if (body.length < Integer.BYTES) {
+                throw new IOException("lz4消息体不完整");
+            }
+            int size = ByteBuffer.wrap(body).getInt();
+            return decompress(LZ4_DECOMPRESSOR.get()::decompress, body, Integer.BYTES, size, maxSize);
+        }
+
+        byte[] decompressZstd(byte[] body, int maxSize) throws IOException {
+            long size;
+            try {
+                size = ZstdDecompressor.getDecompressedSize(body, 0, body.length);
+            } catch (MalformedInputException e) {
+                throw new IOException("无法解压的消息体", e);
+            }
+            if (size < 0) {
+                throw new IOException("zstd帧中缺少原始长度");
+            }
+            return decompress(ZSTD_DECOMPRESSOR.get()::decompress, body, 0, size, maxSize);
+        }
+
+        private static byte[] decompress(BlockDecompressor decompressor, byte[] body, int offset, long size, int maxSize)
+                throws IOException {
+            if (size < 0) {
+                throw new IOException("消息体中记录的原始长度无效: " + size);
+            }
+            if (size > maxSize) {
+                throw new IOException("解压后的消息体超过" + maxSize + "字节");
+            }
+            byte[] out = new byte[(int) size];
+            try {
+                int length = decompressor.decompress(body, offset, body.length - offset, out, 0, out.length);
+                if (length != size) {
+                    throw new IOException("解压后的长度" + length + "与记录的原始长度" + size + "不一致");
+                }
+            } catch (MalformedInputException | IndexOutOfBoundsException e) {
+                // 损坏的消息体按无法解析处理
+                throw new IOException("无法解压的消息体", e);
+            }
+            return out;
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlockDecompressor {
+        int decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength);
+    }
+}
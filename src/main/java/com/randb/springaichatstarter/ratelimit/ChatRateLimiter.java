@@ -0,0 +1,18 @@
+package com.randb.springaichatstarter.ratelimit;
+
+/**
+ * 令牌桶速率限制器
+ * 实现需保证同一个key的并发请求之间原子地扣减令牌
+ * @Date: 2025-08-29
+ * @Author: randb
+ */
+public interface ChatRateLimiter {
+
+    /**
+     * 尝试为key取一个令牌
+     * @param key 限流键（userId）
+     * @param bucket 该key所属档位的令牌桶参数
+     * @return 取到令牌返回true，桶已空返回false
+     */
+    boolean tryAcquire(String key, TokenBucket bucket);
+}
@@ -0,0 +1,55 @@
+package com.randb.springaichatstarter.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单节点内存令牌桶
+ * 每个key的状态是一个AtomicLong（理论到达时间），取令牌是一次无锁CAS，不分配对象；
+ * key到状态的映射由Caffeine维护（内部分段，读写不互斥），按访问时间和最大数量淘汰空闲用户。
+ * @Date: 2025-08-29
+ * @Author: randb
+ */
+public class LocalRateLimiter implements ChatRateLimiter {
+
+    /** 以创建时刻为原点，保证时间戳非负，初始状态0即满桶 */
+    private final long origin = System.nanoTime();
+    private final Cache<String, AtomicLong> buckets;
+
+    /**
+     * @param maxKeys 最多跟踪的key数量
+     * @param idleTimeout 空闲多久后丢弃key的状态，不小于最慢档位的补满时间时不影响限流结果
+     */
+    public LocalRateLimiter(long maxKeys, Duration idleTimeout) {
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleTimeout)
+                .build();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, TokenBucket bucket) {
+        AtomicLong state = buckets.get(key, k -> new AtomicLong());
+        long now = System.nanoTime() - origin;
+        for (;;) {
+            long tat = state.get();
+            long next = Math.max(tat, now) + bucket.getIntervalNanos();
+            if (next - now > bucket.getBurstNanos()) {
+                return false;
+            }
+            if (state.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 当前跟踪的key数量（估算）
+     */
+    public long estimatedSize() {
+        return buckets.estimatedSize();
+    }
+}
@@ -0,0 +1,125 @@
+package com.randb.springaichatstarter.ratelimit;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按用户的请求速率检查
+ * SSE、同步接口、WebSocket和MQ消费在调用模型前统一经过这里，每个userId按所属档位的令牌桶计数，
+ * 未携带userId的请求共用一个匿名桶。超过速率时返回rejected类型的ChatResponse，由各传输层直接下发。
+ * @Date: 2025-08-29
+ * @Author: randb
+ */
+@Slf4j
+public class RateLimitGuard implements MeterBinder {
+
+    /** 未携带userId的请求共用的限流键 */
+    static final String ANONYMOUS_KEY = "__anonymous__";
+
+    static final String REJECTED_MESSAGE = "请求过于频繁，请稍后再试";
+
+    private static final RateLimitGuard DISABLED = new RateLimitGuard();
+
+    private final ChatRateLimiter limiter;
+    private final Map<String, TokenBucket> buckets;
+    private final Map<String, TokenBucket> userBuckets;
+    private final TokenBucket defaultBucket;
+
+    private RateLimitGuard() {
+        this.limiter = null;
+        this.buckets = Map.of();
+        this.userBuckets = Map.of();
+        this.defaultBucket = null;
+    }
+
+    public RateLimitGuard(SpringAiChatProperties.RateLimitProperties properties, ChatRateLimiter limiter) {
+        this.limiter = limiter;
+        this.buckets = new LinkedHashMap<>();
+        properties.getTiers().forEach((tier, tierProperties) -> buckets.put(tier, new TokenBucket(tier, tierProperties)));
+        this.defaultBucket = buckets.get(properties.getDefaultTier());
+        if (defaultBucket == null) {
+            throw new IllegalArgumentException("默认速率档位不存在: " + properties.getDefaultTier());
+        }
+        this.userBuckets = new HashMap<>();
+        properties.getUsers().forEach((userId, tier) -> {
+            TokenBucket bucket = buckets.get(tier);
+            if (bucket == null) {
+                log.warn("用户 {} 配置的速率档位 {} 不存在，使用默认档位 {}", userId, tier, properties.getDefaultTier());
+            } else {
+                userBuckets.put(userId, bucket);
+            }
+        });
+        log.info("用户速率限制已启用: store={}, tiers={}, defaultTier={}",
+                properties.getStore(), buckets.keySet(), properties.getDefaultTier());
+    }
+
+    /**
+     * 不做任何限制的实例
+     */
+    public static RateLimitGuard disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * 按配置中最慢档位的补满时间，作为本地令牌桶的空闲淘汰时间
+     */
+    public static Duration idleTimeout(SpringAiChatProperties.RateLimitProperties properties) {
+        return properties.getTiers().entrySet().stream()
+                .map(entry -> new TokenBucket(entry.getKey(), entry.getValue()).getRefillTime())
+                .max(Duration::compareTo)
+                .orElse(Duration.ofMinutes(1));
+    }
+
+    public boolean isEnabled() {
+        return limiter != null;
+    }
+
+    /**
+     * 检查请求是否超过所属用户的速率
+     * @param request 聊天请求
+     * @return 放行返回null，超过速率返回rejected类型的响应
+     */
+    public ChatResponse check(ChatRequest request) {
+        if (limiter == null) {
+            return null;
+        }
+        String userId = request.getUserId();
+        TokenBucket bucket = userId != null ? userBuckets.getOrDefault(userId, defaultBucket) : defaultBucket;
+        if (limiter.tryAcquire(userId != null ? userId : ANONYMOUS_KEY, bucket)) {
+            bucket.recordAllowed();
+            return null;
+        }
+        bucket.recordRejected();
+        return ChatResponseUtil.createRejected(request, REJECTED_MESSAGE);
+    }
+
+    public Collection<TokenBucket> getBuckets() {
+        return buckets.values();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (TokenBucket bucket : buckets.values()) {
+            FunctionCounter.builder("spring.ai.chat.ratelimit.allowed", bucket, TokenBucket::getAllowedCount)
+                    .description("通过速率检查的请求数")
+                    .tag("tier", bucket.getTier())
+                    .register(registry);
+            FunctionCounter.builder("spring.ai.chat.ratelimit.rejected", bucket, TokenBucket::getRejectedCount)
+                    .description("超过用户速率被拒绝的请求数")
+                    .tag("tier", bucket.getTier())
+                    .register(registry);
+        }
+    }
+}
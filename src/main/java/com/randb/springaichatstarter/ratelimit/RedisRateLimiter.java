@@ -0,0 +1,67 @@
+package com.randb.springaichatstarter.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis令牌桶，集群内所有节点共享同一份配额
+ * 与LocalRateLimiter使用相同的GCRA算法，一条Lua脚本完成读取、判断和写入，时间取Redis服务器时间，
+ * 避免各节点时钟偏差。Redis不可用时放行请求（fail-open），只记录错误次数。
+ * @Date: 2025-08-29
+ * @Author: randb
+ */
+@Slf4j
+public class RedisRateLimiter implements ChatRateLimiter {
+
+    /**
+     * KEYS[1]=桶键，ARGV[1]=发放间隔（微秒），ARGV[2]=突发窗口（微秒），返回1放行、0拒绝
+     */
+    private static final RedisScript<Long> SCRIPT = new DefaultRedisScript<>("""
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000000 + tonumber(t[2])
+            local interval = tonumber(ARGV[1])
+            local burst = tonumber(ARGV[2])
+            local tat = tonumber(redis.call('GET', KEYS[1]) or now)
+            if tat < now then tat = now end
+            local nextTat = tat + interval
+            if nextTat - now > burst then return 0 end
+            redis.call('SET', KEYS[1], string.format('%.0f', nextTat), 'PX', math.ceil((nextTat - now) / 1000) + 1)
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+    private final LongAdder errors = new LongAdder();
+
+    public RedisRateLimiter(StringRedisTemplate redisTemplate, String keyPrefix) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = keyPrefix;
+    }
+
+    @Override
+    public boolean tryAcquire(String key, TokenBucket bucket) {
+        try {
+            Long result = redisTemplate.execute(SCRIPT, List.of(keyPrefix + key),
+                    Long.toString(TimeUnit.NANOSECONDS.toMicros(bucket.getIntervalNanos())),
+                    Long.toString(TimeUnit.NANOSECONDS.toMicros(bucket.getBurstNanos())));
+            return result == null || result != 0;
+        } catch (RuntimeException e) {
+            errors.increment();
+            log.warn("Redis速率限制不可用，放行请求: key={}, error={}", key, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Redis调用失败（已放行）的次数
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+}
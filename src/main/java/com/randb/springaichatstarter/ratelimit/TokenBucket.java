@@ -0,0 +1,83 @@
+package com.randb.springaichatstarter.ratelimit;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个速率档位的令牌桶参数
+ * 以GCRA（通用信元速率算法）表示令牌桶：每个key只需保存一个“理论到达时间”，
+ * 每取一个令牌推后一个发放间隔，超出容量对应的时间窗口即为桶空，状态可以用一次CAS或一条Lua脚本原子更新。
+ * @Date: 2025-08-29
+ * @Author: randb
+ */
+public final class TokenBucket {
+
+    private final String tier;
+    private final int capacity;
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public TokenBucket(String tier, SpringAiChatProperties.RateLimitTier properties) {
+        if (properties.getCapacity() < 1 || !(properties.getRefillPerSecond() > 0)) {
+            throw new IllegalArgumentException("速率档位 " + tier + " 的capacity必须大于0，refillPerSecond必须大于0");
+        }
+        this.tier = tier;
+        this.capacity = properties.getCapacity();
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / properties.getRefillPerSecond()));
+        this.burstNanos = intervalNanos * capacity;
+    }
+
+    /**
+     * 档位名称
+     */
+    public String getTier() {
+        return tier;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 两个令牌之间的发放间隔
+     */
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * 桶满时可提前消费的时间窗口（容量 × 发放间隔）
+     */
+    public long getBurstNanos() {
+        return burstNanos;
+    }
+
+    /**
+     * 空桶补满所需的时间，超过该时间未访问的key与新key等价
+     */
+    public Duration getRefillTime() {
+        return Duration.ofNanos(burstNanos);
+    }
+
+    void recordAllowed() {
+        allowed.increment();
+    }
+
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,104 @@
+package com.randb.springaichatstarter.retry;
+
+import com.randb.springaichatstarter.dto.ChatResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 续写输出去重
+ * 续写调用的开头经常重复中断前最后输出的一段内容。先缓存续写的前window个字符，
+ * 找出已输出内容的后缀与缓存内容前缀的最长重叠（不少于MIN_OVERLAP个字符）并丢弃，之后的片段直接透传。
+ * 非线程安全，每次续写调用使用一个实例（流内信号是串行的）。
+ * @Date: 2025-09-01
+ * @Author: randb
+ */
+final class ContinuationDeduplicator {
+
+    /** 重叠少于该字符数时视为巧合，不去重 */
+    static final int MIN_OVERLAP = 4;
+
+    private final String emittedTail;
+    private final int window;
+    private final StringBuilder pending = new StringBuilder();
+    private ChatResponse lastPending;
+    private boolean decided;
+    private int dropped;
+
+    /**
+     * @param emitted 中断前已经输出的全部内容
+     * @param window 最多比较的字符数
+     */
+    ContinuationDeduplicator(CharSequence emitted, int window) {
+        int start = Math.max(0, emitted.length() - window);
+        this.emittedTail = emitted.subSequence(start, emitted.length()).toString();
+        this.window = window;
+    }
+
+    /**
+     * 处理续写调用的一个片段，返回需要下发的片段（可能为空）
+     */
+    List<ChatResponse> accept(ChatResponse response) {
+        if (decided) {
+            return List.of(response);
+        }
+        if (!"message".equals(response.getType())) {
+            List<ChatResponse> out = new ArrayList<>(flush());
+            out.add(response);
+            return out;
+        }
+        if (response.getContent() != null) {
+            pending.append(response.getContent());
+        }
+        lastPending = response;
+        return pending.length() >= Math.min(window, emittedTail.length()) ? flush() : List.of();
+    }
+
+    /**
+     * 结束缓存：去掉重叠部分后把缓存内容合成一个片段下发
+     */
+    List<ChatResponse> flush() {
+        if (decided) {
+            return List.of();
+        }
+        decided = true;
+        if (lastPending == null) {
+            return List.of();
+        }
+        dropped = overlap(emittedTail, pending);
+        String rest = pending.substring(dropped);
+        if (rest.isEmpty()) {
+            return List.of();
+        }
+        return List.of(new ChatResponse(lastPending.getType(), lastPending.getRequestId(), lastPending.getUserId(),
+                rest, lastPending.getTimestamp()));
+    }
+
+    /**
+     * 丢弃的重复字符数
+     */
+    int getDropped() {
+        return dropped;
+    }
+
+    /**
+     * emitted的后缀与continuation的前缀的最长重叠长度
+     */
+    static int overlap(CharSequence emitted, CharSequence continuation) {
+        int max = Math.min(emitted.length(), continuation.length());
+        for (int length = max; length >= MIN_OVERLAP; length--) {
+            int offset = emitted.length() - length;
+            boolean match = true;
+            for (int i = 0; i < length; i++) {
+                if (emitted.charAt(offset + i) != continuation.charAt(i)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return length;
+            }
+        }
+        return 0;
+    }
+}
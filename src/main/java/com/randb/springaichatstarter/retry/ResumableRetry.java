@@ -0,0 +1,173 @@
+package com.randb.springaichatstarter.retry;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.ChatServiceDecorator;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 可续写的重试
+ * 包在断路器（100）之外、并发限制（400）之内：每次重试都会计入断路器，断路器打开后重试拿到的是降级结果而不是异常。
+ * 只重试瞬时错误（网络异常、超时、5xx、429、TransientAiException），业务错误和4xx直接抛出。
+ * @Date: 2025-09-01
+ * @Author: randb
+ */
+@Slf4j
+public class ResumableRetry implements ChatServiceDecorator, MeterBinder {
+
+    /**
+     * 装饰器顺序，位于断路器（100）之外、并发限制（400）之内
+     */
+    public static final int ORDER = 200;
+
+    private final SpringAiChatProperties.RetryProperties properties;
+    private final Map<String, RetryStats> stats = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    public ResumableRetry(SpringAiChatProperties.RetryProperties properties) {
+        this.properties = properties;
+        log.info("可续写重试已启用: maxRetries={}, initialBackoff={}, maxBackoff={}, maxRetryRatio={}",
+                properties.getMaxRetries(), properties.getInitialBackoff(), properties.getMaxBackoff(),
+                properties.getMaxRetryRatio());
+    }
+
+    @Override
+    public ChatService decorate(String model, ChatService delegate) {
+        return new RetryingChatService(model, delegate, this, stats(model));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    SpringAiChatProperties.RetryProperties getProperties() {
+        return properties;
+    }
+
+    /**
+     * 第attempt次重试前的等待时间：指数退避上限内的全抖动随机值
+     */
+    Duration backoff(int attempt) {
+        long initial = properties.getInitialBackoff().toMillis();
+        long cap = properties.getMaxBackoff().toMillis();
+        long ceiling = Math.min(cap, initial << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    /**
+     * 构造续写请求：原始问题 + 已输出的内容 + 续写指令，其余字段与原请求相同
+     */
+    ChatRequest continuation(ChatRequest request, CharSequence emitted) {
+        ChatRequest next = new ChatRequest();
+        next.setRequestId(request.getRequestId());
+        next.setUserId(request.getUserId());
+        next.setModel(request.getModel());
+        next.setSessionId(request.getSessionId());
+        next.setReplyTo(request.getReplyTo());
+        next.setStream(request.isStream());
+        next.setSkipCache(true);
+        next.setContinuation(true);
+        next.setResumedPrompt(request.getPrompt());
+        next.setResumedReply(emitted.toString());
+        next.setSystemPrompt(request.getSystemPrompt());
+        next.setPrompt(request.getPrompt()
+                + "\n\n" + properties.getContinuationPrefix() + "\n" + emitted
+                + "\n\n" + properties.getContinuationInstruction());
+        return next;
+    }
+
+    /**
+     * 续写后的完整回复：中断前已输出的内容接上续写调用的输出，按与流式下发相同的规则去掉续写开头重复的部分
+     */
+    public String stitch(CharSequence emitted, CharSequence continuation) {
+        int start = Math.max(0, emitted.length() - properties.getOverlapWindow());
+        int dropped = ContinuationDeduplicator.overlap(emitted.subSequence(start, emitted.length()), continuation);
+        return emitted + continuation.subSequence(dropped, continuation.length()).toString();
+    }
+
+    /**
+     * 是否为可重试的瞬时错误
+     */
+    boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof NonTransientAiException) {
+                return false;
+            }
+            if (cause instanceof WebClientResponseException response) {
+                return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+            }
+            if (cause instanceof TransientAiException || cause instanceof WebClientRequestException
+                    || cause instanceof IOException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取模型的重试统计，路由表刷新重新包装时沿用已有的预算
+     */
+    public RetryStats stats(String model) {
+        return stats.computeIfAbsent(model, name -> {
+            RetryStats modelStats = new RetryStats(name, properties);
+            MeterRegistry current = registry;
+            if (current != null) {
+                register(current, modelStats);
+            }
+            return modelStats;
+        });
+    }
+
+    public Collection<RetryStats> getStats() {
+        return stats.values();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        stats.values().forEach(modelStats -> register(registry, modelStats));
+    }
+
+    private static void register(MeterRegistry registry, RetryStats stats) {
+        String model = stats.getModel();
+        FunctionCounter.builder("spring.ai.chat.retry.attempts", stats, RetryStats::getRetryCount)
+                .description("发起的重试次数")
+                .tag("model", model)
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.retry.resumed", stats, RetryStats::getResumedCount)
+                .description("保留已输出内容续写的次数")
+                .tag("model", model)
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.retry.budget.exhausted", stats, RetryStats::getBudgetExhaustedCount)
+                .description("因预算耗尽放弃重试的次数")
+                .tag("model", model)
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.retry.deduplicated", stats, RetryStats::getDeduplicatedChars)
+                .description("续写时丢弃的重复字符数")
+                .baseUnit("chars")
+                .tag("model", model)
+                .register(registry);
+        Gauge.builder("spring.ai.chat.retry.budget.remaining", stats, RetryStats::getRemainingBudget)
+                .description("剩余的重试预算")
+                .tag("model", model)
+                .register(registry);
+    }
+}
@@ -0,0 +1,89 @@
+package com.randb.springaichatstarter.retry;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.util.RequestBudget;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个模型的重试预算和统计
+ * @Date: 2025-09-01
+ * @Author: randb
+ */
+public class RetryStats {
+
+    private final String model;
+    private final RequestBudget budget;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final LongAdder deduplicatedChars = new LongAdder();
+
+    public RetryStats(String model, SpringAiChatProperties.RetryProperties properties) {
+        this.model = model;
+        this.budget = new RequestBudget(properties.getMaxRetryRatio(), properties.getBudgetCapacity());
+    }
+
+    void onRequest() {
+        budget.onRequest();
+    }
+
+    /**
+     * 发起重试前扣减预算，预算不足时放弃重试
+     */
+    boolean tryRetry() {
+        if (!budget.tryAcquire()) {
+            budgetExhausted.increment();
+            return false;
+        }
+        retries.increment();
+        return true;
+    }
+
+    void onResumed() {
+        resumed.increment();
+    }
+
+    void onDeduplicated(int chars) {
+        if (chars > 0) {
+            deduplicatedChars.add(chars);
+        }
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * 发起的重试次数
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * 保留已输出内容续写的次数
+     */
+    public long getResumedCount() {
+        return resumed.sum();
+    }
+
+    /**
+     * 因预算耗尽放弃重试的次数
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    /**
+     * 续写时丢弃的重复字符数
+     */
+    public long getDeduplicatedChars() {
+        return deduplicatedChars.sum();
+    }
+
+    public double getRemainingBudget() {
+        return budget.getRemaining();
+    }
+}
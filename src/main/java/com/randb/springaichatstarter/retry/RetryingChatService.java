@@ -0,0 +1,120 @@
+package com.randb.springaichatstarter.retry;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 可续写的重试聊天服务
+ * 流式调用中途出现瞬时错误时，保留已经下发的内容，带着续写指令重新发起调用，去掉续写开头重复的部分后
+ * 接在同一个requestId的流后面；还没有任何输出时直接重新发起原请求。
+ * 同步和异步回复出错时整体重试。重试间隔为带全抖动的指数退避，并受按请求比例累积的重试预算限制。
+ * @Date: 2025-09-01
+ * @Author: randb
+ */
+@Slf4j
+public class RetryingChatService implements ChatService {
+
+    private final String model;
+    private final ChatService delegate;
+    private final ResumableRetry retry;
+    private final RetryStats stats;
+    private final SpringAiChatProperties.RetryProperties properties;
+
+    RetryingChatService(String model, ChatService delegate, ResumableRetry retry, RetryStats stats) {
+        this.model = model;
+        this.delegate = delegate;
+        this.retry = retry;
+        this.stats = stats;
+        this.properties = retry.getProperties();
+    }
+
+    @Override
+    public Flux<ChatResponse> streamReply(ChatRequest request) {
+        return Flux.defer(() -> {
+            stats.onRequest();
+            return attempt(request, new StringBuilder(), 1);
+        });
+    }
+
+    private Flux<ChatResponse> attempt(ChatRequest request, StringBuilder emitted, int attempt) {
+        Flux<ChatResponse> source;
+        if (emitted.length() == 0) {
+            source = delegate.streamReply(request);
+        } else {
+            stats.onResumed();
+            ContinuationDeduplicator deduplicator =
+                    new ContinuationDeduplicator(emitted, properties.getOverlapWindow());
+            source = delegate.streamReply(retry.continuation(request, emitted))
+                    .concatMapIterable(deduplicator::accept)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(deduplicator.flush())))
+                    .doOnComplete(() -> stats.onDeduplicated(deduplicator.getDropped()));
+        }
+        return source
+                .doOnNext(response -> {
+                    if ("message".equals(response.getType()) && response.getContent() != null) {
+                        emitted.append(response.getContent());
+                    }
+                })
+                .onErrorResume(error -> {
+                    if (attempt > properties.getMaxRetries() || !retry.isRetryable(error) || !stats.tryRetry()) {
+                        return Flux.error(error);
+                    }
+                    Duration backoff = retry.backoff(attempt);
+                    log.warn("模型 {} 流式调用中断（已输出 {} 个字符），{} ms 后第 {} 次重试: {}",
+                            model, emitted.length(), backoff.toMillis(), attempt, error.toString());
+                    return Mono.delay(backoff).flatMapMany(tick -> attempt(request, emitted, attempt + 1));
+                });
+    }
+
+    @Override
+    public ChatResponse syncReply(ChatRequest request) {
+        stats.onRequest();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return delegate.syncReply(request);
+            } catch (RuntimeException e) {
+                if (attempt > properties.getMaxRetries() || !retry.isRetryable(e) || !stats.tryRetry()) {
+                    throw e;
+                }
+                Duration backoff = retry.backoff(attempt);
+                log.warn("模型 {} 同步调用失败，{} ms 后第 {} 次重试: {}", model, backoff.toMillis(), attempt, e.toString());
+                try {
+                    Thread.sleep(backoff.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Mono<ChatResponse> reply(ChatRequest request) {
+        return Mono.defer(() -> {
+            stats.onRequest();
+            return replyAttempt(request, 1);
+        });
+    }
+
+    private Mono<ChatResponse> replyAttempt(ChatRequest request, int attempt) {
+        return delegate.reply(request).onErrorResume(error -> {
+            if (attempt > properties.getMaxRetries() || !retry.isRetryable(error) || !stats.tryRetry()) {
+                return Mono.error(error);
+            }
+            Duration backoff = retry.backoff(attempt);
+            log.warn("模型 {} 异步调用失败，{} ms 后第 {} 次重试: {}", model, backoff.toMillis(), attempt, error.toString());
+            return Mono.delay(backoff).flatMap(tick -> replyAttempt(request, attempt + 1));
+        });
+    }
+
+    public ChatService getDelegate() {
+        return delegate;
+    }
+}
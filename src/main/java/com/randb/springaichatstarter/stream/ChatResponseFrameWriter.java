@@ -0,0 +1,305 @@
+package com.randb.springaichatstarter.stream;
+
+import com.randb.springaichatstarter.dto.ChatResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * ChatResponse JSON帧写入器
+ * 针对流式片段的专用序列化：type、requestId、userId每个流只编码一次（FrameTemplate），
+ * 每个片段只转义并追加content和timestamp，写入线程内复用的缓冲区，不经过ObjectMapper。
+ * 输出与默认ObjectMapper序列化ChatResponse的结果一致（字段顺序相同，null字段输出为null）。
+ * @Date: 2025-08-24
+ * @Author: randb
+ */
+public final class ChatResponseFrameWriter {
+
+    /**
+     * 线程内缓冲区超过该大小时，用完后不再保留，避免长期占用内存
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private static final byte[] CONTENT_SUFFIX_BYTES = "\",\"timestamp\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL_CONTENT_BYTES = "null,\"timestamp\":".getBytes(StandardCharsets.US_ASCII);
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final ThreadLocal<FrameBuffer> BUFFERS = ThreadLocal.withInitial(FrameBuffer::new);
+    private static final ThreadLocal<StringBuilder> BUILDERS = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final ThreadLocal<FrameTemplate> LAST_TEMPLATE = new ThreadLocal<>();
+
+    private ChatResponseFrameWriter() {
+    }
+
+    /**
+     * 为一个流创建帧模板，预先编码不变的部分
+     * @param type 响应类型
+     * @param requestId 请求ID
+     * @param userId 用户ID
+     * @return 帧模板
+     */
+    public static FrameTemplate template(String type, String requestId, String userId) {
+        return new FrameTemplate(type, requestId, userId);
+    }
+
+    /**
+     * 序列化为JSON字符串，同一线程上连续写同一个流的片段时复用上一次的模板
+     */
+    public static String toJson(ChatResponse response) {
+        return templateFor(response).writeString(response.getContent(), response.getTimestamp());
+    }
+
+    /**
+     * 序列化为UTF-8字节数组
+     */
+    public static byte[] toJsonBytes(ChatResponse response) {
+        return templateFor(response).writeBytes(response.getContent(), response.getTimestamp());
+    }
+
+    /**
+     * 直接写入输出流，除模板外不产生额外对象
+     */
+    public static void writeTo(ChatResponse response, OutputStream out) throws IOException {
+        templateFor(response).writeTo(out, response.getContent(), response.getTimestamp());
+    }
+
+    private static FrameTemplate templateFor(ChatResponse response) {
+        FrameTemplate last = LAST_TEMPLATE.get();
+        if (last != null && last.matches(response)) {
+            return last;
+        }
+        FrameTemplate template = template(response.getType(), response.getRequestId(), response.getUserId());
+        LAST_TEMPLATE.set(template);
+        return template;
+    }
+
+    /**
+     * 帧模板
+     * 预编码 {"type":..,"requestId":..,"userId":..,"content": 前缀，线程安全，可在流的整个生命周期内复用
+     */
+    public static final class FrameTemplate {
+        private final String type;
+        private final String requestId;
+        private final String userId;
+        private final String prefix;
+        private final byte[] prefixBytes;
+
+        private FrameTemplate(String type, String requestId, String userId) {
+            this.type = type;
+            this.requestId = requestId;
+            this.userId = userId;
+            StringBuilder sb = new StringBuilder(96);
+            sb.append("{\"type\":");
+            appendJsonString(sb, type);
+            sb.append(",\"requestId\":");
+            appendJsonString(sb, requestId);
+            sb.append(",\"userId\":");
+            appendJsonString(sb, userId);
+            sb.append(",\"content\":");
+            this.prefix = sb.toString();
+            this.prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 响应的不变部分是否与模板一致
+         */
+        public boolean matches(ChatResponse response) {
+            return Objects.equals(type, response.getType())
+                    && Objects.equals(requestId, response.getRequestId())
+                    && Objects.equals(userId, response.getUserId());
+        }
+
+        /**
+         * 写出JSON字符串（用于WebSocket文本帧）
+         */
+        public String writeString(String content, long timestamp) {
+            StringBuilder sb = BUILDERS.get();
+            sb.setLength(0);
+            sb.append(prefix);
+            appendJsonString(sb, content);
+            sb.append(",\"timestamp\":").append(timestamp).append('}');
+            String json = sb.toString();
+            if (sb.capacity() > MAX_RETAINED_BUFFER) {
+                BUILDERS.remove();
+            }
+            return json;
+        }
+
+        /**
+         * 写出UTF-8字节数组（用于MQ等需要独立消息体的场景）
+         */
+        public byte[] writeBytes(String content, long timestamp) {
+            FrameBuffer buffer = fill(content, timestamp);
+            byte[] bytes = Arrays.copyOf(buffer.bytes, buffer.size);
+            release(buffer);
+            return bytes;
+        }
+
+        /**
+         * 直接写入输出流（用于SSE），缓冲区在线程内复用
+         */
+        public void writeTo(OutputStream out, String content, long timestamp) throws IOException {
+            FrameBuffer buffer = fill(content, timestamp);
+            try {
+                out.write(buffer.bytes, 0, buffer.size);
+            } finally {
+                release(buffer);
+            }
+        }
+
+        private FrameBuffer fill(String content, long timestamp) {
+            FrameBuffer buffer = BUFFERS.get();
+            buffer.size = 0;
+            buffer.write(prefixBytes);
+            if (content == null) {
+                buffer.write(NULL_CONTENT_BYTES);
+            } else {
+                buffer.write('"');
+                buffer.writeEscaped(content);
+                buffer.write(CONTENT_SUFFIX_BYTES);
+            }
+            buffer.writeLong(timestamp);
+            buffer.write('}');
+            return buffer;
+        }
+
+        private static void release(FrameBuffer buffer) {
+            if (buffer.bytes.length > MAX_RETAINED_BUFFER) {
+                BUFFERS.remove();
+            }
+        }
+    }
+
+    /**
+     * 按JSON规则追加字符串（含引号），null输出为null
+     */
+    static void appendJsonString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                case '\b' -> sb.append("\\b");
+                case '\f' -> sb.append("\\f");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * 线程内复用的可增长字节缓冲区，直接做UTF-8编码和JSON转义
+     */
+    private static final class FrameBuffer {
+        private byte[] bytes = new byte[512];
+        private int size;
+
+        void write(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] src) {
+            ensure(src.length);
+            System.arraycopy(src, 0, bytes, size, src.length);
+            size += src.length;
+        }
+
+        void writeLong(long value) {
+            if (value == Long.MIN_VALUE) {
+                write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            ensure(20);
+            if (value < 0) {
+                bytes[size++] = '-';
+                value = -value;
+            }
+            int start = size;
+            do {
+                bytes[size++] = (byte) ('0' + (value % 10));
+                value /= 10;
+            } while (value > 0);
+            // 反转数字
+            for (int i = start, j = size - 1; i < j; i++, j--) {
+                byte tmp = bytes[i];
+                bytes[i] = bytes[j];
+                bytes[j] = tmp;
+            }
+        }
+
+        void writeEscaped(String value) {
+            int n = value.length();
+            // 最坏情况：每个字符6字节（\\uXXXX转义）
+            ensure(n * 6);
+            byte[] b = bytes;
+            int pos = size;
+            for (int i = 0; i < n; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    if (c >= 0x20 && c != '"' && c != '\\') {
+                        b[pos++] = (byte) c;
+                        continue;
+                    }
+                    b[pos++] = '\\';
+                    switch (c) {
+                        case '"' -> b[pos++] = '"';
+                        case '\\' -> b[pos++] = '\\';
+                        case '\n' -> b[pos++] = 'n';
+                        case '\r' -> b[pos++] = 'r';
+                        case '\t' -> b[pos++] = 't';
+                        case '\b' -> b[pos++] = 'b';
+                        case '\f' -> b[pos++] = 'f';
+                        default -> {
+                            b[pos++] = 'u';
+                            b[pos++] = '0';
+                            b[pos++] = '0';
+                            b[pos++] = (byte) HEX[c >> 4];
+                            b[pos++] = (byte) HEX[c & 0xF];
+                        }
+                    }
+                } else if (c < 0x800) {
+                    b[pos++] = (byte) (0xC0 | (c >> 6));
+                    b[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // 与Jackson的UTF-8输出一致，代理字符写成\\uXXXX转义
+                    b[pos++] = '\\';
+                    b[pos++] = 'u';
+                    b[pos++] = (byte) HEX[c >> 12];
+                    b[pos++] = (byte) HEX[(c >> 8) & 0xF];
+                    b[pos++] = (byte) HEX[(c >> 4) & 0xF];
+                    b[pos++] = (byte) HEX[c & 0xF];
+                } else {
+                    b[pos++] = (byte) (0xE0 | (c >> 12));
+                    b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    b[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            size = pos;
+        }
+
+        private void ensure(int extra) {
+            int required = size + extra;
+            if (required > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.randb.springaichatstarter.stream;
+
+import com.randb.springaichatstarter.dto.ChatResponse;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * ChatResponse消息转换器
+ * 只负责写出，SSE推送的每个片段和同步接口的响应都通过ChatResponseFrameWriter直接写入响应流，
+ * 读取仍交给Jackson转换器处理。
+ * @Date: 2025-08-24
+ * @Author: randb
+ */
+public class ChatResponseHttpMessageConverter extends AbstractHttpMessageConverter<ChatResponse> {
+
+    public ChatResponseHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ChatResponse.class == clazz;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected ChatResponse readInternal(Class<? extends ChatResponse> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("ChatResponseHttpMessageConverter只支持写出", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(ChatResponse response, HttpOutputMessage outputMessage) throws IOException {
+        ChatResponseFrameWriter.writeTo(response, outputMessage.getBody());
+    }
+}
@@ -0,0 +1,219 @@
+package com.randb.springaichatstarter.stream;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式片段合并器
+ * 位于streamReply和传输层（SSE、WebSocket）之间，把逐token的小片段按时间窗口和/或字节大小合并成较大的帧，
+ * 减少序列化和刷写次数。第一个片段总是立即发出，不影响首字延迟；非message类型的帧不参与合并，保持原有顺序。
+ * @Date: 2025-08-23
+ * @Author: randb
+ */
+public final class ChunkCoalescer {
+
+    private static final ChunkCoalescer DISABLED = new ChunkCoalescer(Duration.ZERO, 0);
+
+    /**
+     * 单批最多缓存的片段数，bufferTimeout在公平背压模式下按该值向上游预取
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final Duration window;
+    private final long maxBytes;
+
+    private ChunkCoalescer(Duration window, long maxBytes) {
+        this.window = window;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 根据配置创建合并器
+     */
+    public static ChunkCoalescer of(SpringAiChatProperties.StreamCoalesceProperties properties) {
+        if (properties == null || !properties.isEnabled()) {
+            return DISABLED;
+        }
+        Duration window = properties.getWindow() != null ? properties.getWindow() : Duration.ZERO;
+        long maxBytes = properties.getMaxSize() != null ? properties.getMaxSize().toBytes() : 0;
+        return new ChunkCoalescer(window.isNegative() ? Duration.ZERO : window, Math.max(0, maxBytes));
+    }
+
+    /**
+     * 不做任何合并的实例
+     */
+    public static ChunkCoalescer disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return !window.isZero() || maxBytes > 0;
+    }
+
+    /**
+     * 对流式响应应用合并策略
+     * @param source 原始片段流
+     * @return 合并后的片段流
+     */
+    public Flux<ChatResponse> apply(Flux<ChatResponse> source) {
+        if (!isEnabled()) {
+            return source;
+        }
+        return source.switchOnFirst((signal, flux) -> {
+            if (!signal.hasValue()) {
+                return flux;
+            }
+            return Flux.concat(Mono.just(signal.get()), coalesce(flux.skip(1)));
+        });
+    }
+
+    private Flux<ChatResponse> coalesce(Flux<ChatResponse> rest) {
+        return Flux.defer(() -> {
+            Flux<List<ChatResponse>> batches;
+            if (maxBytes > 0) {
+                PendingBytes pending = new PendingBytes(maxBytes);
+                batches = rest
+                        .windowUntil(pending::add)
+                        .index()
+                        .concatMap(window -> buffer(window.getT2())
+                                .doOnNext(batch -> pending.emitted(window.getT1(), batch)));
+            } else {
+                batches = buffer(rest);
+            }
+            return batches.concatMapIterable(ChunkCoalescer::merge);
+        });
+    }
+
+    private Flux<List<ChatResponse>> buffer(Flux<ChatResponse> window) {
+        if (this.window.isZero()) {
+            return window.collectList().filter(list -> !list.isEmpty()).flux();
+        }
+        // 公平背压：下游没有需求时继续累积，不会因为计时器到期而抛出OverflowException
+        return window.bufferTimeout(MAX_BATCH_SIZE, this.window, true);
+    }
+
+    /**
+     * 合并一批片段中连续的、属于同一请求的message片段
+     */
+    static List<ChatResponse> merge(List<ChatResponse> batch) {
+        if (batch.size() <= 1) {
+            return batch;
+        }
+        List<ChatResponse> merged = new ArrayList<>(2);
+        int i = 0;
+        while (i < batch.size()) {
+            ChatResponse first = batch.get(i);
+            int end = i + 1;
+            if (isMessage(first)) {
+                while (end < batch.size() && isMessage(batch.get(end))
+                        && sameRequest(first, batch.get(end))) {
+                    end++;
+                }
+            }
+            if (end - i == 1) {
+                merged.add(first);
+            } else {
+                int length = 0;
+                for (int j = i; j < end; j++) {
+                    String content = batch.get(j).getContent();
+                    length += content != null ? content.length() : 0;
+                }
+                StringBuilder content = new StringBuilder(length);
+                for (int j = i; j < end; j++) {
+                    String part = batch.get(j).getContent();
+                    if (part != null) {
+                        content.append(part);
+                    }
+                }
+                ChatResponse last = batch.get(end - 1);
+                merged.add(new ChatResponse(first.getType(), first.getRequestId(), first.getUserId(),
+                        content.toString(), last.getTimestamp()));
+            }
+            i = end;
+        }
+        return merged;
+    }
+
+    /**
+     * 尚未发出的message片段字节数，决定何时按大小切分窗口
+     * 窗口内按时间窗口提前发出的批次要从计数中扣除，否则下一批会因为已经发出的字节过早切分；
+     * 窗口被切分时计数已清零，切分之后才发出的批次不再扣除。
+     * windowUntil的判断在上游线程执行，计时发出在计时器线程，两者用同一把锁
+     */
+    private static final class PendingBytes {
+
+        private final long maxBytes;
+        private long bytes;
+        /** 已切分的窗口数，即当前窗口的序号 */
+        private long cuts;
+
+        PendingBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * @return 是否在该片段之后切分窗口
+         */
+        synchronized boolean add(ChatResponse response) {
+            if (isMessage(response)) {
+                bytes += utf8Length(response.getContent());
+                if (bytes < maxBytes) {
+                    return false;
+                }
+            }
+            bytes = 0;
+            cuts++;
+            return true;
+        }
+
+        synchronized void emitted(long window, List<ChatResponse> batch) {
+            if (window != cuts) {
+                return;
+            }
+            for (ChatResponse response : batch) {
+                if (isMessage(response)) {
+                    bytes -= utf8Length(response.getContent());
+                }
+            }
+            bytes = Math.max(0, bytes);
+        }
+    }
+
+    private static boolean isMessage(ChatResponse response) {
+        return "message".equals(response.getType());
+    }
+
+    private static boolean sameRequest(ChatResponse a, ChatResponse b) {
+        return a.getRequestId() == null ? b.getRequestId() == null : a.getRequestId().equals(b.getRequestId());
+    }
+
+    /**
+     * 计算字符串的UTF-8编码长度，不产生临时数组
+     */
+    public static int utf8Length(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
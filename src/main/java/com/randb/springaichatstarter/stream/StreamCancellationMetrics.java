@@ -0,0 +1,102 @@
+package com.randb.springaichatstarter.stream;
+
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.util.TokenEstimator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流式响应取消统计
+ * 客户端断开、主动取消时上游生成随之取消，记录取消的流数量，并按已完成流的平均输出估算节省的token数
+ * （平均输出token数 - 取消前已输出的token数）。
+ * 取消未到达上游时（如合并请求中仍有其他订阅者共享同一次生成）只计取消数，不计节省的token。
+ * @Date: 2025-08-26
+ * @Author: randb
+ */
+public class StreamCancellationMetrics implements MeterBinder {
+
+    private final LongAdder completedStreams = new LongAdder();
+    private final LongAdder completedTokens = new LongAdder();
+    private final LongAdder cancelledStreams = new LongAdder();
+    private final LongAdder tokensSaved = new LongAdder();
+
+    private static final String DETACHED_KEY = StreamCancellationMetrics.class.getName() + ".detached";
+
+    /**
+     * 标记当前订阅者的取消不会停止上游生成，由共享上游的装饰器在订阅者取消时调用
+     */
+    public static void markDetached(ContextView context) {
+        context.<AtomicBoolean>getOrEmpty(DETACHED_KEY).ifPresent(detached -> detached.set(true));
+    }
+
+    /**
+     * 跟踪一个流式响应，应包装在片段合并等变换之前
+     */
+    public Flux<ChatResponse> track(Flux<ChatResponse> source) {
+        return Flux.defer(() -> {
+            long[] emitted = {0};
+            AtomicBoolean detached = new AtomicBoolean();
+            return source
+                    .doOnNext(response -> {
+                        if ("message".equals(response.getType())) {
+                            emitted[0] += TokenEstimator.estimate(response.getContent());
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        completedStreams.increment();
+                        completedTokens.add(emitted[0]);
+                    })
+                    // doFinally在取消信号传到上游之后执行，此时已能确定取消是否到达上游
+                    .doFinally(signal -> {
+                        if (signal == SignalType.CANCEL) {
+                            recordCancelled(emitted[0], detached.get());
+                        }
+                    })
+                    .contextWrite(context -> context.put(DETACHED_KEY, detached));
+        });
+    }
+
+    private void recordCancelled(long emittedTokens, boolean detached) {
+        cancelledStreams.increment();
+        if (detached) {
+            return;
+        }
+        long completed = completedStreams.sum();
+        if (completed > 0) {
+            long average = completedTokens.sum() / completed;
+            tokensSaved.add(Math.max(0, average - emittedTokens));
+        }
+    }
+
+    /**
+     * 被取消的流数量
+     */
+    public long getCancelledCount() {
+        return cancelledStreams.sum();
+    }
+
+    /**
+     * 估算的节省token数
+     */
+    public long getTokensSaved() {
+        return tokensSaved.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("spring.ai.chat.stream.cancelled", this, StreamCancellationMetrics::getCancelledCount)
+                .description("客户端断开或主动取消的流式响应数")
+                .register(registry);
+        FunctionCounter.builder("spring.ai.chat.stream.tokens.saved", this, StreamCancellationMetrics::getTokensSaved)
+                .description("取消流式响应估算节省的token数")
+                .baseUnit("tokens")
+                .register(registry);
+    }
+}
@@ -2,6 +2,8 @@ package com.randb.springaichatstarter.util;
 
 import com.randb.springaichatstarter.dto.ChatRequest;
 import com.randb.springaichatstarter.dto.ChatResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * ChatResponse工具类
@@ -31,6 +33,16 @@ public class ChatResponseUtil {
         return createResponse("error", request, errorMessage);
     }
 
+    /**
+     * 创建拒绝类型的ChatResponse（并发或速率超过限制）
+     * @param request 原始请求
+     * @param reason 拒绝原因
+     * @return ChatResponse对象
+     */
+    public static ChatResponse createRejected(ChatRequest request, String reason) {
+        return createResponse("rejected", request, reason);
+    }
+
     /**
      * 创建完成类型的ChatResponse
      * @param request 原始请求
@@ -69,6 +81,41 @@ public class ChatResponseUtil {
         return response;
     }
 
+    /**
+     * 按另一个请求重新标记响应，保留类型、内容和降级标记，替换requestId和userId
+     * 用于多个请求共享同一次上游调用结果的场景
+     * @param source 原始响应
+     * @param request 目标请求
+     * @return 新的ChatResponse对象
+     */
+    public static ChatResponse restamp(ChatResponse source, ChatRequest request) {
+        ChatResponse response = createResponse(source.getType(), request, source.getContent());
+        response.setFallback(source.isFallback());
+        return response;
+    }
+
+    /**
+     * 是否为可以缓存的模型回复：消息类型、有内容且不是降级服务生成的
+     * @param response 响应
+     * @return 可以缓存时返回true
+     */
+    public static boolean isCacheable(ChatResponse response) {
+        return response != null && "message".equals(response.getType())
+                && response.getContent() != null && !response.isFallback();
+    }
+
+    /**
+     * 把流式文本片段聚合成一个完整的消息响应，不阻塞线程
+     * @param request 原始请求
+     * @param contents 流式文本片段
+     * @return 完整的ChatResponse
+     */
+    public static Mono<ChatResponse> aggregate(ChatRequest request, Flux<String> contents) {
+        return contents
+                .collect(StringBuilder::new, StringBuilder::append)
+                .map(content -> createMessage(request, content.toString()));
+    }
+
     /**
      * 创建系统响应的ChatResponse
      * @param type 响应类型
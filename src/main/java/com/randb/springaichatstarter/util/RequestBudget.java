@@ -0,0 +1,67 @@
+package com.randb.springaichatstarter.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按请求比例累积的额外调用预算（对冲、重试共用）
+ * 每个请求累积ratio个令牌，上限为capacity，每次额外调用消耗一个令牌；
+ * 令牌以千分之一为单位保存在一个AtomicLong中，累积和扣减都是无锁CAS。
+ * @Date: 2025-09-01
+ * @Author: randb
+ */
+public final class RequestBudget {
+
+    private static final long TOKEN = 1000;
+
+    private final AtomicLong tokens;
+    private final long capacity;
+    private final long perRequest;
+
+    /**
+     * @param ratio 每个请求累积的令牌数，即额外调用占请求数的最大比例
+     * @param capacity 令牌上限，同时也是初始值
+     */
+    public RequestBudget(double ratio, int capacity) {
+        this.capacity = Math.max(1, capacity) * TOKEN;
+        this.perRequest = Math.round(Math.max(0, ratio) * TOKEN);
+        this.tokens = new AtomicLong(this.capacity);
+    }
+
+    /**
+     * 记录一个请求，累积预算
+     */
+    public void onRequest() {
+        if (perRequest == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= capacity) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(capacity, current + perRequest)));
+    }
+
+    /**
+     * 尝试消耗一个令牌
+     * @return 预算不足时返回false
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /**
+     * 剩余的令牌数
+     */
+    public double getRemaining() {
+        return (double) tokens.get() / TOKEN;
+    }
+}
@@ -0,0 +1,65 @@
+package com.randb.springaichatstarter.util;
+
+import org.springframework.ai.chat.messages.Message;
+
+/**
+ * 本地token数估算
+ * 不依赖具体模型的分词器：CJK字符按1个token，其他字符按4个字符1个token，一次遍历完成。
+ * 消息的估算结果缓存在消息元数据中（METADATA_KEY），同一个Message对象只计算一次；
+ * 三种对话记忆（本地、Redis、追加日志）都在写入时计算并随消息保存，读取时放回元数据；
+ * 旧版本写入的不带token数的消息在读取后估算一次。
+ * @Date: 2025-09-05
+ * @Author: randb
+ */
+public final class TokenEstimator {
+
+    /**
+     * 消息元数据中缓存token数的键
+     */
+    public static final String METADATA_KEY = "spring.ai.chat.tokens";
+
+    /**
+     * 每条消息的固定开销（角色标记、分隔符等）
+     */
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算文本的token数
+     */
+    public static int estimate(CharSequence text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x2E80 && c <= 0x9FFF || c >= 0xAC00 && c <= 0xD7AF || c >= 0xF900 && c <= 0xFAFF) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 估算一条消息占用的token数（含固定开销），优先使用元数据中缓存的结果
+     */
+    public static int count(Message message) {
+        Object cached = message.getMetadata().get(METADATA_KEY);
+        if (cached instanceof Integer tokens) {
+            return tokens;
+        }
+        int tokens = estimate(message.getText()) + MESSAGE_OVERHEAD;
+        try {
+            message.getMetadata().put(METADATA_KEY, tokens);
+        } catch (UnsupportedOperationException e) {
+            // 元数据不可修改时不缓存
+        }
+        return tokens;
+    }
+}
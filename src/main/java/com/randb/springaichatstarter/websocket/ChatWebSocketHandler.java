@@ -1,10 +1,16 @@
 package com.randb.springaichatstarter.websocket;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
 import com.randb.springaichatstarter.core.ChatModelFactory;
 import com.randb.springaichatstarter.core.ChatService;
 import com.randb.springaichatstarter.dto.ChatRequest;
 import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.ratelimit.RateLimitGuard;
+import com.randb.springaichatstarter.stream.ChatResponseFrameWriter;
+import com.randb.springaichatstarter.stream.ChunkCoalescer;
+import com.randb.springaichatstarter.stream.StreamCancellationMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -15,7 +21,10 @@ import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import jakarta.annotation.PostConstruct;
-import java.io.IOException;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -32,6 +41,9 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
 
     private final ChatModelFactory chatModelFactory;
     private final ObjectMapper objectMapper;
+    private final SpringAiChatProperties properties;
+    private final StreamCancellationMetrics cancellationMetrics;
+    private final RateLimitGuard rateLimitGuard;
 
     /** sessionId -> WebSocketSession */
     private final ConcurrentHashMap<String, WebSocketSession> sessionMap = new ConcurrentHashMap<>();
@@ -39,14 +51,30 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     /** userId -> sessionId */
     private final ConcurrentHashMap<String, String> userSessionMap = new ConcurrentHashMap<>();
 
+    /** sessionId -> 发送队列 */
+    private final ConcurrentHashMap<String, SessionOutbound> outboundMap = new ConcurrentHashMap<>();
+
+    /** 所有会话共用的写调度器，慢客户端只占用这里的线程 */
+    private final Scheduler outboundScheduler = Schedulers.newBoundedElastic(
+            Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "ws-outbound");
+
     @PostConstruct
     public void init() {
         log.info("ChatWebSocketHandler 已创建，准备处理 WebSocket 连接");
     }
 
+    @PreDestroy
+    public void destroy() {
+        outboundMap.values().forEach(SessionOutbound::dispose);
+        outboundScheduler.dispose();
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
         sessionMap.put(session.getId(), session);
+        // 发送队列只在这里创建，连接关闭后由afterConnectionClosed移除
+        outboundMap.put(session.getId(),
+                new SessionOutbound(session, properties.getWebsocket().getOutbound(), outboundScheduler));
         log.info("WebSocket 连接建立: {}", session.getId());
     }
 
@@ -60,7 +88,17 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
                 return;
             }
 
-            ChatRequest request = objectMapper.readValue(payload, ChatRequest.class);
+            JsonNode node = objectMapper.readTree(payload);
+            // 处理取消：{"type":"cancel","requestId":"..."}
+            if ("cancel".equals(node.path("type").asText())) {
+                cancelStream(session, node.path("requestId").asText(null));
+                return;
+            }
+
+            ChatRequest request = objectMapper.treeToValue(node, ChatRequest.class);
+            if (request.getRequestId() == null) {
+                request.setRequestId(UUID.randomUUID().toString());
+            }
 
             if (request.getModel() == null || request.getModel().isEmpty()) {
                 request.setModel("qwen"); // 默认模型
@@ -72,10 +110,25 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
 
             log.info("收到 WebSocket 消息: {}", payload);
 
+            ChatResponse rejected = rateLimitGuard.check(request);
+            if (rejected != null) {
+                sendMessage(session, ChatResponseFrameWriter.toJson(rejected));
+                return;
+            }
+
             ChatService chatService = chatModelFactory.get(request.getModel());
 
-            chatService.streamReply(request).subscribe(
-                response -> sendMessage(session, convertToJson(response)),
+            ChunkCoalescer coalescer = ChunkCoalescer.of(properties.getWebsocket().getCoalesce());
+            // 同一个流的type/requestId/userId不变，只预编码一次
+            ChatResponseFrameWriter.FrameTemplate frame =
+                    ChatResponseFrameWriter.template("message", request.getRequestId(), request.getUserId());
+            SessionOutbound outbound = outbound(session);
+            if (outbound == null) {
+                log.debug("WebSocket 会话已关闭，忽略请求: session={}, requestId={}", session.getId(), request.getRequestId());
+                return;
+            }
+            Flux<ChatResponse> stream = cancellationMetrics.track(chatService.streamReply(request));
+            outbound.stream(request.getRequestId(), coalescer.apply(stream), frame,
                 error -> handleError(session, error, request),
                 () -> sendMessage(session, createResponse("completed", request, "[DONE]"))
             );
@@ -86,22 +139,57 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * 取消指定请求的流式生成，上游调用随之取消
+     */
+    private void cancelStream(WebSocketSession session, String requestId) {
+        SessionOutbound outbound = outboundMap.get(session.getId());
+        if (outbound != null && outbound.cancel(requestId)) {
+            log.info("WebSocket 请求已取消: session={}, requestId={}", session.getId(), requestId);
+            ChatResponse response = new ChatResponse();
+            response.setType("cancelled");
+            response.setRequestId(requestId);
+            response.setContent("[CANCELLED]");
+            sendMessage(session, ChatResponseFrameWriter.toJson(response));
+        }
+    }
+
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         sessionMap.remove(session.getId());
+        SessionOutbound outbound = outboundMap.remove(session.getId());
+        if (outbound != null) {
+            // 取消该会话上所有仍在生成的流
+            int active = outbound.getActiveStreams();
+            outbound.dispose();
+            if (active > 0) {
+                log.info("WebSocket 连接关闭，取消 {} 个进行中的流: {}", active, session.getId());
+            }
+        }
         // 同步清理 userId -> sessionId
         userSessionMap.entrySet().removeIf(entry -> entry.getValue().equals(session.getId()));
         log.info("WebSocket 连接关闭: {}", session.getId());
     }
 
+    /**
+     * 会话的发送队列；会话已关闭或队列已移除时返回null。
+     * 流的完成、出错、取消回调可能晚于afterConnectionClosed执行，这里不能重新创建队列，否则不会再被移除
+     */
+    private SessionOutbound outbound(WebSocketSession session) {
+        SessionOutbound outbound = outboundMap.get(session.getId());
+        return outbound != null && session.isOpen() ? outbound : null;
+    }
+
+    /**
+     * 经会话发送队列异步发送，不在调用线程上阻塞；会话已关闭时丢弃
+     */
     private void sendMessage(WebSocketSession session, String message) {
-        try {
-            if (session.isOpen()) {
-                session.sendMessage(new TextMessage(message));
-            }
-        } catch (IOException e) {
-            log.error("发送 WebSocket 消息异常", e);
+        SessionOutbound outbound = outbound(session);
+        if (outbound == null) {
+            log.debug("WebSocket 会话已关闭，丢弃消息: {}", session.getId());
+            return;
         }
+        outbound.send(message);
     }
 
     private void handleError(WebSocketSession session, Throwable error, ChatRequest request) {
@@ -127,7 +215,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             response.setContent(content);
             response.setUserId(request.getUserId());
             response.setRequestId(request.getRequestId() != null ? request.getRequestId() : UUID.randomUUID().toString());
-            return objectMapper.writeValueAsString(response);
+            return ChatResponseFrameWriter.toJson(response);
         } catch (Exception e) {
             log.error("构建响应失败", e);
             return "{}";
@@ -140,19 +228,10 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             response.setType(type);
             response.setContent(content);
             response.setRequestId(UUID.randomUUID().toString());
-            return objectMapper.writeValueAsString(response);
+            return ChatResponseFrameWriter.toJson(response);
         } catch (Exception e) {
             log.error("构建系统响应失败", e);
             return "{}";
         }
     }
-
-    private String convertToJson(ChatResponse response) {
-        try {
-            return objectMapper.writeValueAsString(response);
-        } catch (Exception e) {
-            log.error("转换ChatResponse为JSON失败", e);
-            return "{}";
-        }
-    }
 }
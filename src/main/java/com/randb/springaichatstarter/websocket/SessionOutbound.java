@@ -0,0 +1,443 @@
+package com.randb.springaichatstarter.websocket;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.stream.ChatResponseFrameWriter;
+import com.randb.springaichatstarter.stream.ChunkCoalescer;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscription;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * WebSocket会话发送队列
+ * 每个会话一个有界队列，由单个写线程（outbound调度器）串行调用session.sendMessage，
+ * 多个并发请求不会在同一个会话上竞争，慢客户端也只会阻塞写线程而不会阻塞模型的流式线程。
+ * 流式片段按发送进度向上游请求（每发出一帧补充一个需求），队列超过条数或大小限制时按溢出策略处理。
+ * 每次发送都有计时，超过sendTimeLimit仍未返回时关闭会话，卡住的写线程不会一直占着会话。
+ * @Date: 2025-08-25
+ * @Author: randb
+ */
+@Slf4j
+public class SessionOutbound {
+
+    /**
+     * 每个流初始的需求数，之后每发出一帧补充一个
+     */
+    static final int STREAM_PREFETCH = 4;
+
+    /**
+     * 估算消息大小时ChatResponse除content外的固定开销
+     */
+    private static final int FRAME_OVERHEAD = 96;
+
+    private final WebSocketSession session;
+    private final Scheduler scheduler;
+    /** 发送超时计时，只执行不阻塞的任务，不占用可能被卡住的写线程 */
+    private final Scheduler timer = Schedulers.parallel();
+    private final long sendTimeLimitNanos;
+    private final long bufferSizeLimit;
+    private final int queueCapacity;
+    private final SpringAiChatProperties.OverflowPolicy overflowPolicy;
+
+    /** 待发送队列，读写都在this锁内 */
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private long queuedBytes;
+
+    private final AtomicInteger wip = new AtomicInteger();
+    /** requestId -> 进行中的流 */
+    private final ConcurrentHashMap<String, StreamSubscriber> streams = new ConcurrentHashMap<>();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private volatile boolean closed;
+
+    public SessionOutbound(WebSocketSession session, SpringAiChatProperties.OutboundProperties properties,
+                           Scheduler scheduler) {
+        this.session = session;
+        this.scheduler = scheduler;
+        this.sendTimeLimitNanos = properties.getSendTimeLimit().toNanos();
+        this.bufferSizeLimit = properties.getBufferSizeLimit().toBytes();
+        this.queueCapacity = Math.max(1, properties.getQueueCapacity());
+        this.overflowPolicy = properties.getOverflowPolicy();
+    }
+
+    /**
+     * 发送一条已经序列化好的消息（心跳、错误、结束等控制消息）
+     */
+    public void send(String payload) {
+        enqueue(new Frame(null, payload, null, ChunkCoalescer.utf8Length(payload)));
+    }
+
+    /**
+     * 订阅流式响应，片段经发送队列写出，需求由发送进度驱动
+     * 同一个requestId已有进行中的流时，旧的流会被取消
+     * @param requestId 请求ID
+     * @param source 流式响应
+     * @param frame 该流的帧模板
+     * @param onError 流出错时的回调，在已排队的片段之后执行
+     * @param onComplete 流结束时的回调，在已排队的片段之后执行
+     * @return 可用于取消该流的Disposable
+     */
+    public Disposable stream(String requestId, Flux<ChatResponse> source, ChatResponseFrameWriter.FrameTemplate frame,
+                             Consumer<Throwable> onError, Runnable onComplete) {
+        StreamSubscriber subscriber = new StreamSubscriber(requestId, frame, onError, onComplete);
+        if (closed) {
+            subscriber.dispose();
+            return subscriber;
+        }
+        StreamSubscriber previous = streams.put(requestId, subscriber);
+        if (previous != null) {
+            previous.dispose();
+        }
+        source.subscribe(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * 取消指定请求的流，已排队未发送的片段也一并丢弃
+     * @return 是否存在进行中的流
+     */
+    public boolean cancel(String requestId) {
+        StreamSubscriber subscriber = requestId != null ? streams.remove(requestId) : null;
+        if (subscriber == null) {
+            return false;
+        }
+        subscriber.dispose();
+        synchronized (this) {
+            queue.removeIf(frame -> {
+                if (frame.source == subscriber) {
+                    queuedBytes -= frame.size;
+                    return true;
+                }
+                return false;
+            });
+        }
+        return true;
+    }
+
+    /**
+     * 进行中的流数量
+     */
+    public int getActiveStreams() {
+        return streams.size();
+    }
+
+    /**
+     * 会话关闭时调用，清空队列并取消所有仍在进行的流
+     */
+    public void dispose() {
+        close(null);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 因溢出被丢弃的片段数
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 因溢出被合并掉的片段数
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public int getQueuedFrames() {
+        synchronized (this) {
+            return queue.size();
+        }
+    }
+
+    private void enqueue(Frame frame) {
+        if (closed) {
+            return;
+        }
+
+        List<StreamSubscriber> credits = null;
+        boolean overflow = false;
+        synchronized (this) {
+            queue.add(frame);
+            queuedBytes += frame.size;
+            if (isOverflowing()) {
+                credits = new ArrayList<>();
+                overflow = !handleOverflow(credits);
+            }
+        }
+        if (overflow) {
+            log.warn("WebSocket 会话 {} 发送队列溢出（策略: {}），关闭会话", session.getId(), overflowPolicy);
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+            return;
+        }
+        // 被丢弃或合并掉的片段归还需求，需在锁外调用，避免重入时修改队列
+        if (credits != null) {
+            credits.forEach(StreamSubscriber::credit);
+        }
+        scheduleDrain();
+    }
+
+    private boolean isOverflowing() {
+        return queue.size() > queueCapacity || queuedBytes > bufferSizeLimit;
+    }
+
+    /**
+     * 按策略处理溢出，返回false表示无法缓解需要关闭会话
+     */
+    private boolean handleOverflow(List<StreamSubscriber> credits) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST -> dropOldest(credits);
+            case COALESCE -> coalesceQueued(credits);
+            default -> {
+                return false;
+            }
+        }
+        return !isOverflowing();
+    }
+
+    private void dropOldest(List<StreamSubscriber> credits) {
+        Iterator<Frame> iterator = queue.iterator();
+        while (isOverflowing() && iterator.hasNext()) {
+            Frame frame = iterator.next();
+            if (frame.isMessage()) {
+                iterator.remove();
+                queuedBytes -= frame.size;
+                droppedCount.increment();
+                credits.add(frame.source);
+            }
+        }
+    }
+
+    private void coalesceQueued(List<StreamSubscriber> credits) {
+        ArrayDeque<Frame> merged = new ArrayDeque<>(queue.size());
+        long bytes = 0;
+        Frame last = null;
+        for (Frame frame : queue) {
+            if (last != null && last.isMessage() && frame.isMessage() && last.source == frame.source) {
+                merged.pollLast();
+                bytes -= last.size;
+                last = last.merge(frame);
+                coalescedCount.increment();
+                credits.add(frame.source);
+            } else {
+                last = frame;
+            }
+            merged.addLast(last);
+            bytes += last.size;
+        }
+        queue.clear();
+        queue.addAll(merged);
+        queuedBytes = bytes;
+    }
+
+    private synchronized Frame poll() {
+        Frame frame = queue.poll();
+        if (frame != null) {
+            queuedBytes -= frame.size;
+        }
+        return frame;
+    }
+
+    private void scheduleDrain() {
+        if (wip.getAndIncrement() == 0) {
+            try {
+                scheduler.schedule(this::drain);
+            } catch (RejectedExecutionException e) {
+                log.warn("WebSocket 发送调度器已关闭，丢弃会话 {} 的待发送消息", session.getId());
+                close(null);
+            }
+        }
+    }
+
+    /**
+     * 单写线程：同一时刻只有一个drain在执行
+     */
+    private void drain() {
+        int missed = 1;
+        for (;;) {
+            Frame frame;
+            while (!closed && (frame = poll()) != null) {
+                write(frame);
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void write(Frame frame) {
+        if (session.isOpen()) {
+            Disposable watchdog = null;
+            try {
+                TextMessage message = new TextMessage(frame.payload());
+                watchdog = timer.schedule(this::onSendTimeout, sendTimeLimitNanos, TimeUnit.NANOSECONDS);
+                session.sendMessage(message);
+            } catch (IOException | RuntimeException e) {
+                log.error("发送 WebSocket 消息异常", e);
+            } finally {
+                if (watchdog != null) {
+                    watchdog.dispose();
+                }
+            }
+        }
+        if (frame.source != null) {
+            frame.source.credit();
+        }
+    }
+
+    /**
+     * 单次发送超过sendTimeLimit：关闭会话，取消所有流，写线程在发送返回后退出
+     */
+    private void onSendTimeout() {
+        if (!closed) {
+            log.warn("WebSocket 会话 {} 发送超时（超过 {} ms），关闭会话", session.getId(), sendTimeLimitNanos / 1_000_000);
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        }
+    }
+
+    private void close(CloseStatus status) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+            queuedBytes = 0;
+        }
+        streams.values().forEach(StreamSubscriber::dispose);
+        streams.clear();
+        if (status != null && session.isOpen()) {
+            // 关闭可能和卡住的发送一样阻塞，交给写调度器执行
+            try {
+                scheduler.schedule(() -> closeSession(status));
+            } catch (RejectedExecutionException e) {
+                closeSession(status);
+            }
+        }
+    }
+
+    private void closeSession(CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.warn("关闭 WebSocket 会话 {} 失败: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 队列中的一条消息，流式片段保留ChatResponse以便合并，在写线程上才序列化
+     */
+    private static final class Frame {
+        private final ChatResponse response;
+        private final String payload;
+        private final StreamSubscriber source;
+        private final long size;
+
+        private Frame(ChatResponse response, String payload, StreamSubscriber source, long size) {
+            this.response = response;
+            this.payload = payload;
+            this.source = source;
+            this.size = size;
+        }
+
+        static Frame of(ChatResponse response, StreamSubscriber source) {
+            return new Frame(response, null, source, ChunkCoalescer.utf8Length(response.getContent()) + FRAME_OVERHEAD);
+        }
+
+        boolean isMessage() {
+            return response != null && "message".equals(response.getType());
+        }
+
+        Frame merge(Frame next) {
+            String content = (response.getContent() != null ? response.getContent() : "")
+                    + (next.response.getContent() != null ? next.response.getContent() : "");
+            ChatResponse mergedResponse = new ChatResponse(response.getType(), response.getRequestId(),
+                    response.getUserId(), content, next.response.getTimestamp());
+            return new Frame(mergedResponse, null, source, size + next.size - FRAME_OVERHEAD);
+        }
+
+        String payload() {
+            if (payload != null) {
+                return payload;
+            }
+            ChatResponseFrameWriter.FrameTemplate template = source != null ? source.frame : null;
+            if (template != null && template.matches(response)) {
+                return template.writeString(response.getContent(), response.getTimestamp());
+            }
+            return ChatResponseFrameWriter.toJson(response);
+        }
+    }
+
+    /**
+     * 单个流的订阅者，需求随发送进度补充
+     */
+    private final class StreamSubscriber extends BaseSubscriber<ChatResponse> {
+        private final String requestId;
+        private final ChatResponseFrameWriter.FrameTemplate frame;
+        private final Consumer<Throwable> onError;
+        private final Runnable onComplete;
+
+        private StreamSubscriber(String requestId, ChatResponseFrameWriter.FrameTemplate frame,
+                                 Consumer<Throwable> onError, Runnable onComplete) {
+            this.requestId = requestId;
+            this.frame = frame;
+            this.onError = onError;
+            this.onComplete = onComplete;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(STREAM_PREFETCH);
+        }
+
+        @Override
+        protected void hookOnNext(ChatResponse response) {
+            enqueue(Frame.of(response, this));
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            onError.accept(throwable);
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            onComplete.run();
+        }
+
+        @Override
+        protected void hookFinally(SignalType type) {
+            streams.remove(requestId, this);
+        }
+
+        void credit() {
+            if (!isDisposed()) {
+                request(1);
+            }
+        }
+    }
+}
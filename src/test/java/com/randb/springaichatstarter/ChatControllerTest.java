@@ -0,0 +1,102 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.controller.ChatController;
+import com.randb.springaichatstarter.core.ChatModelFactory;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.limit.AdaptiveConcurrencyLimiter;
+import com.randb.springaichatstarter.ratelimit.RateLimitGuard;
+import com.randb.springaichatstarter.stream.StreamCancellationMetrics;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 同步问答接口测试
+ */
+public class ChatControllerTest {
+
+    @Test
+    public void testRejectedSyncKeepsType() {
+        SpringAiChatProperties.LimiterProperties limiterProperties = new SpringAiChatProperties.LimiterProperties();
+        limiterProperties.setEnabled(true);
+        limiterProperties.setInitialLimit(1);
+        limiterProperties.setMaxQueueSize(0);
+        limiterProperties.setMaxWait(Duration.ofSeconds(1));
+        ChatService limited = new AdaptiveConcurrencyLimiter(limiterProperties).decorate("qwen", new ChatService() {
+            @Override
+            public Flux<ChatResponse> streamReply(ChatRequest request) {
+                return Flux.never();
+            }
+
+            @Override
+            public ChatResponse syncReply(ChatRequest request) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Mono<ChatResponse> reply(ChatRequest request) {
+                return Mono.never();
+            }
+        });
+        ChatController controller = controller(limited);
+
+        // 第一个请求占住唯一的许可
+        Disposable first = controller.sync(request("req-1")).subscribe();
+        ChatResponse rejected = controller.sync(request("req-2")).block(Duration.ofSeconds(5));
+        first.dispose();
+
+        assertEquals("rejected", rejected.getType());
+        assertEquals("req-2", rejected.getRequestId());
+        assertEquals("user-1", rejected.getUserId());
+    }
+
+    @Test
+    public void testSyncReplyIsRestampedForRequest() {
+        ChatController controller = controller(new ChatService() {
+            @Override
+            public Flux<ChatResponse> streamReply(ChatRequest request) {
+                return Flux.empty();
+            }
+
+            @Override
+            public ChatResponse syncReply(ChatRequest request) {
+                return ChatResponseUtil.createError(null, "断路器已打开");
+            }
+        });
+
+        ChatResponse response = controller.sync(request("req-1")).block(Duration.ofSeconds(5));
+
+        assertEquals("error", response.getType());
+        assertEquals("断路器已打开", response.getContent());
+        assertEquals("req-1", response.getRequestId());
+        assertEquals("user-1", response.getUserId());
+    }
+
+    private static ChatController controller(ChatService service) {
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.refresh();
+        SpringAiChatProperties properties = new SpringAiChatProperties();
+        ChatModelFactory factory = new ChatModelFactory(Map.of("qwen", service), context, properties);
+        return new ChatController(factory, properties, new StreamCancellationMetrics(), RateLimitGuard.disabled());
+    }
+
+    private static ChatRequest request(String requestId) {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(requestId);
+        request.setUserId("user-1");
+        request.setModel("qwen");
+        request.setPrompt("你好");
+        return request;
+    }
+}
@@ -0,0 +1,303 @@
+package com.randb.springaichatstarter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatModelFactory;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.mq.BinaryChatPayloadCodec;
+import com.randb.springaichatstarter.mq.ChatMessageService;
+import com.randb.springaichatstarter.mq.ChatPayloadCodec;
+import com.randb.springaichatstarter.mq.ChatPayloadCodecs;
+import com.randb.springaichatstarter.mq.ChatResponseReceiver;
+import com.randb.springaichatstarter.ratelimit.RateLimitGuard;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * MQ聊天请求异步消费测试
+ */
+public class ChatMessageServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Sinks.One<ChatResponse>> replies = new ConcurrentHashMap<>();
+    private RabbitTemplate rabbitTemplate;
+    private Channel channel;
+    private ChatPayloadCodecs codecs;
+    private ChatResponseReceiver receiver;
+    private SpringAiChatProperties properties;
+    private ChatMessageService service;
+
+    @AfterEach
+    public void tearDown() {
+        receiver.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        channel = mock(Channel.class);
+        properties = new SpringAiChatProperties();
+        properties.getRabbitmq().setMaxInFlight(2);
+        properties.getRabbitmq().getCoalesce().setEnabled(false);
+        ChatService chatService = new ChatService() {
+            @Override
+            public Flux<ChatResponse> streamReply(ChatRequest request) {
+                return Flux.just("你", "好", "呀").map(content -> ChatResponseUtil.createMessage(request, content));
+            }
+
+            @Override
+            public ChatResponse syncReply(ChatRequest request) {
+                throw new AssertionError("MQ消费不应阻塞调用syncReply");
+            }
+
+            @Override
+            public Mono<ChatResponse> reply(ChatRequest request) {
+                return replies.computeIfAbsent(request.getRequestId(), id -> Sinks.one()).asMono();
+            }
+        };
+        ChatModelFactory factory = mock(ChatModelFactory.class);
+        when(factory.get(anyString())).thenReturn(chatService);
+        codecs = ChatPayloadCodecs.create(objectMapper, SpringAiChatProperties.PayloadFormat.JSON);
+        receiver = new ChatResponseReceiver(codecs, properties);
+        service = new ChatMessageService(rabbitTemplate, factory, codecs, properties, receiver,
+                new RateLimitGuard(new SpringAiChatProperties.RateLimitProperties(), null));
+    }
+
+    @Test
+    public void testAckedAfterReplyPublished() throws Exception {
+        service.processChatRequest(message("req-1", 1L), channel);
+
+        // 监听方法返回时请求仍在处理中，尚未确认
+        assertEquals(1, service.getInFlightCount());
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        reply("req-1").tryEmitValue(ChatResponseUtil.createMessage(request("req-1"), "你好"));
+
+        verify(rabbitTemplate, timeout(5000)).send(eq("chat.exchange"), eq("chat.reply"), body("你好"));
+        verify(channel, timeout(5000)).basicAck(1L, false);
+        waitUntilIdle();
+    }
+
+    @Test
+    public void testInFlightLimitBlocksConsumerThread() throws Exception {
+        service.processChatRequest(message("req-1", 1L), channel);
+        service.processChatRequest(message("req-2", 2L), channel);
+
+        CountDownLatch third = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            try {
+                service.processChatRequest(message("req-3", 3L), channel);
+                third.countDown();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        consumer.start();
+        assertFalse(third.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, service.getInFlightCount());
+
+        reply("req-1").tryEmitValue(ChatResponseUtil.createMessage(request("req-1"), "一"));
+        assertTrue(third.await(5, TimeUnit.SECONDS));
+        reply("req-2").tryEmitValue(ChatResponseUtil.createMessage(request("req-2"), "二"));
+        reply("req-3").tryEmitValue(ChatResponseUtil.createMessage(request("req-3"), "三"));
+
+        verify(channel, timeout(5000)).basicAck(3L, false);
+        waitUntilIdle();
+    }
+
+    @Test
+    public void testFailureRepliesErrorAndAcks() throws Exception {
+        service.processChatRequest(message("req-1", 7L), channel);
+        reply("req-1").tryEmitError(new IllegalStateException("模型不可用"));
+
+        verify(rabbitTemplate, timeout(5000)).send(eq("chat.exchange"), eq("chat.reply"), body("模型不可用"));
+        verify(channel, timeout(5000)).basicAck(7L, false);
+    }
+
+    @Test
+    public void testPublishFailureRequeues() throws Exception {
+        doThrow(new IllegalStateException("broker down"))
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class));
+        service.processChatRequest(message("req-1", 9L), channel);
+        reply("req-1").tryEmitValue(ChatResponseUtil.createMessage(request("req-1"), "你好"));
+
+        verify(channel, timeout(5000)).basicNack(9L, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void testStuckRequestTimesOutAndIsRejected() throws Exception {
+        properties.getRabbitmq().setRequestTimeout(Duration.ofMillis(200));
+        // 模型一直不回复
+        service.processChatRequest(message("req-1", 5L), channel);
+
+        verify(channel, timeout(5000)).basicReject(5L, false);
+        verify(rabbitTemplate, timeout(5000)).send(eq("chat.exchange"), eq("chat.reply"), body("处理请求超时"));
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        waitUntilIdle();
+        assertEquals(1, service.getTimeoutCount());
+    }
+
+    @Test
+    public void testStreamPublishFailureMidStreamRejectsWithoutRequeue() throws Exception {
+        // 第一帧发布成功，第二帧发布失败
+        doNothing().doThrow(new IllegalStateException("broker down")).doNothing()
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class));
+        ChatRequest request = request("req-1");
+        request.setStream(true);
+        service.processChatRequest(message(request, 6L), channel);
+
+        verify(channel, timeout(5000)).basicReject(6L, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(3)).send(eq("chat.exchange"), eq("chat.reply"), messages.capture());
+
+        // error帧接在最后一个发布成功的帧之后，接收方据此结束订阅
+        Message last = messages.getAllValues().get(2);
+        assertEquals("error", codecs.fromMessage(last, ChatResponse.class).getType());
+        assertEquals((Object) 1L, last.getMessageProperties().getHeader(ChatMessageService.SEQUENCE_HEADER));
+        waitUntilIdle();
+        assertEquals(0, service.getTimeoutCount());
+    }
+
+    @Test
+    public void testStreamFramesCarrySequenceAndCompletedMarker() throws Exception {
+        ChatRequest request = request("req-1");
+        request.setStream(true);
+        service.processChatRequest(message(request, 4L), channel);
+
+        verify(channel, timeout(5000)).basicAck(4L, false);
+        ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(4)).send(eq("chat.exchange"), eq("chat.reply"), messages.capture());
+
+        List<ChatResponse> frames = new ArrayList<>();
+        List<Object> sequences = new ArrayList<>();
+        for (Message message : messages.getAllValues()) {
+            frames.add(codecs.fromMessage(message, ChatResponse.class));
+            sequences.add(message.getMessageProperties().getHeader(ChatMessageService.SEQUENCE_HEADER));
+        }
+        assertEquals(List.of("你", "好", "呀", "[DONE]"), frames.stream().map(ChatResponse::getContent).toList());
+        assertEquals("completed", frames.get(3).getType());
+        assertEquals(List.of(0L, 1L, 2L, 3L), sequences);
+    }
+
+    @Test
+    public void testRepliesInRequestFormat() throws Exception {
+        ChatPayloadCodec binary = codecs.forContentType(BinaryChatPayloadCodec.CONTENT_TYPE);
+        Message message = codecs.toMessage(request("req-1"), binary);
+        message.getMessageProperties().setDeliveryTag(6L);
+        service.processChatRequest(message, channel);
+        reply("req-1").tryEmitValue(ChatResponseUtil.createMessage(request("req-1"), "你好"));
+
+        verify(channel, timeout(5000)).basicAck(6L, false);
+        ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate).send(eq("chat.exchange"), eq("chat.reply"), sent.capture());
+        assertEquals(BinaryChatPayloadCodec.CONTENT_TYPE, sent.getValue().getMessageProperties().getContentType());
+        assertEquals("你好", codecs.fromMessage(sent.getValue(), ChatResponse.class).getContent());
+    }
+
+    @Test
+    public void testMalformedMessageRejected() throws Exception {
+        Message malformed = new Message("{not json".getBytes(StandardCharsets.UTF_8), new MessageProperties());
+        malformed.getMessageProperties().setContentType(ChatPayloadCodecs.JSON);
+        malformed.getMessageProperties().setDeliveryTag(5L);
+        service.processChatRequest(malformed, channel);
+
+        verify(channel).basicReject(5L, false);
+        assertEquals(0, service.getInFlightCount());
+        verifyNoInteractions(rabbitTemplate);
+    }
+
+    private Sinks.One<ChatResponse> reply(String requestId) {
+        return replies.computeIfAbsent(requestId, id -> Sinks.one());
+    }
+
+    @Test
+    public void testSendAndReceiveCompletesFromReplyQueue() {
+        // 回复在发送调用返回前就到达，等待方已经先登记
+        doAnswer(invocation -> {
+            ChatRequest sent = codecs.fromMessage(invocation.getArgument(2), ChatRequest.class);
+            receiver.receiveResponse(ChatResponseUtil.createMessage(sent, "回复"));
+            return null;
+        }).when(rabbitTemplate).send(eq("chat.exchange"), eq("chat.request"), any(Message.class));
+
+        ChatResponse response = service.sendAndReceive(request("req-7"), Duration.ofSeconds(5))
+                .block(Duration.ofSeconds(5));
+
+        assertEquals("回复", response.getContent());
+        assertEquals(0, receiver.getWaiterCount());
+    }
+
+    @Test
+    public void testSendAndReceiveFailsFastWhenSendFails() {
+        doThrow(new AmqpConnectException(new ConnectException("refused")))
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class));
+
+        assertThrows(AmqpConnectException.class,
+                () -> service.sendAndReceive(request("req-8"), Duration.ofMinutes(1)).block(Duration.ofSeconds(5)));
+        assertEquals(0, receiver.getWaiterCount());
+    }
+
+    private void waitUntilIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getInFlightCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, service.getInFlightCount());
+    }
+
+    private Message message(String requestId, long deliveryTag) throws Exception {
+        return message(request(requestId), deliveryTag);
+    }
+
+    private Message message(ChatRequest request, long deliveryTag) throws Exception {
+        Message message = codecs.toMessage(request, codecs.getDefault());
+        message.getMessageProperties().setDeliveryTag(deliveryTag);
+        return message;
+    }
+
+    /**
+     * 匹配消息体（UTF-8文本）包含指定内容的消息
+     */
+    private static Message body(String fragment) {
+        return argThat(message -> new String(message.getBody(), StandardCharsets.UTF_8).contains(fragment));
+    }
+
+    private static ChatRequest request(String requestId) {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(requestId);
+        request.setUserId("user-1");
+        request.setPrompt("你好");
+        request.setModel("qwen");
+        return request;
+    }
+}
@@ -0,0 +1,73 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatModelFactory;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.DefaultQwenChatServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatModelFactory 路由表测试
+ */
+public class ChatModelFactoryTest {
+
+    @Test
+    public void testCaseInsensitiveNamesAndAliases() {
+        ChatService qwen = new DefaultQwenChatServiceImpl();
+        ChatService openai = new DefaultQwenChatServiceImpl();
+        ChatModelFactory factory = newFactory(Map.of("qwen", qwen, "openai", openai), new SpringAiChatProperties());
+
+        assertSame(qwen, factory.get("qwen"));
+        assertSame(qwen, factory.get("QWEN"));
+        assertSame(openai, factory.get("OpenAI"));
+        assertSame(qwen, factory.get("qwen-turbo"));
+        assertSame(qwen, factory.get("Qwen-Max"));
+        assertSame(openai, factory.get(" openai "));
+        assertSame(qwen, factory.get(" Qwen-Turbo\t"));
+    }
+
+    @Test
+    public void testDefaultModelFromProperties() {
+        ChatService qwen = new DefaultQwenChatServiceImpl();
+        ChatService openai = new DefaultQwenChatServiceImpl();
+        SpringAiChatProperties properties = new SpringAiChatProperties();
+        properties.setDefaultModel("OPENAI");
+        ChatModelFactory factory = newFactory(Map.of("qwen", qwen, "openai", openai), properties);
+
+        assertSame(openai, factory.get(null));
+        assertSame(openai, factory.get(""));
+        assertSame(openai, factory.get("unknown-model"));
+    }
+
+    @Test
+    public void testRefreshSwapsRoutingTable() {
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.refresh();
+        ChatService qwen = new DefaultQwenChatServiceImpl();
+        SpringAiChatProperties properties = new SpringAiChatProperties();
+        ChatModelFactory factory = new ChatModelFactory(Map.of("qwen", qwen), context, properties);
+        assertSame(qwen, factory.get("custom"));
+
+        ChatService custom = new DefaultQwenChatServiceImpl();
+        context.getBeanFactory().registerSingleton("qwen", qwen);
+        context.getBeanFactory().registerSingleton("custom", custom);
+        properties.getModelAliases().put("my-model", "custom");
+        factory.refresh();
+
+        assertSame(custom, factory.get("custom"));
+        assertSame(custom, factory.get("MY-MODEL"));
+        assertSame(qwen, factory.get(null));
+        context.close();
+    }
+
+    private ChatModelFactory newFactory(Map<String, ChatService> services, SpringAiChatProperties properties) {
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.refresh();
+        return new ChatModelFactory(services, context, properties);
+    }
+}
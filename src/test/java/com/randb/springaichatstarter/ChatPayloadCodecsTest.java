@@ -0,0 +1,111 @@
+package com.randb.springaichatstarter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.mq.BinaryChatPayloadCodec;
+import com.randb.springaichatstarter.mq.ChatPayloadCodec;
+import com.randb.springaichatstarter.mq.ChatPayloadCodecs;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MQ消息体编解码测试
+ */
+public class ChatPayloadCodecsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChatPayloadCodecs codecs =
+            ChatPayloadCodecs.create(objectMapper, SpringAiChatProperties.PayloadFormat.JSON);
+
+    @Test
+    public void testRoundTripEveryFormat() throws IOException {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId("req-1");
+        request.setUserId("user-1");
+        request.setPrompt("今天天气怎么样？👋\n\"引号\"");
+        request.setModel("qwen");
+        request.setStream(true);
+        request.setContinuation(true);
+        ChatResponse response = new ChatResponse("message", "req-1", "user-1", "晴，气温 25℃ 🌞", 1_700_000_000_000L);
+        ChatResponse empty = new ChatResponse("completed", "req-1", null, null, 0L);
+
+        for (String contentType : List.of(ChatPayloadCodecs.JSON, ChatPayloadCodecs.SMILE, ChatPayloadCodecs.CBOR,
+                BinaryChatPayloadCodec.CONTENT_TYPE)) {
+            ChatPayloadCodec codec = codecs.forContentType(contentType);
+            assertNotNull(codec, contentType);
+            assertEquals(request, codecs.fromMessage(codecs.toMessage(request, codec), ChatRequest.class), contentType);
+            assertEquals(response, codecs.fromMessage(codecs.toMessage(response, codec), ChatResponse.class), contentType);
+            assertEquals(empty, codec.decode(codec.encode(empty), ChatResponse.class), contentType);
+        }
+    }
+
+    @Test
+    public void testContentTypeNegotiation() {
+        ChatPayloadCodec json = codecs.forContentType(ChatPayloadCodecs.JSON);
+        assertSame(json, codecs.forContentType("Application/JSON; charset=UTF-8"));
+        // 没有标明格式的消息按JSON处理
+        assertSame(json, codecs.forContentType(null));
+        assertSame(json, codecs.forContentType(MessageProperties.CONTENT_TYPE_BYTES));
+        assertNull(codecs.forContentType("application/x-protobuf"));
+
+        ChatPayloadCodecs binary = ChatPayloadCodecs.create(objectMapper, SpringAiChatProperties.PayloadFormat.BINARY);
+        assertEquals(BinaryChatPayloadCodec.CONTENT_TYPE, binary.getDefault().getContentType());
+        assertSame(binary.forContentType(ChatPayloadCodecs.JSON), binary.forContentType(null));
+    }
+
+    @Test
+    public void testJsonMatchesObjectMapperAndReadsLegacyDoubleEncoding() throws Exception {
+        ChatResponse response = new ChatResponse("message", "req-1", "user-1", "你好", 42L);
+        ChatPayloadCodec json = codecs.getDefault();
+        assertArrayEquals(objectMapper.writeValueAsBytes(response), json.encode(response));
+
+        // 旧版本：先序列化成字符串，再经Jackson2JsonMessageConverter编码成JSON字符串
+        Message legacy = new Jackson2JsonMessageConverter(objectMapper)
+                .toMessage(objectMapper.writeValueAsString(response), new MessageProperties());
+        assertEquals(response, codecs.fromMessage(legacy, ChatResponse.class));
+    }
+
+    @Test
+    public void testBinaryIsSmallerAndRejectsCorruptBodies() throws IOException {
+        ChatResponse response = new ChatResponse("message", "req-1", "user-1", "你好", 42L);
+        ChatPayloadCodec binary = codecs.forContentType(BinaryChatPayloadCodec.CONTENT_TYPE);
+        byte[] body = binary.encode(response);
+        assertTrue(body.length < codecs.getDefault().encode(response).length / 2);
+
+        assertThrows(IOException.class, () -> binary.decode(Arrays.copyOf(body, body.length - 3), ChatResponse.class));
+        assertThrows(IOException.class, () -> binary.decode(body, ChatRequest.class));
+        // 高于自身版本或无效的版本号
+        byte[] newer = body.clone();
+        newer[0] = 2;
+        assertThrows(IOException.class, () -> binary.decode(newer, ChatResponse.class));
+        byte[] invalid = body.clone();
+        invalid[0] = 0;
+        assertThrows(IOException.class, () -> binary.decode(invalid, ChatResponse.class));
+        assertThrows(IOException.class, () -> codecs.fromMessage(
+                new Message("{}".getBytes(StandardCharsets.UTF_8), properties("application/x-protobuf")),
+                ChatResponse.class));
+    }
+
+    @Test
+    public void testUnavailableDefaultFormatFailsFast() {
+        assertThrows(IllegalStateException.class, () -> new ChatPayloadCodecs(
+                List.of(new BinaryChatPayloadCodec()), ChatPayloadCodecs.SMILE));
+    }
+
+    private static MessageProperties properties(String contentType) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(contentType);
+        return properties;
+    }
+}
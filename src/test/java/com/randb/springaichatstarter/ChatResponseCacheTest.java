@@ -0,0 +1,189 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.cache.ChatResponseCache;
+import com.randb.springaichatstarter.core.ChatModelFactory;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.QwenChatServiceImpl;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 同步响应缓存测试
+ */
+public class ChatResponseCacheTest {
+
+    @Test
+    public void testRepeatedPromptServedFromCache() {
+        CountingChatService upstream = new CountingChatService();
+        ChatResponseCache cache = new ChatResponseCache(new SpringAiChatProperties.CacheProperties());
+        ChatService service = cache.decorate("qwen", upstream);
+
+        ChatResponse first = service.syncReply(request("req-1", "user-1", "  你好，\n介绍一下自己 "));
+        ChatResponse second = service.syncReply(request("req-2", "user-2", "你好， 介绍一下自己"));
+
+        assertEquals(1, upstream.calls.get());
+        assertEquals(first.getContent(), second.getContent());
+        assertEquals("req-2", second.getRequestId());
+        assertEquals("user-2", second.getUserId());
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void testReplySharesCacheWithSyncReply() {
+        CountingChatService upstream = new CountingChatService();
+        ChatResponseCache cache = new ChatResponseCache(new SpringAiChatProperties.CacheProperties());
+        ChatService service = cache.decorate("qwen", upstream);
+
+        service.syncReply(request("req-1", "user-1", "你好"));
+        ChatResponse cached = service.reply(request("req-2", "user-2", "你好")).block();
+        ChatResponse miss = service.reply(request("req-3", "user-3", "再见")).block();
+        service.reply(request("req-4", "user-4", "再见")).block();
+
+        assertEquals(2, upstream.calls.get());
+        assertEquals("req-2", cached.getRequestId());
+        assertEquals("回复", cached.getContent());
+        assertEquals("req-3", miss.getRequestId());
+    }
+
+    @Test
+    public void testBypassAndSessionRequestsAreNotCached() {
+        CountingChatService upstream = new CountingChatService();
+        ChatResponseCache cache = new ChatResponseCache(new SpringAiChatProperties.CacheProperties());
+        ChatService service = cache.decorate("qwen", upstream);
+
+        ChatRequest bypass = request("req-1", "user-1", "hello");
+        bypass.setSkipCache(true);
+        service.syncReply(bypass);
+        service.syncReply(bypass);
+
+        ChatRequest session = request("req-2", "user-1", "hello");
+        session.setSessionId("session-1");
+        service.syncReply(session);
+
+        assertEquals(3, upstream.calls.get());
+        assertEquals(3, cache.getBypassCount());
+        assertEquals(0, cache.estimatedSize());
+    }
+
+    @Test
+    public void testSystemPromptAndModelArePartOfKey() {
+        CountingChatService upstream = new CountingChatService();
+        ChatResponseCache cache = new ChatResponseCache(new SpringAiChatProperties.CacheProperties());
+        ChatService qwen = cache.decorate("qwen", upstream);
+        ChatService openai = cache.decorate("openai", upstream);
+
+        ChatRequest withSystem = request("req-1", "user-1", "hello");
+        withSystem.setSystemPrompt("你是翻译助手");
+        qwen.syncReply(withSystem);
+        qwen.syncReply(request("req-2", "user-1", "hello"));
+        openai.syncReply(request("req-3", "user-1", "hello"));
+
+        assertEquals(3, upstream.calls.get());
+    }
+
+    @Test
+    public void testOversizedResponseNotAdmitted() {
+        SpringAiChatProperties.CacheProperties properties = new SpringAiChatProperties.CacheProperties();
+        properties.setMaxEntrySize(DataSize.ofBytes(100));
+        CountingChatService upstream = new CountingChatService();
+        upstream.reply = "x".repeat(1000);
+        ChatResponseCache cache = new ChatResponseCache(properties);
+        ChatService service = cache.decorate("qwen", upstream);
+
+        service.syncReply(request("req-1", "user-1", "long"));
+        service.syncReply(request("req-2", "user-1", "long"));
+
+        assertEquals(2, upstream.calls.get());
+        assertEquals(2, cache.getRejectedCount());
+    }
+
+    @Test
+    public void testFallbackRepliesAreNotCached() {
+        ChatClient client = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        when(client.prompt().user(anyString()).call().content())
+                .thenThrow(new IllegalStateException("503 Service Unavailable"))
+                .thenReturn("真实回复");
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("chatClient", client);
+        context.refresh();
+        ChatResponseCache cache = new ChatResponseCache(new SpringAiChatProperties.CacheProperties());
+        ChatService service = cache.decorate("qwen", new QwenChatServiceImpl(context));
+
+        // 模型调用失败时返回降级回复，不能写入缓存
+        ChatResponse degraded = service.syncReply(request("req-1", "user-1", "hello"));
+        assertTrue(degraded.isFallback());
+        assertEquals(0, cache.estimatedSize());
+
+        ChatResponse recovered = service.syncReply(request("req-2", "user-1", "hello"));
+        ChatResponse cached = service.syncReply(request("req-3", "user-1", "hello"));
+        assertEquals("真实回复", recovered.getContent());
+        assertEquals("真实回复", cached.getContent());
+        assertEquals(1, cache.stats().hitCount());
+
+        CountingChatService upstream = new CountingChatService();
+        upstream.fallback = true;
+        ChatService reactive = cache.decorate("openai", upstream);
+        reactive.reply(request("req-4", "user-1", "hello")).block();
+        reactive.reply(request("req-5", "user-1", "hello")).block();
+        assertEquals(2, upstream.calls.get());
+        context.close();
+    }
+
+    @Test
+    public void testFactoryAppliesDecorator() {
+        StaticApplicationContext context = new StaticApplicationContext();
+        ChatResponseCache cache = new ChatResponseCache(new SpringAiChatProperties.CacheProperties());
+        context.getBeanFactory().registerSingleton("chatResponseCache", cache);
+        context.refresh();
+        CountingChatService upstream = new CountingChatService();
+        ChatModelFactory factory = new ChatModelFactory(Map.of("qwen", upstream), context, new SpringAiChatProperties());
+
+        factory.get("qwen").syncReply(request("req-1", "user-1", "hello"));
+        factory.get("Qwen-Turbo").syncReply(request("req-2", "user-1", "hello"));
+
+        assertEquals(1, upstream.calls.get());
+        context.close();
+    }
+
+    private static ChatRequest request(String requestId, String userId, String prompt) {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(requestId);
+        request.setUserId(userId);
+        request.setPrompt(prompt);
+        return request;
+    }
+
+    private static class CountingChatService implements ChatService {
+        private final AtomicInteger calls = new AtomicInteger();
+        private String reply = "回复";
+        private boolean fallback;
+
+        @Override
+        public Flux<ChatResponse> streamReply(ChatRequest request) {
+            return Flux.just(syncReply(request));
+        }
+
+        @Override
+        public ChatResponse syncReply(ChatRequest request) {
+            calls.incrementAndGet();
+            ChatResponse response = ChatResponseUtil.createMessage(request, reply);
+            response.setFallback(fallback);
+            return response;
+        }
+    }
+}
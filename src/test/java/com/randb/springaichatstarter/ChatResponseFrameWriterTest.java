@@ -0,0 +1,62 @@
+package com.randb.springaichatstarter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.stream.ChatResponseFrameWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatResponse帧写入器测试，输出必须与ObjectMapper一致
+ */
+public class ChatResponseFrameWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testOutputMatchesObjectMapper() throws Exception {
+        String[] contents = {
+                "你好", "", "a\"b\\c/d", "line1\nline2\r\t\b\f", "\u0001\u001f\u007f",
+                "emoji 😀 mixed ü", "[DONE]", null
+        };
+        for (String content : contents) {
+            assertSameAsObjectMapper(new ChatResponse("message", "req-1", "user-1", content, 1724457600000L));
+        }
+        assertSameAsObjectMapper(new ChatResponse("pong", "req-\"2\"", null, "pong", -1L));
+        assertSameAsObjectMapper(new ChatResponse(null, null, null, null, 0L));
+    }
+
+    @Test
+    public void testTemplateReusedAcrossChunks() throws Exception {
+        ChatResponseFrameWriter.FrameTemplate frame = ChatResponseFrameWriter.template("message", "req-1", "user-1");
+        ChatResponse first = new ChatResponse("message", "req-1", "user-1", "你", 1L);
+        ChatResponse second = new ChatResponse("message", "req-1", "user-1", "好", 2L);
+
+        assertTrue(frame.matches(first));
+        assertFalse(frame.matches(new ChatResponse("error", "req-1", "user-1", "oops", 3L)));
+        assertEquals(objectMapper.writeValueAsString(first), frame.writeString(first.getContent(), first.getTimestamp()));
+        assertEquals(objectMapper.writeValueAsString(second), frame.writeString(second.getContent(), second.getTimestamp()));
+    }
+
+    @Test
+    public void testLargeContentGrowsBuffer() throws Exception {
+        String content = "长文本\n".repeat(20_000);
+        assertSameAsObjectMapper(new ChatResponse("message", "req-1", "user-1", content, 1L));
+        // 大缓冲区释放后仍可正常写出
+        assertSameAsObjectMapper(new ChatResponse("message", "req-1", "user-1", "短", 2L));
+    }
+
+    private void assertSameAsObjectMapper(ChatResponse response) throws Exception {
+        String expected = objectMapper.writeValueAsString(response);
+        assertEquals(expected, ChatResponseFrameWriter.toJson(response));
+        // 字节输出与Jackson的UTF-8输出一致（代理字符同样转义）
+        byte[] expectedBytes = objectMapper.writeValueAsBytes(response);
+        assertArrayEquals(expectedBytes, ChatResponseFrameWriter.toJsonBytes(response));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChatResponseFrameWriter.writeTo(response, out);
+        assertArrayEquals(expectedBytes, out.toByteArray());
+    }
+}
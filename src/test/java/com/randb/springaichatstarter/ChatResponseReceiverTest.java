@@ -0,0 +1,168 @@
+package com.randb.springaichatstarter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.mq.ChatMessageService;
+import com.randb.springaichatstarter.mq.ChatPayloadCodecs;
+import com.randb.springaichatstarter.mq.ChatResponseReceiver;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MQ回复接收测试：流式回复重排、完整回复的等待和过期
+ */
+public class ChatResponseReceiverTest {
+
+    private static final ChatPayloadCodecs CODECS =
+            ChatPayloadCodecs.create(new ObjectMapper(), SpringAiChatProperties.PayloadFormat.JSON);
+
+    private final List<ChatResponseReceiver> receivers = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        receivers.forEach(ChatResponseReceiver::close);
+    }
+
+    @Test
+    public void testOutOfOrderFramesReassembled() {
+        ChatResponseReceiver receiver = receiver(Duration.ofMinutes(1));
+        ChatRequest request = request("req-1");
+
+        receiver.receiveFrame(ChatResponseUtil.createCompleted(request), 3);
+        receiver.receiveFrame(ChatResponseUtil.createMessage(request, "世界"), 2);
+        receiver.receiveFrame(ChatResponseUtil.createMessage(request, "你好"), 0);
+        // 重复投递的帧被丢弃
+        receiver.receiveFrame(ChatResponseUtil.createMessage(request, "你好"), 0);
+        receiver.receiveFrame(ChatResponseUtil.createMessage(request, "，"), 1);
+
+        List<ChatResponse> frames = receiver.subscribe("req-1").collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of("你好", "，", "世界", "[DONE]"), frames.stream().map(ChatResponse::getContent).toList());
+        assertEquals("completed", frames.get(3).getType());
+    }
+
+    @Test
+    public void testSubscribeBeforeFramesAndErrorTerminates() {
+        ChatResponseReceiver receiver = receiver(Duration.ofMinutes(1));
+        ChatRequest request = request("req-2");
+        List<ChatResponse> received = new CopyOnWriteArrayList<>();
+        receiver.subscribe("req-2").subscribe(received::add);
+
+        receiver.receiveFrame(ChatResponseUtil.createError(request, "失败"), 1);
+        assertTrue(received.isEmpty());
+        receiver.receiveFrame(ChatResponseUtil.createMessage(request, "部分"), 0);
+
+        assertEquals(List.of("message", "error"), received.stream().map(ChatResponse::getType).toList());
+    }
+
+    @Test
+    public void testListenerDispatchesBySequenceHeader() throws Exception {
+        ChatResponseReceiver receiver = receiver(Duration.ofMinutes(1));
+        ChatRequest request = request("req-3");
+        receiver.processReply(reply(ChatResponseUtil.createMessage(request, "片段"), 0L));
+        receiver.processReply(reply(ChatResponseUtil.createCompleted(request), 1L));
+        assertEquals(2, receiver.subscribe("req-3").collectList().block(Duration.ofSeconds(5)).size());
+
+        // 不带序号的完整回复仍然交给waitForResponse
+        ChatRequest whole = request("req-4");
+        receiver.processReply(reply(ChatResponseUtil.createMessage(whole, "完整回复"), null));
+        assertEquals("完整回复", receiver.waitForResponse("req-4", 1000).getContent());
+    }
+
+    @Test
+    public void testIdleStreamTimesOut() {
+        ChatResponseReceiver receiver = receiver(Duration.ofMillis(200));
+        receiver.receiveFrame(ChatResponseUtil.createMessage(request("req-5"), "片段"), 0);
+
+        Exception error = assertThrows(Exception.class,
+                () -> receiver.subscribe("req-5").collectList().block(Duration.ofSeconds(10)));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+    }
+
+    @Test
+    public void testReplyBeforeWaiterIsPickedUp() {
+        ChatResponseReceiver receiver = receiver(Duration.ofMinutes(1));
+        receiver.receiveResponse(ChatResponseUtil.createMessage(request("req-6"), "先到的回复"));
+
+        ChatResponse response = receiver.receive("req-6", Duration.ofSeconds(5)).block(Duration.ofSeconds(5));
+        assertEquals("先到的回复", response.getContent());
+        assertEquals(0, receiver.getWaiterCount());
+        assertEquals(0, receiver.getOrphanEvictionCount());
+    }
+
+    @Test
+    public void testWaiterTimesOutAndLateReplyIsEvicted() throws Exception {
+        SpringAiChatProperties properties = new SpringAiChatProperties();
+        properties.getRabbitmq().setReplyTimerTick(Duration.ofMillis(10));
+        properties.getRabbitmq().setReplyOrphanTtl(Duration.ofMillis(100));
+        ChatResponseReceiver receiver = track(new ChatResponseReceiver(CODECS, properties));
+        CompletableFuture<ChatResponse> future = receiver.await("req-7", Duration.ofMillis(100));
+        assertEquals(1, receiver.getWaiterCount());
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        assertEquals(1, receiver.getTimeoutCount());
+        assertEquals(0, receiver.getWaiterCount());
+
+        // 超时后才到达的回复没有等待方，暂存过期后被丢弃
+        receiver.receiveResponse(ChatResponseUtil.createMessage(request("req-7"), "迟到的回复"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (receiver.getOrphanEvictionCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, receiver.getOrphanEvictionCount());
+        assertNull(receiver.waitForResponse("req-7", 50));
+    }
+
+    @Test
+    public void testCancelledWaiterIsRemoved() {
+        ChatResponseReceiver receiver = receiver(Duration.ofMinutes(1));
+        Disposable subscription = receiver.receive("req-8", Duration.ofMinutes(1)).subscribe();
+        assertEquals(1, receiver.getWaiterCount());
+
+        subscription.dispose();
+        assertEquals(0, receiver.getWaiterCount());
+        assertEquals(0, receiver.getTimeoutCount());
+    }
+
+    private ChatResponseReceiver receiver(Duration idleTimeout) {
+        SpringAiChatProperties properties = new SpringAiChatProperties();
+        properties.getRabbitmq().setStreamIdleTimeout(idleTimeout);
+        return track(new ChatResponseReceiver(CODECS, properties));
+    }
+
+    private ChatResponseReceiver track(ChatResponseReceiver receiver) {
+        receivers.add(receiver);
+        return receiver;
+    }
+
+    private static Message reply(ChatResponse response, Long sequence) throws Exception {
+        Message message = CODECS.toMessage(response, CODECS.getDefault());
+        if (sequence != null) {
+            message.getMessageProperties().setHeader(ChatMessageService.SEQUENCE_HEADER, sequence);
+        }
+        return message;
+    }
+
+    private static ChatRequest request(String requestId) {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(requestId);
+        request.setUserId("user-1");
+        return request;
+    }
+}
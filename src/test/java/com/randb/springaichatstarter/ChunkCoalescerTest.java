@@ -0,0 +1,164 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.stream.ChunkCoalescer;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式片段合并测试
+ */
+public class ChunkCoalescerTest {
+
+    private final ChatRequest request = request();
+
+    @Test
+    public void testFirstChunkAloneThenMergedBySize() {
+        ChunkCoalescer coalescer = ChunkCoalescer.of(properties(Duration.ofSeconds(10), DataSize.ofBytes(4)));
+
+        List<ChatResponse> frames = coalescer.apply(chunks("a", "bb", "cc", "ddd", "e")).collectList().block();
+
+        assertEquals(List.of("a", "bbcc", "ddde"), contents(frames));
+        assertTrue(frames.stream().allMatch(r -> "req-1".equals(r.getRequestId()) && "message".equals(r.getType())));
+    }
+
+    @Test
+    public void testMergedByTimeWindow() {
+        ChunkCoalescer coalescer = ChunkCoalescer.of(properties(Duration.ofMillis(50), DataSize.ofBytes(0)));
+        Flux<ChatResponse> source = Flux.concat(
+                chunks("你", "好", "，"),
+                Flux.just(ChatResponseUtil.createMessage(request, "世界")).delayElements(Duration.ofMillis(200)));
+
+        List<ChatResponse> frames = coalescer.apply(source).collectList().block();
+
+        assertEquals(List.of("你", "好，", "世界"), contents(frames));
+    }
+
+    @Test
+    public void testSizeCountRestartsAfterTimedFlush() throws InterruptedException {
+        ChunkCoalescer coalescer = ChunkCoalescer.of(properties(Duration.ofMillis(100), DataSize.ofBytes(4)));
+        Sinks.Many<ChatResponse> source = Sinks.many().unicast().onBackpressureBuffer();
+        List<ChatResponse> frames = new CopyOnWriteArrayList<>();
+        coalescer.apply(source.asFlux()).subscribe(frames::add);
+
+        source.tryEmitNext(ChatResponseUtil.createMessage(request, "a"));
+        source.tryEmitNext(ChatResponseUtil.createMessage(request, "bbb"));
+        awaitFrames(frames, 2);
+        assertEquals(List.of("a", "bbb"), contents(frames));
+
+        // "bbb"已按时间窗口发出，不再计入下一批的大小
+        source.tryEmitNext(ChatResponseUtil.createMessage(request, "cc"));
+        source.tryEmitNext(ChatResponseUtil.createMessage(request, "dd"));
+        awaitFrames(frames, 3);
+        source.tryEmitComplete();
+
+        assertEquals(List.of("a", "bbb", "ccdd"), contents(frames));
+    }
+
+    @Test
+    public void testNonMessageFramesAreNotMerged() {
+        ChunkCoalescer coalescer = ChunkCoalescer.of(properties(Duration.ofSeconds(10), DataSize.ofKilobytes(4)));
+        Flux<ChatResponse> source = Flux.just(
+                ChatResponseUtil.createMessage(request, "a"),
+                ChatResponseUtil.createMessage(request, "b"),
+                ChatResponseUtil.createMessage(request, "c"),
+                ChatResponseUtil.createError(request, "oops"),
+                ChatResponseUtil.createMessage(request, "d"));
+
+        List<ChatResponse> frames = coalescer.apply(source).collectList().block();
+
+        assertEquals(List.of("a", "bc", "oops", "d"), contents(frames));
+        assertEquals("error", frames.get(2).getType());
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotOverflow() {
+        ChunkCoalescer coalescer = ChunkCoalescer.of(properties(Duration.ofMillis(10), DataSize.ofBytes(0)));
+        Flux<ChatResponse> source = Flux.interval(Duration.ofMillis(2)).take(50)
+                .map(i -> ChatResponseUtil.createMessage(request, "x"));
+
+        // 下游每次只要一个且处理较慢，窗口到期时没有需求也不应抛出OverflowException
+        List<ChatResponse> frames = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        coalescer.apply(source).subscribe(new BaseSubscriber<ChatResponse>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(ChatResponse response) {
+                frames.add(response);
+                Mono.delay(Duration.ofMillis(30)).subscribe(tick -> request(1));
+            }
+
+            @Override
+            protected void hookOnError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                done.complete(null);
+            }
+        });
+
+        assertDoesNotThrow(() -> done.get(10, TimeUnit.SECONDS));
+        assertEquals(50, String.join("", contents(frames)).length());
+    }
+
+    @Test
+    public void testDisabledPassesThrough() {
+        SpringAiChatProperties.StreamCoalesceProperties properties = new SpringAiChatProperties.StreamCoalesceProperties();
+        properties.setEnabled(false);
+
+        List<ChatResponse> frames = ChunkCoalescer.of(properties).apply(chunks("a", "b", "c")).collectList().block();
+
+        assertEquals(List.of("a", "b", "c"), contents(frames));
+    }
+
+    private static void awaitFrames(List<ChatResponse> frames, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (frames.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private Flux<ChatResponse> chunks(String... contents) {
+        return Flux.fromArray(contents).map(content -> ChatResponseUtil.createMessage(request, content));
+    }
+
+    private static List<String> contents(List<ChatResponse> frames) {
+        return frames.stream().map(ChatResponse::getContent).toList();
+    }
+
+    private static SpringAiChatProperties.StreamCoalesceProperties properties(Duration window, DataSize maxSize) {
+        SpringAiChatProperties.StreamCoalesceProperties properties = new SpringAiChatProperties.StreamCoalesceProperties();
+        properties.setWindow(window);
+        properties.setMaxSize(maxSize);
+        return properties;
+    }
+
+    private static ChatRequest request() {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId("req-1");
+        request.setUserId("user-1");
+        return request;
+    }
+}
@@ -0,0 +1,244 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.breaker.ChatCircuitBreakers;
+import com.randb.springaichatstarter.breaker.CircuitBreaker;
+import com.randb.springaichatstarter.breaker.CircuitBreakerStateChangedEvent;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 断路器测试
+ */
+public class CircuitBreakerTest {
+
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void testOpensOnFailuresAndShortCircuitsToFallback() {
+        SpringAiChatProperties.CircuitBreakerProperties properties = properties();
+        properties.getFallbacks().put("qwen", "openai");
+        ChatCircuitBreakers breakers = new ChatCircuitBreakers(properties, events::add);
+        FlakyChatService upstream = new FlakyChatService("qwen");
+        upstream.failing.set(true);
+        ChatService qwen = breakers.decorate("qwen", upstream);
+        breakers.decorate("openai", new FlakyChatService("openai"));
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> qwen.syncReply(request()));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breakers.breaker("qwen").getState());
+        assertEquals(1, events.size());
+        CircuitBreakerStateChangedEvent event = (CircuitBreakerStateChangedEvent) events.get(0);
+        assertEquals("qwen", event.getModel());
+        assertEquals(CircuitBreaker.State.OPEN, event.getTo());
+
+        // 打开期间直接转到备用模型，不再调用上游
+        int callsBefore = upstream.calls.get();
+        assertEquals("openai", qwen.syncReply(request()).getContent());
+        assertEquals("openai", qwen.reply(request()).block().getContent());
+        assertEquals("openai", qwen.streamReply(request()).blockFirst().getContent());
+        assertEquals(callsBefore, upstream.calls.get());
+        assertEquals(3, breakers.breaker("qwen").getNotPermittedCount());
+    }
+
+    @Test
+    public void testHalfOpenProbeClosesOrReopens() throws Exception {
+        ChatCircuitBreakers breakers = new ChatCircuitBreakers(properties(), events::add);
+        FlakyChatService upstream = new FlakyChatService("qwen");
+        ChatService qwen = breakers.decorate("qwen", upstream);
+        CircuitBreaker breaker = breakers.breaker("qwen");
+
+        upstream.failing.set(true);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> qwen.reply(request()).block());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        // 没有备用模型时返回error响应
+        assertEquals("error", qwen.syncReply(request()).getType());
+
+        // 半开探测失败，重新打开
+        Thread.sleep(120);
+        assertThrows(IllegalStateException.class, () -> qwen.syncReply(request()));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // 半开探测全部成功，关闭
+        Thread.sleep(120);
+        upstream.failing.set(false);
+        assertEquals("qwen", qwen.syncReply(request()).getContent());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals("qwen", qwen.streamReply(request()).blockLast().getContent());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertEquals(List.of(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.OPEN,
+                        CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED),
+                events.stream().map(e -> ((CircuitBreakerStateChangedEvent) e).getTo()).toList());
+    }
+
+    @Test
+    public void testSlowCallsAndErrorResponsesCountAsFailures() {
+        SpringAiChatProperties.CircuitBreakerProperties properties = properties();
+        properties.setSlowCallDuration(Duration.ofMillis(20));
+        properties.setSlowCallRateThreshold(50);
+        ChatCircuitBreakers breakers = new ChatCircuitBreakers(properties, events::add);
+        ChatService slow = breakers.decorate("slow", new FlakyChatService("slow") {
+            @Override
+            public Flux<ChatResponse> streamReply(ChatRequest request) {
+                return super.streamReply(request).delaySubscription(Duration.ofMillis(40));
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            slow.streamReply(request()).blockLast();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breakers.breaker("slow").getState());
+
+        // 上游把异常转换成error类型响应（如OpenAI实现）时同样计为失败
+        ChatService erroring = breakers.decorate("openai", new FlakyChatService("openai") {
+            @Override
+            public ChatResponse syncReply(ChatRequest request) {
+                return ChatResponseUtil.createError(request, "处理请求时发生错误");
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            erroring.syncReply(request());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breakers.breaker("openai").getState());
+    }
+
+    @Test
+    public void testFallbackDoesNotChainWhenBothOpen() {
+        SpringAiChatProperties.CircuitBreakerProperties properties = properties();
+        properties.getFallbacks().put("qwen", "openai");
+        properties.getFallbacks().put("openai", "qwen");
+        ChatCircuitBreakers breakers = new ChatCircuitBreakers(properties, events::add);
+        FlakyChatService qwenUpstream = new FlakyChatService("qwen");
+        FlakyChatService openaiUpstream = new FlakyChatService("openai");
+        qwenUpstream.failing.set(true);
+        openaiUpstream.failing.set(true);
+        ChatService qwen = breakers.decorate("qwen", qwenUpstream);
+        ChatService openai = breakers.decorate("openai", openaiUpstream);
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> qwen.syncReply(request()));
+            assertThrows(IllegalStateException.class, () -> openai.syncReply(request()));
+        }
+
+        ChatResponse response = qwen.syncReply(request());
+        assertEquals("error", response.getType());
+        assertEquals("req-1", response.getRequestId());
+    }
+
+    @Test
+    public void testCancelledProbeReturnsPermit() throws Exception {
+        ChatCircuitBreakers breakers = new ChatCircuitBreakers(properties(), events::add);
+        FlakyChatService upstream = new FlakyChatService("qwen");
+        upstream.failing.set(true);
+        ChatService qwen = breakers.decorate("qwen", upstream);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> qwen.syncReply(request()));
+        }
+        Thread.sleep(120);
+        upstream.failing.set(false);
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ChatService hanging = breakers.decorate("qwen", new FlakyChatService("qwen") {
+            @Override
+            public Mono<ChatResponse> reply(ChatRequest request) {
+                return Mono.<ChatResponse>never().doOnCancel(() -> cancelled.set(true));
+            }
+        });
+        for (int i = 0; i < 2; i++) {
+            hanging.reply(request()).subscribe().dispose();
+        }
+        assertTrue(cancelled.get());
+        // 被取消的探测不占用名额，后续探测仍可放行
+        for (int i = 0; i < 2; i++) {
+            assertEquals("qwen", qwen.syncReply(request()).getContent());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breakers.breaker("qwen").getState());
+    }
+
+    @Test
+    public void testMetrics() {
+        ChatCircuitBreakers breakers = new ChatCircuitBreakers(properties(), events::add);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        breakers.bindTo(registry);
+        FlakyChatService upstream = new FlakyChatService("qwen");
+        upstream.failing.set(true);
+        ChatService qwen = breakers.decorate("qwen", upstream);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> qwen.syncReply(request()));
+        }
+        qwen.syncReply(request());
+
+        assertEquals(1.0, registry.get("spring.ai.chat.breaker.state").tag("model", "qwen").gauge().value());
+        assertEquals(1.0, registry.get("spring.ai.chat.breaker.not.permitted").tag("model", "qwen").functionCounter().count());
+        assertEquals(1.0, registry.get("spring.ai.chat.breaker.transitions")
+                .tags("model", "qwen", "state", "open").functionCounter().count());
+    }
+
+    private static SpringAiChatProperties.CircuitBreakerProperties properties() {
+        SpringAiChatProperties.CircuitBreakerProperties properties = new SpringAiChatProperties.CircuitBreakerProperties();
+        properties.setEnabled(true);
+        properties.setSlidingWindowSize(10);
+        properties.setMinimumCalls(4);
+        properties.setOpenDuration(Duration.ofMillis(100));
+        properties.setHalfOpenCalls(2);
+        return properties;
+    }
+
+    private static ChatRequest request() {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId("req-1");
+        request.setUserId("user-1");
+        request.setPrompt("你好");
+        return request;
+    }
+
+    private static class FlakyChatService implements ChatService {
+        final AtomicBoolean failing = new AtomicBoolean();
+        final AtomicInteger calls = new AtomicInteger();
+        private final String name;
+
+        FlakyChatService(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Flux<ChatResponse> streamReply(ChatRequest request) {
+            return Flux.defer(() -> {
+                calls.incrementAndGet();
+                return failing.get() ? Flux.error(new IllegalStateException("upstream down"))
+                        : Flux.just(ChatResponseUtil.createMessage(request, name));
+            });
+        }
+
+        @Override
+        public ChatResponse syncReply(ChatRequest request) {
+            calls.incrementAndGet();
+            if (failing.get()) {
+                throw new IllegalStateException("upstream down");
+            }
+            return ChatResponseUtil.createMessage(request, name);
+        }
+
+        @Override
+        public Mono<ChatResponse> reply(ChatRequest request) {
+            return Mono.fromSupplier(() -> syncReply(request));
+        }
+    }
+}
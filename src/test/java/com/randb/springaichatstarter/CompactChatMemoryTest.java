@@ -0,0 +1,79 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.memory.CompactChatMemory;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 紧凑对话记忆测试
+ */
+public class CompactChatMemoryTest {
+
+    @Test
+    public void testRoundTripKeepsRolesAndText() {
+        CompactChatMemory memory = new CompactChatMemory(properties(10, DataSize.ofMegabytes(1)));
+
+        memory.add("c1", List.of(new SystemMessage("你是助手"), new UserMessage("你好 👋"),
+                new AssistantMessage("你好！有什么可以帮你？")));
+        memory.add("c1", new UserMessage(""));
+
+        List<Message> messages = memory.get("c1");
+        assertEquals(List.of(MessageType.SYSTEM, MessageType.USER, MessageType.ASSISTANT, MessageType.USER),
+                messages.stream().map(Message::getMessageType).toList());
+        assertEquals(List.of("你是助手", "你好 👋", "你好！有什么可以帮你？", ""),
+                messages.stream().map(Message::getText).toList());
+        assertTrue(memory.get("unknown").isEmpty());
+
+        memory.clear("c1");
+        assertTrue(memory.get("c1").isEmpty());
+    }
+
+    @Test
+    public void testWindowDropsOldestNonSystemMessages() {
+        CompactChatMemory memory = new CompactChatMemory(properties(3, DataSize.ofMegabytes(1)));
+
+        memory.add("c1", List.of(new SystemMessage("s1"), new UserMessage("u1"), new AssistantMessage("a1")));
+        memory.add("c1", List.of(new UserMessage("u2"), new AssistantMessage("a2")));
+        assertEquals(List.of("s1", "u2", "a2"), texts(memory.get("c1")));
+
+        // 新的系统消息替换旧的系统消息
+        memory.add("c1", new SystemMessage("s2"));
+        assertEquals(List.of("u2", "a2", "s2"), texts(memory.get("c1")));
+    }
+
+    @Test
+    public void testGlobalBudgetEvictsConversations() {
+        CompactChatMemory memory = new CompactChatMemory(properties(20, DataSize.ofKilobytes(64)));
+        String text = "x".repeat(1000);
+
+        for (int i = 0; i < 1000; i++) {
+            memory.add("c" + i, List.of(new UserMessage(text), new AssistantMessage(text)));
+        }
+        memory.cleanUp();
+
+        assertTrue(memory.weightedSize() <= DataSize.ofKilobytes(64).toBytes(),
+                "weightedSize=" + memory.weightedSize());
+        assertTrue(memory.estimatedSize() < 1000);
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    private static SpringAiChatProperties.MemoryProperties properties(int maxMessages, DataSize maxWeight) {
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        properties.setMaxMessages(maxMessages);
+        properties.setMaxWeight(maxWeight);
+        return properties;
+    }
+}
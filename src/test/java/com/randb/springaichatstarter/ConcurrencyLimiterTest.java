@@ -0,0 +1,198 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.limit.AdaptiveConcurrencyLimiter;
+import com.randb.springaichatstarter.limit.ModelLimiter;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自适应并发限制测试
+ */
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testQueuedRequestGetsPermitOnRelease() throws Exception {
+        ModelLimiter limiter = new ModelLimiter("qwen", properties(1, 1, Duration.ofSeconds(5)));
+
+        ModelLimiter.Permit first = limiter.acquire().get();
+        CompletableFuture<ModelLimiter.Permit> queued = limiter.acquire();
+        CompletableFuture<ModelLimiter.Permit> overflow = limiter.acquire();
+
+        assertFalse(queued.isDone());
+        assertTrue(overflow.isCompletedExceptionally());
+        assertEquals(1, limiter.getQueued());
+        assertEquals(1, limiter.getRejectedCount());
+
+        first.onIgnore();
+        ModelLimiter.Permit second = queued.get(1, TimeUnit.SECONDS);
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+        second.onIgnore();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testQueuedRequestRejectedAfterMaxWait() throws Exception {
+        ModelLimiter limiter = new ModelLimiter("qwen", properties(1, 4, Duration.ofMillis(50)));
+        ModelLimiter.Permit first = limiter.acquire().get();
+
+        CompletableFuture<ModelLimiter.Permit> queued = limiter.acquire();
+
+        assertThrows(Exception.class, () -> queued.get(1, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getQueued());
+        assertEquals(1, limiter.getRejectedCount());
+        first.onIgnore();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testLimitFollowsLatency() throws Exception {
+        SpringAiChatProperties.LimiterProperties properties = properties(10, 0, Duration.ofSeconds(1));
+        properties.setMaxLimit(100);
+        ModelLimiter limiter = new ModelLimiter("qwen", properties);
+
+        // 满负载、延迟稳定：上限逐步放大
+        for (int round = 0; round < 20; round++) {
+            runRound(limiter, limiter.getLimit(), 100);
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 10, "延迟稳定时应放大上限: " + grown);
+
+        // 延迟升高到基线的4倍：上限收缩（持续足够久后基线会逐渐适应新的延迟）
+        for (int round = 0; round < 3; round++) {
+            runRound(limiter, limiter.getLimit(), 400);
+        }
+        assertTrue(limiter.getLimit() < grown, "延迟升高时应收缩上限: " + limiter.getLimit());
+
+        // 调用失败：按比例退让
+        int before = limiter.getLimit();
+        ModelLimiter.Permit permit = limiter.acquire().get();
+        permit.onDropped();
+        assertTrue(limiter.getLimit() < before);
+    }
+
+    @Test
+    public void testRejectedResponseWhenSaturated() {
+        Sinks.Many<String> upstream = Sinks.many().multicast().onBackpressureBuffer();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties(1, 0, Duration.ofSeconds(1)));
+        ChatService service = limiter.decorate("qwen", new StubChatService() {
+            @Override
+            public Flux<ChatResponse> streamReply(ChatRequest request) {
+                return upstream.asFlux().map(content -> ChatResponseUtil.createMessage(request, content));
+            }
+        });
+
+        List<ChatResponse> firstChunks = new ArrayList<>();
+        Disposable first = service.streamReply(request("req-1")).subscribe(firstChunks::add);
+        assertEquals(1, limiter.limiter("qwen").getInFlight());
+
+        List<ChatResponse> rejected = service.streamReply(request("req-2")).collectList().block();
+        assertEquals(1, rejected.size());
+        assertEquals("rejected", rejected.get(0).getType());
+        assertEquals("req-2", rejected.get(0).getRequestId());
+        assertEquals("rejected", service.syncReply(request("req-3")).getType());
+        assertEquals("rejected", service.reply(request("req-4")).block().getType());
+
+        // 客户端取消流后许可被释放
+        upstream.tryEmitNext("你");
+        first.dispose();
+        assertEquals(List.of("你"), firstChunks.stream().map(ChatResponse::getContent).toList());
+        assertEquals(0, limiter.limiter("qwen").getInFlight());
+        assertEquals("message", service.syncReply(request("req-5")).getType());
+        assertEquals("message", service.reply(request("req-6")).block().getType());
+        assertEquals(0, limiter.limiter("qwen").getInFlight());
+    }
+
+    @Test
+    public void testCancelledWaiterLeavesQueue() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties(1, 4, Duration.ofSeconds(5)));
+        ChatService service = limiter.decorate("qwen", new StubChatService() {
+            @Override
+            public Mono<ChatResponse> reply(ChatRequest request) {
+                return Mono.never();
+            }
+        });
+        ModelLimiter modelLimiter = limiter.limiter("qwen");
+
+        Disposable running = service.reply(request("req-1")).subscribe();
+        Disposable waiting = service.reply(request("req-2")).subscribe();
+        assertEquals(1, modelLimiter.getQueued());
+
+        waiting.dispose();
+        assertEquals(0, modelLimiter.getQueued());
+        running.dispose();
+        assertEquals(0, modelLimiter.getInFlight());
+        assertEquals(0, modelLimiter.getRejectedCount());
+    }
+
+    @Test
+    public void testMetricsTaggedByModel() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(properties(7, 0, Duration.ofSeconds(1)));
+        limiter.decorate("qwen", new StubChatService());
+        limiter.bindTo(registry);
+        // 绑定之后新增的模型同样注册指标
+        limiter.decorate("openai", new StubChatService());
+
+        assertEquals(7.0, registry.get("spring.ai.chat.limiter.limit").tag("model", "qwen").gauge().value());
+        assertEquals(7.0, registry.get("spring.ai.chat.limiter.limit").tag("model", "openai").gauge().value());
+        assertEquals(0.0, registry.get("spring.ai.chat.limiter.inflight").tag("model", "qwen").gauge().value());
+        assertEquals(0.0, registry.get("spring.ai.chat.limiter.rejected").tag("model", "openai").functionCounter().count());
+    }
+
+    private static void runRound(ModelLimiter limiter, int concurrency, long latencyMillis) throws Exception {
+        List<ModelLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            permits.add(limiter.acquire().get());
+        }
+        for (ModelLimiter.Permit permit : permits) {
+            permit.onSuccess(ModelLimiter.LatencyKind.FULL_REPLY, TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+
+    private static SpringAiChatProperties.LimiterProperties properties(int initialLimit, int maxQueueSize, Duration maxWait) {
+        SpringAiChatProperties.LimiterProperties properties = new SpringAiChatProperties.LimiterProperties();
+        properties.setEnabled(true);
+        properties.setInitialLimit(initialLimit);
+        properties.setMaxQueueSize(maxQueueSize);
+        properties.setMaxWait(maxWait);
+        return properties;
+    }
+
+    private static ChatRequest request(String requestId) {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(requestId);
+        request.setUserId("user-1");
+        request.setPrompt("你好");
+        return request;
+    }
+
+    private static class StubChatService implements ChatService {
+        @Override
+        public Flux<ChatResponse> streamReply(ChatRequest request) {
+            return Flux.empty();
+        }
+
+        @Override
+        public ChatResponse syncReply(ChatRequest request) {
+            return ChatResponseUtil.createMessage(request, "");
+        }
+    }
+}
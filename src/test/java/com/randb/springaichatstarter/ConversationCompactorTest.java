@@ -0,0 +1,177 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.memory.CompactChatMemory;
+import com.randb.springaichatstarter.memory.ConversationCompactor;
+import com.randb.springaichatstarter.memory.ConversationSummarizer;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 长会话摘要压缩测试
+ */
+public class ConversationCompactorTest {
+
+    @Test
+    public void testOlderTurnsReplacedBySummary() {
+        List<String> previousSummaries = new ArrayList<>();
+        ConversationSummarizer summarizer = (previous, messages) -> {
+            previousSummaries.add(previous);
+            return "摘要" + messages.size();
+        };
+        ChatMemory memory = memory();
+        try (ConversationCompactor compactor = new ConversationCompactor(summarizer, properties())) {
+            memory.add("c1", new SystemMessage("你是助手"));
+            addTurns(memory, "c1", 0, 6);
+
+            assertTrue(compactor.compact(memory, "c1"));
+            List<Message> history = memory.get("c1");
+            assertEquals("你是助手\n\n【之前对话的摘要】\n摘要8", history.get(0).getText());
+            assertEquals(List.of("问题五五五五五", "回答五五五五五", "问题六六六六六", "回答六六六六六"),
+                    texts(history.subList(1, history.size())));
+
+            // 未超过阈值时不压缩
+            assertFalse(compactor.compact(memory, "c1"));
+
+            addTurns(memory, "c1", 6, 10);
+            assertTrue(compactor.compact(memory, "c1"));
+            assertEquals("你是助手\n\n【之前对话的摘要】\n摘要8", memory.get("c1").get(0).getText());
+            assertEquals(List.of("摘要8"), previousSummaries.subList(1, 2));
+            assertEquals(2, compactor.getCompactionCount());
+        }
+    }
+
+    @Test
+    public void testMessagesWrittenDuringSummarizationAreKept() {
+        ChatMemory memory = memory();
+        AtomicInteger calls = new AtomicInteger();
+        ChatMemory[] view = new ChatMemory[1];
+        ConversationSummarizer summarizer = (previous, messages) -> {
+            if (calls.incrementAndGet() == 1) {
+                view[0].add("c1", List.of(new UserMessage("新问题"), new AssistantMessage("新回答")));
+            }
+            return "摘要";
+        };
+        try (ConversationCompactor compactor = new ConversationCompactor(summarizer, properties())) {
+            view[0] = compactor.view(memory);
+            addTurns(memory, "c1", 0, 6);
+
+            assertTrue(compactor.compact(memory, "c1"));
+            assertEquals(List.of("【之前对话的摘要】\n摘要", "问题五五五五五", "回答五五五五五",
+                    "问题六六六六六", "回答六六六六六", "新问题", "新回答"), texts(memory.get("c1")));
+        }
+    }
+
+    @Test
+    public void testClearDuringSummarizationAbandons() {
+        ChatMemory memory = memory();
+        ChatMemory[] view = new ChatMemory[1];
+        ConversationSummarizer summarizer = (previous, messages) -> {
+            view[0].clear("c1");
+            view[0].add("c1", new UserMessage("重新开始"));
+            return "摘要";
+        };
+        try (ConversationCompactor compactor = new ConversationCompactor(summarizer, properties())) {
+            view[0] = compactor.view(memory);
+            addTurns(memory, "c1", 0, 6);
+
+            assertFalse(compactor.compact(memory, "c1"));
+            assertEquals(List.of("重新开始"), texts(memory.get("c1")));
+            assertEquals(1, compactor.getAbandonedCount());
+        }
+    }
+
+    @Test
+    public void testBackgroundCompactionIsDebouncedAndOffRequestPath() throws InterruptedException {
+        ChatMemory memory = memory();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ConversationSummarizer summarizer = (previous, messages) -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "摘要";
+        };
+        try (ConversationCompactor compactor = new ConversationCompactor(summarizer, properties())) {
+            ChatMemory view = compactor.view(memory);
+            for (int i = 0; i < 6; i++) {
+                addTurns(view, "c1", i, i + 1);
+            }
+            assertEquals(1, compactor.getPendingCount());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // 生成摘要期间读写照常使用原历史
+            assertEquals(12, view.get("c1").size());
+            release.countDown();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (compactor.getPendingCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, calls.get());
+            assertEquals(5, view.get("c1").size());
+            assertEquals("【之前对话的摘要】\n摘要", view.get("c1").get(0).getText());
+        }
+    }
+
+    @Test
+    public void testSummarizerFailureKeepsHistory() {
+        ChatMemory memory = memory();
+        ConversationSummarizer summarizer = (previous, messages) -> {
+            throw new IllegalStateException("模型不可用");
+        };
+        try (ConversationCompactor compactor = new ConversationCompactor(summarizer, properties())) {
+            addTurns(memory, "c1", 0, 6);
+            assertThrows(IllegalStateException.class, () -> compactor.compact(memory, "c1"));
+            assertEquals(12, memory.get("c1").size());
+        }
+    }
+
+    /**
+     * 每条消息 7个中文字符 + 固定开销4 = 11个token，6轮共132个
+     */
+    private static void addTurns(ChatMemory memory, String conversationId, int from, int to) {
+        String[] numbers = {"一", "二", "三", "四", "五", "六", "七", "八", "九", "十"};
+        for (int i = from; i < to; i++) {
+            String n = numbers[i].repeat(5);
+            memory.add(conversationId, List.of(new UserMessage("问题" + n), new AssistantMessage("回答" + n)));
+        }
+    }
+
+    private static ChatMemory memory() {
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        properties.setMaxMessages(100);
+        return new CompactChatMemory(properties);
+    }
+
+    private static SpringAiChatProperties.SummaryProperties properties() {
+        SpringAiChatProperties.SummaryProperties properties = new SpringAiChatProperties.SummaryProperties();
+        properties.setEnabled(true);
+        properties.setTriggerTokens(100);
+        properties.setRetainTokens(50);
+        properties.setDebounce(Duration.ofMillis(100));
+        return properties;
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,107 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.memory.CompactChatMemory;
+import com.randb.springaichatstarter.memory.ConversationContextAssembler;
+import com.randb.springaichatstarter.util.TokenEstimator;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按token预算组装上下文测试
+ */
+public class ConversationContextAssemblerTest {
+
+    @Test
+    public void testKeepsNewestTurnsWithinBudget() {
+        ConversationContextAssembler assembler = new ConversationContextAssembler(properties());
+        // 每条消息：4个中文字符 + 固定开销4 = 8个token
+        List<Message> history = List.of(
+                new SystemMessage("你是助手"),
+                new UserMessage("第一问题"), new AssistantMessage("第一回答"),
+                new UserMessage("第二问题"), new AssistantMessage("第二回答"),
+                new UserMessage("第三问题"), new AssistantMessage("第三回答"));
+
+        assertEquals(List.of("你是助手", "第二问题", "第二回答", "第三问题", "第三回答"),
+                texts(assembler.assemble(history, 40)));
+        // 预算只够系统消息加三条时，不从回答开始
+        assertEquals(List.of("你是助手", "第三问题", "第三回答"), texts(assembler.assemble(history, 32)));
+        // 最新一条也放不下时只保留系统消息
+        assertEquals(List.of("你是助手"), texts(assembler.assemble(history, 10)));
+        assertEquals(history, assembler.assemble(history, 0));
+    }
+
+    @Test
+    public void testLongMessageStopsSelection() {
+        ConversationContextAssembler assembler = new ConversationContextAssembler(properties());
+        List<Message> history = List.of(
+                new UserMessage("短问题"), new AssistantMessage("很".repeat(500)),
+                new UserMessage("再问"), new AssistantMessage("再答"));
+
+        assertEquals(List.of("再问", "再答"), texts(assembler.assemble(history, 100)));
+    }
+
+    @Test
+    public void testPerModelBudgetView() {
+        SpringAiChatProperties.MemoryProperties properties = properties();
+        properties.setContextTokens(16);
+        properties.getModelContextTokens().put("qwen-max", 1000);
+        ConversationContextAssembler assembler = new ConversationContextAssembler(properties);
+        ChatMemory memory = new CompactChatMemory(properties);
+        memory.add("c1", List.of(new UserMessage("第一问题"), new AssistantMessage("第一回答"),
+                new UserMessage("第二问题"), new AssistantMessage("第二回答")));
+
+        assertEquals(List.of("第二问题", "第二回答"), texts(assembler.view(memory, "qwen").get("c1")));
+        assertEquals(4, assembler.view(memory, "qwen-max").get("c1").size());
+        assertEquals(16, assembler.budgetFor(null));
+
+        // 写入时计算的token数随消息保存
+        Message stored = memory.get("c1").get(0);
+        assertEquals(8, stored.getMetadata().get(TokenEstimator.METADATA_KEY));
+    }
+
+    @Test
+    public void testBudgetLookupFollowsRoutingNames() {
+        SpringAiChatProperties.MemoryProperties properties = properties();
+        properties.setContextTokens(16);
+        properties.getModelContextTokens().put("Qwen-Max", 1000);
+        properties.getModelContextTokens().put("qwen-long", 2000);
+        ConversationContextAssembler assembler = new ConversationContextAssembler(properties,
+                Map.of("max", "qwen-max", "Long ", "QWEN-MAX", "QWEN-LONG", "qwen-max", "turbo", "qwen-turbo"));
+
+        assertEquals(1000, assembler.budgetFor("qwen-max"));
+        assertEquals(1000, assembler.budgetFor(" QWEN-max\t"));
+        // 别名使用目标模型的预算
+        assertEquals(1000, assembler.budgetFor("Max"));
+        // 别名与真实模型同名时真实模型的预算优先
+        assertEquals(2000, assembler.budgetFor("qwen-long"));
+        assertEquals(1000, assembler.budgetFor("long"));
+        // 目标模型没有单独配置时使用默认值
+        assertEquals(16, assembler.budgetFor("turbo"));
+    }
+
+    @Test
+    public void testEstimateCountsCjkAndOtherCharacters() {
+        assertEquals(0, TokenEstimator.estimate(""));
+        assertEquals(2, TokenEstimator.estimate("你好"));
+        assertEquals(3, TokenEstimator.estimate("hello world"));
+        assertEquals(4, TokenEstimator.estimate("你好 world"));
+    }
+
+    private static SpringAiChatProperties.MemoryProperties properties() {
+        return new SpringAiChatProperties.MemoryProperties();
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
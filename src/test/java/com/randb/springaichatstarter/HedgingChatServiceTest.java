@@ -0,0 +1,256 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatModelFactory;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.hedge.HedgeStats;
+import com.randb.springaichatstarter.hedge.RequestHedger;
+import com.randb.springaichatstarter.limit.AdaptiveConcurrencyLimiter;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对冲请求测试
+ */
+public class HedgingChatServiceTest {
+
+    @Test
+    public void testBackupWinsAndPrimaryIsCancelled() {
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        SpringAiChatProperties.HedgingProperties properties = properties(Duration.ofMillis(50));
+        properties.getBackups().put("qwen", "openai");
+        RequestHedger hedger = new RequestHedger(properties);
+        ChatService qwen = hedger.decorate("qwen", new StubChatService("qwen", Duration.ofSeconds(5), primaryCancelled));
+        hedger.decorate("openai", stub("openai", Duration.ZERO, null));
+
+        List<ChatResponse> chunks = qwen.streamReply(request(null)).collectList().block(Duration.ofSeconds(2));
+
+        assertEquals(List.of("openai-1", "openai-2"), chunks.stream().map(ChatResponse::getContent).toList());
+        assertTrue(primaryCancelled.get());
+        HedgeStats stats = hedger.stats("qwen");
+        assertEquals(1, stats.getHedgeCount());
+        assertEquals(1, stats.getBackupWinCount());
+        assertEquals(1.0, stats.getWinRatio());
+    }
+
+    @Test
+    public void testFastPrimaryIsNotHedged() {
+        RequestHedger hedger = new RequestHedger(properties(Duration.ofMillis(200)));
+        ChatService qwen = hedger.decorate("qwen", stub("qwen", Duration.ZERO, null));
+
+        assertEquals("qwen", qwen.reply(request(null)).block().getContent());
+        assertEquals("qwen-1", qwen.streamReply(request(null)).blockFirst().getContent());
+        assertEquals("qwen", qwen.syncReply(request(null)).getContent());
+
+        HedgeStats stats = hedger.stats("qwen");
+        assertEquals(3, stats.getRequestCount());
+        assertEquals(0, stats.getHedgeCount());
+    }
+
+    @Test
+    public void testSyncAndReplyHedgeToSameModel() {
+        AtomicInteger calls = new AtomicInteger();
+        RequestHedger hedger = new RequestHedger(properties(Duration.ofMillis(50)));
+        // 第一次调用很慢，第二次（对冲）立即返回
+        ChatService qwen = hedger.decorate("qwen", new StubChatService("qwen", Duration.ZERO, null) {
+            @Override
+            public Mono<ChatResponse> reply(ChatRequest request) {
+                int call = calls.incrementAndGet();
+                return Mono.just(ChatResponseUtil.createMessage(request, "call-" + call))
+                        .delayElement(call % 2 == 1 ? Duration.ofSeconds(5) : Duration.ZERO);
+            }
+
+            @Override
+            public ChatResponse syncReply(ChatRequest request) {
+                return reply(request).block();
+            }
+        });
+
+        assertEquals("call-2", qwen.reply(request(null)).block(Duration.ofSeconds(2)).getContent());
+        assertEquals("call-4", qwen.syncReply(request(null)).getContent());
+        assertEquals(2, hedger.stats("qwen").getBackupWinCount());
+    }
+
+    @Test
+    public void testBudgetCapsHedges() {
+        SpringAiChatProperties.HedgingProperties properties = properties(Duration.ofMillis(20));
+        properties.setMaxHedgeRatio(0);
+        properties.setBudgetCapacity(1);
+        RequestHedger hedger = new RequestHedger(properties);
+        ChatService qwen = hedger.decorate("qwen", stub("qwen", Duration.ofMillis(200), null));
+
+        qwen.reply(request(null)).block();
+        qwen.reply(request(null)).block();
+
+        HedgeStats stats = hedger.stats("qwen");
+        assertEquals(1, stats.getHedgeCount());
+        assertEquals(1, stats.getBudgetExhaustedCount());
+        assertEquals(0.5, stats.getHedgeRate());
+    }
+
+    @Test
+    public void testErrorFromBothCallsIsPropagated() {
+        RequestHedger hedger = new RequestHedger(properties(Duration.ofMillis(10)));
+        ChatService qwen = hedger.decorate("qwen", new StubChatService("qwen", Duration.ZERO, null) {
+            @Override
+            public Mono<ChatResponse> reply(ChatRequest request) {
+                return Mono.delay(Duration.ofMillis(30)).then(Mono.error(new IllegalStateException("upstream down")));
+            }
+        });
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> qwen.reply(request(null)).block());
+        assertEquals("upstream down", error.getMessage());
+    }
+
+    @Test
+    public void testFastPrimaryErrorIsNotHeldUntilHedgeDelay() {
+        RequestHedger hedger = new RequestHedger(properties(Duration.ofSeconds(5)));
+        ChatService qwen = hedger.decorate("qwen", new StubChatService("qwen", Duration.ZERO, null) {
+            @Override
+            public Mono<ChatResponse> reply(ChatRequest request) {
+                return Mono.error(new IllegalStateException("400 Bad Request"));
+            }
+
+            @Override
+            public Flux<ChatResponse> streamReply(ChatRequest request) {
+                return Flux.error(new IllegalStateException("400 Bad Request"));
+            }
+        });
+
+        long start = System.nanoTime();
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> qwen.reply(request(null)).block(Duration.ofSeconds(2)));
+        assertEquals("400 Bad Request", error.getMessage());
+        assertThrows(IllegalStateException.class, () -> qwen.streamReply(request(null)).blockLast(Duration.ofSeconds(2)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, hedger.stats("qwen").getHedgeCount());
+    }
+
+    @Test
+    public void testBackupTakesItsOwnLimiterPermit() {
+        SpringAiChatProperties.LimiterProperties limiterProperties = new SpringAiChatProperties.LimiterProperties();
+        limiterProperties.setEnabled(true);
+        limiterProperties.setInitialLimit(1);
+        limiterProperties.setMaxQueueSize(0);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(limiterProperties);
+        RequestHedger hedger = new RequestHedger(properties(Duration.ofMillis(50)));
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("limiter", limiter);
+        context.getBeanFactory().registerSingleton("hedger", hedger);
+        context.refresh();
+        ChatModelFactory factory = new ChatModelFactory(Map.of("qwen", stub("qwen", Duration.ofMillis(300), null)),
+                context, new SpringAiChatProperties());
+
+        // 主调用占着唯一的许可，对冲调用被并发限制拒绝，继续等待主调用
+        ChatResponse response = factory.get("qwen").reply(request(null)).block(Duration.ofSeconds(2));
+
+        assertEquals("qwen", response.getContent());
+        assertEquals(1, limiter.limiter("qwen").getRejectedCount());
+        assertEquals(1, hedger.stats("qwen").getHedgeCount());
+        assertEquals(0, hedger.stats("qwen").getBackupWinCount());
+        context.close();
+    }
+
+    @Test
+    public void testSessionRequestsAreNotHedged() {
+        AtomicInteger calls = new AtomicInteger();
+        RequestHedger hedger = new RequestHedger(properties(Duration.ofMillis(10)));
+        ChatService qwen = hedger.decorate("qwen", new StubChatService("qwen", Duration.ZERO, null) {
+            @Override
+            public Mono<ChatResponse> reply(ChatRequest request) {
+                calls.incrementAndGet();
+                return super.reply(request).delayElement(Duration.ofMillis(100));
+            }
+        });
+
+        qwen.reply(request("session-1")).block();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, hedger.stats("qwen").getRequestCount());
+    }
+
+    @Test
+    public void testDelayFollowsObservedP95() {
+        SpringAiChatProperties.HedgingProperties properties = properties(null);
+        properties.setMinDelay(Duration.ofMillis(10));
+        HedgeStats stats = new HedgeStats("qwen", properties);
+        assertEquals(properties.getInitialDelay(), stats.hedgeDelay(false));
+
+        for (int i = 1; i <= 96; i++) {
+            stats.recordLatency(false, TimeUnit.MILLISECONDS.toNanos(i * 10L));
+        }
+        // 96个样本的p95为第92个
+        assertEquals(Duration.ofMillis(920), stats.hedgeDelay(false));
+        // 流式与完整回复分别统计
+        assertEquals(properties.getInitialDelay(), stats.hedgeDelay(true));
+    }
+
+    private static SpringAiChatProperties.HedgingProperties properties(Duration delay) {
+        SpringAiChatProperties.HedgingProperties properties = new SpringAiChatProperties.HedgingProperties();
+        properties.setEnabled(true);
+        properties.setDelay(delay);
+        properties.setMaxHedgeRatio(1.0);
+        return properties;
+    }
+
+    private static ChatService stub(String name, Duration latency, AtomicBoolean cancelled) {
+        return new StubChatService(name, latency, cancelled);
+    }
+
+    private static ChatRequest request(String sessionId) {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId("req-1");
+        request.setUserId("user-1");
+        request.setPrompt("你好");
+        request.setSessionId(sessionId);
+        return request;
+    }
+
+    private static class StubChatService implements ChatService {
+        private final String name;
+        private final Duration latency;
+        private final AtomicBoolean cancelled;
+
+        StubChatService(String name, Duration latency, AtomicBoolean cancelled) {
+            this.name = name;
+            this.latency = latency;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public Flux<ChatResponse> streamReply(ChatRequest request) {
+            return Flux.just(name + "-1", name + "-2")
+                    .delaySubscription(latency)
+                    .map(content -> ChatResponseUtil.createMessage(request, content))
+                    .doOnCancel(() -> {
+                        if (cancelled != null) {
+                            cancelled.set(true);
+                        }
+                    });
+        }
+
+        @Override
+        public ChatResponse syncReply(ChatRequest request) {
+            return reply(request).block();
+        }
+
+        @Override
+        public Mono<ChatResponse> reply(ChatRequest request) {
+            return Mono.just(ChatResponseUtil.createMessage(request, name)).delayElement(latency);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.memory.MappedLogChatMemory;
+import com.randb.springaichatstarter.util.TokenEstimator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文件对话记忆测试
+ */
+public class MappedLogChatMemoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecoversWindowAfterRestart() {
+        try (MappedLogChatMemory memory = open(3, DataSize.ofKilobytes(64))) {
+            memory.add("c1", List.of(new SystemMessage("s1"), new UserMessage("u1"), new AssistantMessage("a1")));
+            memory.add("c1", List.of(new UserMessage("u2"), new AssistantMessage("你好 👋")));
+            memory.add("c1", new SystemMessage("s2"));
+            memory.add("c2", new UserMessage("other"));
+            assertEquals(List.of("s2", "a1", "u2", "你好 👋"), texts(memory.get("c1")));
+        }
+
+        try (MappedLogChatMemory memory = open(3, DataSize.ofKilobytes(64))) {
+            assertEquals(List.of("s2", "a1", "u2", "你好 👋"), texts(memory.get("c1")));
+            assertEquals(List.of("other"), texts(memory.get("c2")));
+            assertEquals(7, memory.getRecoveredRecords());
+            assertTrue(memory.get("unknown").isEmpty());
+        }
+    }
+
+    @Test
+    public void testClearSurvivesRestart() {
+        try (MappedLogChatMemory memory = open(10, DataSize.ofKilobytes(64))) {
+            memory.add("c1", List.of(new UserMessage("u1"), new AssistantMessage("a1")));
+            memory.clear("c1");
+            memory.add("c1", new UserMessage("u2"));
+        }
+
+        try (MappedLogChatMemory memory = open(10, DataSize.ofKilobytes(64))) {
+            assertEquals(List.of("u2"), texts(memory.get("c1")));
+        }
+    }
+
+    @Test
+    public void testTornTailIsIgnored() throws IOException {
+        try (MappedLogChatMemory memory = open(10, DataSize.ofKilobytes(64))) {
+            memory.add("c1", List.of(new UserMessage("u1"), new AssistantMessage("a1")));
+        }
+        // 模拟写到一半崩溃：长度已写入，正文和校验值不完整
+        try (FileChannel channel = FileChannel.open(directory.resolve("0000000000.log"), StandardOpenOption.WRITE)) {
+            long end = 2L * (8 + 12 + 2 + 4 + 2);
+            channel.write(ByteBuffer.allocate(8).putInt(40).putInt(12345).flip(), end);
+        }
+
+        try (MappedLogChatMemory memory = open(10, DataSize.ofKilobytes(64))) {
+            assertEquals(List.of("u1", "a1"), texts(memory.get("c1")));
+            memory.add("c1", new UserMessage("u2"));
+        }
+        try (MappedLogChatMemory memory = open(10, DataSize.ofKilobytes(64))) {
+            assertEquals(List.of("u1", "a1", "u2"), texts(memory.get("c1")));
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsLiveRecordsInOrder() {
+        try (MappedLogChatMemory memory = open(4, DataSize.ofKilobytes(1))) {
+            // 长期存在的会话，最早的消息在第一个段里
+            memory.add("kept", List.of(new SystemMessage("system"), new UserMessage("k1")));
+            memory.add("cleared", new UserMessage("old"));
+            for (int i = 0; i < 200; i++) {
+                memory.add("busy", new UserMessage("message-" + i));
+            }
+            memory.clear("cleared");
+            memory.add("kept", List.of(new AssistantMessage("k2"), new UserMessage("k3")));
+            int before = memory.getSegmentCount();
+
+            memory.compact();
+
+            assertTrue(memory.getSegmentCount() < before, memory.getSegmentCount() + " >= " + before);
+            assertTrue(memory.getCompactionCount() > 0);
+            assertEquals(List.of("system", "k1", "k2", "k3"), texts(memory.get("kept")));
+            assertEquals(List.of("message-196", "message-197", "message-198", "message-199"),
+                    texts(memory.get("busy")));
+        }
+
+        try (MappedLogChatMemory memory = open(4, DataSize.ofKilobytes(1))) {
+            assertEquals(List.of("system", "k1", "k2", "k3"), texts(memory.get("kept")));
+            assertEquals(List.of("message-196", "message-197", "message-198", "message-199"),
+                    texts(memory.get("busy")));
+            assertTrue(memory.get("cleared").isEmpty());
+        }
+    }
+
+    @Test
+    public void testTokenCountsSurviveRestartAndLegacyRecordsAreRead() throws IOException {
+        // 旧版本写入的记录：类型0，不带token数
+        byte[] id = "c1".getBytes(StandardCharsets.UTF_8);
+        byte[] text = "旧问题".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(12 + id.length + text.length)
+                .putLong(0).put((byte) 0).put((byte) 'U').putShort((short) id.length).put(id).put(text);
+        CRC32C crc = new CRC32C();
+        crc.update(body.array());
+        Files.write(directory.resolve("0000000000.log"), ByteBuffer.allocate(8 + body.capacity())
+                .putInt(body.capacity()).putInt((int) crc.getValue()).put(body.array()).array());
+
+        try (MappedLogChatMemory memory = open(10, DataSize.ofKilobytes(64))) {
+            memory.add("c1", new AssistantMessage("新回答"));
+        }
+
+        try (MappedLogChatMemory memory = open(10, DataSize.ofKilobytes(64))) {
+            List<Message> messages = memory.get("c1");
+            assertEquals(List.of("旧问题", "新回答"), texts(messages));
+            assertNull(messages.get(0).getMetadata().get(TokenEstimator.METADATA_KEY));
+            assertEquals(3 + TokenEstimator.MESSAGE_OVERHEAD, messages.get(1).getMetadata().get(TokenEstimator.METADATA_KEY));
+            assertEquals(3 + TokenEstimator.MESSAGE_OVERHEAD, TokenEstimator.count(messages.get(0)));
+        }
+    }
+
+    private MappedLogChatMemory open(int maxMessages, DataSize segmentSize) {
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        properties.setMaxMessages(maxMessages);
+        properties.setLogDirectory(directory.toString());
+        properties.setSegmentSize(segmentSize);
+        return new MappedLogChatMemory(properties);
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,103 @@
+package com.randb.springaichatstarter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.mq.ChatPayloadCodecs;
+import com.randb.springaichatstarter.mq.PayloadCompressor;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MQ消息体压缩测试
+ */
+public class PayloadCompressorTest {
+
+    private static final String TEXT = "Spring AI 提供了 ChatClient、ChatMemory 等抽象，"
+            + "可以在不同的模型提供商之间切换。It also supports streaming responses and tool calling. ";
+
+    @Test
+    public void testRoundTripEveryAlgorithm() throws IOException {
+        byte[] body = TEXT.repeat(100).getBytes(StandardCharsets.UTF_8);
+        for (SpringAiChatProperties.PayloadCompression algorithm : SpringAiChatProperties.PayloadCompression.values()) {
+            if (algorithm == SpringAiChatProperties.PayloadCompression.NONE) {
+                continue;
+            }
+            PayloadCompressor compressor = compressor(algorithm, DataSize.ofKilobytes(1));
+            byte[] compressed = compressor.compress(body);
+            assertNotNull(compressed, algorithm.name());
+            assertTrue(compressed.length < body.length / 4, algorithm + ": " + compressed.length);
+            // 解压不依赖发送方的配置
+            assertArrayEquals(body, PayloadCompressor.none().decompress(compressed, compressor.getEncoding()), algorithm.name());
+        }
+    }
+
+    @Test
+    public void testSkipsSmallAndIncompressibleBodies() throws IOException {
+        PayloadCompressor compressor = compressor(SpringAiChatProperties.PayloadCompression.ZSTD, DataSize.ofKilobytes(1));
+        assertNull(compressor.compress(TEXT.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+        assertNull(compressor.compress(random));
+        assertNull(PayloadCompressor.none().compress(TEXT.repeat(100).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testCharsetContentEncodingIsNotCompression() throws IOException {
+        byte[] body = TEXT.getBytes(StandardCharsets.UTF_8);
+        // 旧版本Jackson2JsonMessageConverter写入的content-encoding是字符集
+        assertSame(body, PayloadCompressor.none().decompress(body, "UTF-8"));
+        assertSame(body, PayloadCompressor.none().decompress(body, null));
+    }
+
+    @Test
+    public void testRejectsOversizedAndCorruptBodies() throws IOException {
+        byte[] body = new byte[64 * 1024];
+        SpringAiChatProperties.CompressionProperties properties = new SpringAiChatProperties.CompressionProperties();
+        properties.setMaxDecompressedSize(DataSize.ofKilobytes(16));
+        PayloadCompressor limited = new PayloadCompressor(properties);
+
+        for (SpringAiChatProperties.PayloadCompression algorithm : new SpringAiChatProperties.PayloadCompression[]{
+                SpringAiChatProperties.PayloadCompression.GZIP, SpringAiChatProperties.PayloadCompression.LZ4,
+                SpringAiChatProperties.PayloadCompression.ZSTD}) {
+            PayloadCompressor compressor = compressor(algorithm, DataSize.ofBytes(0));
+            byte[] compressed = compressor.compress(body);
+            assertThrows(IOException.class, () -> limited.decompress(compressed, compressor.getEncoding()), algorithm.name());
+            byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+            assertThrows(IOException.class, () -> compressor.decompress(truncated, compressor.getEncoding()), algorithm.name());
+        }
+    }
+
+    @Test
+    public void testCodecsCompressLargeReplies() throws IOException {
+        ChatPayloadCodecs codecs = ChatPayloadCodecs.create(new ObjectMapper(), SpringAiChatProperties.PayloadFormat.JSON,
+                compressor(SpringAiChatProperties.PayloadCompression.LZ4, DataSize.ofKilobytes(4)));
+        ChatResponse small = new ChatResponse("message", "req-1", "user-1", TEXT, 1L);
+        ChatResponse large = new ChatResponse("message", "req-1", "user-1", TEXT.repeat(100), 1L);
+
+        Message smallMessage = codecs.toMessage(small, codecs.getDefault());
+        assertNull(smallMessage.getMessageProperties().getContentEncoding());
+        Message largeMessage = codecs.toMessage(large, codecs.getDefault());
+        assertEquals(PayloadCompressor.LZ4, largeMessage.getMessageProperties().getContentEncoding());
+        assertEquals(ChatPayloadCodecs.JSON, largeMessage.getMessageProperties().getContentType());
+
+        assertEquals(small, codecs.fromMessage(smallMessage, ChatResponse.class));
+        assertEquals(large, codecs.fromMessage(largeMessage, ChatResponse.class));
+    }
+
+    private static PayloadCompressor compressor(SpringAiChatProperties.PayloadCompression algorithm, DataSize threshold) {
+        SpringAiChatProperties.CompressionProperties properties = new SpringAiChatProperties.CompressionProperties();
+        properties.setAlgorithm(algorithm);
+        properties.setThreshold(threshold);
+        return new PayloadCompressor(properties);
+    }
+}
@@ -0,0 +1,140 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.ratelimit.LocalRateLimiter;
+import com.randb.springaichatstarter.ratelimit.RateLimitGuard;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用户速率限制测试
+ */
+public class RateLimitGuardTest {
+
+    @Test
+    public void testBurstThenRejected() {
+        RateLimitGuard guard = guard(3, 0.001);
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(guard.check(request("user-1")));
+        }
+        ChatResponse rejected = guard.check(request("user-1"));
+        assertNotNull(rejected);
+        assertEquals("rejected", rejected.getType());
+        assertEquals("user-1", rejected.getUserId());
+        assertEquals("req-user-1", rejected.getRequestId());
+
+        // 其他用户有独立的令牌桶
+        assertNull(guard.check(request("user-2")));
+    }
+
+    @Test
+    public void testTokensRefillOverTime() throws Exception {
+        RateLimitGuard guard = guard(1, 20);
+
+        assertNull(guard.check(request("user-1")));
+        assertNotNull(guard.check(request("user-1")));
+        Thread.sleep(100);
+        assertNull(guard.check(request("user-1")));
+    }
+
+    @Test
+    public void testUserTiers() {
+        SpringAiChatProperties.RateLimitProperties properties = properties(1, 0.001);
+        SpringAiChatProperties.RateLimitTier premium = new SpringAiChatProperties.RateLimitTier();
+        premium.setCapacity(5);
+        premium.setRefillPerSecond(0.001);
+        properties.getTiers().put("premium", premium);
+        properties.getUsers().put("vip", "premium");
+        properties.getUsers().put("typo", "missing-tier");
+        RateLimitGuard guard = new RateLimitGuard(properties, new LocalRateLimiter(1000, Duration.ofMinutes(1)));
+
+        for (int i = 0; i < 5; i++) {
+            assertNull(guard.check(request("vip")));
+        }
+        assertNotNull(guard.check(request("vip")));
+        // 配置了不存在档位的用户按默认档位限制
+        assertNull(guard.check(request("typo")));
+        assertNotNull(guard.check(request("typo")));
+        // 没有userId的请求共用匿名桶
+        assertNull(guard.check(request(null)));
+        assertNotNull(guard.check(request(null)));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        guard.bindTo(registry);
+        assertEquals(5.0, registry.get("spring.ai.chat.ratelimit.allowed").tag("tier", "premium").functionCounter().count());
+        assertEquals(2.0, registry.get("spring.ai.chat.ratelimit.rejected").tag("tier", "default").functionCounter().count());
+    }
+
+    @Test
+    public void testConcurrentRequestsNeverExceedCapacity() throws Exception {
+        RateLimitGuard guard = guard(100, 0.001);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < 16; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int allowed = 0;
+                    for (int i = 0; i < 1000; i++) {
+                        if (guard.check(request("hot-user")) == null) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+            start.countDown();
+            int allowed = 0;
+            for (Future<Integer> result : results) {
+                allowed += result.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(100, allowed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDisabledGuardAllowsEverything() {
+        RateLimitGuard guard = RateLimitGuard.disabled();
+        assertFalse(guard.isEnabled());
+        for (int i = 0; i < 1000; i++) {
+            assertNull(guard.check(request("user-1")));
+        }
+    }
+
+    private static RateLimitGuard guard(int capacity, double refillPerSecond) {
+        return new RateLimitGuard(properties(capacity, refillPerSecond), new LocalRateLimiter(1000, Duration.ofMinutes(1)));
+    }
+
+    private static SpringAiChatProperties.RateLimitProperties properties(int capacity, double refillPerSecond) {
+        SpringAiChatProperties.RateLimitProperties properties = new SpringAiChatProperties.RateLimitProperties();
+        properties.setEnabled(true);
+        properties.getTiers().get("default").setCapacity(capacity);
+        properties.getTiers().get("default").setRefillPerSecond(refillPerSecond);
+        return properties;
+    }
+
+    private static ChatRequest request(String userId) {
+        ChatRequest request = new ChatRequest();
+        request.setUserId(userId);
+        request.setRequestId("req-" + userId);
+        request.setPrompt("你好");
+        return request;
+    }
+}
@@ -0,0 +1,423 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.memory.RedisChatMemory;
+import com.randb.springaichatstarter.util.TokenEstimator;
+import io.lettuce.core.ClientOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Redis对话记忆测试
+ * 使用进程内的RESP协议替身（只实现用到的命令），不依赖外部Redis
+ */
+public class RedisChatMemoryTest {
+
+    private RespStandIn redis;
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        redis = new RespStandIn();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            resources.get(i).close();
+        }
+        redis.close();
+    }
+
+    @Test
+    public void testAppendTrimsWindowOnServer() {
+        RedisChatMemory memory = node(3);
+
+        memory.add("c1", List.of(new SystemMessage("s1"), new UserMessage("u1"), new AssistantMessage("a1")));
+        memory.add("c1", List.of(new UserMessage("u2"), new AssistantMessage("你好 👋")));
+        memory.add("c1", new SystemMessage("s2"));
+
+        assertEquals(List.of("s2", "a1", "u2", "你好 👋"), texts(memory.get("c1")));
+        assertEquals(3, redis.list("spring-ai-chat:memory:c1").size());
+        assertTrue(memory.get("unknown").isEmpty());
+
+        memory.clear("c1");
+        assertTrue(memory.get("c1").isEmpty());
+    }
+
+    @Test
+    public void testNearCacheInvalidatedAcrossNodes() throws Exception {
+        RedisChatMemory nodeA = node(10);
+        RedisChatMemory nodeB = node(10);
+        nodeA.add("c1", new UserMessage("u1"));
+        awaitInvalidations(nodeB, 1);
+
+        assertEquals(List.of("u1"), texts(nodeB.get("c1")));
+        int reads = redis.commandCount("LRANGE");
+        assertEquals(List.of("u1"), texts(nodeB.get("c1")));
+        assertEquals(reads, redis.commandCount("LRANGE"), "第二次读取应命中近端缓存");
+
+        long before = nodeB.getInvalidationCount();
+        nodeA.add("c1", new AssistantMessage("a1"));
+        awaitInvalidations(nodeB, before + 1);
+
+        assertEquals(List.of("u1", "a1"), texts(nodeB.get("c1")));
+    }
+
+    @Test
+    public void testTokenCountsStoredWithMessages() {
+        RedisChatMemory writer = node(10);
+        // 旧版本写入的条目：大写角色 + 文本，不带token数
+        redis.rpush("spring-ai-chat:memory:c1", "U旧问题");
+        writer.add("c1", List.of(new UserMessage("你好"), new AssistantMessage("hello: world")));
+
+        List<Message> messages = node(10).get("c1");
+
+        assertEquals(List.of("旧问题", "你好", "hello: world"), texts(messages));
+        assertNull(messages.get(0).getMetadata().get(TokenEstimator.METADATA_KEY));
+        assertEquals(2 + TokenEstimator.MESSAGE_OVERHEAD, messages.get(1).getMetadata().get(TokenEstimator.METADATA_KEY));
+        assertEquals(3 + TokenEstimator.MESSAGE_OVERHEAD, messages.get(2).getMetadata().get(TokenEstimator.METADATA_KEY));
+        assertEquals(3 + TokenEstimator.MESSAGE_OVERHEAD, TokenEstimator.count(messages.get(0)));
+    }
+
+    @Test
+    public void testRedisFailureDegradesToEmptyHistory() throws IOException {
+        RedisChatMemory memory = node(10);
+        memory.add("c1", new UserMessage("u1"));
+        redis.close();
+
+        assertDoesNotThrow(() -> memory.add("c2", new UserMessage("u2")));
+        assertTrue(memory.get("c2").isEmpty());
+        assertTrue(memory.getErrorCount() >= 2);
+    }
+
+    private RedisChatMemory node(int maxMessages) {
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .commandTimeout(Duration.ofSeconds(1))
+                .clientOptions(ClientOptions.builder()
+                        .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                        .build())
+                .build();
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("127.0.0.1", redis.getPort()), clientConfiguration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        resources.add(connectionFactory::destroy);
+
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        properties.setMaxMessages(maxMessages);
+        RedisChatMemory memory = new RedisChatMemory(new StringRedisTemplate(connectionFactory), properties);
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(memory, new ChannelTopic(memory.getChannel()));
+        container.afterPropertiesSet();
+        container.start();
+        resources.add(container::destroy);
+        return memory;
+    }
+
+    private static void awaitInvalidations(RedisChatMemory memory, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (memory.getInvalidationCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(memory.getInvalidationCount() >= count, "未收到失效通知");
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    /**
+     * 最小的RESP2服务端替身：字符串、列表、发布订阅，不支持过期
+     */
+    static final class RespStandIn implements AutoCloseable {
+
+        private final ServerSocket server;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final Map<String, Object> data = new HashMap<>();
+        private final Map<String, Set<Connection>> subscribers = new HashMap<>();
+        private final List<String> commands = new CopyOnWriteArrayList<>();
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        RespStandIn() throws IOException {
+            server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            executor.submit(this::acceptLoop);
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        synchronized List<String> list(String key) {
+            Object value = data.get(key);
+            return value instanceof List<?> ? castList(value) : List.of();
+        }
+
+        synchronized void rpush(String key, String... values) {
+            castList(data.computeIfAbsent(key, k -> new ArrayList<String>())).addAll(List.of(values));
+        }
+
+        int commandCount(String name) {
+            return (int) commands.stream().filter(name::equals).count();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (server.isClosed()) {
+                return;
+            }
+            server.close();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            executor.shutdownNow();
+        }
+
+        private void acceptLoop() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    sockets.add(socket);
+                    executor.submit(() -> serve(new Connection(socket)));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Connection connection) {
+            try (Socket ignored = connection.socket) {
+                InputStream in = new BufferedInputStream(connection.socket.getInputStream());
+                List<String> command;
+                while ((command = readCommand(in)) != null) {
+                    String name = command.get(0).toUpperCase();
+                    commands.add(name);
+                    connection.write(execute(name, command, connection));
+                    if ("QUIT".equals(name)) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                // 连接关闭
+            } finally {
+                synchronized (this) {
+                    subscribers.values().forEach(set -> set.remove(connection));
+                }
+            }
+        }
+
+        private synchronized byte[] execute(String name, List<String> args, Connection connection) {
+            switch (name) {
+                case "PING":
+                    return connection.subscriptions.isEmpty() ? simple("PONG") : array(List.of("pong", ""));
+                case "CLIENT":
+                case "SELECT":
+                case "AUTH":
+                case "QUIT":
+                    return simple("OK");
+                case "SET":
+                    data.put(args.get(1), args.get(2));
+                    return simple("OK");
+                case "PSETEX":
+                    data.put(args.get(1), args.get(3));
+                    return simple("OK");
+                case "GET": {
+                    Object value = data.get(args.get(1));
+                    return bulk(value instanceof String string ? string : null);
+                }
+                case "RPUSH": {
+                    List<String> list = castList(data.computeIfAbsent(args.get(1), key -> new ArrayList<String>()));
+                    list.addAll(args.subList(2, args.size()));
+                    return integer(list.size());
+                }
+                case "LTRIM": {
+                    List<String> list = list(args.get(1));
+                    int[] range = range(list.size(), args.get(2), args.get(3));
+                    List<String> kept = range[0] <= range[1]
+                            ? new ArrayList<>(list.subList(range[0], range[1] + 1)) : new ArrayList<>();
+                    data.put(args.get(1), kept);
+                    return simple("OK");
+                }
+                case "LRANGE": {
+                    List<String> list = list(args.get(1));
+                    int[] range = range(list.size(), args.get(2), args.get(3));
+                    return array(range[0] <= range[1] ? list.subList(range[0], range[1] + 1) : List.of());
+                }
+                case "PEXPIRE":
+                    return integer(data.containsKey(args.get(1)) ? 1 : 0);
+                case "DEL": {
+                    int removed = 0;
+                    for (String key : args.subList(1, args.size())) {
+                        removed += data.remove(key) != null ? 1 : 0;
+                    }
+                    return integer(removed);
+                }
+                case "PUBLISH": {
+                    Set<Connection> targets = subscribers.getOrDefault(args.get(1), Set.of());
+                    byte[] message = array(List.of("message", args.get(1), args.get(2)));
+                    for (Connection target : targets) {
+                        executor.submit(() -> target.writeQuietly(message));
+                    }
+                    return integer(targets.size());
+                }
+                case "SUBSCRIBE": {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    for (String channel : args.subList(1, args.size())) {
+                        subscribers.computeIfAbsent(channel, key -> new LinkedHashSet<>()).add(connection);
+                        connection.subscriptions.add(channel);
+                        out.writeBytes(subscription("subscribe", channel, connection.subscriptions.size()));
+                    }
+                    return out.toByteArray();
+                }
+                case "UNSUBSCRIBE": {
+                    List<String> channels = args.size() > 1
+                            ? args.subList(1, args.size()) : new ArrayList<>(connection.subscriptions);
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    for (String channel : channels) {
+                        subscribers.getOrDefault(channel, new LinkedHashSet<>()).remove(connection);
+                        connection.subscriptions.remove(channel);
+                        out.writeBytes(subscription("unsubscribe", channel, connection.subscriptions.size()));
+                    }
+                    return out.toByteArray();
+                }
+                default:
+                    return ("-ERR unknown command '" + name + "'\r\n").getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        private static int[] range(int size, String start, String stop) {
+            int from = Integer.parseInt(start);
+            int to = Integer.parseInt(stop);
+            from = Math.max(0, from < 0 ? size + from : from);
+            to = Math.min(size - 1, to < 0 ? size + to : to);
+            return new int[]{from, to};
+        }
+
+        private static List<String> readCommand(InputStream in) throws IOException {
+            String header = readLine(in);
+            if (header == null) {
+                return null;
+            }
+            int count = Integer.parseInt(header.substring(1));
+            List<String> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = Integer.parseInt(readLine(in).substring(1));
+                byte[] bytes = in.readNBytes(length + 2);
+                args.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+            return args;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\r') {
+                    in.read();
+                    return line.toString(StandardCharsets.UTF_8);
+                }
+                line.write(b);
+            }
+            return null;
+        }
+
+        private static byte[] simple(String value) {
+            return ("+" + value + "\r\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static byte[] integer(long value) {
+            return (":" + value + "\r\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static byte[] bulk(String value) {
+            if (value == null) {
+                return "$-1\r\n".getBytes(StandardCharsets.UTF_8);
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + 16);
+            out.writeBytes(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(bytes);
+            out.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+            return out.toByteArray();
+        }
+
+        private static byte[] array(List<String> values) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.writeBytes(("*" + values.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+            values.forEach(value -> out.writeBytes(bulk(value)));
+            return out.toByteArray();
+        }
+
+        private static byte[] subscription(String kind, String channel, int count) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.writeBytes("*3\r\n".getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(bulk(kind));
+            out.writeBytes(bulk(channel));
+            out.writeBytes(integer(count));
+            return out.toByteArray();
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<String> castList(Object value) {
+            return (List<String>) value;
+        }
+
+        private static final class Connection {
+            private final Socket socket;
+            private final Set<String> subscriptions = new LinkedHashSet<>();
+
+            Connection(Socket socket) {
+                this.socket = socket;
+            }
+
+            synchronized void write(byte[] bytes) throws IOException {
+                OutputStream out = socket.getOutputStream();
+                out.write(bytes);
+                out.flush();
+            }
+
+            void writeQuietly(byte[] bytes) {
+                try {
+                    write(bytes);
+                } catch (IOException e) {
+                    // 订阅方已断开
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.QwenServiceAutoConfiguration;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.memory.CompactChatMemory;
+import com.randb.springaichatstarter.memory.StreamingReplyRecorder;
+import com.randb.springaichatstarter.retry.ResumableRetry;
+import com.randb.springaichatstarter.retry.RetryStats;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.context.support.StaticApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 可续写重试测试
+ */
+public class ResumableRetryTest {
+
+    @Test
+    public void testStreamResumesAfterMidStreamFailureWithoutDuplicates() {
+        ResumableRetry retry = new ResumableRetry(properties());
+        ScriptedChatService upstream = new ScriptedChatService();
+        // 第一次输出两段后断开，续写时重复了中断前的最后几个字
+        upstream.streams.add(Flux.concat(
+                Flux.just(message("今天天气"), message("很好，适合出门")),
+                Flux.error(new IOException("connection reset"))));
+        upstream.streams.add(Flux.just(message("适合出门散步"), message("，记得带伞。")));
+        ChatService service = retry.decorate("qwen", upstream);
+
+        List<ChatResponse> frames = service.streamReply(request()).collectList().block();
+
+        assertEquals("今天天气很好，适合出门散步，记得带伞。",
+                String.join("", frames.stream().map(ChatResponse::getContent).toList()));
+        assertTrue(frames.stream().allMatch(frame -> "req-1".equals(frame.getRequestId())));
+        assertEquals(2, upstream.requests.size());
+        ChatRequest continuation = upstream.requests.get(1);
+        assertEquals("req-1", continuation.getRequestId());
+        assertTrue(continuation.getPrompt().startsWith("讲讲天气"));
+        assertTrue(continuation.getPrompt().contains("今天天气很好，适合出门"));
+        assertTrue(continuation.isContinuation());
+        RetryStats stats = retry.stats("qwen");
+        assertEquals(1, stats.getRetryCount());
+        assertEquals(1, stats.getResumedCount());
+        assertEquals(4, stats.getDeduplicatedChars());
+    }
+
+    @Test
+    public void testFailureBeforeFirstChunkReissuesOriginalRequest() {
+        ResumableRetry retry = new ResumableRetry(properties());
+        ScriptedChatService upstream = new ScriptedChatService();
+        upstream.streams.add(Flux.error(new TransientAiException("503")));
+        upstream.streams.add(Flux.just(message("你好")));
+        ChatService service = retry.decorate("qwen", upstream);
+
+        List<ChatResponse> frames = service.streamReply(request()).collectList().block();
+
+        assertEquals(List.of("你好"), frames.stream().map(ChatResponse::getContent).toList());
+        assertEquals("讲讲天气", upstream.requests.get(1).getPrompt());
+        assertEquals(0, retry.stats("qwen").getResumedCount());
+    }
+
+    @Test
+    public void testNonTransientErrorsAreNotRetried() {
+        ResumableRetry retry = new ResumableRetry(properties());
+        ScriptedChatService upstream = new ScriptedChatService();
+        upstream.streams.add(Flux.error(new NonTransientAiException("401")));
+        upstream.failure = new IllegalArgumentException("bad request");
+        ChatService service = retry.decorate("qwen", upstream);
+
+        assertThrows(NonTransientAiException.class, () -> service.streamReply(request()).blockLast());
+        assertThrows(IllegalArgumentException.class, () -> service.syncReply(request()));
+        assertThrows(IllegalArgumentException.class, () -> service.reply(request()).block());
+        assertEquals(3, upstream.requests.size());
+        assertEquals(0, retry.stats("qwen").getRetryCount());
+    }
+
+    @Test
+    public void testSyncAndReplyRetryWholeCall() {
+        ResumableRetry retry = new ResumableRetry(properties());
+        ScriptedChatService upstream = new ScriptedChatService();
+        upstream.failure = new TransientAiException("timeout");
+        upstream.failuresLeft.set(1);
+        ChatService service = retry.decorate("qwen", upstream);
+
+        assertEquals("ok", service.syncReply(request()).getContent());
+        upstream.failuresLeft.set(1);
+        assertEquals("ok", service.reply(request()).block().getContent());
+        assertEquals(4, upstream.requests.size());
+        assertEquals(2, retry.stats("qwen").getRetryCount());
+    }
+
+    @Test
+    public void testBudgetCapsRetries() {
+        SpringAiChatProperties.RetryProperties properties = properties();
+        properties.setMaxRetryRatio(0);
+        properties.setBudgetCapacity(2);
+        ResumableRetry retry = new ResumableRetry(properties);
+        ScriptedChatService upstream = new ScriptedChatService();
+        upstream.failure = new TransientAiException("503");
+        upstream.failuresLeft.set(Integer.MAX_VALUE);
+        ChatService service = retry.decorate("qwen", upstream);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(TransientAiException.class, () -> service.syncReply(request()));
+        }
+        RetryStats stats = retry.stats("qwen");
+        assertEquals(2, stats.getRetryCount());
+        assertEquals(2, stats.getBudgetExhaustedCount());
+        assertEquals(5, upstream.requests.size());
+    }
+
+    @Test
+    public void testRetryFiresThroughQwenService() {
+        ChatClient client = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        when(client.prompt().user(anyString()).call().content())
+                .thenThrow(new TransientAiException("503 Service Unavailable"))
+                .thenReturn("今天晴");
+        when(client.prompt().user(anyString()).stream().content())
+                .thenReturn(Flux.error(new TransientAiException("503 Service Unavailable")))
+                .thenReturn(Flux.just("今天", "晴"));
+        SpringAiChatProperties chatProperties = new SpringAiChatProperties();
+        chatProperties.setRetry(properties());
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("chatClient", client);
+        context.getBeanFactory().registerSingleton("springAiChatProperties", chatProperties);
+        context.refresh();
+        // 按自动配置创建：启用重试时通义千问实现不能把异常吞成降级回复
+        ChatService qwen = new QwenServiceAutoConfiguration().qwenChatService(context,
+                context.getBeanProvider(SpringAiChatProperties.class));
+        ResumableRetry retry = new ResumableRetry(chatProperties.getRetry());
+        ChatService service = retry.decorate("qwen", qwen);
+
+        ChatResponse sync = service.syncReply(request());
+        ChatResponse reply = service.reply(request()).block(Duration.ofSeconds(5));
+
+        assertEquals("今天晴", sync.getContent());
+        assertEquals("今天晴", reply.getContent());
+        assertFalse(sync.isFallback() || reply.isFallback());
+        assertEquals(2, retry.stats("qwen").getRetryCount());
+        context.close();
+    }
+
+    @Test
+    public void testResumedStreamIsSavedToMemory() {
+        ChatClient client = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+        when(client.prompt().user(anyString()).stream().content())
+                .thenReturn(Flux.concat(Flux.just("今天天气", "很好，适合出门"),
+                        Flux.error(new TransientAiException("503 Service Unavailable"))))
+                .thenReturn(Flux.just("适合出门散步", "。"));
+        SpringAiChatProperties chatProperties = new SpringAiChatProperties();
+        chatProperties.setRetry(properties());
+        ChatMemory memory = new CompactChatMemory(chatProperties.getMemory());
+        StreamingReplyRecorder recorder = new StreamingReplyRecorder(chatProperties.getMemory());
+        ResumableRetry retry = new ResumableRetry(chatProperties.getRetry());
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("chatClient", client);
+        context.getBeanFactory().registerSingleton("springAiChatProperties", chatProperties);
+        context.getBeanFactory().registerSingleton("chatMemory", memory);
+        context.getBeanFactory().registerSingleton("streamingReplyRecorder", recorder);
+        context.getBeanFactory().registerSingleton("resumableRetry", retry);
+        context.refresh();
+        ChatService service = retry.decorate("qwen", new QwenServiceAutoConfiguration().qwenChatService(context,
+                context.getBeanProvider(SpringAiChatProperties.class)));
+        ChatRequest request = request();
+        request.setSessionId("c1");
+
+        List<ChatResponse> frames = service.streamReply(request).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals("今天天气很好，适合出门散步。",
+                String.join("", frames.stream().map(ChatResponse::getContent).toList()));
+        // 记忆中是原始问题和客户端收到的完整回复，不是续写指令
+        assertEquals(List.of("讲讲天气", "今天天气很好，适合出门散步。"),
+                memory.get("c1").stream().map(Message::getText).toList());
+        assertEquals(1, recorder.getSavedCount());
+        context.close();
+    }
+
+    private static SpringAiChatProperties.RetryProperties properties() {
+        SpringAiChatProperties.RetryProperties properties = new SpringAiChatProperties.RetryProperties();
+        properties.setEnabled(true);
+        properties.setInitialBackoff(Duration.ofMillis(5));
+        properties.setMaxBackoff(Duration.ofMillis(10));
+        return properties;
+    }
+
+    private static ChatRequest request() {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId("req-1");
+        request.setUserId("user-1");
+        request.setPrompt("讲讲天气");
+        return request;
+    }
+
+    private static ChatResponse message(String content) {
+        return ChatResponseUtil.createMessage(request(), content);
+    }
+
+    /**
+     * 按顺序返回预设的流，同步和异步调用按剩余失败次数抛出异常
+     */
+    private static class ScriptedChatService implements ChatService {
+        final List<Flux<ChatResponse>> streams = new CopyOnWriteArrayList<>();
+        final List<ChatRequest> requests = new CopyOnWriteArrayList<>();
+        final AtomicInteger failuresLeft = new AtomicInteger(Integer.MAX_VALUE);
+        RuntimeException failure;
+
+        @Override
+        public Flux<ChatResponse> streamReply(ChatRequest request) {
+            requests.add(request);
+            return streams.remove(0);
+        }
+
+        @Override
+        public ChatResponse syncReply(ChatRequest request) {
+            requests.add(request);
+            if (failure != null && failuresLeft.getAndDecrement() > 0) {
+                throw failure;
+            }
+            return ChatResponseUtil.createMessage(request, "ok");
+        }
+
+        @Override
+        public Mono<ChatResponse> reply(ChatRequest request) {
+            return Mono.fromCallable(() -> syncReply(request));
+        }
+    }
+}
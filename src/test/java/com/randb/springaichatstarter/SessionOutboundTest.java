@@ -0,0 +1,234 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.stream.ChatResponseFrameWriter;
+import com.randb.springaichatstarter.websocket.SessionOutbound;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * WebSocket会话发送队列测试
+ */
+public class SessionOutboundTest {
+
+    private final Scheduler scheduler = Schedulers.newBoundedElastic(4, 100, "ws-outbound-test");
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        scheduler.dispose();
+    }
+
+    @Test
+    public void testDemandFollowsSocketDrain() throws Exception {
+        WebSocketSession session = blockingSession();
+        SessionOutbound outbound = new SessionOutbound(session, properties(SpringAiChatProperties.OverflowPolicy.CLOSE, 1024), scheduler);
+        AtomicLong requested = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(1);
+
+        Flux<ChatResponse> source = Flux.range(0, 100)
+                .map(i -> chunk(String.valueOf(i)))
+                .doOnRequest(requested::addAndGet);
+        outbound.stream("req-1", source, frame(), error -> { }, done::countDown);
+
+        Thread.sleep(200);
+        // 第一帧卡在发送中，上游只收到初始需求
+        assertEquals(4, requested.get());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        waitUntil(() -> sent.size() == 100);
+        assertEquals("0", content(sent.get(0)));
+        assertEquals("99", content(sent.get(99)));
+    }
+
+    @Test
+    public void testConcurrentStreamsAreSerialized() throws Exception {
+        AtomicInteger concurrentSends = new AtomicInteger();
+        AtomicInteger maxConcurrentSends = new AtomicInteger();
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("s-1");
+        doAnswer(invocation -> {
+            maxConcurrentSends.accumulateAndGet(concurrentSends.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            sent.add(((TextMessage) invocation.getArgument(0)).getPayload());
+            concurrentSends.decrementAndGet();
+            return null;
+        }).when(session).sendMessage(any());
+        SessionOutbound outbound = new SessionOutbound(session, properties(SpringAiChatProperties.OverflowPolicy.CLOSE, 1024), scheduler);
+
+        for (int i = 0; i < 4; i++) {
+            outbound.stream("req-" + i, Flux.range(0, 20).map(n -> chunk("x")).subscribeOn(Schedulers.parallel()),
+                    frame(), error -> { }, () -> { });
+        }
+
+        waitUntil(() -> sent.size() == 80);
+        assertEquals(1, maxConcurrentSends.get());
+    }
+
+    @Test
+    public void testCoalesceOnOverflow() throws Exception {
+        WebSocketSession session = blockingSession();
+        SessionOutbound outbound = new SessionOutbound(session, properties(SpringAiChatProperties.OverflowPolicy.COALESCE, 3), scheduler);
+        Sinks.Many<ChatResponse> sink = Sinks.many().unicast().onBackpressureBuffer();
+        CountDownLatch done = new CountDownLatch(1);
+        outbound.stream("req-1", sink.asFlux(), frame(), error -> { }, done::countDown);
+
+        for (String content : List.of("a", "b", "c", "d", "e", "f")) {
+            sink.tryEmitNext(chunk(content));
+        }
+        sink.tryEmitComplete();
+        waitUntil(() -> outbound.getCoalescedCount() > 0);
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        waitUntil(() -> String.join("", sent.stream().map(SessionOutboundTest::content).toList()).equals("abcdef"));
+        assertTrue(sent.size() < 6);
+        assertFalse(outbound.isClosed());
+    }
+
+    @Test
+    public void testDropOldestKeepsControlFrames() throws Exception {
+        WebSocketSession session = blockingSession();
+        SessionOutbound outbound = new SessionOutbound(session, properties(SpringAiChatProperties.OverflowPolicy.DROP_OLDEST, 2), scheduler);
+        Sinks.Many<ChatResponse> sink = Sinks.many().unicast().onBackpressureBuffer();
+        outbound.stream("req-1", sink.asFlux(), frame(), error -> { }, () -> outbound.send("{\"type\":\"completed\"}"));
+
+        sink.tryEmitNext(chunk("a"));
+        waitUntil(() -> outbound.getQueuedFrames() == 0);
+        for (String content : List.of("b", "c", "d")) {
+            sink.tryEmitNext(chunk(content));
+        }
+        sink.tryEmitComplete();
+        release.countDown();
+
+        waitUntil(() -> !sent.isEmpty() && sent.get(sent.size() - 1).contains("completed"));
+        assertTrue(outbound.getDroppedCount() > 0);
+        assertEquals("a", content(sent.get(0)));
+    }
+
+    @Test
+    public void testCloseOnOverflowCancelsStreams() throws Exception {
+        WebSocketSession session = blockingSession();
+        SessionOutbound outbound = new SessionOutbound(session, properties(SpringAiChatProperties.OverflowPolicy.CLOSE, 1), scheduler);
+        AtomicInteger cancelled = new AtomicInteger();
+        Sinks.Many<ChatResponse> sink = Sinks.many().unicast().onBackpressureBuffer();
+        outbound.stream("req-1", sink.asFlux().doOnCancel(cancelled::incrementAndGet), frame(), error -> { }, () -> { });
+
+        sink.tryEmitNext(chunk("a"));
+        waitUntil(() -> outbound.getQueuedFrames() == 0);
+        sink.tryEmitNext(chunk("b"));
+        sink.tryEmitNext(chunk("c"));
+
+        waitUntil(outbound::isClosed);
+        assertEquals(1, cancelled.get());
+        release.countDown();
+        verify(session, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    public void testBlockedSendTimesOut() throws Exception {
+        WebSocketSession session = blockingSession();
+        SpringAiChatProperties.OutboundProperties properties = properties(SpringAiChatProperties.OverflowPolicy.COALESCE, 1024);
+        properties.setSendTimeLimit(Duration.ofMillis(100));
+        SessionOutbound outbound = new SessionOutbound(session, properties, scheduler);
+        AtomicInteger cancelled = new AtomicInteger();
+        Sinks.Many<ChatResponse> sink = Sinks.many().unicast().onBackpressureBuffer();
+        outbound.stream("req-1", sink.asFlux().doOnCancel(cancelled::incrementAndGet), frame(), error -> { }, () -> { });
+
+        // 对端不读，第一帧卡在发送中，之后不再有新消息入队
+        sink.tryEmitNext(chunk("a"));
+
+        verify(session, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertTrue(outbound.isClosed());
+        assertEquals(1, cancelled.get());
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void testCancelByRequestId() throws Exception {
+        WebSocketSession session = blockingSession();
+        SessionOutbound outbound = new SessionOutbound(session, properties(SpringAiChatProperties.OverflowPolicy.CLOSE, 1024), scheduler);
+        AtomicInteger cancelled = new AtomicInteger();
+        Sinks.Many<ChatResponse> sink = Sinks.many().unicast().onBackpressureBuffer();
+        outbound.stream("req-1", sink.asFlux().doOnCancel(cancelled::incrementAndGet), frame(), error -> { }, () -> { });
+        outbound.stream("req-2", Flux.never(), frame(), error -> { }, () -> { });
+
+        sink.tryEmitNext(chunk("a"));
+        sink.tryEmitNext(chunk("b"));
+        assertEquals(2, outbound.getActiveStreams());
+
+        assertTrue(outbound.cancel("req-1"));
+        assertFalse(outbound.cancel("req-1"));
+        assertEquals(1, cancelled.get());
+        assertEquals(1, outbound.getActiveStreams());
+
+        outbound.dispose();
+        assertEquals(0, outbound.getActiveStreams());
+    }
+
+    private WebSocketSession blockingSession() throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("s-1");
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            sent.add(((TextMessage) invocation.getArgument(0)).getPayload());
+            return null;
+        }).when(session).sendMessage(any());
+        return session;
+    }
+
+    private static SpringAiChatProperties.OutboundProperties properties(SpringAiChatProperties.OverflowPolicy policy,
+                                                                        int queueCapacity) {
+        SpringAiChatProperties.OutboundProperties properties = new SpringAiChatProperties.OutboundProperties();
+        properties.setOverflowPolicy(policy);
+        properties.setQueueCapacity(queueCapacity);
+        properties.setSendTimeLimit(Duration.ofSeconds(30));
+        return properties;
+    }
+
+    private static ChatResponseFrameWriter.FrameTemplate frame() {
+        return ChatResponseFrameWriter.template("message", "req-1", "user-1");
+    }
+
+    private static ChatResponse chunk(String content) {
+        return new ChatResponse("message", "req-1", "user-1", content, 1L);
+    }
+
+    private static String content(String json) {
+        int start = json.indexOf("\"content\":\"") + 11;
+        return json.substring(start, json.indexOf('"', start));
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+}
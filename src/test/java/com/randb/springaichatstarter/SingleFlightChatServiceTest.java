@@ -0,0 +1,177 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.cache.InFlightRequestCoalescer;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 在途请求合并测试
+ */
+public class SingleFlightChatServiceTest {
+
+    @Test
+    public void testConcurrentStreamsShareOneUpstreamCall() {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicInteger calls = new AtomicInteger();
+        ChatService service = new InFlightRequestCoalescer().decorate("qwen", new StubChatService() {
+            @Override
+            public Flux<ChatResponse> streamReply(ChatRequest request) {
+                calls.incrementAndGet();
+                return upstream.asFlux().map(content -> ChatResponseUtil.createMessage(request, content));
+            }
+        });
+
+        Flux<ChatResponse> first = service.streamReply(request("req-1", "user-1", "热门问题"));
+        Flux<ChatResponse> second = service.streamReply(request("req-2", "user-2", "热门问题"));
+
+        var firstResult = first.collectList().toFuture();
+        upstream.tryEmitNext("你");
+        // 晚到的订阅者也能收到已经发出的片段
+        var secondResult = second.collectList().toFuture();
+        upstream.tryEmitNext("好");
+        upstream.tryEmitComplete();
+
+        List<ChatResponse> firstChunks = firstResult.join();
+        List<ChatResponse> secondChunks = secondResult.join();
+        assertEquals(1, calls.get());
+        assertEquals(List.of("你", "好"), firstChunks.stream().map(ChatResponse::getContent).toList());
+        assertEquals(List.of("你", "好"), secondChunks.stream().map(ChatResponse::getContent).toList());
+        assertTrue(firstChunks.stream().allMatch(r -> "req-1".equals(r.getRequestId()) && "user-1".equals(r.getUserId())));
+        assertTrue(secondChunks.stream().allMatch(r -> "req-2".equals(r.getRequestId()) && "user-2".equals(r.getUserId())));
+
+        // 上游结束后，新的请求重新发起调用
+        service.streamReply(request("req-3", "user-3", "热门问题")).subscribe(response -> { }, error -> { });
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testConcurrentSyncCallsShareOneUpstreamCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer();
+        ChatService service = coalescer.decorate("qwen", new StubChatService() {
+            @Override
+            public ChatResponse syncReply(ChatRequest request) {
+                calls.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ChatResponseUtil.createMessage(request, "答案");
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<ChatResponse> leader = executor.submit(() -> service.syncReply(request("req-1", "user-1", "同一个问题")));
+            while (calls.get() == 0) {
+                Thread.sleep(5);
+            }
+            Future<ChatResponse> follower = executor.submit(() -> service.syncReply(request("req-2", "user-2", "同一个问题")));
+            while (coalescer.getCoalescedCount() == 0) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertEquals("req-1", leader.get(5, TimeUnit.SECONDS).getRequestId());
+            ChatResponse followerResponse = follower.get(5, TimeUnit.SECONDS);
+            assertEquals("req-2", followerResponse.getRequestId());
+            assertEquals("user-2", followerResponse.getUserId());
+            assertEquals("答案", followerResponse.getContent());
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentRepliesShareOneUpstreamCall() {
+        Sinks.One<ChatResponse> upstream = Sinks.one();
+        AtomicInteger calls = new AtomicInteger();
+        ChatService service = new InFlightRequestCoalescer().decorate("qwen", new StubChatService() {
+            @Override
+            public Mono<ChatResponse> reply(ChatRequest request) {
+                calls.incrementAndGet();
+                return upstream.asMono();
+            }
+        });
+
+        // 几千个并发的同步风格请求，全部挂起等待，不占用线程
+        List<CompletableFuture<ChatResponse>> replies = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            replies.add(service.reply(request("req-" + i, "user-" + i, "同一个问题")).toFuture());
+        }
+        upstream.tryEmitValue(ChatResponseUtil.createMessage(request("req-0", "user-0", "同一个问题"), "答案"));
+
+        assertEquals(1, calls.get());
+        for (int i = 0; i < replies.size(); i++) {
+            ChatResponse response = replies.get(i).join();
+            assertEquals("req-" + i, response.getRequestId());
+            assertEquals("答案", response.getContent());
+        }
+
+        // 上游结束后，新的请求重新发起调用
+        service.reply(request("req-x", "user-x", "同一个问题")).subscribe();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testSessionRequestsAreNotCoalesced() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatService service = new InFlightRequestCoalescer().decorate("qwen", new StubChatService() {
+            @Override
+            public Flux<ChatResponse> streamReply(ChatRequest request) {
+                calls.incrementAndGet();
+                return Flux.never();
+            }
+        });
+
+        ChatRequest first = request("req-1", "user-1", "继续");
+        first.setSessionId("session-1");
+        ChatRequest second = request("req-2", "user-1", "继续");
+        second.setSessionId("session-2");
+        service.streamReply(first).subscribe().dispose();
+        service.streamReply(second).subscribe().dispose();
+
+        assertEquals(2, calls.get());
+    }
+
+    private static ChatRequest request(String requestId, String userId, String prompt) {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(requestId);
+        request.setUserId(userId);
+        request.setPrompt(prompt);
+        return request;
+    }
+
+    private static class StubChatService implements ChatService {
+        @Override
+        public Flux<ChatResponse> streamReply(ChatRequest request) {
+            return Flux.empty();
+        }
+
+        @Override
+        public ChatResponse syncReply(ChatRequest request) {
+            return ChatResponseUtil.createMessage(request, "");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.cache.InFlightRequestCoalescer;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.stream.StreamCancellationMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式响应取消统计测试
+ */
+public class StreamCancellationMetricsTest {
+
+    @Test
+    public void testCancelledStreamCountsSavedTokens() {
+        StreamCancellationMetrics metrics = new StreamCancellationMetrics();
+        // 一个完整的流：10个中文字符，约10个token
+        metrics.track(Flux.just(chunk("你好你好你好"), chunk("你好你好"))).blockLast();
+
+        Sinks.Many<ChatResponse> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        Disposable subscription = metrics.track(upstream.asFlux()).subscribe();
+        upstream.tryEmitNext(chunk("你好你"));
+        subscription.dispose();
+
+        assertEquals(1, metrics.getCancelledCount());
+        assertEquals(7, metrics.getTokensSaved());
+        assertEquals(Sinks.EmitResult.FAIL_CANCELLED, upstream.tryEmitNext(chunk("好")));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        metrics.bindTo(registry);
+        assertEquals(1.0, registry.get("spring.ai.chat.stream.cancelled").functionCounter().count());
+        assertEquals(7.0, registry.get("spring.ai.chat.stream.tokens.saved").functionCounter().count());
+    }
+
+    @Test
+    public void testCancelWithoutHistorySavesNothing() {
+        StreamCancellationMetrics metrics = new StreamCancellationMetrics();
+        metrics.track(Flux.<ChatResponse>never()).subscribe().dispose();
+
+        assertEquals(1, metrics.getCancelledCount());
+        assertEquals(0, metrics.getTokensSaved());
+    }
+
+    @Test
+    public void testFollowerCancelOnSharedUpstreamSavesNothing() {
+        StreamCancellationMetrics metrics = new StreamCancellationMetrics();
+        metrics.track(Flux.just(chunk("你好你好你好"), chunk("你好你好"))).blockLast();
+
+        Sinks.Many<ChatResponse> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        ChatService service = new InFlightRequestCoalescer().decorate("qwen", new ChatService() {
+            @Override
+            public Flux<ChatResponse> streamReply(ChatRequest request) {
+                return upstream.asFlux();
+            }
+
+            @Override
+            public ChatResponse syncReply(ChatRequest request) {
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        Disposable leader = metrics.track(service.streamReply(request("req-1"))).subscribe();
+        Disposable follower = metrics.track(service.streamReply(request("req-2"))).subscribe();
+        upstream.tryEmitNext(chunk("你好你"));
+
+        // 跟随者取消时上游仍在为领导者生成，不计节省
+        follower.dispose();
+        assertEquals(1, metrics.getCancelledCount());
+        assertEquals(0, metrics.getTokensSaved());
+        assertEquals(Sinks.EmitResult.OK, upstream.tryEmitNext(chunk("好")));
+
+        // 最后一个订阅者取消，上游随之取消
+        leader.dispose();
+        assertEquals(2, metrics.getCancelledCount());
+        assertEquals(6, metrics.getTokensSaved());
+        assertEquals(Sinks.EmitResult.FAIL_CANCELLED, upstream.tryEmitNext(chunk("好")));
+    }
+
+    private static ChatRequest request(String requestId) {
+        ChatRequest request = new ChatRequest();
+        request.setRequestId(requestId);
+        request.setUserId("user-1");
+        request.setPrompt("热门问题");
+        return request;
+    }
+
+    private static ChatResponse chunk(String content) {
+        return new ChatResponse("message", "req-1", "user-1", content, 1L);
+    }
+}
@@ -0,0 +1,92 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.memory.CompactChatMemory;
+import com.randb.springaichatstarter.memory.StreamingReplyRecorder;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式回复写回对话记忆测试
+ */
+public class StreamingReplyRecorderTest {
+
+    @Test
+    public void testCompletedReplySavedBeforeCompletion() {
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        ChatMemory memory = new CompactChatMemory(properties);
+        StreamingReplyRecorder recorder = new StreamingReplyRecorder(properties);
+
+        List<String> chunks = recorder.record(Flux.just("你好", "，", "世界"), memory, "c1", "打个招呼")
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("你好", "，", "世界"), chunks);
+        // 完成信号发出时已经写入
+        assertEquals(List.of("打个招呼", "你好，世界"), texts(memory.get("c1")));
+        assertEquals(1, recorder.getSavedCount());
+    }
+
+    @Test
+    public void testErrorIsNotSaved() {
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        ChatMemory memory = new CompactChatMemory(properties);
+        StreamingReplyRecorder recorder = new StreamingReplyRecorder(properties);
+
+        Flux<String> failing = Flux.just("部分").concatWith(Flux.error(new IllegalStateException("断开")));
+        assertThrows(IllegalStateException.class, () -> recorder.record(failing, memory, "c1", "问题").blockLast());
+
+        assertTrue(memory.get("c1").isEmpty());
+        assertEquals(1, recorder.getSkippedCount());
+    }
+
+    @Test
+    public void testCancelledReplySkippedByDefault() {
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        ChatMemory memory = new CompactChatMemory(properties);
+        StreamingReplyRecorder recorder = new StreamingReplyRecorder(properties);
+
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        Disposable subscription = recorder.record(upstream.asFlux(), memory, "c1", "问题").subscribe();
+        upstream.tryEmitNext("部分回复");
+        subscription.dispose();
+
+        assertTrue(memory.get("c1").isEmpty());
+        assertEquals(1, recorder.getSkippedCount());
+    }
+
+    @Test
+    public void testCancelledReplyMarkedPartial() throws InterruptedException {
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        properties.setPartialReply(SpringAiChatProperties.PartialReply.MARK);
+        properties.setPartialReplyMarker("…[中断]");
+        ChatMemory memory = new CompactChatMemory(properties);
+        StreamingReplyRecorder recorder = new StreamingReplyRecorder(properties);
+
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        Disposable subscription = recorder.record(upstream.asFlux(), memory, "c1", "问题").subscribe();
+        upstream.tryEmitNext("部分");
+        upstream.tryEmitNext("回复");
+        subscription.dispose();
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (recorder.getSavedPartialCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("问题", "部分回复…[中断]"), texts(memory.get("c1")));
+        assertEquals(0, recorder.getSavedCount());
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,139 @@
+package com.randb.springaichatstarter;
+
+import com.randb.springaichatstarter.autoconfigure.VirtualThreadExecutionConfiguration;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.util.ChatResponseUtil;
+import org.apache.coyote.http11.Http11NioProtocol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 虚拟线程执行模式测试
+ */
+public class VirtualThreadExecutionTest {
+
+    /** Tomcat默认最大线程数 */
+    private static final int PLATFORM_POOL_SIZE = new Http11NioProtocol().getMaxThreads();
+    private static final int CONCURRENT_REQUESTS = 2000;
+    private static final long LLM_LATENCY_MILLIS = 300;
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(VirtualThreadExecutionConfiguration.class);
+
+    private final WebApplicationContextRunner webContextRunner = new WebApplicationContextRunner()
+            .withUserConfiguration(VirtualThreadExecutionConfiguration.class);
+
+    @Test
+    public void testPlatformModeByDefault() {
+        contextRunner.run(context -> assertTrue(context.getBeansOfType(VirtualThreadTaskExecutor.class).isEmpty()));
+    }
+
+    @Test
+    public void testVirtualThreadModeMatchesJre() {
+        boolean supported = Runtime.version().feature() >= 21;
+        contextRunner.withPropertyValues("spring.ai.chat.execution=virtual-threads")
+                .run(context -> assertEquals(supported,
+                        !context.getBeansOfType(VirtualThreadTaskExecutor.class).isEmpty()));
+    }
+
+    /**
+     * 负载测试：阻塞的同步调用在虚拟线程模式配置的Tomcat请求执行器上，同时在途的请求数远超Tomcat默认线程池上限
+     */
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    @SuppressWarnings("unchecked")
+    public void testInFlightRequestsScalePastPlatformPool() {
+        webContextRunner.withPropertyValues("spring.ai.chat.execution=virtual-threads").run(context -> {
+            // 按自动配置定制Tomcat协议处理器，负载跑在它的请求执行器上
+            Http11NioProtocol protocol = new Http11NioProtocol();
+            context.getBean("chatVirtualThreadProtocolHandlerCustomizer", TomcatProtocolHandlerCustomizer.class)
+                    .customize(protocol);
+            Executor requestExecutor = protocol.getExecutor();
+            assertSame(context.getBean(VirtualThreadTaskExecutor.class), requestExecutor);
+
+            ExecutorService platformPool = Executors.newFixedThreadPool(PLATFORM_POOL_SIZE);
+            try {
+                LoadResult platform = runLoad(platformPool);
+                LoadResult virtual = runLoad(requestExecutor);
+
+                assertEquals(PLATFORM_POOL_SIZE, platform.maxInFlight);
+                assertTrue(virtual.maxInFlight > PLATFORM_POOL_SIZE * 5,
+                        "virtual threads should exceed the platform pool, got " + virtual.maxInFlight);
+                assertTrue(virtual.elapsedMillis < platform.elapsedMillis / 2);
+            } finally {
+                platformPool.shutdownNow();
+            }
+        });
+    }
+
+    private static LoadResult runLoad(Executor executor) throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ChatService service = new SlowChatService(inFlight, maxInFlight);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<ChatResponse>> futures = new ArrayList<>(CONCURRENT_REQUESTS);
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            ChatRequest request = new ChatRequest();
+            request.setRequestId("req-" + i);
+            request.setPrompt("你好");
+            futures.add(CompletableFuture.supplyAsync(() -> service.syncReply(request), executor));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new LoadResult(maxInFlight.get(), elapsedMillis);
+    }
+
+    private record LoadResult(int maxInFlight, long elapsedMillis) {
+    }
+
+    /**
+     * 模拟阻塞的模型调用
+     */
+    private static class SlowChatService implements ChatService {
+        private final AtomicInteger inFlight;
+        private final AtomicInteger maxInFlight;
+
+        SlowChatService(AtomicInteger inFlight, AtomicInteger maxInFlight) {
+            this.inFlight = inFlight;
+            this.maxInFlight = maxInFlight;
+        }
+
+        @Override
+        public Flux<ChatResponse> streamReply(ChatRequest request) {
+            return Flux.empty();
+        }
+
+        @Override
+        public ChatResponse syncReply(ChatRequest request) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(LLM_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return ChatResponseUtil.createMessage(request, "答案");
+        }
+    }
+}
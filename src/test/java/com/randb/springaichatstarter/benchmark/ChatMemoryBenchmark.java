@@ -0,0 +1,103 @@
+package com.randb.springaichatstarter.benchmark;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.memory.CompactChatMemory;
+import com.randb.springaichatstarter.memory.RedisChatMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话记忆读写延迟基准测试：紧凑内存存储 vs Redis（有/无近端缓存）
+ * redis、redis-no-near-cache 需要本地Redis（-Dredis.host、-Dredis.port，默认 localhost:6379）：
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ChatMemoryBenchmark
+ * </pre>
+ * read 每次读取同一批会话中的随机一个（近端缓存命中时不访问Redis）；append 每次追加一问一答并触发服务端裁剪。
+ * @Date: 2025-09-03
+ * @Author: randb
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMemoryBenchmark {
+
+    private static final int CONVERSATIONS = 1000;
+
+    @Param({"compact", "redis", "redis-no-near-cache"})
+    public String store;
+
+    private LettuceConnectionFactory connectionFactory;
+    private ChatMemory memory;
+    private List<Message> turn;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        properties.setRedisKeyPrefix("spring-ai-chat:memory-benchmark:");
+        if ("compact".equals(store)) {
+            memory = new CompactChatMemory(properties);
+        } else {
+            if ("redis-no-near-cache".equals(store)) {
+                properties.setNearCacheSize(0);
+            }
+            connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                    System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379)));
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            memory = new RedisChatMemory(new StringRedisTemplate(connectionFactory), properties);
+        }
+        turn = List.of(new UserMessage("今天北京的天气怎么样？适合出门吗？"),
+                new AssistantMessage("今天北京晴，气温18到26度，空气质量良，适合出门，注意防晒。"));
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            for (int j = 0; j < properties.getMaxMessages() / 2; j++) {
+                memory.add("c" + i, turn);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            memory.clear("c" + i);
+        }
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Benchmark
+    public List<Message> read() {
+        return memory.get("c" + ThreadLocalRandom.current().nextInt(CONVERSATIONS));
+    }
+
+    @Benchmark
+    public void append() {
+        memory.add("c" + ThreadLocalRandom.current().nextInt(CONVERSATIONS), turn);
+    }
+}
@@ -0,0 +1,78 @@
+package com.randb.springaichatstarter.benchmark;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.core.ChatModelFactory;
+import com.randb.springaichatstarter.core.ChatService;
+import com.randb.springaichatstarter.core.DefaultQwenChatServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatModelFactory.get() 基准测试
+ * 运行方式（-prof gc 可查看 gc.alloc.rate.norm，应接近 0 B/op）：
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ChatModelFactoryBenchmark -prof gc
+ * </pre>
+ * @Date: 2025-08-20
+ * @Author: randb
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatModelFactoryBenchmark {
+
+    private StaticApplicationContext applicationContext;
+    private ChatModelFactory factory;
+
+    @Setup
+    public void setup() {
+        applicationContext = new StaticApplicationContext();
+        applicationContext.refresh();
+        Map<String, ChatService> services = Map.of(
+                "qwen", new DefaultQwenChatServiceImpl(),
+                "openai", new DefaultQwenChatServiceImpl());
+        factory = new ChatModelFactory(services, applicationContext, new SpringAiChatProperties());
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public ChatService exactName() {
+        return factory.get("qwen");
+    }
+
+    @Benchmark
+    public ChatService alias() {
+        return factory.get("qwen-turbo");
+    }
+
+    @Benchmark
+    public ChatService defaultModel() {
+        return factory.get(null);
+    }
+
+    @Benchmark
+    public ChatService unknownModel() {
+        return factory.get("unknown");
+    }
+}
@@ -0,0 +1,137 @@
+package com.randb.springaichatstarter.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.dto.ChatRequest;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.mq.ChatPayloadCodec;
+import com.randb.springaichatstarter.mq.ChatPayloadCodecs;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MQ消息体编解码吞吐量基准测试：各格式的回复帧编码、解码和请求往返，
+ * legacy为旧实现（writeValueAsString后再经Jackson2JsonMessageConverter编码一次，接收端解码两次）。
+ * 消息体大小见 payloadBytes 辅助计数：
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ChatPayloadCodecBenchmark -prof gc
+ * </pre>
+ * @Date: 2025-09-10
+ * @Author: randb
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatPayloadCodecBenchmark {
+
+    /** 合并后的流式片段 */
+    private static final String CONTENT = "Spring AI 是一个用于构建 AI 应用的框架，\n它提供了 \"ChatClient\" 等抽象。";
+
+    @Param({"legacy", "JSON", "SMILE", "CBOR", "BINARY"})
+    private String format;
+
+    private ObjectMapper objectMapper;
+    private Jackson2JsonMessageConverter legacyConverter;
+    private ChatPayloadCodec codec;
+    private ChatRequest request;
+    private ChatResponse response;
+    private byte[] responseBody;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = new ObjectMapper();
+        legacyConverter = new Jackson2JsonMessageConverter(objectMapper);
+        if (!isLegacy()) {
+            ChatPayloadCodecs codecs = ChatPayloadCodecs.create(objectMapper,
+                    SpringAiChatProperties.PayloadFormat.valueOf(format));
+            codec = codecs.getDefault();
+        }
+        request = new ChatRequest();
+        request.setRequestId("2f1c7e1a-8a4b-4c55-9d7e-1b2c3d4e5f60");
+        request.setUserId("user-1");
+        request.setPrompt("请介绍一下 Spring AI 的主要功能，以及它和 LangChain 的区别。");
+        request.setModel("qwen");
+        request.setReplyTo("chat.reply");
+        request.setStream(true);
+        response = new ChatResponse("message", request.getRequestId(), request.getUserId(), CONTENT, 1724457600000L);
+        responseBody = encodeResponse();
+    }
+
+    /**
+     * 编码后的回复帧字节数
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public long payloadBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            payloadBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeResponse(Size size) throws IOException {
+        byte[] body = encodeResponse();
+        size.payloadBytes = body.length;
+        return body;
+    }
+
+    @Benchmark
+    public ChatResponse decodeResponse() throws IOException {
+        if (isLegacy()) {
+            String json = (String) legacyConverter.fromMessage(legacyMessage(responseBody));
+            return objectMapper.readValue(json, ChatResponse.class);
+        }
+        return codec.decode(responseBody, ChatResponse.class);
+    }
+
+    @Benchmark
+    public ChatRequest requestRoundTrip() throws IOException {
+        if (isLegacy()) {
+            Message message = legacyConverter.toMessage(objectMapper.writeValueAsString(request), new MessageProperties());
+            return objectMapper.readValue((String) legacyConverter.fromMessage(message), ChatRequest.class);
+        }
+        return codec.decode(codec.encode(request), ChatRequest.class);
+    }
+
+    private byte[] encodeResponse() throws IOException {
+        if (isLegacy()) {
+            return legacyConverter.toMessage(objectMapper.writeValueAsString(response), new MessageProperties()).getBody();
+        }
+        return codec.encode(response);
+    }
+
+    private boolean isLegacy() {
+        return "legacy".equals(format);
+    }
+
+    private static Message legacyMessage(byte[] body) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setInferredArgumentType(String.class);
+        return new Message(body, properties);
+    }
+}
@@ -0,0 +1,81 @@
+package com.randb.springaichatstarter.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.randb.springaichatstarter.dto.ChatResponse;
+import com.randb.springaichatstarter.stream.ChatResponseFrameWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatResponse片段序列化基准测试：ObjectMapper vs ChatResponseFrameWriter
+ * 运行方式（-prof gc 可对比 gc.alloc.rate.norm）：
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main ChatResponseFrameWriterBenchmark -prof gc
+ * </pre>
+ * @Date: 2025-08-24
+ * @Author: randb
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatResponseFrameWriterBenchmark {
+
+    /** 单个token、合并后的片段 */
+    @Param({"好", "Spring AI 是一个用于构建 AI 应用的框架，\n它提供了 \"ChatClient\" 等抽象。"})
+    private String content;
+
+    private ObjectMapper objectMapper;
+    private ChatResponse response;
+    private ChatResponseFrameWriter.FrameTemplate frame;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        response = new ChatResponse("message", "2f1c7e1a-8a4b-4c55-9d7e-1b2c3d4e5f60", "user-1", content, 1724457600000L);
+        frame = ChatResponseFrameWriter.template("message", response.getRequestId(), response.getUserId());
+        out = new ByteArrayOutputStream(1024);
+    }
+
+    @Benchmark
+    public String objectMapperString() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public String frameWriterString() {
+        return frame.writeString(response.getContent(), response.getTimestamp());
+    }
+
+    @Benchmark
+    public int objectMapperStream() throws IOException {
+        out.reset();
+        objectMapper.writeValue(out, response);
+        return out.size();
+    }
+
+    @Benchmark
+    public int frameWriterStream() throws IOException {
+        out.reset();
+        frame.writeTo(out, response.getContent(), response.getTimestamp());
+        return out.size();
+    }
+}
@@ -0,0 +1,120 @@
+package com.randb.springaichatstarter.benchmark;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.memory.MappedLogChatMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件对话记忆基准测试：追加吞吐量、冷启动恢复耗时
+ * recover 在准备阶段写入 messages 条消息（每个会话20条，默认1000万条，约700MB磁盘），之后每次迭代重新打开并重建索引：
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main MappedLogChatMemoryBenchmark -jvmArgs -Xmx2g
+ * </pre>
+ * @Date: 2025-09-04
+ * @Author: randb
+ */
+@Fork(1)
+public class MappedLogChatMemoryBenchmark {
+
+    private static final int MESSAGES_PER_CONVERSATION = 20;
+
+    @State(Scope.Benchmark)
+    public static class AppendState {
+        private Path directory;
+        private MappedLogChatMemory memory;
+        private List<Message> message;
+        private long counter;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("chat-memory-append");
+            memory = new MappedLogChatMemory(properties(directory));
+            message = List.of(new UserMessage("今天北京的天气怎么样？适合出门吗？"));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            memory.close();
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RecoveryState {
+        @Param({"10000000"})
+        public int messages;
+
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("chat-memory-recovery");
+            List<Message> message = List.of(new UserMessage("今天北京的天气怎么样？适合出门吗？"));
+            int conversations = Math.max(1, messages / MESSAGES_PER_CONVERSATION);
+            try (MappedLogChatMemory memory = new MappedLogChatMemory(properties(directory))) {
+                for (int i = 0; i < messages; i++) {
+                    memory.add("conversation-" + (i % conversations), message);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void append(AppendState state) {
+        state.memory.add("conversation-" + (state.counter++ % 100_000), state.message);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public long recover(RecoveryState state) {
+        try (MappedLogChatMemory memory = new MappedLogChatMemory(properties(state.directory))) {
+            return memory.getRecoveredRecords();
+        }
+    }
+
+    private static SpringAiChatProperties.MemoryProperties properties(Path directory) {
+        SpringAiChatProperties.MemoryProperties properties = new SpringAiChatProperties.MemoryProperties();
+        properties.setMaxMessages(MESSAGES_PER_CONVERSATION);
+        properties.setLogDirectory(directory.toString());
+        properties.setSegmentSize(DataSize.ofMegabytes(256));
+        // 基准测试期间不触发压缩
+        properties.setCompactionInterval(Duration.ofHours(1));
+        return properties;
+    }
+}
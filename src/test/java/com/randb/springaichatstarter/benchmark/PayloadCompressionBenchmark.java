@@ -0,0 +1,122 @@
+package com.randb.springaichatstarter.benchmark;
+
+import com.randb.springaichatstarter.autoconfigure.SpringAiChatProperties;
+import com.randb.springaichatstarter.mq.PayloadCompressor;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MQ消息体压缩基准测试：各算法在中英文回复文本、不同大小下的压缩、解压吞吐量，
+ * 压缩后的字节数见 compressedBytes 辅助计数，用于选择 spring.ai.chat.rabbitmq.compression 的算法和阈值：
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main PayloadCompressionBenchmark -prof gc
+ * </pre>
+ * @Date: 2025-09-12
+ * @Author: randb
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadCompressionBenchmark {
+
+    private static final String[] ZH = {
+            "Spring AI 是一个用于构建 AI 应用的框架，它提供了 ChatClient 等抽象。",
+            "流式回复会按片段推送给客户端，每个片段都带有序号。",
+            "对话记忆保存在 Redis 中，超过窗口大小的历史消息会被裁剪。",
+            "如果模型调用失败，服务会返回错误帧并记录日志。",
+            "可以通过配置切换通义千问、DeepSeek 等不同的模型提供商。",
+            "限流器按用户统计请求数，超过阈值时直接拒绝。"
+    };
+
+    private static final String[] EN = {
+            "Spring AI is a framework for building AI applications and provides abstractions such as ChatClient.",
+            "Streaming replies are pushed to the client in chunks, each carrying a sequence number.",
+            "Conversation memory is kept in Redis and history beyond the window size is trimmed.",
+            "When a model call fails the service sends an error frame and logs the cause.",
+            "The provider can be switched between Qwen, DeepSeek and others through configuration.",
+            "The rate limiter counts requests per user and rejects them once the limit is reached."
+    };
+
+    @Param({"GZIP", "DEFLATE", "LZ4", "ZSTD"})
+    private String algorithm;
+
+    @Param({"zh", "en"})
+    private String language;
+
+    @Param({"4096", "16384", "65536"})
+    private int size;
+
+    private PayloadCompressor compressor;
+    private byte[] body;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() throws IOException {
+        SpringAiChatProperties.CompressionProperties properties = new SpringAiChatProperties.CompressionProperties();
+        properties.setAlgorithm(SpringAiChatProperties.PayloadCompression.valueOf(algorithm));
+        properties.setThreshold(DataSize.ofBytes(0));
+        compressor = new PayloadCompressor(properties);
+        body = text("zh".equals(language) ? ZH : EN, size);
+        compressed = compressor.compress(body);
+    }
+
+    /**
+     * 随机拼接句子，固定种子保证每次运行的输入一致
+     */
+    private static byte[] text(String[] sentences, int size) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        while (text.toString().getBytes(StandardCharsets.UTF_8).length < size) {
+            text.append(sentences[random.nextInt(sentences.length)]);
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        return new String(bytes, 0, size, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 压缩后的字节数
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public long compressedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            compressedBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] compress(Size size) throws IOException {
+        byte[] out = compressor.compress(body);
+        size.compressedBytes = out.length;
+        return out;
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException {
+        return compressor.decompress(compressed, compressor.getEncoding());
+    }
+}